@@ -122,6 +122,8 @@ public class DartAnalysisServerService implements Disposable {
 
   @NotNull private final Project myProject;
   private boolean myInitializationOnServerStartupDone = false;
+  // DartServerDataCache is loaded once per project opening, when the server starts for the first time
+  private boolean myServerDataCacheLoaded = false;
 
   // Do not wait for server response under lock. Do not take read/write action under lock.
   private final Object myLock = new Object();
@@ -136,12 +138,15 @@ public class DartAnalysisServerService implements Disposable {
   private final Map<String, Long> myFilePathWithOverlaidContentToTimestamp = new THashMap<>();
   private final List<String> myVisibleFiles = new ArrayList<>();
   private final Set<Document> myChangedDocuments = new THashSet<>();
+  // edits made to documents since their content was last sent to the server; allows sending ChangeContentOverlay instead of the whole text
+  private final Map<Document, DocumentEdits> myDocumentEdits = new THashMap<>();
   private final Alarm myUpdateFilesAlarm;
 
   @NotNull private final Queue<CompletionInfo> myCompletionInfos = new LinkedList<>();
   @NotNull private final Queue<SearchResultsSet> mySearchResultSets = new LinkedList<>();
 
   @NotNull private final DartServerData myServerData;
+  @NotNull private final DartRequestCoalescer myRequestCoalescer = new DartRequestCoalescer();
 
   private volatile boolean myAnalysisInProgress;
   private volatile boolean myPubListInProgress;
@@ -152,12 +157,14 @@ public class DartAnalysisServerService implements Disposable {
   private boolean myHaveShownInitialProgress;
   private boolean mySentAnalysisBusy;
 
-  // files with red squiggles in Project View. This field is also used as a lock to access these 3 collections
+  // files with red squiggles in Project View. This field is also used as a lock to access these 4 collections
   @NotNull private final Set<String> myFilePathsWithErrors = new THashSet<>();
   // how many files with errors are in this folder (recursively)
   @NotNull private final TObjectIntHashMap<String> myFolderPathsWithErrors = new TObjectIntHashMap<>();
   // errors hash is tracked to optimize error notification listener: do not handle equal notifications more than once
   @NotNull private final TObjectIntHashMap<String> myFilePathToErrorsHash = new TObjectIntHashMap<>();
+  // files the server has reported errors for, errors cached in the previous session are not shown for them
+  @NotNull private final Set<String> myFilePathsReportedByServer = new THashSet<>();
 
   @NotNull private final InteractiveErrorReporter myErrorReporter = new InteractiveErrorReporter();
 
@@ -211,6 +218,7 @@ public class DartAnalysisServerService implements Disposable {
       synchronized (myFilePathsWithErrors) {
         // TObjectIntHashMap returns 0 if there's no such entry, it's equivalent to empty error set for this file
         oldHash = myFilePathToErrorsHash.get(filePathSI);
+        myFilePathsReportedByServer.add(filePathSI);
       }
 
       final int newHash = errorsWithoutTodo.isEmpty() ? 0 : ensureNotZero(errorsWithoutTodo.hashCode());
@@ -651,6 +659,16 @@ public class DartAnalysisServerService implements Disposable {
 
         final VirtualFile file = FileDocumentManager.getInstance().getFile(e.getDocument());
         if (isLocalAnalyzableFile(file)) {
+          myRequestCoalescer.invalidate(file.getPath());
+
+          synchronized (myLock) {
+            final Document document = e.getDocument();
+            final DocumentEdits edits = myDocumentEdits.get(document);
+            if (edits == null || !edits.addEdit(e)) {
+              myDocumentEdits.put(document, new DocumentEdits(e));
+            }
+          }
+
           for (VirtualFile fileInEditor : FileEditorManager.getInstance(myProject).getOpenFiles()) {
             if (fileInEditor.equals(file)) {
               synchronized (myLock) {
@@ -664,6 +682,18 @@ public class DartAnalysisServerService implements Disposable {
         myUpdateFilesAlarm.cancelAllRequests();
         myUpdateFilesAlarm.addRequest(DartAnalysisServerService.this::updateFilesContent, UPDATE_FILES_TIMEOUT);
       }
+
+      @Override
+      public void documentChanged(@NotNull DocumentEvent e) {
+        if (myServer == null) return;
+
+        synchronized (myLock) {
+          final DocumentEdits edits = myDocumentEdits.get(e.getDocument());
+          if (edits != null) {
+            edits.myLastStamp = e.getDocument().getModificationStamp();
+          }
+        }
+      }
     };
 
     EditorFactory.getInstance().getEventMulticaster().addDocumentListener(documentListener, myProject);
@@ -686,9 +716,79 @@ public class DartAnalysisServerService implements Disposable {
 
   @Override
   public void dispose() {
+    saveServerDataCache();
     stopServer();
   }
 
+  private static boolean isServerDataCacheEnabled() {
+    return !ApplicationManager.getApplication().isUnitTestMode() && Registry.is("dart.server.data.cache", true);
+  }
+
+  private void saveServerDataCache() {
+    if (!isServerDataCacheEnabled()) return;
+
+    synchronized (myLock) {
+      // if the server hasn't been running there's nothing new to save, the cache from the previous session is still good
+      if (myServer == null) return;
+    }
+
+    final TObjectIntHashMap<String> filePathToErrorsHash;
+    synchronized (myFilePathsWithErrors) {
+      filePathToErrorsHash = myFilePathToErrorsHash.clone();
+    }
+
+    DartServerDataCache.save(DartServerDataCache.getCacheFile(myProject), myServerData.getDataToCache(filePathToErrorsHash));
+  }
+
+  /**
+   * Shows errors, outlines and overrides from the previous session for the files that haven't changed since then.
+   * The server will report actual data later, it replaces cached data.
+   */
+  private void loadServerDataCache(@NotNull final AnalysisServer startedServer) {
+    for (DartServerDataCache.FileData data : DartServerDataCache.load(DartServerDataCache.getCacheFile(myProject))) {
+      synchronized (myLock) {
+        if (startedServer != myServer || myProject.isDisposed()) return;
+      }
+
+      final VirtualFile file = data.findUpToDateFile();
+      if (file == null) continue;
+
+      if (!data.myErrors.isEmpty() && data.myErrorsHash == ensureNotZero(data.myErrors.hashCode())) {
+        restoreErrors(file, data.myErrors, data.myErrorsHash);
+      }
+
+      if (data.myOutline != null) {
+        myServerData.restoreOutline(file, data.myOutline);
+      }
+      if (data.myOverrides != null) {
+        myServerData.restoreOverrides(file, data.myOverrides);
+      }
+    }
+  }
+
+  /**
+   * Cached errors are shown only if the server hasn't reported errors for the file yet. Restoring them under the same lock that
+   * {@link AnalysisServerListener#computedErrors} takes to mark the file as reported guarantees that stale errors never replace
+   * the server result, neither in the editor nor in the Dart Analysis tool window.
+   */
+  private void restoreErrors(@NotNull final VirtualFile file, @NotNull final List<AnalysisError> errors, final int errorsHash) {
+    boolean hasSevereProblems = false;
+    for (AnalysisError error : errors) {
+      if (AnalysisErrorSeverity.ERROR.equals(error.getSeverity())) {
+        hasSevereProblems = true;
+        break;
+      }
+    }
+
+    synchronized (myFilePathsWithErrors) {
+      if (myFilePathsReportedByServer.contains(file.getPath())) return;
+
+      if (myServerData.restoreErrors(file, errors)) {
+        onErrorsUpdated(file.getPath(), errors, hasSevereProblems, errorsHash);
+      }
+    }
+  }
+
   private void handleClosingLabelPreferenceChanged() {
     analysis_setSubscriptions();
   }
@@ -703,7 +803,7 @@ public class DartAnalysisServerService implements Disposable {
   }
 
   @NotNull
-  public List<DartServerData.DartHighlightRegion> getHighlight(@NotNull final VirtualFile file) {
+  public DartHighlightRegions getHighlight(@NotNull final VirtualFile file) {
     return myServerData.getHighlight(file);
   }
 
@@ -788,8 +888,6 @@ public class DartAnalysisServerService implements Disposable {
   }
 
   private void doUpdateFilesContent() {
-    // may be use DocumentListener to collect deltas instead of sending the whole Document.getText() each time?
-
     AnalysisServer server = myServer;
     if (server == null) {
       return;
@@ -817,17 +915,27 @@ public class DartAnalysisServerService implements Disposable {
 
           final Long oldTimestamp = myFilePathWithOverlaidContentToTimestamp.get(file.getPath());
           if (oldTimestamp == null || document.getModificationStamp() != oldTimestamp) {
-            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), new AddContentOverlay(document.getText()));
+            final DocumentEdits edits = oldTimestamp == null ? null : myDocumentEdits.get(document);
+            final Object overlay = edits != null && edits.continues(oldTimestamp, document)
+                                   ? new ChangeContentOverlay(edits.myEdits)
+                                   : new AddContentOverlay(document.getText());
+            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), overlay);
             myFilePathWithOverlaidContentToTimestamp.put(file.getPath(), document.getModificationStamp());
+            myRequestCoalescer.invalidate(file.getPath());
           }
         }
       }
 
+      // Edits of documents that haven't been sent are dropped as well: the delta chain for such documents is broken anyway,
+      // they will get full content overlay next time.
+      myDocumentEdits.clear();
+
       // oldTrackedFiles at this point contains only those files that are not in FileDocumentManager.getUnsavedDocuments() any more
       for (String oldPath : oldTrackedFiles) {
         final Long removed = myFilePathWithOverlaidContentToTimestamp.remove(oldPath);
         LOG.assertTrue(removed != null, oldPath);
         filesToUpdate.put(FileUtil.toSystemDependentName(oldPath), new RemoveContentOverlay());
+        myRequestCoalescer.invalidate(oldPath);
       }
 
       if (LOG.isDebugEnabled()) {
@@ -870,7 +978,7 @@ public class DartAnalysisServerService implements Disposable {
                                final boolean hasSevereProblems,
                                final int errorsHash) {
     updateFilesWithErrorsSet(filePath, hasSevereProblems, errorsHash);
-    DartProblemsView.getInstance(myProject).updateErrorsForFile(filePath, errors);
+    DartProblemsView.getInstance(myProject).updateErrorsForFile(filePath, errors, errorsHash);
   }
 
   private void updateFilesWithErrorsSet(@NotNull final String filePath, final boolean hasSevereProblems, final int errorsHash) {
@@ -913,6 +1021,7 @@ public class DartAnalysisServerService implements Disposable {
       myFilePathsWithErrors.clear();
       myFilePathToErrorsHash.clear();
       myFolderPathsWithErrors.clear();
+      myFilePathsReportedByServer.clear();
     }
 
     if (!myProject.isDisposed() && myInitializationOnServerStartupDone) {
@@ -923,31 +1032,33 @@ public class DartAnalysisServerService implements Disposable {
   @NotNull
   public List<HoverInformation> analysis_getHover(@NotNull final VirtualFile file, final int _offset) {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
-    final List<HoverInformation> result = Lists.newArrayList();
 
     final AnalysisServer server = myServer;
     if (server == null) {
       return HoverInformation.EMPTY_LIST;
     }
 
-    final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
-    server.analysis_getHover(filePath, offset, new GetHoverConsumer() {
-      @Override
-      public void computedHovers(HoverInformation[] hovers) {
-        Collections.addAll(result, hovers);
-        latch.countDown();
-      }
+    final DartRequestCoalescer.Key key = createRequestKey("analysis.getHover", file, offset, 0);
+    final Ref<List<HoverInformation>> cachedResult = Ref.create();
+    // the caret or the mouse has moved, hovers at the previous position are not needed any more
+    final DartRequestCoalescer.PendingRequest<List<HoverInformation>> request =
+      myRequestCoalescer.getOrSend(key, true, cachedResult, pendingRequest ->
+        server.analysis_getHover(filePath, offset, new GetHoverConsumer() {
+          @Override
+          public void computedHovers(HoverInformation[] hovers) {
+            myRequestCoalescer.complete(key, pendingRequest, Arrays.asList(hovers));
+          }
 
-      @Override
-      public void onError(RequestError error) {
-        logError("analysis_getHover()", filePath, error);
-        latch.countDown();
-      }
-    });
+          @Override
+          public void onError(RequestError error) {
+            logError("analysis_getHover()", filePath, error);
+            myRequestCoalescer.complete(key, pendingRequest, null);
+          }
+        }));
 
-    awaitForLatchCheckingCanceled(server, latch, GET_HOVER_TIMEOUT);
-    return result;
+    final List<HoverInformation> result = request == null ? cachedResult.get() : awaitResult(server, request, GET_HOVER_TIMEOUT);
+    return result == null ? HoverInformation.EMPTY_LIST : new ArrayList<>(result);
   }
 
   @Nullable
@@ -955,82 +1066,90 @@ public class DartAnalysisServerService implements Disposable {
                                                                           final int _offset,
                                                                           final int length) {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
-    final Ref<List<DartServerData.DartNavigationRegion>> resultRef = Ref.create();
 
     final AnalysisServer server = myServer;
     if (server == null) {
       return null;
     }
 
-    final CountDownLatch latch = new CountDownLatch(1);
-    LOG.debug("analysis_getNavigation(" + filePath + ")");
-
     final int offset = getOriginalOffset(file, _offset);
-    server.analysis_getNavigation(filePath, offset, length, new GetNavigationConsumer() {
-      @Override
-      public void computedNavigation(final List<NavigationRegion> regions) {
-        final List<DartServerData.DartNavigationRegion> dartRegions = new ArrayList<>(regions.size());
-        for (NavigationRegion region : regions) {
-          if (region.getLength() > 0) {
-            dartRegions.add(DartServerData.createDartNavigationRegion(DartAnalysisServerService.this, file, region));
+    final DartRequestCoalescer.Key key = createRequestKey("analysis.getNavigation", file, offset, length);
+    final Ref<List<DartServerData.DartNavigationRegion>> cachedResult = Ref.create();
+    // several references in the same file may be resolved at the same time, so requests for other ranges are not superseded
+    final DartRequestCoalescer.PendingRequest<List<DartServerData.DartNavigationRegion>> request =
+      myRequestCoalescer.getOrSend(key, false, cachedResult, pendingRequest -> {
+        LOG.debug("analysis_getNavigation(" + filePath + ")");
+        server.analysis_getNavigation(filePath, offset, length, new GetNavigationConsumer() {
+          @Override
+          public void computedNavigation(final List<NavigationRegion> regions) {
+            final List<DartServerData.DartNavigationRegion> dartRegions = new ArrayList<>(regions.size());
+            for (NavigationRegion region : regions) {
+              if (region.getLength() > 0) {
+                dartRegions.add(DartServerData.createDartNavigationRegion(DartAnalysisServerService.this, file, region));
+              }
+            }
+
+            myRequestCoalescer.complete(key, pendingRequest, dartRegions);
           }
-        }
 
-        resultRef.set(dartRegions);
-        latch.countDown();
-      }
+          @Override
+          public void onError(final RequestError error) {
+            if (RequestErrorCode.GET_NAVIGATION_INVALID_FILE.equals(error.getCode())) {
+              LOG.info(getShortErrorMessage("analysis_getNavigation()", filePath, error));
+            }
+            else {
+              logError("analysis_getNavigation()", filePath, error);
+            }
 
-      @Override
-      public void onError(final RequestError error) {
-        if (RequestErrorCode.GET_NAVIGATION_INVALID_FILE.equals(error.getCode())) {
-          LOG.info(getShortErrorMessage("analysis_getNavigation()", filePath, error));
-        }
-        else {
-          logError("analysis_getNavigation()", filePath, error);
-        }
+            myRequestCoalescer.complete(key, pendingRequest, null);
+          }
+        });
+      });
 
-        latch.countDown();
-      }
-    });
+    if (request == null) {
+      return new ArrayList<>(cachedResult.get());
+    }
 
-    awaitForLatchCheckingCanceled(server, latch, GET_NAVIGATION_TIMEOUT);
+    final List<DartServerData.DartNavigationRegion> result = awaitResult(server, request, GET_NAVIGATION_TIMEOUT);
 
-    if (latch.getCount() > 0) {
+    if (request.getLatch().getCount() > 0) {
       LOG.info("analysis_getNavigation() took more than " + GET_NAVIGATION_TIMEOUT + "ms for file " + filePath);
     }
 
-    return resultRef.get();
+    return result == null ? null : new ArrayList<>(result);
   }
 
   @NotNull
   public List<SourceChange> edit_getAssists(@NotNull final VirtualFile file, final int _offset, final int _length) {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
-    final List<SourceChange> results = Lists.newArrayList();
 
     final AnalysisServer server = myServer;
     if (server == null) {
-      return results;
+      return Lists.newArrayList();
     }
 
-    final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
     final int length = getOriginalOffset(file, _offset + _length) - offset;
-    server.edit_getAssists(filePath, offset, length, new GetAssistsConsumer() {
-      @Override
-      public void computedSourceChanges(List<SourceChange> sourceChanges) {
-        results.addAll(sourceChanges);
-        latch.countDown();
-      }
+    final DartRequestCoalescer.Key key = createRequestKey("edit.getAssists", file, offset, length);
+    final Ref<List<SourceChange>> cachedResult = Ref.create();
+    // the caret has moved, assists at the previous position are not needed any more
+    final DartRequestCoalescer.PendingRequest<List<SourceChange>> request =
+      myRequestCoalescer.getOrSend(key, true, cachedResult, pendingRequest ->
+        server.edit_getAssists(filePath, offset, length, new GetAssistsConsumer() {
+          @Override
+          public void computedSourceChanges(List<SourceChange> sourceChanges) {
+            myRequestCoalescer.complete(key, pendingRequest, sourceChanges);
+          }
 
-      @Override
-      public void onError(final RequestError error) {
-        logError("edit_getAssists()", filePath, error);
-        latch.countDown();
-      }
-    });
+          @Override
+          public void onError(final RequestError error) {
+            logError("edit_getAssists()", filePath, error);
+            myRequestCoalescer.complete(key, pendingRequest, null);
+          }
+        }));
 
-    awaitForLatchCheckingCanceled(server, latch, GET_ASSISTS_TIMEOUT);
-    return results;
+    final List<SourceChange> result = request == null ? cachedResult.get() : awaitResult(server, request, GET_ASSISTS_TIMEOUT);
+    return result == null ? Lists.newArrayList() : new ArrayList<>(result);
   }
 
   public boolean edit_isPostfixCompletionApplicable(VirtualFile file, int _offset, String key) {
@@ -1814,6 +1933,11 @@ public class DartAnalysisServerService implements Disposable {
 
         myServer = startedServer;
 
+        if (!myServerDataCacheLoaded && isServerDataCacheEnabled()) {
+          myServerDataCacheLoaded = true;
+          ApplicationManager.getApplication().executeOnPooledThread(() -> loadServerDataCache(startedServer));
+        }
+
         // Clear any dart view notifications.
         ApplicationManager.getApplication().invokeLater(
           () -> {
@@ -1905,6 +2029,8 @@ public class DartAnalysisServerService implements Disposable {
       myFilePathWithOverlaidContentToTimestamp.clear();
       myVisibleFiles.clear();
       myChangedDocuments.clear();
+      myDocumentEdits.clear();
+      myRequestCoalescer.clear();
       myServerData.clearData();
       myRootsHandler.reset();
 
@@ -1991,6 +2117,24 @@ public class DartAnalysisServerService implements Disposable {
            ", error code = " + error.getCode() + ": " + error.getMessage();
   }
 
+  @NotNull
+  private static DartRequestCoalescer.Key createRequestKey(@NotNull final String method,
+                                                           @NotNull final VirtualFile file,
+                                                           final int offset,
+                                                           final int length) {
+    final Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+    final long stamp = document != null ? document.getModificationStamp() : file.getModificationStamp();
+    return new DartRequestCoalescer.Key(method, file.getPath(), offset, length, stamp);
+  }
+
+  @Nullable
+  private static <T> T awaitResult(@NotNull final AnalysisServer server,
+                                   @NotNull final DartRequestCoalescer.PendingRequest<T> request,
+                                   final long timeoutInMillis) {
+    awaitForLatchCheckingCanceled(server, request.getLatch(), timeoutInMillis);
+    return request.getResult();
+  }
+
   private static boolean awaitForLatchCheckingCanceled(@NotNull final AnalysisServer server,
                                                        @NotNull final CountDownLatch latch,
                                                        long timeoutInMillis) {
@@ -2084,6 +2228,48 @@ public class DartAnalysisServerService implements Disposable {
     }
   }
 
+  /**
+   * Edits made to a document since its modification stamp was equal to {@link #myBaseStamp}.
+   * If the document has been changed without notifying {@link DocumentListener} (for example, its modification stamp
+   * has been set explicitly) then the chain of edits is broken and the whole document text must be sent to the server.
+   */
+  private static class DocumentEdits {
+    private final long myBaseStamp;
+    private long myLastStamp;
+    @NotNull private final List<SourceEdit> myEdits = new ArrayList<>();
+    private int myReplacementsLength;
+
+    DocumentEdits(@NotNull final DocumentEvent e) {
+      myBaseStamp = e.getDocument().getModificationStamp();
+      myLastStamp = myBaseStamp;
+      addEdit(e);
+    }
+
+    /**
+     * @return {@code false} if the edit doesn't continue the chain of edits known so far
+     */
+    boolean addEdit(@NotNull final DocumentEvent e) {
+      if (e.getDocument().getModificationStamp() != myLastStamp) return false;
+
+      final String replacement = e.getNewFragment().toString();
+      myEdits.add(new SourceEdit(e.getOffset(), e.getOldLength(), replacement, null));
+      myReplacementsLength += replacement.length();
+      // myLastStamp is updated in DocumentListener.documentChanged(); until then the chain must not be continued
+      myLastStamp = -1;
+      return true;
+    }
+
+    /**
+     * @return {@code true} if these edits applied to the document content with the given modification stamp result in the current
+     * document content, and sending them is cheaper than sending the whole text
+     */
+    boolean continues(final long stamp, @NotNull final Document document) {
+      return myBaseStamp == stamp &&
+             myLastStamp == document.getModificationStamp() &&
+             myReplacementsLength < document.getTextLength();
+    }
+  }
+
   /**
    * A set of {@link SearchResult}s.
    */
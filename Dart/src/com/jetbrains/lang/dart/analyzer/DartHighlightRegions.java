@@ -0,0 +1,149 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Immutable highlighting regions of one file packed into parallel arrays sorted by offset. Region types are stored as ids of strings
+ * interned in a table shared by all files, so a region takes 10 bytes instead of an object with a reference to a type string.
+ * Document changes produce a new instance, so readers don't need any synchronization.
+ */
+public final class DartHighlightRegions {
+
+  public static final DartHighlightRegions EMPTY = new DartHighlightRegions(new int[0], new int[0], new short[0], 0);
+
+  private static final TObjectIntHashMap<String> ourTypeToId = new TObjectIntHashMap<>();
+  private static volatile String[] ourTypes = new String[0];
+
+  private final int[] myOffsets;
+  private final int[] myLengths;
+  private final short[] myTypeIds;
+  private final int mySize;
+
+  private DartHighlightRegions(final int[] offsets, final int[] lengths, final short[] typeIds, final int size) {
+    myOffsets = offsets;
+    myLengths = lengths;
+    myTypeIds = typeIds;
+    mySize = size;
+  }
+
+  /**
+   * Regions may come in any order, they are sorted by offset here. Regions with non-positive length are skipped.
+   */
+  @NotNull
+  static DartHighlightRegions create(@NotNull final int[] offsets, @NotNull final int[] lengths, @NotNull final String[] types) {
+    final int count = offsets.length;
+    // offset in high bits, index in low bits: sorting these keys gives stable sort by offset without boxing
+    final long[] keys = new long[count];
+    int size = 0;
+    for (int i = 0; i < count; i++) {
+      if (lengths[i] > 0) {
+        keys[size++] = ((long)offsets[i] << 32) | i;
+      }
+    }
+    Arrays.sort(keys, 0, size);
+
+    final int[] sortedOffsets = new int[size];
+    final int[] sortedLengths = new int[size];
+    final short[] sortedTypeIds = new short[size];
+    for (int i = 0; i < size; i++) {
+      final int index = (int)keys[i];
+      sortedOffsets[i] = offsets[index];
+      sortedLengths[i] = lengths[index];
+      sortedTypeIds[i] = getTypeId(types[index]);
+    }
+    return size == 0 ? EMPTY : new DartHighlightRegions(sortedOffsets, sortedLengths, sortedTypeIds, size);
+  }
+
+  private static synchronized short getTypeId(@NotNull final String type) {
+    // ids start from 1 as TObjectIntHashMap returns 0 for absent keys
+    int id = ourTypeToId.get(type);
+    if (id == 0) {
+      final String[] types = Arrays.copyOf(ourTypes, ourTypes.length + 1);
+      types[types.length - 1] = type.intern();
+      id = types.length;
+      ourTypeToId.put(types[types.length - 1], id);
+      ourTypes = types;
+    }
+    return (short)id;
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  public int getOffset(final int index) {
+    return myOffsets[index];
+  }
+
+  public int getLength(final int index) {
+    return myLengths[index];
+  }
+
+  /**
+   * @return one of {@link org.dartlang.analysis.server.protocol.HighlightRegionType} constants
+   */
+  @NotNull
+  public String getType(final int index) {
+    return ourTypes[myTypeIds[index] - 1];
+  }
+
+  /**
+   * Shifts regions located after the changed text, updates the length of the regions that contain the change,
+   * and removes the regions that are touched by the deletion in some other way.
+   */
+  @NotNull
+  DartHighlightRegions updateForDocumentChange(final int eventOffset, final int oldLength, final int newLength) {
+    final int deltaLength = newLength - oldLength;
+    if (deltaLength == 0 || mySize == 0) return this;
+
+    final int[] offsets = new int[mySize];
+    final int[] lengths = new int[mySize];
+    final short[] typeIds = new short[mySize];
+    int size = 0;
+
+    for (int i = 0; i < mySize; i++) {
+      int offset = myOffsets[i];
+      int length = myLengths[i];
+
+      if (deltaLength > 0) {
+        // Something was typed. Shift untouched regions, update touched.
+        if (eventOffset <= offset) {
+          offset += deltaLength;
+        }
+        else if (offset < eventOffset && eventOffset < offset + length) {
+          length += deltaLength;
+        }
+      }
+      else {
+        // Some text was deleted. Shift untouched regions, delete or update touched.
+        final int eventRightOffset = eventOffset - deltaLength;
+        final int regionRightOffset = offset + length;
+
+        if (eventRightOffset <= offset) {
+          offset += deltaLength;
+        }
+        else if (offset <= eventOffset && eventRightOffset <= regionRightOffset && length != -deltaLength) {
+          length += deltaLength;
+        }
+        else if (eventOffset < regionRightOffset) {
+          continue;
+        }
+      }
+
+      offsets[size] = offset;
+      lengths[size] = length;
+      typeIds[size] = myTypeIds[i];
+      size++;
+    }
+
+    return size == 0 ? EMPTY : new DartHighlightRegions(offsets, lengths, typeIds, size);
+  }
+}
@@ -0,0 +1,274 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.util.Ref;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.containers.ContainerUtil;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sits in front of Dart Analysis Server for requests that are sent again and again while the caret or the mouse moves
+ * (hover, navigation, assists):
+ * <ul>
+ * <li>identical requests (same method, file, offset, length and file modification stamp) that are in flight are sent only once,
+ * all callers wait for the same response;</li>
+ * <li>results are cached until the overlay of the file changes ({@link #invalidate(String)});</li>
+ * <li>a request that supersedes earlier requests of the same kind for the same file is not sent at once but queued for
+ * {@link #SEND_DELAY_MS}, and the queue is flushed on a pooled thread. A newer request of the same kind replaces the queued one, which
+ * is then never sent to the server. Requests that have already been sent can't be cancelled, the protocol has no such request: their
+ * callers are released and their results are dropped when they come.</li>
+ * </ul>
+ */
+class DartRequestCoalescer {
+
+  private static final int MAX_CACHED_RESULTS = 32;
+  // short enough compared to the timeouts of the superseding requests (100 ms for assists)
+  private static final long SEND_DELAY_MS = 20;
+
+  static final class Key {
+    @NotNull private final String myMethod;
+    @NotNull private final String myFilePath;
+    private final int myOffset;
+    private final int myLength;
+    private final long myModificationStamp;
+
+    Key(@NotNull final String method, @NotNull final String filePath, final int offset, final int length, final long modificationStamp) {
+      myMethod = method;
+      myFilePath = filePath;
+      myOffset = offset;
+      myLength = length;
+      myModificationStamp = modificationStamp;
+    }
+
+    private boolean isSameKind(@NotNull final Key key) {
+      return myMethod.equals(key.myMethod) && myFilePath.equals(key.myFilePath);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      final Key key = (Key)o;
+      return myOffset == key.myOffset &&
+             myLength == key.myLength &&
+             myModificationStamp == key.myModificationStamp &&
+             myMethod.equals(key.myMethod) &&
+             myFilePath.equals(key.myFilePath);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = myMethod.hashCode();
+      result = 31 * result + myFilePath.hashCode();
+      result = 31 * result + myOffset;
+      result = 31 * result + myLength;
+      result = 31 * result + (int)(myModificationStamp ^ (myModificationStamp >>> 32));
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return myMethod + "(" + myFilePath + ", " + myOffset + ", " + myLength + ")";
+    }
+  }
+
+  /**
+   * A request that has been sent to the server or is queued to be sent. Its latch is released when the response comes or when
+   * the request is superseded.
+   */
+  static final class PendingRequest<T> {
+    @NotNull private final CountDownLatch myLatch = new CountDownLatch(1);
+    @Nullable private volatile T myResult;
+    private volatile boolean mySuperseded;
+    // the file has changed while the request was in flight, the result must not be cached
+    private boolean myStale;
+    // not null while the request is queued and not sent yet
+    @Nullable private RequestSender<T> mySender;
+
+    @NotNull
+    CountDownLatch getLatch() {
+      return myLatch;
+    }
+
+    /**
+     * @return {@code null} if the request failed, hasn't completed yet or has been superseded by a newer request
+     */
+    @Nullable
+    T getResult() {
+      return mySuperseded ? null : myResult;
+    }
+  }
+
+  /**
+   * Sends the request to the server and calls {@link #complete(Key, PendingRequest, Object)} when the response comes.
+   */
+  interface RequestSender<T> {
+    void send(@NotNull PendingRequest<T> request);
+  }
+
+  private final Object myLock = new Object();
+  // queued and sent requests
+  private final Map<Key, PendingRequest<?>> myInFlightRequests = new THashMap<>();
+  private final Map<Key, Object> myCachedResults = ContainerUtil.newLinkedHashMap();
+  @NotNull private final ScheduledExecutorService myExecutor;
+  private final long mySendDelay;
+  private boolean myFlushScheduled;
+
+  DartRequestCoalescer() {
+    this(AppExecutorUtil.getAppScheduledExecutorService(), SEND_DELAY_MS);
+  }
+
+  DartRequestCoalescer(@NotNull final ScheduledExecutorService executor, final long sendDelayMs) {
+    myExecutor = executor;
+    mySendDelay = sendDelayMs;
+  }
+
+  /**
+   * @param supersedeOthers {@code true} if earlier requests of the same kind for the same file are not interesting any more.
+   *                        The request is queued for a short time then, so that a newer one can replace it before it is sent.
+   * @param cachedResult    set to the cached result if there is one, in this case the returned pending request is {@code null}
+   * @return the request to wait for
+   */
+  @SuppressWarnings("unchecked")
+  @Nullable
+  <T> PendingRequest<T> getOrSend(@NotNull final Key key,
+                                  final boolean supersedeOthers,
+                                  @NotNull final Ref<T> cachedResult,
+                                  @NotNull final RequestSender<T> sender) {
+    final PendingRequest<T> request;
+    synchronized (myLock) {
+      final Object cached = myCachedResults.get(key);
+      if (cached != null) {
+        cachedResult.set((T)cached);
+        return null;
+      }
+
+      final PendingRequest<T> inFlight = (PendingRequest<T>)myInFlightRequests.get(key);
+      if (inFlight != null) {
+        return inFlight;
+      }
+
+      if (supersedeOthers) {
+        final Iterator<Map.Entry<Key, PendingRequest<?>>> iterator = myInFlightRequests.entrySet().iterator();
+        while (iterator.hasNext()) {
+          final Map.Entry<Key, PendingRequest<?>> entry = iterator.next();
+          if (entry.getKey().isSameKind(key)) {
+            final PendingRequest<?> superseded = entry.getValue();
+            superseded.mySuperseded = true;
+            superseded.mySender = null;
+            superseded.myLatch.countDown();
+            iterator.remove();
+          }
+        }
+      }
+
+      request = new PendingRequest<>();
+      myInFlightRequests.put(key, request);
+
+      if (supersedeOthers) {
+        request.mySender = sender;
+        if (!myFlushScheduled) {
+          myFlushScheduled = true;
+          myExecutor.schedule(this::flush, mySendDelay, TimeUnit.MILLISECONDS);
+        }
+        return request;
+      }
+    }
+
+    sender.send(request);
+    return request;
+  }
+
+  /**
+   * Sends the queued requests.
+   */
+  void flush() {
+    final List<PendingRequest<?>> queued = new ArrayList<>();
+    synchronized (myLock) {
+      myFlushScheduled = false;
+      for (PendingRequest<?> request : myInFlightRequests.values()) {
+        if (request.mySender != null) {
+          queued.add(request);
+        }
+      }
+    }
+
+    for (PendingRequest<?> request : queued) {
+      send(request);
+    }
+  }
+
+  private <T> void send(@NotNull final PendingRequest<T> request) {
+    final RequestSender<T> sender;
+    synchronized (myLock) {
+      // may have been superseded in the meantime
+      sender = request.mySender;
+      request.mySender = null;
+    }
+    if (sender != null) {
+      sender.send(request);
+    }
+  }
+
+  /**
+   * @param result {@code null} if the request failed
+   */
+  <T> void complete(@NotNull final Key key, @NotNull final PendingRequest<T> request, @Nullable final T result) {
+    synchronized (myLock) {
+      if (myInFlightRequests.get(key) == request) {
+        myInFlightRequests.remove(key);
+      }
+
+      if (result != null && !request.myStale && !request.mySuperseded) {
+        myCachedResults.remove(key); // to move it to the end of the LRU order
+        myCachedResults.put(key, result);
+        if (myCachedResults.size() > MAX_CACHED_RESULTS) {
+          final Iterator<Key> iterator = myCachedResults.keySet().iterator();
+          iterator.next();
+          iterator.remove();
+        }
+      }
+    }
+
+    request.myResult = result;
+    request.myLatch.countDown();
+  }
+
+  /**
+   * Called when the content of the file changes or is sent to the server.
+   */
+  void invalidate(@NotNull final String filePath) {
+    synchronized (myLock) {
+      if (myCachedResults.isEmpty() && myInFlightRequests.isEmpty()) return;
+
+      myCachedResults.keySet().removeIf(key -> key.myFilePath.equals(filePath));
+      for (Map.Entry<Key, PendingRequest<?>> entry : myInFlightRequests.entrySet()) {
+        if (entry.getKey().myFilePath.equals(filePath)) {
+          entry.getValue().myStale = true;
+        }
+      }
+    }
+  }
+
+  void clear() {
+    synchronized (myLock) {
+      myCachedResults.clear();
+      for (PendingRequest<?> request : myInFlightRequests.values()) {
+        request.myStale = true;
+        request.mySender = null;
+        request.myLatch.countDown();
+      }
+      myInFlightRequests.clear();
+    }
+  }
+}
@@ -14,7 +14,9 @@ import com.intellij.psi.impl.source.resolve.ResolveCache;
 import com.intellij.psi.search.SearchScope;
 import com.intellij.util.EventDispatcher;
 import com.intellij.util.SmartList;
-import gnu.trove.THashMap;
+import com.intellij.util.containers.ContainerUtil;
+import gnu.trove.THashSet;
+import gnu.trove.TObjectIntHashMap;
 import org.dartlang.analysis.server.protocol.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -31,19 +33,22 @@ public class DartServerData {
 
   private final EventDispatcher<OutlineListener> myEventDispatcher = EventDispatcher.create(OutlineListener.class);
 
-  private final Map<String, List<DartError>> myErrorData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartHighlightRegion>> myHighlightData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartNavigationRegion>> myNavigationData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartOverrideMember>> myOverrideData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartRegion>> myImplementedClassData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartRegion>> myImplementedMemberData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, Outline> myOutlineData = Collections.synchronizedMap(new THashMap<>());
+  private final Map<String, List<DartError>> myErrorData = ContainerUtil.newConcurrentMap();
+  private final Map<String, DartHighlightRegions> myHighlightData = ContainerUtil.newConcurrentMap();
+  private final Map<String, List<DartNavigationRegion>> myNavigationData = ContainerUtil.newConcurrentMap();
+  private final Map<String, List<DartOverrideMember>> myOverrideData = ContainerUtil.newConcurrentMap();
+  private final Map<String, List<DartRegion>> myImplementedClassData = ContainerUtil.newConcurrentMap();
+  private final Map<String, List<DartRegion>> myImplementedMemberData = ContainerUtil.newConcurrentMap();
+  private final Map<String, Outline> myOutlineData = ContainerUtil.newConcurrentMap();
 
   private final Set<String> myFilePathsWithUnsentChanges = Sets.newConcurrentHashSet();
 
   // keeps track of files in which error regions have been deleted by DocumentListener (typing inside an error region)
   private final Set<String> myFilePathsWithLostErrorInfo = Sets.newConcurrentHashSet();
 
+  // files edited after the last errors notification, their data doesn't match any content on disk and must not go to DartServerDataCache
+  private final Set<String> myFilePathsChangedAfterErrors = Sets.newConcurrentHashSet();
+
   DartServerData(@NotNull final DartAnalysisServerService service) {
     myService = service;
   }
@@ -59,23 +64,104 @@ public class DartServerData {
   boolean computedErrors(@NotNull final String filePath, @NotNull final List<AnalysisError> errors, final boolean restartHighlighting) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return false;
 
-    final List<DartError> newErrors = new ArrayList<>(errors.size());
     final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
 
+    myFilePathsWithLostErrorInfo.remove(filePath);
+    myFilePathsChangedAfterErrors.remove(filePath);
+    myErrorData.put(filePath, convertErrors(file, errors));
+
+    if (restartHighlighting) {
+      forceFileAnnotation(file, false);
+    }
+
+    return true;
+  }
+
+  @NotNull
+  private List<DartError> convertErrors(@Nullable final VirtualFile file, @NotNull final List<AnalysisError> errors) {
+    final List<DartError> newErrors = new ArrayList<>(errors.size());
     for (AnalysisError error : errors) {
       final int offset = myService.getConvertedOffset(file, error.getLocation().getOffset());
       final int length = myService.getConvertedOffset(file, error.getLocation().getOffset() + error.getLocation().getLength()) - offset;
       newErrors.add(new DartError(error, offset, length));
     }
+    return newErrors;
+  }
 
-    myFilePathsWithLostErrorInfo.remove(filePath);
-    myErrorData.put(filePath, newErrors);
+  /**
+   * Data loaded from {@link DartServerDataCache} is taken only if the server hasn't reported anything for the file yet.
+   * {@link DartAnalysisServerService} doesn't call it for files the server has reported errors for, even if they were the same as cached.
+   *
+   * @return {@code true} if {@code errors} were taken
+   */
+  boolean restoreErrors(@NotNull final VirtualFile file, @NotNull final List<AnalysisError> errors) {
+    final String filePath = file.getPath();
+    if (myFilePathsWithUnsentChanges.contains(filePath)) return false;
+    if (myErrorData.putIfAbsent(filePath, convertErrors(file, errors)) != null) return false;
 
-    if (restartHighlighting) {
-      forceFileAnnotation(file, false);
+    forceFileAnnotation(file, false);
+    return true;
+  }
+
+  void restoreOutline(@NotNull final VirtualFile file, @NotNull final Outline outline) {
+    final String filePath = file.getPath();
+    if (myFilePathsWithUnsentChanges.contains(filePath)) return;
+    if (myOutlineData.putIfAbsent(filePath, outline) != null) return;
+
+    ApplicationManager.getApplication().invokeLater(() -> myEventDispatcher.getMulticaster().outlineUpdated(filePath),
+                                                    ModalityState.NON_MODAL,
+                                                    myService.getProject().getDisposed());
+  }
+
+  void restoreOverrides(@NotNull final VirtualFile file, @NotNull final List<DartOverrideMember> overrides) {
+    final String filePath = file.getPath();
+    if (myFilePathsWithUnsentChanges.contains(filePath)) return;
+    if (myOverrideData.putIfAbsent(filePath, overrides) != null) return;
+
+    forceFileAnnotation(file, false);
+  }
+
+  /**
+   * @param filePathToErrorsHash hashes of errors as tracked by {@link DartAnalysisServerService}
+   * @return data for the files that haven't been edited since the server reported errors for them
+   */
+  @NotNull
+  List<DartServerDataCache.FileData> getDataToCache(@NotNull final TObjectIntHashMap<String> filePathToErrorsHash) {
+    final Set<String> filePaths = new THashSet<>(myErrorData.keySet());
+    filePaths.addAll(myOutlineData.keySet());
+    filePaths.addAll(myOverrideData.keySet());
+
+    final List<DartServerDataCache.FileData> result = new ArrayList<>();
+    for (String filePath : filePaths) {
+      if (myFilePathsWithUnsentChanges.contains(filePath) ||
+          myFilePathsChangedAfterErrors.contains(filePath) ||
+          myFilePathsWithLostErrorInfo.contains(filePath)) {
+        continue;
+      }
+
+      final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
+      if (file == null || FileDocumentManager.getInstance().isFileModified(file)) continue;
+
+      final List<DartError> dartErrors = myErrorData.get(filePath);
+      final List<AnalysisError> errors = new ArrayList<>(dartErrors == null ? 0 : dartErrors.size());
+      if (dartErrors != null) {
+        for (DartError error : dartErrors) {
+          errors.add(error.toAnalysisError());
+        }
+      }
+
+      final int errorsHash = filePathToErrorsHash.get(filePath);
+      if (errors.isEmpty() != (errorsHash == 0)) continue; // errors not handled by the service yet
+
+      final Outline outline = myOutlineData.get(filePath);
+      final List<DartOverrideMember> overrides = myOverrideData.get(filePath);
+      if (errors.isEmpty() && outline == null && overrides == null) continue;
+
+      result.add(new DartServerDataCache.FileData(filePath, file.getTimeStamp(), file.getLength(), errorsHash, errors, outline,
+                                                  overrides == null ? null : new ArrayList<>(overrides)));
     }
 
-    return true;
+    return result;
   }
 
   void computedClosingLabels(@NotNull final String filePath, @NotNull final List<ClosingLabel> labels) {
@@ -87,18 +173,21 @@ public class DartServerData {
   void computedHighlights(@NotNull final String filePath, @NotNull final List<HighlightRegion> regions) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
-    final List<DartHighlightRegion> newRegions = new ArrayList<>(regions.size());
+    final int[] offsets = new int[regions.size()];
+    final int[] lengths = new int[regions.size()];
+    final String[] types = new String[regions.size()];
     final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
 
-    for (HighlightRegion region : regions) {
+    for (int i = 0; i < regions.size(); i++) {
+      final HighlightRegion region = regions.get(i);
       if (region.getLength() > 0) {
-        final int offset = myService.getConvertedOffset(file, region.getOffset());
-        final int length = myService.getConvertedOffset(file, region.getOffset() + region.getLength()) - offset;
-        newRegions.add(new DartHighlightRegion(offset, length, region.getType()));
+        offsets[i] = myService.getConvertedOffset(file, region.getOffset());
+        lengths[i] = myService.getConvertedOffset(file, region.getOffset() + region.getLength()) - offsets[i];
+        types[i] = region.getType();
       }
     }
 
-    myHighlightData.put(filePath, newRegions);
+    myHighlightData.put(filePath, DartHighlightRegions.create(offsets, lengths, types));
     forceFileAnnotation(file, false);
   }
 
@@ -202,12 +291,10 @@ public class DartServerData {
   List<DartError> getErrors(@NotNull final SearchScope scope) {
     final List<DartError> errors = new ArrayList<>();
 
-    synchronized (myErrorData) {
-      for (Map.Entry<String, List<DartError>> entry : myErrorData.entrySet()) {
-        final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(entry.getKey());
-        if (file != null && scope.contains(file)) {
-          errors.addAll(entry.getValue());
-        }
+    for (Map.Entry<String, List<DartError>> entry : myErrorData.entrySet()) {
+      final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(entry.getKey());
+      if (file != null && scope.contains(file)) {
+        errors.addAll(entry.getValue());
       }
     }
 
@@ -221,9 +308,9 @@ public class DartServerData {
   }
 
   @NotNull
-  List<DartHighlightRegion> getHighlight(@NotNull final VirtualFile file) {
-    final List<DartHighlightRegion> regions = myHighlightData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+  DartHighlightRegions getHighlight(@NotNull final VirtualFile file) {
+    final DartHighlightRegions regions = myHighlightData.get(file.getPath());
+    return regions != null ? regions : DartHighlightRegions.EMPTY;
   }
 
   @NotNull
@@ -340,6 +427,7 @@ public class DartServerData {
     myImplementedClassData.clear();
     myImplementedMemberData.clear();
     myOutlineData.clear();
+    myFilePathsChangedAfterErrors.clear();
   }
 
   void onDocumentChanged(@NotNull final DocumentEvent e) {
@@ -348,12 +436,17 @@ public class DartServerData {
 
     final String filePath = file.getPath();
     myFilePathsWithUnsentChanges.add(filePath);
+    myFilePathsChangedAfterErrors.add(filePath);
 
     boolean someRegionDeleted = updateRegionsDeletingTouched(filePath, myErrorData.get(filePath), e);
     if (someRegionDeleted) {
       myFilePathsWithLostErrorInfo.add(filePath);
     }
-    updateRegionsUpdatingTouched(myHighlightData.get(filePath), e);
+    final DartHighlightRegions highlightRegions = myHighlightData.get(filePath);
+    if (highlightRegions != null) {
+      myHighlightData.replace(filePath, highlightRegions,
+                              highlightRegions.updateForDocumentChange(e.getOffset(), e.getOldLength(), e.getNewLength()));
+    }
     updateRegionsDeletingTouched(filePath, myNavigationData.get(filePath), e);
     updateRegionsDeletingTouched(filePath, myOverrideData.get(filePath), e);
     updateRegionsDeletingTouched(filePath, myImplementedClassData.get(filePath), e);
@@ -415,44 +508,6 @@ public class DartServerData {
     return regionDeleted;
   }
 
-  private static void updateRegionsUpdatingTouched(@Nullable final List<? extends DartRegion> regions,
-                                                   @NotNull final DocumentEvent e) {
-    if (regions == null) return;
-
-    final int eventOffset = e.getOffset();
-    final int deltaLength = e.getNewLength() - e.getOldLength();
-
-    final Iterator<? extends DartRegion> iterator = regions.iterator();
-    while (iterator.hasNext()) {
-      final DartRegion region = iterator.next();
-
-      if (deltaLength > 0) {
-        // Something was typed. Shift untouched regions, update touched.
-        if (eventOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset < eventOffset && eventOffset < region.myOffset + region.myLength) {
-          region.myLength += deltaLength;
-        }
-      }
-      else if (deltaLength < 0) {
-        // Some text was deleted. Shift untouched regions, delete or update touched.
-        final int eventRightOffset = eventOffset - deltaLength;
-        final int regionRightOffset = region.myOffset + region.myLength;
-
-        if (eventRightOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset <= eventOffset && eventRightOffset <= regionRightOffset && region.myLength != -deltaLength) {
-          region.myLength += deltaLength;
-        }
-        else if (eventOffset < regionRightOffset) {
-          iterator.remove();
-        }
-      }
-    }
-  }
-
   public static class DartRegion {
     protected int myOffset;
     protected int myLength;
@@ -481,31 +536,43 @@ public class DartServerData {
     }
   }
 
-  public static class DartHighlightRegion extends DartRegion {
-    private final String type;
-
-    private DartHighlightRegion(final int offset, final int length, @NotNull final String type) {
-      super(offset, length);
-      this.type = type.intern();
-    }
-
-    public String getType() {
-      return type;
-    }
-  }
-
   public static class DartError extends DartRegion {
     private final String myAnalysisErrorFileSD;
     private final String mySeverity;
     @Nullable private final String myCode;
     private final String myMessage;
+    // the rest is kept only to write errors to DartServerDataCache, see toAnalysisError()
+    private final String myType;
+    private final int myOriginalOffset;
+    private final int myOriginalLength;
+    private final int myStartLine;
+    private final int myStartColumn;
+    @Nullable private final String myCorrection;
+    @Nullable private final Boolean myHasFix;
 
     private DartError(@NotNull final AnalysisError error, final int correctedOffset, final int correctedLength) {
       super(correctedOffset, correctedLength);
-      myAnalysisErrorFileSD = error.getLocation().getFile().intern();
+      final Location location = error.getLocation();
+      myAnalysisErrorFileSD = location.getFile().intern();
       mySeverity = error.getSeverity().intern();
       myCode = error.getCode() == null ? null : error.getCode().intern();
       myMessage = error.getMessage();
+      myType = error.getType().intern();
+      myOriginalOffset = location.getOffset();
+      myOriginalLength = location.getLength();
+      myStartLine = location.getStartLine();
+      myStartColumn = location.getStartColumn();
+      myCorrection = error.getCorrection();
+      myHasFix = error.getHasFix();
+    }
+
+    /**
+     * @return error equal to the one reported by the server, so that the hash of the errors list is the same
+     */
+    @NotNull
+    AnalysisError toAnalysisError() {
+      final Location location = new Location(myAnalysisErrorFileSD, myOriginalOffset, myOriginalLength, myStartLine, myStartColumn);
+      return new AnalysisError(mySeverity, myType, location, myMessage, myCorrection, myCode, myHasFix);
     }
 
     public String getAnalysisErrorFileSD() {
@@ -581,10 +648,10 @@ public class DartServerData {
     @Nullable private final OverriddenMember mySuperclassMember;
     @Nullable private final List<OverriddenMember> myInterfaceMembers;
 
-    private DartOverrideMember(final int offset,
-                               final int length,
-                               @Nullable final OverriddenMember superclassMember,
-                               @Nullable final List<OverriddenMember> interfaceMembers) {
+    DartOverrideMember(final int offset,
+                       final int length,
+                       @Nullable final OverriddenMember superclassMember,
+                       @Nullable final List<OverriddenMember> interfaceMembers) {
       super(offset, length);
       mySuperclassMember = superclassMember;
       myInterfaceMembers = interfaceMembers;
@@ -0,0 +1,385 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import gnu.trove.TObjectIntHashMap;
+import org.dartlang.analysis.server.protocol.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps errors, outlines and overrides reported by Dart Analysis Server between IDE sessions, so that they can be shown right after
+ * the project is opened, long before the server finishes initial analysis. A cached entry is used only if the file has not changed since
+ * the entry was written; anything the server reports later replaces cached data.
+ * <p/>
+ * The file consists of a table of all strings (file paths, messages, element names, etc. repeat a lot) followed by per-file records that
+ * refer to strings by index. It is read into a heap buffer at once.
+ */
+class DartServerDataCache {
+
+  private static final Logger LOG = Logger.getInstance(DartServerDataCache.class);
+
+  private static final int MAGIC = 0xDA57CAC4;
+  private static final int VERSION = 1;
+
+  private static final int NULL_STRING = -1;
+
+  static final class FileData {
+    @NotNull final String myFilePath;
+    final long myTimeStamp;
+    final long myLength;
+    // hash of errors as tracked by DartAnalysisServerService, 0 if there are no errors
+    final int myErrorsHash;
+    @NotNull final List<AnalysisError> myErrors;
+    @Nullable final Outline myOutline;
+    @Nullable final List<DartServerData.DartOverrideMember> myOverrides;
+
+    FileData(@NotNull final String filePath,
+             final long timeStamp,
+             final long length,
+             final int errorsHash,
+             @NotNull final List<AnalysisError> errors,
+             @Nullable final Outline outline,
+             @Nullable final List<DartServerData.DartOverrideMember> overrides) {
+      myFilePath = filePath;
+      myTimeStamp = timeStamp;
+      myLength = length;
+      myErrorsHash = errorsHash;
+      myErrors = errors;
+      myOutline = outline;
+      myOverrides = overrides;
+    }
+
+    /**
+     * @return the file if its content on disk is the one that cached data was computed for, {@code null} otherwise
+     */
+    @Nullable
+    VirtualFile findUpToDateFile() {
+      final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(myFilePath);
+      if (file == null || file.getTimeStamp() != myTimeStamp || file.getLength() != myLength) return null;
+      if (FileDocumentManager.getInstance().isFileModified(file)) return null;
+      return file;
+    }
+  }
+
+  @NotNull
+  static File getCacheFile(@NotNull final Project project) {
+    return new File(PathManager.getSystemPath(), "dart-analysis-cache/" + project.getLocationHash() + ".bin");
+  }
+
+  static void save(@NotNull final File cacheFile, @NotNull final List<FileData> data) {
+    try {
+      final Writer writer = new Writer();
+      for (FileData fileData : data) {
+        writer.writeFileData(fileData);
+      }
+
+      FileUtil.createParentDirs(cacheFile);
+      final File tempFile = new File(cacheFile.getPath() + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        writer.writeTo(out, data.size());
+      }
+      FileUtil.delete(cacheFile);
+      if (!tempFile.renameTo(cacheFile)) {
+        FileUtil.delete(tempFile);
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Failed to save Dart Analysis Server data cache: " + e.getMessage());
+      FileUtil.delete(cacheFile);
+    }
+  }
+
+  @NotNull
+  static List<FileData> load(@NotNull final File cacheFile) {
+    if (!cacheFile.isFile()) return Collections.emptyList();
+
+    try {
+      // read into a heap buffer rather than mapped: a mapped file is not released until GC, so on Windows save() would fail to replace it
+      final ByteBuffer buffer = ByteBuffer.wrap(FileUtil.loadFileBytes(cacheFile));
+      if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return Collections.emptyList();
+      return new Reader(buffer).readAll();
+    }
+    catch (IOException | RuntimeException e) {
+      // a corrupted file may produce any of BufferUnderflowException, IndexOutOfBoundsException, IllegalArgumentException, etc.
+      LOG.info("Failed to load Dart Analysis Server data cache: " + e);
+      return Collections.emptyList();
+    }
+  }
+
+  private static class Writer {
+    private final TObjectIntHashMap<String> myStringToIndex = new TObjectIntHashMap<>();
+    private final List<String> myStrings = new ArrayList<>();
+    private final BufferExposingByteArrayOutputStream myBytes = new BufferExposingByteArrayOutputStream();
+    private final DataOutputStream myOut = new DataOutputStream(myBytes);
+
+    void writeTo(@NotNull final DataOutputStream out, final int fileCount) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(myStrings.size());
+      for (String string : myStrings) {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+      out.writeInt(fileCount);
+      myOut.flush();
+      out.write(myBytes.getInternalBuffer(), 0, myBytes.size());
+    }
+
+    void writeFileData(@NotNull final FileData data) throws IOException {
+      writeString(data.myFilePath);
+      myOut.writeLong(data.myTimeStamp);
+      myOut.writeLong(data.myLength);
+      myOut.writeInt(data.myErrorsHash);
+
+      myOut.writeInt(data.myErrors.size());
+      for (AnalysisError error : data.myErrors) {
+        writeString(error.getSeverity());
+        writeString(error.getType());
+        writeLocation(error.getLocation());
+        writeString(error.getMessage());
+        writeString(error.getCorrection());
+        writeString(error.getCode());
+        final Boolean hasFix = error.getHasFix();
+        myOut.writeByte(hasFix == null ? -1 : hasFix ? 1 : 0);
+      }
+
+      myOut.writeBoolean(data.myOutline != null);
+      if (data.myOutline != null) {
+        writeOutline(data.myOutline);
+      }
+
+      myOut.writeInt(data.myOverrides == null ? -1 : data.myOverrides.size());
+      if (data.myOverrides != null) {
+        for (DartServerData.DartOverrideMember override : data.myOverrides) {
+          myOut.writeInt(override.getOffset());
+          myOut.writeInt(override.getLength());
+          writeOverriddenMember(override.getSuperclassMember());
+          final List<OverriddenMember> interfaceMembers = override.getInterfaceMembers();
+          myOut.writeInt(interfaceMembers == null ? -1 : interfaceMembers.size());
+          if (interfaceMembers != null) {
+            for (OverriddenMember member : interfaceMembers) {
+              writeOverriddenMember(member);
+            }
+          }
+        }
+      }
+    }
+
+    private void writeOutline(@NotNull final Outline outline) throws IOException {
+      writeElement(outline.getElement());
+      myOut.writeInt(outline.getOffset());
+      myOut.writeInt(outline.getLength());
+      final List<Outline> children = outline.getChildren();
+      myOut.writeInt(children == null ? 0 : children.size());
+      if (children != null) {
+        for (Outline child : children) {
+          writeOutline(child);
+        }
+      }
+    }
+
+    private void writeOverriddenMember(@Nullable final OverriddenMember member) throws IOException {
+      myOut.writeBoolean(member != null);
+      if (member != null) {
+        writeElement(member.getElement());
+        writeString(member.getClassName());
+      }
+    }
+
+    private void writeElement(@NotNull final Element element) throws IOException {
+      writeString(element.getKind());
+      writeString(element.getName());
+      myOut.writeBoolean(element.getLocation() != null);
+      if (element.getLocation() != null) {
+        writeLocation(element.getLocation());
+      }
+      myOut.writeInt(element.getFlags());
+      writeString(element.getParameters());
+      writeString(element.getReturnType());
+      writeString(element.getTypeParameters());
+    }
+
+    private void writeLocation(@NotNull final Location location) throws IOException {
+      writeString(location.getFile());
+      myOut.writeInt(location.getOffset());
+      myOut.writeInt(location.getLength());
+      myOut.writeInt(location.getStartLine());
+      myOut.writeInt(location.getStartColumn());
+    }
+
+    private void writeString(@Nullable final String string) throws IOException {
+      if (string == null) {
+        myOut.writeInt(NULL_STRING);
+        return;
+      }
+
+      // indices are stored +1 as TObjectIntHashMap returns 0 for absent keys
+      int index = myStringToIndex.get(string);
+      if (index == 0) {
+        myStrings.add(string);
+        index = myStrings.size();
+        myStringToIndex.put(string, index);
+      }
+      myOut.writeInt(index - 1);
+    }
+  }
+
+  private static class Reader {
+    private final ByteBuffer myBuffer;
+    private String[] myStrings;
+
+    Reader(@NotNull final ByteBuffer buffer) {
+      myBuffer = buffer;
+    }
+
+    @NotNull
+    List<FileData> readAll() {
+      myStrings = new String[readCount()];
+      for (int i = 0; i < myStrings.length; i++) {
+        final byte[] bytes = new byte[readCount()];
+        myBuffer.get(bytes);
+        myStrings[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+
+      final int fileCount = readCount();
+      final List<FileData> result = new ArrayList<>(fileCount);
+      for (int i = 0; i < fileCount; i++) {
+        result.add(readFileData());
+      }
+      return result;
+    }
+
+    @NotNull
+    private FileData readFileData() {
+      final String filePath = readNotNullString();
+      final long timeStamp = myBuffer.getLong();
+      final long length = myBuffer.getLong();
+      final int errorsHash = myBuffer.getInt();
+
+      final int errorCount = readCount();
+      final List<AnalysisError> errors = new ArrayList<>(errorCount);
+      for (int i = 0; i < errorCount; i++) {
+        final String severity = readString();
+        final String type = readString();
+        final Location location = readLocation();
+        final String message = readString();
+        final String correction = readString();
+        final String code = readString();
+        final byte hasFix = myBuffer.get();
+        errors.add(new AnalysisError(severity, type, location, message, correction, code, hasFix == -1 ? null : hasFix == 1));
+      }
+
+      final Outline outline = myBuffer.get() != 0 ? readOutline(null) : null;
+
+      final int overrideCount = readNullableCount();
+      List<DartServerData.DartOverrideMember> overrides = null;
+      if (overrideCount >= 0) {
+        overrides = new ArrayList<>(overrideCount);
+        for (int i = 0; i < overrideCount; i++) {
+          final int offset = myBuffer.getInt();
+          final int overrideLength = myBuffer.getInt();
+          final OverriddenMember superclassMember = readOverriddenMember();
+          final int interfaceMemberCount = readNullableCount();
+          List<OverriddenMember> interfaceMembers = null;
+          if (interfaceMemberCount >= 0) {
+            interfaceMembers = new ArrayList<>(interfaceMemberCount);
+            for (int j = 0; j < interfaceMemberCount; j++) {
+              interfaceMembers.add(readOverriddenMember());
+            }
+          }
+          overrides.add(new DartServerData.DartOverrideMember(offset, overrideLength, superclassMember, interfaceMembers));
+        }
+      }
+
+      return new FileData(filePath, timeStamp, length, errorsHash, errors, outline, overrides);
+    }
+
+    @NotNull
+    private Outline readOutline(@Nullable final Outline parent) {
+      final Element element = readElement();
+      final int offset = myBuffer.getInt();
+      final int length = myBuffer.getInt();
+      final Outline outline = new Outline(parent, element, offset, length);
+      final int childCount = readCount();
+      final List<Outline> children = new ArrayList<>(childCount);
+      for (int i = 0; i < childCount; i++) {
+        children.add(readOutline(outline));
+      }
+      outline.setChildren(children);
+      return outline;
+    }
+
+    @Nullable
+    private OverriddenMember readOverriddenMember() {
+      if (myBuffer.get() == 0) return null;
+      final Element element = readElement();
+      return new OverriddenMember(element, readString());
+    }
+
+    @NotNull
+    private Element readElement() {
+      final String kind = readString();
+      final String name = readString();
+      final Location location = myBuffer.get() != 0 ? readLocation() : null;
+      final int flags = myBuffer.getInt();
+      final String parameters = readString();
+      final String returnType = readString();
+      final String typeParameters = readString();
+      return new Element(kind, name, location, flags, parameters, returnType, typeParameters);
+    }
+
+    @NotNull
+    private Location readLocation() {
+      final String file = readString();
+      final int offset = myBuffer.getInt();
+      final int length = myBuffer.getInt();
+      final int startLine = myBuffer.getInt();
+      final int startColumn = myBuffer.getInt();
+      return new Location(file, offset, length, startLine, startColumn);
+    }
+
+    /**
+     * Every counted item takes at least one byte, so a count greater than the rest of the buffer means the file is corrupted;
+     * checked before allocating arrays of that size.
+     */
+    private int readCount() {
+      final int count = myBuffer.getInt();
+      if (count < 0 || count > myBuffer.remaining()) throw new IllegalArgumentException("invalid count: " + count);
+      return count;
+    }
+
+    // -1 for null lists
+    private int readNullableCount() {
+      return myBuffer.getInt(myBuffer.position()) == -1 ? myBuffer.getInt() : readCount();
+    }
+
+    @NotNull
+    private String readNotNullString() {
+      final String string = readString();
+      if (string == null) throw new IllegalArgumentException("unexpected null string");
+      return string;
+    }
+
+    @Nullable
+    private String readString() {
+      final int index = myBuffer.getInt();
+      return index == NULL_STRING ? null : myStrings[index];
+    }
+  }
+}
@@ -15,82 +15,138 @@
  */
 package com.jetbrains.lang.dart.coverage;
 
-import com.intellij.util.containers.hash.HashMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.progress.ProgressIndicatorProvider;
+import com.intellij.util.containers.ContainerUtil;
+import gnu.trove.THashMap;
+import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
+/**
+ * Coverage data in the format written by package:coverage: <code>{"coverage": [{"source": "uri", "hits": [line, count, ...]}, ...]}</code>.
+ * The same source usually appears many times (once per isolate and script), hits are kept as primitive (line, count) pairs
+ * until {@link #getMergedDartFileCoverageData()} is called.
+ */
 public class DartCoverageData {
-  @Nullable private List<DartFileCoverageData> coverage;
+  public static final int NO_HITS = -1;
 
-  @Nullable
-  public List<DartFileCoverageData> getCoverage() {
-    return coverage;
-  }
+  private static final String JSON_COVERAGE = "coverage";
+  private static final String JSON_SOURCE = "source";
+  private static final String JSON_HITS = "hits";
 
-  public void setCoverage(@Nullable List<DartFileCoverageData> coverage) {
-    this.coverage = coverage;
-  }
+  private final Map<String, TIntArrayList> mySourceToHits = new THashMap<>();
 
+  /**
+   * Reads coverage JSON without building an object for each hit; unknown fields are skipped.
+   */
   @NotNull
-  public Map<String, SortedMap<Integer, Integer>> getMergedDartFileCoverageData() {
-    Map<String, SortedMap<Integer, Integer>> mergedCoverageData = new HashMap<>();
-    List<DartFileCoverageData> coverageData = getCoverage();
-    if (coverageData != null) {
-      for (DartFileCoverageData item : coverageData) {
-        String source = item.getSource();
-        if (source == null) {
-          continue;
-        }
-        if (!mergedCoverageData.containsKey(source)) {
-          mergedCoverageData.put(source, new TreeMap<>());
-        }
+  public static DartCoverageData read(@NotNull final Reader reader) throws IOException {
+    final DartCoverageData data = new DartCoverageData();
+    final JsonReader jsonReader = new JsonReader(reader);
 
-        SortedMap<Integer, Integer> fileData = mergedCoverageData.get(source);
-        List<Integer> hits = item.getHits();
-        if (hits == null) {
-          continue;
-        }
-        for (int i = 0; i < hits.size(); i += 2) {
-          Integer lineNumber = hits.get(i);
-          Integer hitCount = hits.get(i + 1);
-          if (!fileData.containsKey(lineNumber)) {
-            fileData.put(lineNumber, 0);
-          }
-
-          fileData.put(lineNumber, fileData.get(lineNumber) + hitCount);
+    jsonReader.beginObject();
+    while (jsonReader.hasNext()) {
+      if (JSON_COVERAGE.equals(jsonReader.nextName()) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+          data.readFileCoverage(jsonReader);
         }
+        jsonReader.endArray();
+      }
+      else {
+        jsonReader.skipValue();
       }
     }
+    jsonReader.endObject();
 
-    return mergedCoverageData;
+    return data;
   }
-}
 
+  private void readFileCoverage(@NotNull final JsonReader reader) throws IOException {
+    String source = null;
+    TIntArrayList hits = null;
 
-class DartFileCoverageData {
-  @Nullable private String source;
-  @Nullable private List<Integer> hits;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if (JSON_SOURCE.equals(name) && reader.peek() == JsonToken.STRING) {
+        source = reader.nextString();
+      }
+      else if (JSON_HITS.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        hits = new TIntArrayList();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          hits.add(reader.nextInt());
+        }
+        reader.endArray();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
 
-  @Nullable
-  public String getSource() {
-    return source;
+    if (source != null) {
+      addHits(source, hits != null ? hits : new TIntArrayList());
+    }
   }
 
-  public void setSource(@Nullable String source) {
-    this.source = source;
+  /**
+   * @param lineAndCountPairs line number followed by hit count, repeated
+   */
+  public void addHits(@NotNull final String source, @NotNull final TIntArrayList lineAndCountPairs) {
+    final TIntArrayList hits = mySourceToHits.get(source);
+    if (hits == null) {
+      mySourceToHits.put(source, lineAndCountPairs);
+    }
+    else {
+      hits.add(lineAndCountPairs.toNativeArray());
+    }
   }
 
-  @Nullable
-  public List<Integer> getHits() {
-    return hits;
+  /**
+   * Sums up hits for each source. Returned arrays are indexed by line number; lines without coverage information are {@link #NO_HITS}.
+   * Sources are merged concurrently.
+   */
+  @NotNull
+  public Map<String, int[]> getMergedDartFileCoverageData() {
+    final List<Map.Entry<String, TIntArrayList>> entries = new ArrayList<>(mySourceToHits.entrySet());
+    final Map<String, int[]> result = ContainerUtil.newConcurrentMap();
+
+    JobLauncher.getInstance().invokeConcurrentlyUnderProgress(entries, ProgressIndicatorProvider.getGlobalProgressIndicator(), entry -> {
+      result.put(entry.getKey(), mergeHits(entry.getValue()));
+      return true;
+    });
+
+    return result;
   }
 
-  public void setHits(@Nullable List<Integer> hits) {
-    this.hits = hits;
+  @NotNull
+  static int[] mergeHits(@NotNull final TIntArrayList lineAndCountPairs) {
+    int maxLine = -1;
+    for (int i = 0; i + 1 < lineAndCountPairs.size(); i += 2) {
+      maxLine = Math.max(maxLine, lineAndCountPairs.getQuick(i));
+    }
+
+    final int[] lineHits = new int[maxLine + 1];
+    Arrays.fill(lineHits, NO_HITS);
+
+    for (int i = 0; i + 1 < lineAndCountPairs.size(); i += 2) {
+      final int line = lineAndCountPairs.getQuick(i);
+      if (line < 0) continue;
+      final int count = lineAndCountPairs.getQuick(i + 1);
+      lineHits[line] = lineHits[line] == NO_HITS ? count : lineHits[line] + count;
+    }
+
+    return lineHits;
   }
-}
\ No newline at end of file
+}
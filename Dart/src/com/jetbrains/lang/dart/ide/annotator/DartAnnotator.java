@@ -25,6 +25,7 @@ import com.jetbrains.lang.dart.DartBundle;
 import com.jetbrains.lang.dart.DartTokenTypes;
 import com.jetbrains.lang.dart.DartTokenTypesSets;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import com.jetbrains.lang.dart.analyzer.DartHighlightRegions;
 import com.jetbrains.lang.dart.analyzer.DartServerData;
 import com.jetbrains.lang.dart.fixes.DartQuickFixSet;
 import com.jetbrains.lang.dart.highlight.DartSyntaxHighlighterColors;
@@ -248,10 +249,11 @@ public class DartAnnotator implements Annotator {
       }
     }
 
-    for (DartServerData.DartHighlightRegion region : das.getHighlight(file)) {
-      final String attributeKey = HIGHLIGHTING_TYPE_MAP.get(region.getType());
+    final DartHighlightRegions regions = das.getHighlight(file);
+    for (int i = 0; i < regions.size(); i++) {
+      final String attributeKey = HIGHLIGHTING_TYPE_MAP.get(regions.getType(i));
       if (attributeKey != null) {
-        final TextRange textRange = new TextRange(region.getOffset(), region.getOffset() + region.getLength());
+        final TextRange textRange = new TextRange(regions.getOffset(i), regions.getOffset(i) + regions.getLength(i));
         holder.createInfoAnnotation(textRange, null).setTextAttributes(TextAttributesKey.find(attributeKey));
       }
     }
@@ -123,6 +123,16 @@ public class DartProblem {
                                                                      : ("[" + dartPackageName + "] " + presentableFilePath);
   }
 
+  /**
+   * Problems of the same file share location information, so it is calculated once per file.
+   */
+  void copyLocationFrom(@NotNull final DartProblem problem) {
+    problem.ensureInitialized();
+    myFile = problem.myFile;
+    myPackageRoot = problem.myPackageRoot;
+    myContentRoot = problem.myContentRoot;
+    myPresentableLocationWithoutLineNumber = problem.myPresentableLocationWithoutLineNumber;
+  }
 
   /**
    * Returns Dart package name in brackets and relative path form Dart package root to the file.
@@ -153,6 +153,14 @@ public class DartProblemsPresentationHelper {
     return true;
   }
 
+  /**
+   * Lets {@link #shouldShowProblem(DartProblem)} be called from a pooled thread without calculating current package and content roots there.
+   */
+  void ensureCurrentFileRootsUpToDate() {
+    ensurePackageRootUpToDate();
+    ensureContentRootUpToDate();
+  }
+
   private void ensurePackageRootUpToDate() {
     if (myDartPackageRootUpToDate) return;
 
@@ -2,14 +2,15 @@ package com.jetbrains.lang.dart.ide.errorTreeView;
 
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.openapi.vfs.LocalFileSystem;
-import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.ui.ColumnInfo;
 import com.intellij.util.ui.ListTableModel;
 import com.jetbrains.lang.dart.ide.annotator.DartAnnotator;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
 import icons.DartIcons;
 import org.dartlang.analysis.server.protocol.AnalysisError;
 import org.dartlang.analysis.server.protocol.AnalysisErrorSeverity;
@@ -62,15 +63,28 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
     }
   };
 
+  // Bigger updates reload the whole table, it is cheaper than notifying the row sorter about each row
+  private static final int MAX_ROWS_TO_UPDATE_ONE_BY_ONE = 100;
+
   private final Project myProject;
   @NotNull private final DartProblemsPresentationHelper myPresentationHelper;
 
   // Kind of hack to keep a reference to the live collection used in a super class, but it allows to improve performance greatly.
-  // Having it in hand we can do bulk rows removal with a single fireTableRowsDeleted() call afterwards
+  // Having it in hand we can keep items sorted, find rows with binary search and reload the table with a single fireTableDataChanged() call
   private final List<DartProblem> myItems;
 
+  // The same DartProblem instances as in myItems, grouped by file
+  private final Map<String, List<DartProblem>> myFilePathToProblems = new THashMap<>();
+
   private RowSorter.SortKey mySortKey = new RowSorter.SortKey(1, SortOrder.ASCENDING);
 
+  // myItems are sorted by the comparator of the column as it was for these sort key and grouping option
+  private RowSorter.SortKey myItemsSortKey = mySortKey;
+  private boolean myItemsGroupedBySeverity;
+
+  private volatile int myFilterCountsStamp;
+  @Nullable private Runnable myPendingFilterCountsCallback;
+
   private int myErrorCount = 0;
   private int myWarningCount = 0;
   private int myHintCount = 0;
@@ -86,6 +100,7 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
     myProject = project;
     myPresentationHelper = presentationHelper;
     myItems = new ArrayList<>();
+    myItemsGroupedBySeverity = presentationHelper.isGroupBySeverity();
     setColumnInfos(new ColumnInfo[]{createDescriptionColumn(), createLocationColumn()});
     setItems(myItems);
     setSortable(true);
@@ -157,21 +172,6 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
     return false;
   }
 
-  public void removeRows(final int firstRow, final int lastRow) {
-    assert lastRow >= firstRow;
-
-    for (int i = lastRow; i >= firstRow; i--) {
-      final DartProblem removed = myItems.remove(i);
-
-      if (AnalysisErrorSeverity.ERROR.equals(removed.getSeverity())) myErrorCount--;
-      if (AnalysisErrorSeverity.WARNING.equals(removed.getSeverity())) myWarningCount--;
-      if (AnalysisErrorSeverity.INFO.equals(removed.getSeverity())) myHintCount--;
-      updateProblemsCountAfterFilter(removed, false);
-    }
-
-    fireTableRowsDeleted(firstRow, lastRow);
-  }
-
   public void removeAll() {
     final int rowCount = getRowCount();
     if (rowCount > 0) {
@@ -179,6 +179,12 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
       fireTableRowsDeleted(0, rowCount - 1);
     }
 
+    myFilePathToProblems.clear();
+    myItemsSortKey = mySortKey;
+    myItemsGroupedBySeverity = myPresentationHelper.isGroupBySeverity();
+    myFilterCountsStamp++;
+    myPendingFilterCountsCallback = null;
+
     myErrorCount = 0;
     myWarningCount = 0;
     myHintCount = 0;
@@ -188,131 +194,199 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
   }
 
   /**
-   * If {@code selectedProblem} was removed and similar one added again then this method returns the added one,
-   * so that the caller could update selected row in the table
+   * Creates problems for the file off the EDT (must be called in a read action): problem locations are computed here once per file,
+   * so that sorting and filtering in the EDT do not touch VFS and pubspec files.
    */
-  @Nullable
-  public DartProblem setErrorsAndReturnReplacementForSelection(@NotNull final Map<String, List<AnalysisError>> filePathToErrors,
-                                                               @Nullable final DartProblem selectedProblem) {
-    final boolean selectedProblemRemoved = removeRowsForFilesInSet(filePathToErrors.keySet(), selectedProblem);
-    return addErrorsAndReturnReplacementForSelection(filePathToErrors, selectedProblemRemoved ? selectedProblem : null);
-  }
+  @NotNull
+  static List<DartProblem> createProblems(@NotNull final Project project,
+                                          @NotNull final String filePath,
+                                          @NotNull final List<AnalysisError> errors) {
+    final List<DartProblem> problems = new ArrayList<>(errors.size());
+    DartProblem firstProblem = null;
+
+    for (AnalysisError analysisError : errors) {
+      if (DartAnnotator.shouldIgnoreMessageFromDartAnalyzer(filePath, analysisError.getLocation().getFile())) {
+        continue;
+      }
 
-  private boolean removeRowsForFilesInSet(@NotNull final Set<String> filePaths, @Nullable final DartProblem selectedProblem) {
-    // Looks for regions in table items that should be removed and removes them.
-    // For performance reasons we try to call removeRows() as rare as possible, that means with regions as big as possible.
-    // Logic is based on the fact that all errors for each particular file are stored continuously in the myItems model
+      final DartProblem problem = new DartProblem(project, analysisError);
+      if (firstProblem != null && firstProblem.getSystemIndependentPath().equals(problem.getSystemIndependentPath())) {
+        problem.copyLocationFrom(firstProblem);
+      }
+      else {
+        problem.getPresentableLocationWithoutLineNumber();
+        firstProblem = problem;
+      }
+      problems.add(problem);
+    }
 
-    boolean selectedProblemRemoved = false;
+    return problems;
+  }
 
-    int matchedFilesCount = 0;
+  /**
+   * Replaces problems of the files from the map keys, an empty list means that the file has no problems anymore.
+   * Rows of files that are not in the map are left intact, and small changes are applied as single row insertions and deletions.
+   * <p>
+   * If {@code selectedProblem} was removed and similar one added again then this method returns the added one,
+   * so that the caller could update selected row in the table. If the whole table is reloaded then {@code selectedProblem} itself is returned.
+   */
+  @Nullable
+  public DartProblem setProblemsAndReturnReplacementForSelection(@NotNull final Map<String, List<DartProblem>> filePathToProblems,
+                                                                 @Nullable final DartProblem selectedProblem) {
+    ApplicationManager.getApplication().assertIsDispatchThread();
 
-    for (int i = getRowCount() - 1; i >= 0; i--) {
-      final DartProblem problem = getItem(i);
-      if (filePaths.contains(problem.getSystemIndependentPath())) {
-        matchedFilesCount++;
-        final int lastRowToDelete = i;
+    final Set<DartProblem> problemsToRemove = new THashSet<>();
+    final List<DartProblem> problemsToAdd = new ArrayList<>();
 
-        if (problem == selectedProblem) {
-          selectedProblemRemoved = true;
+    for (Map.Entry<String, List<DartProblem>> entry : filePathToProblems.entrySet()) {
+      final List<DartProblem> newProblems = entry.getValue();
+      final List<DartProblem> oldProblems = newProblems.isEmpty() ? myFilePathToProblems.remove(entry.getKey())
+                                                                  : myFilePathToProblems.put(entry.getKey(), newProblems);
+      if (oldProblems != null) {
+        for (DartProblem problem : oldProblems) {
+          problemsToRemove.add(problem);
+          updateProblemsCount(problem, false);
         }
+      }
 
-        DartProblem lastProblemForCurrentFile = problem;
-
-        int j = i - 1;
-        while (j >= 0) {
-          final DartProblem previousProblem = getItem(j);
+      for (DartProblem problem : newProblems) {
+        problemsToAdd.add(problem);
+        updateProblemsCount(problem, true);
+      }
+    }
 
-          if (previousProblem.getSystemIndependentPath().equals(lastProblemForCurrentFile.getSystemIndependentPath())) {
-            // previousProblem should be removed from the table as well
-            j--;
+    if (problemsToRemove.isEmpty() && problemsToAdd.isEmpty()) return null;
 
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
+    final boolean selectedProblemRemoved = selectedProblem != null && problemsToRemove.contains(selectedProblem);
+    final DartProblem replacement = selectedProblemRemoved ? findReplacement(problemsToAdd, selectedProblem) : null;
 
-            continue;
-          }
+    final Comparator<DartProblem> comparator = getItemsComparator();
+    problemsToAdd.sort(comparator);
 
-          if (filePaths.contains(previousProblem.getSystemIndependentPath())) {
-            matchedFilesCount++;
-            // continue iterating the table because we met a range of problems for another file that also should be removed
-            lastProblemForCurrentFile = previousProblem;
-            j--;
+    if (isItemsOrderUpToDate() && problemsToRemove.size() + problemsToAdd.size() <= MAX_ROWS_TO_UPDATE_ONE_BY_ONE) {
+      for (DartProblem problem : problemsToRemove) {
+        final int index = indexOf(problem, comparator);
+        myItems.remove(index);
+        fireTableRowsDeleted(index, index);
+      }
 
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
+      for (DartProblem problem : problemsToAdd) {
+        final int index = insertionIndex(problem, comparator);
+        myItems.add(index, problem);
+        fireTableRowsInserted(index, index);
+      }
 
-            continue;
-          }
+      restartPendingFilterCounting();
+      return replacement;
+    }
 
-          break;
+    final List<DartProblem> newItems = new ArrayList<>(myItems.size() - problemsToRemove.size() + problemsToAdd.size());
+    if (isItemsOrderUpToDate()) {
+      // merge two sorted lists
+      int j = 0;
+      for (DartProblem problem : myItems) {
+        if (problemsToRemove.contains(problem)) continue;
+        while (j < problemsToAdd.size() && comparator.compare(problemsToAdd.get(j), problem) < 0) {
+          newItems.add(problemsToAdd.get(j++));
         }
-
-        final int firstRowToDelete = j + 1;
-        removeRows(firstRowToDelete, lastRowToDelete);
-
-        if (matchedFilesCount == filePaths.size()) {
-          break;
+        newItems.add(problem);
+      }
+      newItems.addAll(problemsToAdd.subList(j, problemsToAdd.size()));
+    }
+    else {
+      for (DartProblem problem : myItems) {
+        if (!problemsToRemove.contains(problem)) {
+          newItems.add(problem);
         }
-
-        //noinspection AssignmentToForLoopParameter
-        i = j + 1; // rewind according to the amount of removed rows
       }
+      newItems.addAll(problemsToAdd);
+      newItems.sort(comparator);
+      myItemsSortKey = mySortKey;
+      myItemsGroupedBySeverity = myPresentationHelper.isGroupBySeverity();
     }
 
-    return selectedProblemRemoved;
+    myItems.clear();
+    myItems.addAll(newItems);
+    // the row sorter gets already sorted rows, so sorting is linear
+    fireTableDataChanged();
+
+    restartPendingFilterCounting();
+    return selectedProblemRemoved ? replacement : selectedProblem;
   }
 
   @Nullable
-  private DartProblem addErrorsAndReturnReplacementForSelection(@NotNull final Map<String, List<AnalysisError>> filePathToErrors,
-                                                                @Nullable final DartProblem oldSelectedProblem) {
+  private static DartProblem findReplacement(@NotNull final List<DartProblem> problems, @NotNull final DartProblem oldSelectedProblem) {
     DartProblem newSelectedProblem = null;
+    for (DartProblem problem : problems) {
+      if (lookSimilar(problem, oldSelectedProblem) &&
+          (newSelectedProblem == null ||
+           // check if current problem is closer to oldSelectedProblem
+           (Math.abs(oldSelectedProblem.getLineNumber() - newSelectedProblem.getLineNumber()) >=
+            Math.abs(oldSelectedProblem.getLineNumber() - problem.getLineNumber())))) {
+        newSelectedProblem = problem;
+      }
+    }
+    return newSelectedProblem;
+  }
 
-    final List<DartProblem> problemsToAdd = new ArrayList<>();
-    for (Map.Entry<String, List<AnalysisError>> entry : filePathToErrors.entrySet()) {
-      final String filePath = entry.getKey();
-      final VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(filePath);
-      final List<AnalysisError> errors = vFile != null && ProjectFileIndex.getInstance(myProject).isInContent(vFile)
-                                         ? entry.getValue()
-                                         : AnalysisError.EMPTY_LIST;
-
-      for (AnalysisError analysisError : errors) {
-        if (DartAnnotator.shouldIgnoreMessageFromDartAnalyzer(filePath, analysisError.getLocation().getFile())) {
-          continue;
-        }
+  private static boolean lookSimilar(@NotNull final DartProblem problem1, @NotNull final DartProblem problem2) {
+    return problem1.getSeverity().equals(problem2.getSeverity()) &&
+           problem1.getErrorMessage().equals(problem2.getErrorMessage()) &&
+           problem1.getSystemIndependentPath().equals(problem2.getSystemIndependentPath());
+  }
 
-        final DartProblem problem = new DartProblem(myProject, analysisError);
-        problemsToAdd.add(problem);
+  @NotNull
+  private Comparator<DartProblem> getItemsComparator() {
+    return mySortKey.getColumn() == DartProblemsComparator.MESSAGE_COLUMN_ID ? myDescriptionComparator : myLocationComparator;
+  }
 
-        if (oldSelectedProblem != null &&
-            lookSimilar(problem, oldSelectedProblem) &&
-            (newSelectedProblem == null ||
-             // check if current problem is closer to oldSelectedProblem
-             (Math.abs(oldSelectedProblem.getLineNumber() - newSelectedProblem.getLineNumber()) >=
-              Math.abs(oldSelectedProblem.getLineNumber() - problem.getLineNumber())))) {
-          newSelectedProblem = problem;
-        }
+  /**
+   * Comparator result depends on the sort key and on the 'Group by severity' option. If any of them changed since myItems were sorted
+   * then the order is restored on the next update.
+   */
+  private boolean isItemsOrderUpToDate() {
+    return mySortKey.equals(myItemsSortKey) && myItemsGroupedBySeverity == myPresentationHelper.isGroupBySeverity();
+  }
 
-        if (AnalysisErrorSeverity.ERROR.equals(problem.getSeverity())) myErrorCount++;
-        if (AnalysisErrorSeverity.WARNING.equals(problem.getSeverity())) myWarningCount++;
-        if (AnalysisErrorSeverity.INFO.equals(problem.getSeverity())) myHintCount++;
-        updateProblemsCountAfterFilter(problem, true);
+  private int indexOf(@NotNull final DartProblem problem, @NotNull final Comparator<DartProblem> comparator) {
+    final int index = Collections.binarySearch(myItems, problem, comparator);
+    if (index >= 0) {
+      // look for the same instance among equal ones
+      for (int i = index; i >= 0 && comparator.compare(myItems.get(i), problem) == 0; i--) {
+        if (myItems.get(i) == problem) return i;
+      }
+      for (int i = index + 1; i < myItems.size() && comparator.compare(myItems.get(i), problem) == 0; i++) {
+        if (myItems.get(i) == problem) return i;
       }
     }
 
-    if (!problemsToAdd.isEmpty()) {
-      addRows(problemsToAdd);
-    }
+    final int slowIndex = myItems.indexOf(problem);
+    assert slowIndex >= 0 : problem.getPresentableLocation();
+    return slowIndex;
+  }
 
-    return newSelectedProblem;
+  private int insertionIndex(@NotNull final DartProblem problem, @NotNull final Comparator<DartProblem> comparator) {
+    // insert after equal problems, so that rows added earlier keep their positions
+    int low = 0;
+    int high = myItems.size();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (comparator.compare(myItems.get(mid), problem) <= 0) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
   }
 
-  private static boolean lookSimilar(@NotNull final DartProblem problem1, @NotNull final DartProblem problem2) {
-    return problem1.getSeverity().equals(problem2.getSeverity()) &&
-           problem1.getErrorMessage().equals(problem2.getErrorMessage()) &&
-           problem1.getSystemIndependentPath().equals(problem2.getSystemIndependentPath());
+  private void updateProblemsCount(@NotNull final DartProblem problem, final boolean incrementNotDecrement) {
+    final int delta = incrementNotDecrement ? 1 : -1;
+    if (AnalysisErrorSeverity.ERROR.equals(problem.getSeverity())) myErrorCount += delta;
+    if (AnalysisErrorSeverity.WARNING.equals(problem.getSeverity())) myWarningCount += delta;
+    if (AnalysisErrorSeverity.INFO.equals(problem.getSeverity())) myHintCount += delta;
+    updateProblemsCountAfterFilter(problem, incrementNotDecrement);
   }
 
   private void updateProblemsCountAfterFilter(@NotNull final DartProblem problem, final boolean incrementNotDecrement) {
@@ -334,20 +408,60 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
     mySortKey = sortKey;
   }
 
-  public void onFilterChanged() {
+  /**
+   * Problem counts after filter are recalculated in a pooled thread, {@code onCountsUpdated} is called in the EDT when they are ready.
+   */
+  public void onFilterChanged(@NotNull final Runnable onCountsUpdated) {
     ApplicationManager.getApplication().assertIsDispatchThread();
-    if (myPresentationHelper.areFiltersApplied()) {
-      myErrorCountAfterFilter = 0;
-      myWarningCountAfterFilter = 0;
-      myHintCountAfterFilter = 0;
-      for (DartProblem problem : myItems) {
-        updateProblemsCountAfterFilter(problem, true);
-      }
-    }
-    else {
+    final int stamp = ++myFilterCountsStamp;
+    myPendingFilterCountsCallback = null;
+
+    if (!myPresentationHelper.areFiltersApplied()) {
       myErrorCountAfterFilter = myErrorCount;
       myWarningCountAfterFilter = myWarningCount;
       myHintCountAfterFilter = myHintCount;
+      onCountsUpdated.run();
+      return;
+    }
+
+    myPendingFilterCountsCallback = onCountsUpdated;
+
+    myPresentationHelper.ensureCurrentFileRootsUpToDate();
+    final DartProblem[] problems = myItems.toArray(new DartProblem[0]);
+
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      final int[] counts = ReadAction.compute(() -> {
+        final int[] result = new int[3];
+        for (DartProblem problem : problems) {
+          if (stamp != myFilterCountsStamp) return null;
+          if (!myPresentationHelper.shouldShowProblem(problem)) continue;
+
+          if (AnalysisErrorSeverity.ERROR.equals(problem.getSeverity())) result[0]++;
+          if (AnalysisErrorSeverity.WARNING.equals(problem.getSeverity())) result[1]++;
+          if (AnalysisErrorSeverity.INFO.equals(problem.getSeverity())) result[2]++;
+        }
+        return result;
+      });
+
+      if (counts == null) return;
+
+      ApplicationManager.getApplication().invokeLater(() -> {
+        if (stamp != myFilterCountsStamp) return;
+        myPendingFilterCountsCallback = null;
+        myErrorCountAfterFilter = counts[0];
+        myWarningCountAfterFilter = counts[1];
+        myHintCountAfterFilter = counts[2];
+        onCountsUpdated.run();
+      }, ModalityState.any(), myProject.getDisposed());
+    });
+  }
+
+  /**
+   * Counting that is in progress uses a snapshot of rows taken before the update, so it is started again.
+   */
+  private void restartPendingFilterCounting() {
+    if (myPendingFilterCountsCallback != null) {
+      onFilterChanged(myPendingFilterCountsCallback);
     }
   }
 
@@ -24,10 +24,13 @@ import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.DefaultActionGroup;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.*;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowAnchor;
@@ -41,6 +44,7 @@ import com.jetbrains.lang.dart.DartBundle;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerMessages;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
 import gnu.trove.THashMap;
+import gnu.trove.TObjectIntHashMap;
 import icons.DartIcons;
 import org.dartlang.analysis.server.protocol.AnalysisError;
 import org.jetbrains.annotations.NotNull;
@@ -49,6 +53,7 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 import javax.swing.event.HyperlinkEvent;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -63,13 +68,20 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
     NotificationGroup.toolWindowGroup(TOOLWINDOW_ID, TOOLWINDOW_ID, false);
 
   private static final int TABLE_REFRESH_PERIOD = 300;
+  // a read action per this number of files, so that a write action doesn't wait until problems for the whole project are created
+  private static final int FILES_PER_READ_ACTION = 50;
 
   private final Project myProject;
   private final DartProblemsPresentationHelper myPresentationHelper;
   private DartProblemsViewPanel myPanel;
 
-  private final Object myLock = new Object(); // use this lock to access myScheduledFilePathToErrors and myAlarm
+  // use this lock to access myScheduledFilePathToErrors, myScheduledFilePathToErrorsHash, myFilePathToShownErrorsHash, myClearCount and myAlarm
+  private final Object myLock = new Object();
   private final Map<String, List<AnalysisError>> myScheduledFilePathToErrors = new THashMap<>();
+  private final TObjectIntHashMap<String> myScheduledFilePathToErrorsHash = new TObjectIntHashMap<>();
+  // hashes of errors as calculated by DartAnalysisServerService for the problems passed to the table; no entry means no problems
+  private final TObjectIntHashMap<String> myFilePathToShownErrorsHash = new TObjectIntHashMap<>();
+  private int myClearCount;
   private final Alarm myAlarm;
 
   private ToolWindow myToolWindow;
@@ -80,32 +92,92 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
   private Notification myNotification;
   private boolean myDisabledForSession = false;
 
+  // Runs in a pooled thread, problems for the table are prepared here and only added to the table in the EDT
   private final Runnable myUpdateRunnable = new Runnable() {
     @Override
     public void run() {
-      if (ProjectViewPane.ID.equals(ProjectView.getInstance(myProject).getCurrentViewId())) {
-        final int hash = DartAnalysisServerService.getInstance(myProject).getFilePathsWithErrorsHash();
-        if (myFilesWithErrorsHash != hash) {
-          // refresh red squiggles managed by com.jetbrains.lang.dart.projectView.DartNodeDecorator
-          myFilesWithErrorsHash = hash;
-          ProjectView.getInstance(myProject).refresh();
-        }
-      }
-
       final Map<String, List<AnalysisError>> filePathToErrors;
+      final TObjectIntHashMap<String> filePathToErrorsHash;
+      final int clearCount;
       synchronized (myLock) {
         filePathToErrors = new THashMap<>(myScheduledFilePathToErrors);
+        filePathToErrorsHash = myScheduledFilePathToErrorsHash.clone();
+        clearCount = myClearCount;
         myScheduledFilePathToErrors.clear();
+        myScheduledFilePathToErrorsHash.clear();
       }
 
-      myPanel.setErrors(filePathToErrors);
+      final List<Map.Entry<String, List<AnalysisError>>> entries = new ArrayList<>(filePathToErrors.entrySet());
+      final Map<String, List<DartProblem>> filePathToProblems = new THashMap<>();
+      for (int i = 0; i < entries.size(); i += FILES_PER_READ_ACTION) {
+        final List<Map.Entry<String, List<AnalysisError>>> chunk = entries.subList(i, Math.min(i + FILES_PER_READ_ACTION, entries.size()));
+        final Map<String, List<DartProblem>> chunkProblems =
+          ReadAction.compute(() -> myProject.isDisposed() ? null : createProblems(chunk, filePathToErrorsHash, clearCount));
+        if (chunkProblems == null) return;
+        filePathToProblems.putAll(chunkProblems);
+      }
+
+      ApplicationManager.getApplication().invokeLater(() -> {
+        synchronized (myLock) {
+          if (clearCount != myClearCount) return;
+        }
+
+        if (ProjectViewPane.ID.equals(ProjectView.getInstance(myProject).getCurrentViewId())) {
+          final int hash = DartAnalysisServerService.getInstance(myProject).getFilePathsWithErrorsHash();
+          if (myFilesWithErrorsHash != hash) {
+            // refresh red squiggles managed by com.jetbrains.lang.dart.projectView.DartNodeDecorator
+            myFilesWithErrorsHash = hash;
+            ProjectView.getInstance(myProject).refresh();
+          }
+        }
+
+        if (!filePathToProblems.isEmpty()) {
+          myPanel.setProblems(filePathToProblems);
+        }
+      }, ModalityState.NON_MODAL, myProject.getDisposed());
     }
   };
 
+  /**
+   * Files whose errors are the same as already passed to the table are skipped. Errors of files out of project content are not shown,
+   * such files get an empty list if they had problems in the table.
+   */
+  @Nullable
+  private Map<String, List<DartProblem>> createProblems(@NotNull final List<Map.Entry<String, List<AnalysisError>>> filePathToErrors,
+                                                        @NotNull final TObjectIntHashMap<String> filePathToErrorsHash,
+                                                        final int clearCount) {
+    final ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(myProject);
+    final Map<String, List<DartProblem>> result = new THashMap<>();
+
+    for (Map.Entry<String, List<AnalysisError>> entry : filePathToErrors) {
+      final String filePath = entry.getKey();
+      final VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(filePath);
+      final boolean inContent = vFile != null && fileIndex.isInContent(vFile);
+      final int errorsHash = inContent ? filePathToErrorsHash.get(filePath) : 0;
+
+      synchronized (myLock) {
+        if (clearCount != myClearCount) return null;
+        if (myFilePathToShownErrorsHash.get(filePath) == errorsHash) continue;
+
+        if (errorsHash == 0) {
+          myFilePathToShownErrorsHash.remove(filePath);
+        }
+        else {
+          myFilePathToShownErrorsHash.put(filePath, errorsHash);
+        }
+      }
+
+      result.put(filePath, inContent ? DartProblemsTableModel.createProblems(myProject, filePath, entry.getValue())
+                                     : Collections.emptyList());
+    }
+
+    return result;
+  }
+
   public DartProblemsView(@NotNull final Project project, @NotNull final ToolWindowManager toolWindowManager) {
     myProject = project;
     myPresentationHelper = new DartProblemsPresentationHelper(project);
-    myAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
+    myAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, project);
     Disposer.register(project, myAlarm);
 
     UIUtil.invokeLaterIfNeeded(() -> {
@@ -277,13 +349,17 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
     }
   }
 
-  public void updateErrorsForFile(@NotNull final String filePath, @NotNull final List<AnalysisError> errors) {
+  /**
+   * @param errorsHash hash of {@code errors} as calculated by {@link DartAnalysisServerService}, 0 if there are no errors
+   */
+  public void updateErrorsForFile(@NotNull final String filePath, @NotNull final List<AnalysisError> errors, final int errorsHash) {
     synchronized (myLock) {
       if (myScheduledFilePathToErrors.isEmpty()) {
-        myAlarm.addRequest(myUpdateRunnable, TABLE_REFRESH_PERIOD, ModalityState.NON_MODAL);
+        myAlarm.addRequest(myUpdateRunnable, TABLE_REFRESH_PERIOD);
       }
 
       myScheduledFilePathToErrors.put(filePath, errors);
+      myScheduledFilePathToErrorsHash.put(filePath, errorsHash);
     }
   }
 
@@ -295,6 +371,9 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
     synchronized (myLock) {
       myAlarm.cancelAllRequests();
       myScheduledFilePathToErrors.clear();
+      myScheduledFilePathToErrorsHash.clear();
+      myFilePathToShownErrorsHash.clear();
+      myClearCount++;
     }
 
     myPanel.clearAll();
@@ -41,7 +41,6 @@ import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
 import com.jetbrains.lang.dart.assists.AssistUtils;
 import com.jetbrains.lang.dart.assists.DartSourceEditException;
 import icons.DartIcons;
-import org.dartlang.analysis.server.protocol.AnalysisError;
 import org.dartlang.analysis.server.protocol.AnalysisErrorFixes;
 import org.dartlang.analysis.server.protocol.SourceChange;
 import org.jetbrains.annotations.NonNls;
@@ -262,8 +261,7 @@ public class DartProblemsViewPanel extends SimpleToolWindowPanel implements Data
 
   void fireGroupingOrFilterChanged() {
     myTable.getRowSorter().allRowsChanged();
-    ((DartProblemsTableModel)myTable.getModel()).onFilterChanged();
-    updateStatusDescription();
+    ((DartProblemsTableModel)myTable.getModel()).onFilterChanged(this::updateStatusDescription);
   }
 
   private void showFiltersPopup() {
@@ -357,11 +355,14 @@ public class DartProblemsViewPanel extends SimpleToolWindowPanel implements Data
     }
   }
 
-  public void setErrors(@NotNull final Map<String, List<AnalysisError>> filePathToErrors) {
+  /**
+   * @param filePathToProblems problems created by {@link DartProblemsTableModel#createProblems}, empty list for files without problems
+   */
+  public void setProblems(@NotNull final Map<String, List<DartProblem>> filePathToProblems) {
     final DartProblemsTableModel model = (DartProblemsTableModel)myTable.getModel();
     final DartProblem oldSelectedProblem = myTable.getSelectedObject();
 
-    final DartProblem updatedSelectedProblem = model.setErrorsAndReturnReplacementForSelection(filePathToErrors, oldSelectedProblem);
+    final DartProblem updatedSelectedProblem = model.setProblemsAndReturnReplacementForSelection(filePathToProblems, oldSelectedProblem);
 
     if (updatedSelectedProblem != null) {
       myTable.setSelection(Collections.singletonList(updatedSelectedProblem));
@@ -57,7 +57,8 @@ public class DartComponentIndex extends FileBasedIndexExtension<String, DartComp
 
   @Override
   public int getVersion() {
-    return DartIndexUtil.INDEX_VERSION;
+    // values refer to the library names table, so a new table invalidates the index
+    return DartIndexUtil.INDEX_VERSION + (DartLibraryNameEnumerator.getGeneration() << 8);
   }
 
   public static Collection<VirtualFile> getAllFiles(@NotNull final String componentName, @NotNull final GlobalSearchScope scope) {
@@ -2,7 +2,6 @@ package com.jetbrains.lang.dart.ide.index;
 
 import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.DataInputOutputUtil;
-import com.intellij.util.io.IOUtil;
 import com.jetbrains.lang.dart.DartComponentType;
 import org.jetbrains.annotations.NotNull;
 
@@ -14,21 +13,28 @@ public class DartComponentInfoExternalizer implements DataExternalizer<DartCompo
 
   @Override
   public void save(@NotNull final DataOutput out, @NotNull final DartComponentInfo componentInfo) throws IOException {
-    final DartComponentType dartComponentType = componentInfo.getComponentType();
-    final int key = dartComponentType == null ? -1 : dartComponentType.getKey();
-    DataInputOutputUtil.writeINT(out, key);
-    final String libraryName = componentInfo.getLibraryName();
-    out.writeBoolean(libraryName != null);
-    if (libraryName != null) {
-      IOUtil.writeUTF(out, libraryName);
-    }
+    writeComponentInfo(out, componentInfo);
   }
 
   @Override
   public DartComponentInfo read(@NotNull DataInput in) throws IOException {
-    final int componentTypeKey = DataInputOutputUtil.readINT(in);
-    final boolean hasLibraryName = in.readBoolean();
-    final String libraryName = hasLibraryName ? IOUtil.readUTF(in) : null;
+    return readComponentInfo(in);
+  }
+
+  /**
+   * Component type is written as a varint (type key + 1, so that a missing type also takes 1 byte),
+   * library name - as a varint id in {@link DartLibraryNameEnumerator}
+   */
+  static void writeComponentInfo(@NotNull final DataOutput out, @NotNull final DartComponentInfo componentInfo) throws IOException {
+    final DartComponentType dartComponentType = componentInfo.getComponentType();
+    DataInputOutputUtil.writeINT(out, dartComponentType == null ? 0 : dartComponentType.getKey() + 1);
+    DataInputOutputUtil.writeINT(out, DartLibraryNameEnumerator.enumerate(componentInfo.getLibraryName()));
+  }
+
+  @NotNull
+  static DartComponentInfo readComponentInfo(@NotNull final DataInput in) throws IOException {
+    final int componentTypeKey = DataInputOutputUtil.readINT(in) - 1;
+    final String libraryName = DartLibraryNameEnumerator.valueOf(DataInputOutputUtil.readINT(in));
     return new DartComponentInfo(DartComponentType.valueOf(componentTypeKey), libraryName);
   }
 }
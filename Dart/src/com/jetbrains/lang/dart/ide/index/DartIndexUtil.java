@@ -6,6 +6,7 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.indexing.FileContent;
 import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.DartFileType;
 import com.jetbrains.lang.dart.psi.*;
 import com.jetbrains.lang.dart.util.DartControlFlowUtil;
 import com.jetbrains.lang.dart.util.DartResolveUtil;
@@ -18,24 +19,34 @@ import static com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo.Kind;
 
 public class DartIndexUtil {
   // inc when change parser
-  public static final int INDEX_VERSION = 23;
+  public static final int INDEX_VERSION = 24;
 
   private static final Key<DartFileIndexData> ourDartCachesData = Key.create("dart.caches.index.data");
 
   public static DartFileIndexData indexFile(FileContent content) {
     DartFileIndexData indexData = content.getUserData(ourDartCachesData);
     if (indexData != null) return indexData;
-    //noinspection SynchronizationOnLocalVariableOrMethodParameter
-    synchronized (content) {
-      indexData = content.getUserData(ourDartCachesData);
-      if (indexData != null) return indexData;
-      indexData = indexFileRoots(content.getPsiFile());
+
+    // Indices of one file are built one after another in the same thread, so no lock is needed for the light tree based indexing.
+    // At worst, the data is calculated twice.
+    if (content.getFileType() == DartFileType.INSTANCE) {
+      indexData = DartLightIndexer.indexFile(content.getContentAsText(), content.getFileName());
+    }
+
+    if (indexData == null) {
+      //noinspection SynchronizationOnLocalVariableOrMethodParameter
+      synchronized (content) {
+        indexData = content.getUserData(ourDartCachesData);
+        if (indexData != null) return indexData;
+        indexData = indexFileRoots(content.getPsiFile());
+      }
     }
 
+    content.putUserData(ourDartCachesData, indexData);
     return indexData;
   }
 
-  private static DartFileIndexData indexFileRoots(PsiFile psiFile) {
+  static DartFileIndexData indexFileRoots(PsiFile psiFile) {
     DartFileIndexData result = new DartFileIndexData();
 
     result.setLibraryName(DartResolveUtil.getLibraryName(psiFile));
@@ -0,0 +1,130 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.ShutDownTracker;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.containers.ConcurrentIntObjectMap;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.io.PersistentStringEnumerator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Library names are stored in Dart index values as ids of this persistent table: a library name repeats across all symbols of the library.
+ * Ids are never reused, so index data written with them stays valid until the table is lost. Each new table gets a new generation
+ * that is a part of {@link DartComponentIndex} version, so the index data is dropped together with the table it refers to.
+ */
+final class DartLibraryNameEnumerator {
+
+  private static final Logger LOG = Logger.getInstance(DartLibraryNameEnumerator.class);
+
+  static final int NULL_ID = 0;
+
+  private static final Object ourLock = new Object();
+  private static volatile PersistentStringEnumerator ourEnumerator;
+  private static int ourGeneration;
+  private static final ConcurrentIntObjectMap<String> ourIdToName = ContainerUtil.createConcurrentIntObjectMap();
+
+  private DartLibraryNameEnumerator() {
+  }
+
+  /**
+   * Opens the table if needed, so a lost or corrupted table is replaced before the index checks its version.
+   */
+  static int getGeneration() {
+    try {
+      // the index is being registered: its version changes with the generation, no need to request a rebuild
+      getEnumerator(false);
+    }
+    catch (IOException e) {
+      LOG.warn(e);
+    }
+    synchronized (ourLock) {
+      return ourGeneration;
+    }
+  }
+
+  static int enumerate(@Nullable final String libraryName) throws IOException {
+    if (libraryName == null) return NULL_ID;
+    return getEnumerator(true).enumerate(libraryName);
+  }
+
+  @Nullable
+  static String valueOf(final int id) throws IOException {
+    if (id == NULL_ID) return null;
+
+    String name = ourIdToName.get(id);
+    if (name == null) {
+      name = getEnumerator(true).valueOf(id);
+      if (name == null) throw new IOException("Unknown Dart library name id: " + id);
+      ourIdToName.put(id, name);
+    }
+    return name;
+  }
+
+  @NotNull
+  private static PersistentStringEnumerator getEnumerator(final boolean rebuildIndexIfRecreated) throws IOException {
+    PersistentStringEnumerator enumerator = ourEnumerator;
+    if (enumerator != null) return enumerator;
+
+    synchronized (ourLock) {
+      if (ourEnumerator == null) {
+        final File dir = new File(PathManager.getIndexRoot(), "dart_library_names");
+        final File file = new File(dir, "names");
+        final File generationFile = new File(dir, "generation");
+        final int generation = readGeneration(generationFile);
+        if (generation != 0 && file.exists()) {
+          try {
+            ourEnumerator = new PersistentStringEnumerator(file);
+            ourGeneration = generation;
+          }
+          catch (IOException e) {
+            LOG.info("Dart library names table is corrupted, Dart indices will be rebuilt: " + e.getMessage());
+          }
+        }
+
+        if (ourEnumerator == null) {
+          // a new table: index data that refers to the old one, if any, must not be read with it
+          FileUtil.delete(dir);
+          ourIdToName.clear();
+          ourGeneration = generation % 0xFFFF + 1;
+          FileUtil.writeToFile(generationFile, String.valueOf(ourGeneration));
+          ourEnumerator = new PersistentStringEnumerator(file);
+          if (generation != 0 && rebuildIndexIfRecreated) {
+            FileBasedIndex.getInstance().requestRebuild(DartComponentIndex.DART_COMPONENT_INDEX);
+          }
+        }
+        ShutDownTracker.getInstance().registerShutdownTask(DartLibraryNameEnumerator::close);
+      }
+      return ourEnumerator;
+    }
+  }
+
+  private static int readGeneration(@NotNull final File generationFile) {
+    try {
+      return generationFile.isFile() ? Math.max(0, Integer.parseInt(FileUtil.loadFile(generationFile).trim())) : 0;
+    }
+    catch (IOException | NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static void close() {
+    synchronized (ourLock) {
+      if (ourEnumerator != null) {
+        try {
+          ourEnumerator.close();
+        }
+        catch (IOException e) {
+          LOG.info(e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,304 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.lang.*;
+import com.intellij.openapi.util.Ref;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import com.intellij.util.diff.FlyweightCapableTreeStructure;
+import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.DartLanguage;
+import com.jetbrains.lang.dart.DartParser;
+import com.jetbrains.lang.dart.DartTokenTypesSets;
+import com.jetbrains.lang.dart.lexer.DartLexer;
+import com.jetbrains.lang.dart.util.DartPsiImplUtil;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static com.jetbrains.lang.dart.DartTokenTypes.*;
+import static com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo.Kind;
+
+/**
+ * Collects {@link DartFileIndexData} from the light tree built by {@link DartParser}, without creating PSI. Function bodies are
+ * lazy-parseable blocks, so they are not parsed at all. The result is the same as the one of {@link DartIndexUtil#indexFileRoots}.
+ */
+final class DartLightIndexer {
+
+  private static final TokenSet CLASSES = TokenSet.create(CLASS_DEFINITION, MIXIN_DECLARATION, ENUM_DEFINITION);
+  private static final TokenSet CLASS_MEMBER_COMPONENTS =
+    TokenSet.create(METHOD_DECLARATION, NAMED_CONSTRUCTOR_DECLARATION, FACTORY_CONSTRUCTOR_DECLARATION, GETTER_DECLARATION,
+                    SETTER_DECLARATION);
+
+  @NotNull private final CharSequence myText;
+  @NotNull private final FlyweightCapableTreeStructure<LighterASTNode> myTree;
+
+  private DartLightIndexer(@NotNull final CharSequence text) {
+    myText = text;
+
+    final ParserDefinition parserDefinition = LanguageParserDefinitions.INSTANCE.forLanguage(DartLanguage.INSTANCE);
+    final PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(parserDefinition, new DartLexer(), text);
+    new DartParser().parseLight(DartTokenTypesSets.DART_FILE, builder);
+    myTree = builder.getLightTree();
+  }
+
+  /**
+   * @return {@code null} if the file can't be indexed without PSI, e.g. if it is a part of a library referenced by URI
+   */
+  @Nullable
+  static DartFileIndexData indexFile(@NotNull final CharSequence text, @NotNull final String fileName) {
+    return new DartLightIndexer(text).index(fileName);
+  }
+
+  @Nullable
+  private DartFileIndexData index(@NotNull final String fileName) {
+    final List<LighterASTNode> children = getChildren(myTree.getRoot());
+
+    final LighterASTNode libraryStatement = findChild(children, LIBRARY_STATEMENT);
+    final LighterASTNode partOfStatement = findChild(children, PART_OF_STATEMENT);
+
+    final String libraryName;
+    if (libraryStatement != null) {
+      final LighterASTNode libraryNameElement = findChild(getChildren(libraryStatement), LIBRARY_NAME_ELEMENT);
+      if (libraryNameElement == null) return null;
+      libraryName = getLibraryName(libraryNameElement);
+    }
+    else if (partOfStatement != null) {
+      final LighterASTNode libraryId = findChild(getChildren(partOfStatement), LIBRARY_ID);
+      // the name of the library referenced by URI is taken from another file
+      if (libraryId == null) return null;
+      libraryName = getText(libraryId);
+    }
+    else {
+      libraryName = fileName;
+    }
+
+    final DartFileIndexData result = new DartFileIndexData();
+    result.setLibraryName(libraryName);
+    result.setIsPart(partOfStatement != null);
+
+    for (LighterASTNode child : children) {
+      final IElementType type = child.getTokenType();
+      if (type == VAR_DECLARATION_LIST) {
+        for (LighterASTNode variable : getVariables(child)) {
+          addTopLevelDeclaration(result, getName(variable), DartComponentType.VARIABLE);
+        }
+      }
+      else if (CLASSES.contains(type)) {
+        final String name = getName(child);
+        addTopLevelDeclaration(result, name, DartComponentType.CLASS);
+        if (name != null) {
+          result.addClassName(name);
+          addClassMemberSymbols(result, child);
+        }
+      }
+      else if (type == FUNCTION_TYPE_ALIAS) {
+        addTopLevelDeclaration(result, getName(child), DartComponentType.TYPEDEF);
+      }
+      else if (type == FUNCTION_DECLARATION_WITH_BODY_OR_NATIVE || type == GETTER_DECLARATION || type == SETTER_DECLARATION) {
+        addTopLevelDeclaration(result, getName(child), DartComponentType.FUNCTION);
+      }
+    }
+
+    for (LighterASTNode child : children) {
+      final IElementType type = child.getTokenType();
+      if (type == IMPORT_STATEMENT || type == EXPORT_STATEMENT) {
+        processImportOrExportStatement(result, child, type == IMPORT_STATEMENT ? Kind.Import : Kind.Export);
+      }
+      else if (type == PART_STATEMENT) {
+        final String uri = getUriString(getChildren(child));
+        if (uri != null) {
+          result.addPartUri(uri);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private static void addTopLevelDeclaration(@NotNull final DartFileIndexData result,
+                                             @Nullable final String name,
+                                             @NotNull final DartComponentType type) {
+    if (name == null) return;
+
+    result.addSymbol(name);
+    result.addComponentInfo(name, new DartComponentInfo(type, result.getLibraryName()));
+  }
+
+  private void addClassMemberSymbols(@NotNull final DartFileIndexData result, @NotNull final LighterASTNode dartClass) {
+    if (dartClass.getTokenType() == ENUM_DEFINITION) {
+      for (LighterASTNode child : getChildren(dartClass)) {
+        if (child.getTokenType() == ENUM_CONSTANT_DECLARATION) {
+          result.addSymbol(getComponentNameText(child));
+        }
+      }
+      return;
+    }
+
+    // see DartResolveUtil.getNamedSubComponents(): only class definitions have members, mixin declarations don't
+    if (dartClass.getTokenType() != CLASS_DEFINITION) return;
+
+    final LighterASTNode classBody = findChild(getChildren(dartClass), CLASS_BODY);
+    final LighterASTNode classMembers = classBody == null ? null : findChild(getChildren(classBody), CLASS_MEMBERS);
+    if (classMembers == null) return;
+
+    final List<LighterASTNode> members = getChildren(classMembers);
+    for (LighterASTNode member : members) {
+      final IElementType type = member.getTokenType();
+      if (type == NAMED_CONSTRUCTOR_DECLARATION || type == FACTORY_CONSTRUCTOR_DECLARATION) {
+        result.addSymbol(getConstructorName(member));
+      }
+      else if (CLASS_MEMBER_COMPONENTS.contains(type)) {
+        result.addSymbol(getComponentNameText(member));
+      }
+    }
+    for (LighterASTNode member : members) {
+      if (member.getTokenType() == VAR_DECLARATION_LIST) {
+        for (LighterASTNode variable : getVariables(member)) {
+          result.addSymbol(getComponentNameText(variable));
+        }
+      }
+    }
+  }
+
+  private void processImportOrExportStatement(@NotNull final DartFileIndexData result,
+                                              @NotNull final LighterASTNode statement,
+                                              @NotNull final Kind kind) {
+    final List<LighterASTNode> children = getChildren(statement);
+    final String uri = getUriString(children);
+    if (uri == null) return;
+
+    final Set<String> showComponentNames = new THashSet<>();
+    final Set<String> hideComponentNames = new THashSet<>();
+    for (LighterASTNode child : children) {
+      final IElementType type = child.getTokenType();
+      if (type == SHOW_COMBINATOR || type == HIDE_COMBINATOR) {
+        final LighterASTNode libraryReferenceList = findChild(getChildren(child), LIBRARY_REFERENCE_LIST);
+        if (libraryReferenceList != null) {
+          for (LighterASTNode expression : getChildren(libraryReferenceList)) {
+            if (expression.getTokenType() == LIBRARY_COMPONENT_REFERENCE_EXPRESSION) {
+              (type == SHOW_COMBINATOR ? showComponentNames : hideComponentNames).add(getText(expression));
+            }
+          }
+        }
+      }
+    }
+
+    final LighterASTNode importPrefixComponent = kind == Kind.Import ? findChild(children, COMPONENT_NAME) : null;
+    final String importPrefix = importPrefixComponent != null ? getName(importPrefixComponent, COMPONENT_NAME) : null;
+
+    result.addImportInfo(new DartImportOrExportInfo(kind, uri, importPrefix, showComponentNames, hideComponentNames));
+    result.addComponentInfo(importPrefix, new DartComponentInfo(DartComponentType.LABEL, null));
+  }
+
+  @NotNull
+  private List<LighterASTNode> getVariables(@NotNull final LighterASTNode varDeclarationList) {
+    final List<LighterASTNode> result = new ArrayList<>();
+    for (LighterASTNode child : getChildren(varDeclarationList)) {
+      if (child.getTokenType() == VAR_ACCESS_DECLARATION || child.getTokenType() == VAR_DECLARATION_LIST_PART) {
+        result.add(child);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Same as {@code DartComponentName.getName()} for the first component name of the given component
+   */
+  @Nullable
+  private String getName(@NotNull final LighterASTNode component) {
+    return getName(findChild(getChildren(component), COMPONENT_NAME), COMPONENT_NAME);
+  }
+
+  @Nullable
+  private String getName(@Nullable final LighterASTNode componentName, @NotNull final IElementType type) {
+    if (componentName == null || componentName.getTokenType() != type) return null;
+    final LighterASTNode id = findChild(getChildren(componentName), ID);
+    return id == null ? null : getText(id);
+  }
+
+  /**
+   * Same as {@code DartComponent.getName()}, which is the text of the component name
+   */
+  @Nullable
+  private String getComponentNameText(@NotNull final LighterASTNode component) {
+    final LighterASTNode componentName = findChild(getChildren(component), COMPONENT_NAME);
+    return componentName == null ? null : getText(componentName);
+  }
+
+  /**
+   * Mimics {@code DartPsiImplUtil.getComponentName()} for named and factory constructors
+   */
+  @Nullable
+  private String getConstructorName(@NotNull final LighterASTNode constructor) {
+    final List<LighterASTNode> componentNames = new ArrayList<>(2);
+    for (LighterASTNode child : getChildren(constructor)) {
+      if (child.getTokenType() == COMPONENT_NAME) {
+        componentNames.add(child);
+      }
+    }
+
+    if (componentNames.size() == 2) return getText(componentNames.get(1));
+    if (componentNames.size() == 1 && constructor.getTokenType() == FACTORY_CONSTRUCTOR_DECLARATION) return getText(componentNames.get(0));
+    return null;
+  }
+
+  @NotNull
+  private String getLibraryName(@NotNull final LighterASTNode libraryNameElement) {
+    final StringBuilder name = new StringBuilder();
+    for (LighterASTNode child : getChildren(libraryNameElement)) {
+      if (child.getTokenType() == ID) {
+        if (name.length() > 0) {
+          name.append('.');
+        }
+        name.append(myText, child.getStartOffset(), child.getEndOffset());
+      }
+    }
+    return name.toString();
+  }
+
+  @Nullable
+  private String getUriString(@NotNull final List<LighterASTNode> statementChildren) {
+    final LighterASTNode uriElement = findChild(statementChildren, URI_ELEMENT);
+    return uriElement == null ? null : DartPsiImplUtil.getUnquotedDartStringAndItsRange(getText(uriElement)).first;
+  }
+
+  @NotNull
+  private String getText(@NotNull final LighterASTNode node) {
+    return myText.subSequence(node.getStartOffset(), node.getEndOffset()).toString();
+  }
+
+  @Nullable
+  private static LighterASTNode findChild(@NotNull final List<LighterASTNode> children, @NotNull final IElementType type) {
+    for (LighterASTNode child : children) {
+      if (child.getTokenType() == type) return child;
+    }
+    return null;
+  }
+
+  /**
+   * @return composite children only; token nodes are reused by the tree structure after {@code disposeChildren()}, and none of them
+   * is interesting for indexing anyway
+   */
+  @NotNull
+  private List<LighterASTNode> getChildren(@NotNull final LighterASTNode node) {
+    final Ref<LighterASTNode[]> childrenRef = Ref.create();
+    final int count = myTree.getChildren(node, childrenRef);
+    if (count == 0) return Collections.emptyList();
+
+    final LighterASTNode[] children = childrenRef.get();
+    final List<LighterASTNode> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      if (!(children[i] instanceof LighterASTTokenNode)) {
+        result.add(children[i]);
+      }
+    }
+    myTree.disposeChildren(children, count);
+    return result;
+  }
+}
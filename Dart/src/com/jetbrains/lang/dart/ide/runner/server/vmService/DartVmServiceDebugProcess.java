@@ -414,6 +414,7 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
 
   public void isolateResumed(@NotNull final IsolateRef isolateRef) {
     mySuspendedIsolateIds.remove(isolateRef.getId());
+    myIsolatesInfo.invalidateObjectCache(isolateRef.getId());
   }
 
   public void isolateExit(@NotNull final IsolateRef isolateRef) {
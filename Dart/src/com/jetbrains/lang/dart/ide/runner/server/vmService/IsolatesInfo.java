@@ -3,7 +3,9 @@ package com.jetbrains.lang.dart.ide.runner.server.vmService;
 import gnu.trove.THashMap;
 import org.dartlang.vm.service.element.Isolate;
 import org.dartlang.vm.service.element.IsolateRef;
+import org.dartlang.vm.service.element.Obj;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -19,6 +21,8 @@ public class IsolatesInfo {
     private boolean breakpointsSet = false;
     private boolean shouldInitialResume = false;
     private CompletableFuture<Isolate> myCachedIsolate;
+    // objects received from the VM while the isolate is paused; object ids of instances are valid only until resume
+    private final Map<String, Obj> myCachedObjects = new THashMap<>();
 
     private IsolateInfo(@NotNull final String isolateId, @NotNull final String isolateName) {
       myIsolateId = isolateId;
@@ -27,6 +31,7 @@ public class IsolatesInfo {
 
     void invalidateCache() {
       myCachedIsolate = null;
+      myCachedObjects.clear();
     }
 
     CompletableFuture<Isolate> getCachedIsolate() {
@@ -111,6 +116,26 @@ public class IsolatesInfo {
     return cachedIsolate;
   }
 
+  @Nullable
+  public synchronized Obj getCachedObject(@NotNull final String isolateId, @NotNull final String key) {
+    IsolateInfo info = myIsolateIdToInfoMap.get(isolateId);
+    return info == null ? null : info.myCachedObjects.get(key);
+  }
+
+  public synchronized void cacheObject(@NotNull final String isolateId, @NotNull final String key, @NotNull final Obj obj) {
+    IsolateInfo info = myIsolateIdToInfoMap.get(isolateId);
+    if (info != null) {
+      info.myCachedObjects.put(key, obj);
+    }
+  }
+
+  public synchronized void invalidateObjectCache(@NotNull final String isolateId) {
+    IsolateInfo info = myIsolateIdToInfoMap.get(isolateId);
+    if (info != null) {
+      info.myCachedObjects.clear();
+    }
+  }
+
   public synchronized Collection<IsolateInfo> getIsolateInfos() {
     return new ArrayList<>(myIsolateIdToInfoMap.values());
   }
@@ -6,8 +6,11 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.Trinity;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.Alarm;
 import com.intellij.util.concurrency.Semaphore;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.xdebugger.XSourcePosition;
 import com.intellij.xdebugger.breakpoints.XBreakpointProperties;
 import com.intellij.xdebugger.breakpoints.XLineBreakpoint;
@@ -26,6 +29,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -34,6 +38,7 @@ public class VmServiceWrapper implements Disposable {
 
   public static final Logger LOG = Logger.getInstance(VmServiceWrapper.class.getName());
   private static final long RESPONSE_WAIT_TIMEOUT = 3000; // millis
+  private static final int MAX_PENDING_BREAKPOINT_REQUESTS = 32;
 
   private final DartVmServiceDebugProcess myDebugProcess;
   private final VmService myVmService;
@@ -41,6 +46,7 @@ public class VmServiceWrapper implements Disposable {
   private final IsolatesInfo myIsolatesInfo;
   private final DartVmServiceBreakpointHandler myBreakpointHandler;
   private final Alarm myRequestsScheduler;
+  private final Map<VirtualFile, Collection<String>> myFileToScriptUrisCache = ContainerUtil.newConcurrentMap();
 
   private long myVmServiceReceiverThreadId;
 
@@ -253,56 +259,45 @@ public class VmServiceWrapper implements Disposable {
       return;
     }
 
-    final AtomicInteger counter = new AtomicInteger(xBreakpoints.size());
+    final BreakpointSync sync = new BreakpointSync("isolate " + isolateId, onFinished);
 
     for (final XLineBreakpoint<XBreakpointProperties> xBreakpoint : xBreakpoints) {
-      addBreakpoint(isolateId, xBreakpoint.getSourcePosition(), new VmServiceConsumers.BreakpointConsumerWrapper() {
+      sync.addBreakpoint(isolateId, xBreakpoint.getSourcePosition(), new VmServiceConsumers.BreakpointConsumerWrapper() {
         @Override
         void sourcePositionNotApplicable() {
-          checkDone();
         }
 
         @Override
         public void received(Breakpoint vmBreakpoint) {
           myBreakpointHandler.vmBreakpointAdded(xBreakpoint, isolateId, vmBreakpoint);
-          checkDone();
         }
 
         @Override
         public void onError(RPCError error) {
           myBreakpointHandler.breakpointFailed(xBreakpoint);
-          checkDone();
-        }
-
-        private void checkDone() {
-          if (counter.decrementAndGet() == 0 && onFinished != null) {
-            onFinished.run();
-          }
         }
       });
     }
+
+    sync.start();
   }
 
   public void addBreakpoint(@NotNull final String isolateId,
                             @Nullable final XSourcePosition position,
                             @NotNull final VmServiceConsumers.BreakpointConsumerWrapper consumer) {
-    if (position == null || position.getFile().getFileType() != DartFileType.INSTANCE) {
-      consumer.sourcePositionNotApplicable();
-      return;
-    }
-
-    addRequest(() -> {
-      final int line = position.getLine() + 1;
-      for (String uri : myDebugProcess.getUrisForFile(position.getFile())) {
-        myVmService.addBreakpointWithScriptUri(isolateId, uri, line, consumer);
-      }
-    });
+    final BreakpointSync sync = new BreakpointSync("isolate " + isolateId, null);
+    sync.addBreakpoint(isolateId, position, consumer);
+    sync.start();
   }
 
   public void addBreakpointForIsolates(@NotNull final XLineBreakpoint<XBreakpointProperties> xBreakpoint,
                                        @NotNull final Collection<IsolatesInfo.IsolateInfo> isolateInfos) {
+    if (isolateInfos.isEmpty()) return;
+
+    final BreakpointSync sync = new BreakpointSync(isolateInfos.size() + " isolates", null);
+
     for (final IsolatesInfo.IsolateInfo isolateInfo : isolateInfos) {
-      addBreakpoint(isolateInfo.getIsolateId(), xBreakpoint.getSourcePosition(), new VmServiceConsumers.BreakpointConsumerWrapper() {
+      sync.addBreakpoint(isolateInfo.getIsolateId(), xBreakpoint.getSourcePosition(), new VmServiceConsumers.BreakpointConsumerWrapper() {
         @Override
         void sourcePositionNotApplicable() {
         }
@@ -317,6 +312,22 @@ public class VmServiceWrapper implements Disposable {
         }
       });
     }
+
+    sync.start();
+  }
+
+  /**
+   * Script uris are the same for all isolates, and computing them may require a round trip to the Dart Analysis Server,
+   * so they are computed once per file. Must be called in {@link #myRequestsScheduler} thread.
+   */
+  @NotNull
+  private Collection<String> getUrisForFile(@NotNull final VirtualFile file) {
+    Collection<String> uris = myFileToScriptUrisCache.get(file);
+    if (uris == null) {
+      uris = myDebugProcess.getUrisForFile(file);
+      myFileToScriptUrisCache.put(file, uris);
+    }
+    return uris;
   }
 
   /**
@@ -325,6 +336,7 @@ public class VmServiceWrapper implements Disposable {
   public void restoreBreakpointsForIsolate(@NotNull final String isolateId, @Nullable final Runnable onFinished) {
     // Cached information about the isolate may now be stale.
     myIsolatesInfo.invalidateCache(isolateId);
+    myFileToScriptUrisCache.clear();
 
     // Remove all existing VM breakpoints for this isolate.
     myBreakpointHandler.removeAllVmBreakpoints(isolateId);
@@ -355,6 +367,7 @@ public class VmServiceWrapper implements Disposable {
   }
 
   public void resumeIsolate(@NotNull final String isolateId, @Nullable final StepOption stepOption) {
+    myIsolatesInfo.invalidateObjectCache(isolateId);
     addRequest(() -> {
       myLatestStep = stepOption;
       myVmService.resume(isolateId, stepOption, null, VmServiceConsumers.EMPTY_SUCCESS_CONSUMER);
@@ -374,6 +387,7 @@ public class VmServiceWrapper implements Disposable {
    * function, so frameIndex must be at least 1.
    */
   public void dropFrame(@NotNull final String isolateId, int frameIndex) {
+    myIsolatesInfo.invalidateObjectCache(isolateId);
     addRequest(() -> {
       myLatestStep = StepOption.Rewind;
       myVmService.resume(isolateId, StepOption.Rewind, frameIndex, new SuccessConsumer() {
@@ -473,22 +487,45 @@ public class VmServiceWrapper implements Disposable {
     return resultRef.get();
   }
 
+  /**
+   * Objects received while the isolate is paused are cached until it is resumed, so switching between frames and re-expanding
+   * variables doesn't fetch the same objects again.
+   */
   public void getObject(@NotNull final String isolateId, @NotNull final String objectId, @NotNull final GetObjectConsumer consumer) {
-    addRequest(() -> myVmService.getObject(isolateId, objectId, consumer));
+    final Obj cachedObj = myIsolatesInfo.getCachedObject(isolateId, objectId);
+    if (cachedObj != null) {
+      consumer.received(cachedObj);
+      return;
+    }
+
+    addRequest(() -> myVmService.getObject(isolateId, objectId, new CachingGetObjectConsumer(isolateId, objectId, consumer)));
   }
 
+  /**
+   * Fetches {@code count} elements of a List or associations of a Map starting from {@code offset}, so that large collections are
+   * never transferred as a whole. Pages are cached like objects in {@link #getObject(String, String, GetObjectConsumer)}.
+   */
   public void getCollectionObject(@NotNull final String isolateId,
                                   @NotNull final String objectId,
                                   final int offset,
                                   final int count,
                                   @NotNull final GetObjectConsumer consumer) {
-    addRequest(() -> myVmService.getObject(isolateId, objectId, offset, count, consumer));
+    final String key = objectId + "[" + offset + ":" + count + "]";
+    final Obj cachedObj = myIsolatesInfo.getCachedObject(isolateId, key);
+    if (cachedObj != null) {
+      consumer.received(cachedObj);
+      return;
+    }
+
+    addRequest(() -> myVmService.getObject(isolateId, objectId, offset, count, new CachingGetObjectConsumer(isolateId, key, consumer)));
   }
 
   public void evaluateInFrame(@NotNull final String isolateId,
                               @NotNull final Frame vmFrame,
                               @NotNull final String expression,
                               @NotNull final XDebuggerEvaluator.XEvaluationCallback callback) {
+    // evaluated expression may change state of the objects
+    myIsolatesInfo.invalidateObjectCache(isolateId);
     addRequest(() -> myVmService.evaluateInFrame(isolateId, vmFrame.getIndex(), expression, new EvaluateInFrameConsumer() {
       @Override
       public void received(InstanceRef instanceRef) {
@@ -524,6 +561,8 @@ public class VmServiceWrapper implements Disposable {
                                       @NotNull final String targetId,
                                       @NotNull final String expression,
                                       @NotNull final XDebuggerEvaluator.XEvaluationCallback callback) {
+    // evaluated expression may change state of the objects
+    myIsolatesInfo.invalidateObjectCache(isolateId);
     evaluateInTargetContext(isolateId, targetId, expression, new EvaluateConsumer() {
       @Override
       public void received(InstanceRef instanceRef) {
@@ -546,4 +585,154 @@ public class VmServiceWrapper implements Disposable {
       }
     });
   }
+
+  private class CachingGetObjectConsumer implements GetObjectConsumer {
+    @NotNull private final String myIsolateId;
+    @NotNull private final String myKey;
+    @NotNull private final GetObjectConsumer myConsumer;
+
+    private CachingGetObjectConsumer(@NotNull final String isolateId, @NotNull final String key, @NotNull final GetObjectConsumer consumer) {
+      myIsolateId = isolateId;
+      myKey = key;
+      myConsumer = consumer;
+    }
+
+    @Override
+    public void received(Obj obj) {
+      // the response may come after the isolate has been resumed; the object is not cached in this case
+      if (myDebugProcess.isIsolateSuspended(myIsolateId)) {
+        myIsolatesInfo.cacheObject(myIsolateId, myKey, obj);
+      }
+      myConsumer.received(obj);
+    }
+
+    @Override
+    public void received(Sentinel response) {
+      myConsumer.received(response);
+    }
+
+    @Override
+    public void onError(RPCError error) {
+      myConsumer.onError(error);
+    }
+  }
+
+  /**
+   * Sends {@code addBreakpointWithScriptUri} requests for a batch of breakpoints. Requests are pipelined: up to
+   * {@link #MAX_PENDING_BREAKPOINT_REQUESTS} of them are in flight, and the next one is sent as soon as a response arrives,
+   * so the whole batch takes a few round trips to the VM instead of one scheduler hop per breakpoint per isolate.
+   * {@code onFinished} is called when responses for all requests have been received.
+   */
+  private class BreakpointSync {
+    private final String myTargetName;
+    @Nullable private final Runnable myOnFinished;
+    private final List<Trinity<String, XSourcePosition, VmServiceConsumers.BreakpointConsumerWrapper>> myBreakpoints =
+      new ArrayList<>();
+    private final List<BreakpointRequest> myRequests = new ArrayList<>();
+    private final AtomicInteger myNextRequestIndex = new AtomicInteger();
+    private final AtomicInteger myRemainingRequestsCount = new AtomicInteger();
+    private long myStartTime;
+
+    private BreakpointSync(@NotNull final String targetName, @Nullable final Runnable onFinished) {
+      myTargetName = targetName;
+      myOnFinished = onFinished;
+    }
+
+    private void addBreakpoint(@NotNull final String isolateId,
+                               @Nullable final XSourcePosition position,
+                               @NotNull final VmServiceConsumers.BreakpointConsumerWrapper consumer) {
+      if (position == null || position.getFile().getFileType() != DartFileType.INSTANCE) {
+        consumer.sourcePositionNotApplicable();
+        return;
+      }
+
+      myBreakpoints.add(Trinity.create(isolateId, position, consumer));
+    }
+
+    private void start() {
+      myStartTime = System.currentTimeMillis();
+
+      if (myBreakpoints.isEmpty()) {
+        finished();
+        return;
+      }
+
+      addRequest(() -> {
+        for (Trinity<String, XSourcePosition, VmServiceConsumers.BreakpointConsumerWrapper> breakpoint : myBreakpoints) {
+          final int line = breakpoint.second.getLine() + 1;
+          for (String uri : getUrisForFile(breakpoint.second.getFile())) {
+            myRequests.add(new BreakpointRequest(breakpoint.first, uri, line, breakpoint.third));
+          }
+        }
+
+        if (myRequests.isEmpty()) {
+          finished();
+          return;
+        }
+
+        myRemainingRequestsCount.set(myRequests.size());
+        for (int i = 0; i < MAX_PENDING_BREAKPOINT_REQUESTS; i++) {
+          sendNextRequest();
+        }
+      });
+    }
+
+    private void sendNextRequest() {
+      final int index = myNextRequestIndex.getAndIncrement();
+      if (index >= myRequests.size()) return;
+
+      final BreakpointRequest request = myRequests.get(index);
+      myVmService.addBreakpointWithScriptUri(request.myIsolateId, request.myScriptUri, request.myLine, new BreakpointConsumer() {
+        @Override
+        public void received(Breakpoint vmBreakpoint) {
+          request.myConsumer.received(vmBreakpoint);
+          requestDone();
+        }
+
+        @Override
+        public void onError(RPCError error) {
+          request.myConsumer.onError(error);
+          requestDone();
+        }
+      });
+    }
+
+    private void requestDone() {
+      if (myRemainingRequestsCount.decrementAndGet() == 0) {
+        finished();
+      }
+      else {
+        // responses come in Web Socket listening thread, requests are sent from the scheduler thread
+        addRequest(this::sendNextRequest);
+      }
+    }
+
+    private void finished() {
+      if (!myRequests.isEmpty() && LOG.isDebugEnabled()) {
+        LOG.debug("Breakpoints set for " + myTargetName + ": " + myBreakpoints.size() + " breakpoints, " +
+                 myRequests.size() + " requests, " + (System.currentTimeMillis() - myStartTime) + " ms");
+      }
+
+      if (myOnFinished != null) {
+        myOnFinished.run();
+      }
+    }
+  }
+
+  private static class BreakpointRequest {
+    @NotNull private final String myIsolateId;
+    @NotNull private final String myScriptUri;
+    private final int myLine;
+    @NotNull private final VmServiceConsumers.BreakpointConsumerWrapper myConsumer;
+
+    private BreakpointRequest(@NotNull final String isolateId,
+                              @NotNull final String scriptUri,
+                              final int line,
+                              @NotNull final VmServiceConsumers.BreakpointConsumerWrapper consumer) {
+      myIsolateId = isolateId;
+      myScriptUri = scriptUri;
+      myLine = line;
+      myConsumer = consumer;
+    }
+  }
 }
@@ -30,6 +30,9 @@ public class DartVmServiceValue extends XNamedValue {
   private static final LayeredIcon STATIC_FINAL_FIELD_ICON =
     new LayeredIcon(AllIcons.Nodes.Field, AllIcons.Nodes.StaticMark, AllIcons.Nodes.FinalMark);
 
+  // longer collections are shown as ranges of indices instead of pages of 'more' elements
+  private static final int COLLECTION_PARTITION_THRESHOLD = 1000;
+
   @NotNull private final DartVmServiceDebugProcess myDebugProcess;
   @NotNull private final String myIsolateId;
   @NotNull private final InstanceRef myInstanceRef;
@@ -342,26 +345,60 @@ public class DartVmServiceValue extends XNamedValue {
   }
 
   private void computeCollectionChildren(@NotNull final XCompositeNode node) {
+    final int length = myInstanceRef.getLength();
+    if (length > COLLECTION_PARTITION_THRESHOLD) {
+      addCollectionPartitions(node, 0, length);
+      return;
+    }
+
     final int offset = myCollectionChildrenAlreadyShown.get();
-    final int count = Math.min(myInstanceRef.getLength() - offset, XCompositeNode.MAX_CHILDREN_TO_SHOW);
+    final int count = Math.min(length - offset, XCompositeNode.MAX_CHILDREN_TO_SHOW);
+
+    computeCollectionChildren(node, offset, count, () -> {
+      myCollectionChildrenAlreadyShown.set(offset + count);
+
+      if (offset + count < length) {
+        node.tooManyChildren(length - offset - count);
+      }
+    });
+  }
+
+  /**
+   * Huge collections are shown as a tree of index ranges; each range has at most {@link XCompositeNode#MAX_CHILDREN_TO_SHOW} children,
+   * and elements are requested from the VM only when a leaf range is expanded.
+   */
+  private void addCollectionPartitions(@NotNull final XCompositeNode node, final int offset, final int count) {
+    int partitionSize = XCompositeNode.MAX_CHILDREN_TO_SHOW;
+    while (count / partitionSize > XCompositeNode.MAX_CHILDREN_TO_SHOW) {
+      partitionSize *= XCompositeNode.MAX_CHILDREN_TO_SHOW;
+    }
+
+    final XValueChildrenList childrenList = new XValueChildrenList();
+    for (int start = offset; start < offset + count; start += partitionSize) {
+      childrenList.addTopGroup(new CollectionPartition(start, Math.min(partitionSize, offset + count - start)));
+    }
+    node.addChildren(childrenList, true);
+  }
 
+  private void computeCollectionChildren(@NotNull final XCompositeNode node,
+                                         final int offset,
+                                         final int count,
+                                         @Nullable final Runnable afterChildrenAdded) {
     myDebugProcess.getVmServiceWrapper().getCollectionObject(myIsolateId, myInstanceRef.getId(), offset, count, new GetObjectConsumer() {
       @Override
       public void received(Obj instance) {
         if (isListKind(myInstanceRef.getKind())) {
-          addListChildren(node, ((Instance)instance).getElements());
+          addListChildren(node, ((Instance)instance).getElements(), offset);
         }
         else if (myInstanceRef.getKind() == InstanceKind.Map) {
-          addMapChildren(node, ((Instance)instance).getAssociations());
+          addMapChildren(node, ((Instance)instance).getAssociations(), offset);
         }
         else {
           assert false : myInstanceRef.getKind();
         }
 
-        myCollectionChildrenAlreadyShown.set(myCollectionChildrenAlreadyShown.get() + count);
-
-        if (offset + count < myInstanceRef.getLength()) {
-          node.tooManyChildren(myInstanceRef.getLength() - offset - count);
+        if (afterChildrenAdded != null) {
+          afterChildrenAdded.run();
         }
       }
 
@@ -377,23 +414,27 @@ public class DartVmServiceValue extends XNamedValue {
     });
   }
 
-  private void addListChildren(@NotNull final XCompositeNode node, @Nullable final ElementList<InstanceRef> listElements) {
+  private void addListChildren(@NotNull final XCompositeNode node,
+                               @Nullable final ElementList<InstanceRef> listElements,
+                               final int firstIndex) {
     if (listElements == null) {
       node.addChildren(XValueChildrenList.EMPTY, true);
       return;
     }
 
     final XValueChildrenList childrenList = new XValueChildrenList(listElements.size());
-    int index = myCollectionChildrenAlreadyShown.get();
+    int index = firstIndex;
     for (InstanceRef listElement : listElements) {
       childrenList.add(new DartVmServiceValue(myDebugProcess, myIsolateId, String.valueOf(index++), listElement, null, null, false));
     }
     node.addChildren(childrenList, true);
   }
 
-  private void addMapChildren(@NotNull final XCompositeNode node, @NotNull final ElementList<MapAssociation> mapAssociations) {
+  private void addMapChildren(@NotNull final XCompositeNode node,
+                              @NotNull final ElementList<MapAssociation> mapAssociations,
+                              final int firstIndex) {
     final XValueChildrenList childrenList = new XValueChildrenList(mapAssociations.size());
-    int index = myCollectionChildrenAlreadyShown.get();
+    int index = firstIndex;
     for (MapAssociation mapAssociation : mapAssociations) {
       final InstanceRef keyInstanceRef = mapAssociation.getKey();
       final InstanceRef valueInstanceRef = mapAssociation.getValue();
@@ -477,6 +518,27 @@ public class DartVmServiceValue extends XNamedValue {
     return myInstanceRef;
   }
 
+  private class CollectionPartition extends XValueGroup {
+    private final int myOffset;
+    private final int myCount;
+
+    private CollectionPartition(final int offset, final int count) {
+      super("[" + offset + ".." + (offset + count - 1) + "]");
+      myOffset = offset;
+      myCount = count;
+    }
+
+    @Override
+    public void computeChildren(@NotNull final XCompositeNode node) {
+      if (myCount > XCompositeNode.MAX_CHILDREN_TO_SHOW) {
+        addCollectionPartitions(node, myOffset, myCount);
+      }
+      else {
+        computeCollectionChildren(node, myOffset, myCount, null);
+      }
+    }
+  }
+
   static class LocalVarSourceLocation {
     @NotNull private final ScriptRef myScriptRef;
     private final int myTokenPos;
@@ -1,6 +1,9 @@
 package com.jetbrains.lang.dart.ide.runner.test;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 import com.intellij.execution.testframework.TestConsoleProperties;
 import com.intellij.execution.testframework.sm.ServiceMessageBuilder;
 import com.intellij.execution.testframework.sm.runner.OutputToGeneralTestEventsConverter;
@@ -11,17 +14,18 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.PathUtil;
 import com.jetbrains.lang.dart.ide.runner.util.DartTestLocationProvider;
 import com.jetbrains.lang.dart.util.DartUrlResolver;
+import gnu.trove.TIntArrayList;
 import gnu.trove.TIntLongHashMap;
+import gnu.trove.TIntObjectHashMap;
 import jetbrains.buildServer.messages.serviceMessages.ServiceMessageVisitor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.StringReader;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,6 +35,10 @@ import java.util.regex.Pattern;
  * NOTE: The test runner runs tests asynchronously. It is possible to get a 'testDone'
  * event followed some time later by an 'error' event for that same test. That should
  * convert a successful test into a failure. That case is not being handled.
+ * <p>
+ * Events are read with a pull parser straight into {@link Event} objects, no JSON tree is built per line. Tests are kept
+ * in int-keyed maps only while they may still get events: tests of a suite are released as soon as its root group is done. Only
+ * a {@link ReleasedTest} record is kept for them, an error or output that comes after that is still reported for the test.
  */
 public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter {
   private static final Logger LOG = Logger.getInstance(DartTestEventsConverter.class.getName());
@@ -91,9 +99,10 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   private Key myCurrentOutputType;
   private ServiceMessageVisitor myCurrentVisitor;
   private final TIntLongHashMap myTestIdToTimestamp;
-  private final Map<Integer, Test> myTestData;
-  private final Map<Integer, Group> myGroupData;
-  private final Map<Integer, Suite> mySuiteData;
+  private final TIntObjectHashMap<Test> myTestData;
+  private final TIntObjectHashMap<ReleasedTest> myReleasedTests;
+  private final TIntObjectHashMap<Group> myGroupData;
+  private final TIntObjectHashMap<Suite> mySuiteData;
   private int mySuitCount;
 
   public DartTestEventsConverter(@NotNull final String testFrameworkName,
@@ -102,9 +111,10 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     super(testFrameworkName, consoleProperties);
     myUrlResolver = urlResolver;
     myTestIdToTimestamp = new TIntLongHashMap();
-    myTestData = new HashMap<>();
-    myGroupData = new HashMap<>();
-    mySuiteData = new HashMap<>();
+    myTestData = new TIntObjectHashMap<>();
+    myReleasedTests = new TIntObjectHashMap<>();
+    myGroupData = new TIntObjectHashMap<>();
+    mySuiteData = new TIntObjectHashMap<>();
   }
 
   @Override
@@ -118,6 +128,12 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   }
 
   private boolean processEventText(final String text) throws JsonSyntaxException, ParseException {
+    final Event event = Event.parse(text);
+    if (event != null) {
+      return process(event);
+    }
+
+    // not a JSON object
     JsonParser jp = new JsonParser();
     JsonElement elem;
     try {
@@ -134,8 +150,7 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
 
       return doProcessServiceMessages(text);
     }
-    if (elem == null || !elem.isJsonObject()) return false;
-    return process(elem.getAsJsonObject());
+    return false;
   }
 
   private boolean doProcessServiceMessages(@NotNull final String text) throws ParseException {
@@ -143,46 +158,47 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return super.processServiceMessages(text, myCurrentOutputType, myCurrentVisitor);
   }
 
-  private boolean process(JsonObject obj) throws JsonSyntaxException, ParseException {
-    String type = obj.get(JSON_TYPE).getAsString();
+  private boolean process(@NotNull final Event event) throws ParseException {
+    String type = event.myType;
     if (TYPE_TEST_START.equals(type)) {
-      return handleTestStart(obj);
+      return handleTestStart(event);
     }
     else if (TYPE_TEST_DONE.equals(type)) {
-      return handleTestDone(obj);
+      return handleTestDone(event);
     }
     else if (TYPE_ERROR.equals(type)) {
-      return handleError(obj);
+      return handleError(event);
     }
     else if (TYPE_PRINT.equals(type)) {
-      return handlePrint(obj);
+      return handlePrint(event);
     }
     else if (TYPE_GROUP.equals(type)) {
-      return handleGroup(obj);
+      return handleGroup(event);
     }
     else if (TYPE_SUITE.equals(type)) {
-      return handleSuite(obj);
+      return handleSuite(event);
     }
     else if (TYPE_ALL_SUITES.equals(type)) {
-      return handleAllSuites(obj);
+      return handleAllSuites(event);
     }
     else if (TYPE_START.equals(type)) {
-      return handleStart(obj);
+      return handleStart(event);
     }
     else if (TYPE_DONE.equals(type)) {
-      return handleDone(obj);
+      return handleDone(event);
     }
     else {
       return true;
     }
   }
 
-  private boolean handleTestStart(JsonObject obj) throws ParseException {
-    final JsonObject testObj = obj.getAsJsonObject(DEF_TEST);
+  private boolean handleTestStart(@NotNull final Event event) throws ParseException {
+    final ItemData testData = event.myTest;
+    if (testData == null || !testData.myHasId) throw new ParseException("No test in testStart event", 0);
 
-    // Not reached if testObj == null.
-    final Test test = getTest(obj);
-    myTestIdToTimestamp.put(test.getId(), getTimestamp(obj));
+    final Test test = Test.from(testData, myGroupData, mySuiteData);
+    myTestData.put(test.getId(), test);
+    myTestIdToTimestamp.put(test.getId(), getTimestamp(event));
 
     if (shouldTestBeHiddenIfPassed(test)) {
       // Virtual test that represents loading or compiling a test suite. See lib/src/runner/loader.dart -> Loader.loadFile() in pkg/test source code
@@ -205,13 +221,12 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     final ServiceMessageBuilder testStarted = ServiceMessageBuilder.testStarted(test.getBaseName());
     test.myTestStartReported = true;
 
-    addLocationHint(testStarted, test);
+    addLocationHint(testStarted, test, testData);
     boolean result = finishMessage(testStarted, test.getId(), test.getValidParentId());
 
-    final Metadata metadata = Metadata.from(testObj.getAsJsonObject(DEF_METADATA));
-    if (metadata.skip) {
+    if (testData.mySkip) {
       final ServiceMessageBuilder message = ServiceMessageBuilder.testIgnored(test.getBaseName());
-      if (metadata.skipReason != null) message.addAttribute("message", metadata.skipReason);
+      if (testData.mySkipReason != null) message.addAttribute("message", testData.mySkipReason);
       result &= finishMessage(message, test.getId(), test.getValidParentId());
     }
 
@@ -230,14 +245,22 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
            group != null && group.getDoneTestsCount() > 0 && test.getBaseName().equals(TEAR_DOWN_ALL_VIRTUAL_TEST_NAME);
   }
 
-  private boolean handleTestDone(JsonObject obj) throws ParseException {
-    final Test test = getTest(obj);
+  private boolean handleTestDone(@NotNull final Event event) throws ParseException {
+    final Test test = findTest(event);
+    if (test == null) return true;
 
-    if (!test.myTestStartReported) return true;
+    if (!test.myTestStartReported) {
+      myTestIdToTimestamp.remove(test.getId());
+      if (test.getParent() == null) {
+        // passed 'loading' virtual test, its group-less data is not needed any more
+        myTestData.remove(test.getId());
+      }
+      return true;
+    }
 
-    String result = getResult(obj);
+    String result = getResult(event);
     if (!result.equals(RESULT_SUCCESS) && !result.equals(RESULT_FAILURE) && !result.equals(RESULT_ERROR)) {
-      throw new ParseException("Unknown result: " + obj, 0);
+      throw new ParseException("Unknown result: " + result, 0);
     }
 
     test.testDone();
@@ -245,7 +268,7 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     //if (test.getMetadata().skip) return true; // skipped tests are reported as ignored in handleTestStart(). testFinished signal must follow
 
     ServiceMessageBuilder testFinished = ServiceMessageBuilder.testFinished(test.getBaseName());
-    long duration = getTimestamp(obj) - myTestIdToTimestamp.get(test.getId());
+    long duration = getTimestamp(event) - myTestIdToTimestamp.remove(test.getId());
     testFinished.addAttribute("duration", Long.toString(duration));
 
     return finishMessage(testFinished, test.getId(), test.getValidParentId()) && checkGroupDone(test.getParent());
@@ -253,13 +276,36 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
 
   private boolean checkGroupDone(@Nullable final Group group) throws ParseException {
     if (group != null && group.getTestCount() > 0 && group.getDoneTestsCount() == group.getTestCount()) {
+      if (group.getParent() == null) {
+        releaseTests(group);
+      }
       return processGroupDone(group) && checkGroupDone(group.getParent());
     }
     return true;
   }
 
-  private boolean handleGroup(JsonObject obj) throws ParseException {
-    Group group = getGroup(obj.getAsJsonObject(DEF_GROUP));
+  /**
+   * Replaces tests of the test suite with {@link ReleasedTest} records when its root group is done, so that memory used by the converter
+   * doesn't grow much with the number of tests in the run. Groups are kept: (tearDownAll) virtual test of a group is started after all
+   * other tests are done.
+   */
+  private void releaseTests(@NotNull final Group group) {
+    final TIntArrayList testIds = group.myTestIds;
+    for (int i = 0; i < testIds.size(); i++) {
+      final Test test = myTestData.remove(testIds.get(i));
+      if (test != null) {
+        myReleasedTests.put(test.getId(), new ReleasedTest(test));
+      }
+    }
+    testIds.clear();
+  }
+
+  private boolean handleGroup(@NotNull final Event event) throws ParseException {
+    final ItemData groupData = event.myGroup;
+    if (groupData == null) throw new ParseException("Unexpected null json object", 0);
+
+    final Group group = Group.from(groupData, myGroupData, mySuiteData);
+    if (groupData.myHasId) myGroupData.put(group.getId(), group);
 
     // From spec: The implicit group at the root of each test suite has null name and parentID attributes.
     if (group.getParent() == null && group.getTestCount() > 0) {
@@ -273,21 +319,26 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     if (group.isArtificial()) return true; // Ignore artificial groups.
     ServiceMessageBuilder groupMsg = ServiceMessageBuilder.testSuiteStarted(group.getBaseName());
     // Possible attributes: "nodeType" "nodeArgs" "running"
-    addLocationHint(groupMsg, group);
+    addLocationHint(groupMsg, group, groupData);
     return finishMessage(groupMsg, group.getId(), group.getValidParentId());
   }
 
-  private boolean handleSuite(JsonObject obj) throws ParseException {
-    Suite suite = getSuite(obj.getAsJsonObject(DEF_SUITE));
-    if (!suite.hasPath()) {
-      mySuiteData.remove(suite.getId());
+  private boolean handleSuite(@NotNull final Event event) throws ParseException {
+    final ItemData suiteData = event.mySuite;
+    if (suiteData == null) throw new ParseException("Unexpected null json object", 0);
+
+    final Suite suite = Suite.from(suiteData);
+    if (suiteData.myHasId && suite.hasPath()) {
+      mySuiteData.put(suite.getId(), suite);
     }
     return true;
   }
 
-  private boolean handleError(JsonObject obj) throws ParseException {
-    final Test test = getTest(obj);
-    final String message = getErrorMessage(obj);
+  private boolean handleError(@NotNull final Event event) throws ParseException {
+    final Test test = findTest(event);
+    if (test == null) return true;
+
+    final String message = getErrorMessage(event);
     boolean result = true;
 
     if (!test.myTestStartReported) {
@@ -323,13 +374,14 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
         }
       }
 
-      if (!getBoolean(obj, JSON_IS_FAILURE)) testError.addAttribute("error", "true");
+      if (event.myIsFailure == null) throw new ParseException("Value is not type boolean: " + JSON_IS_FAILURE, 0);
+      if (!event.myIsFailure) testError.addAttribute("error", "true");
       testError.addAttribute("message", appendLineBreakIfNeeded(failureMessage));
 
       result &= finishMessage(testError, test.getId(), test.getValidParentId());
     }
 
-    final String stackTrace = getStackTrace(obj);
+    final String stackTrace = getStackTrace(event);
     if (!StringUtil.isEmptyOrSpaces(stackTrace)) {
       final ServiceMessageBuilder stackTraceMessage = ServiceMessageBuilder.testStdErr(test.getBaseName());
       stackTraceMessage.addAttribute("out", appendLineBreakIfNeeded(stackTrace));
@@ -344,15 +396,16 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return message.endsWith("\n") ? message : message + "\n";
   }
 
-  private boolean handleAllSuites(JsonObject obj) {
-    JsonElement elem = obj.get(JSON_COUNT);
-    if (elem == null || !elem.isJsonPrimitive()) return true;
-    mySuitCount = elem.getAsInt();
+  private boolean handleAllSuites(@NotNull final Event event) {
+    if (event.myCount == null) return true;
+    mySuitCount = event.myCount;
     return true;
   }
 
-  private boolean handlePrint(JsonObject obj) throws ParseException {
-    final Test test = getTest(obj);
+  private boolean handlePrint(@NotNull final Event event) throws ParseException {
+    final Test test = findTest(event);
+    if (test == null) return true;
+
     boolean result = true;
 
     if (!test.myTestStartReported) {
@@ -366,14 +419,15 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     }
 
     ServiceMessageBuilder message = ServiceMessageBuilder.testStdOut(test.getBaseName());
-    message.addAttribute("out", appendLineBreakIfNeeded(getMessage(obj)));
+    message.addAttribute("out", appendLineBreakIfNeeded(getMessage(event)));
 
     return result & finishMessage(message, test.getId(), test.getValidParentId());
   }
 
-  private boolean handleStart(JsonObject obj) throws ParseException {
+  private boolean handleStart(@NotNull final Event event) throws ParseException {
     myTestIdToTimestamp.clear();
     myTestData.clear();
+    myReleasedTests.clear();
     myGroupData.clear();
     mySuiteData.clear();
     mySuitCount = 0;
@@ -381,7 +435,7 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return doProcessServiceMessages(new ServiceMessageBuilder("enteredTheMatrix").toString());
   }
 
-  private boolean handleDone(JsonObject obj) throws ParseException {
+  private boolean handleDone(@NotNull final Event event) throws ParseException {
     // The test runner has reached the end of the tests.
     processAllTestsDone();
     return true;
@@ -389,7 +443,8 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
 
   private void processAllTestsDone() {
     // All tests are done.
-    for (Group group : myGroupData.values()) {
+    for (Object o : myGroupData.getValues()) {
+      final Group group = (Group)o;
       // For package: test prior to v. 0.12.9 there were no Group.testCount field, so need to finish them all at the end.
       // AFAIK the order does not matter. A depth-first post-order traversal of the tree would work
       // if order does matter. Note: Currently, there is no tree representation, just parent links.
@@ -405,6 +460,7 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     }
     myTestIdToTimestamp.clear();
     myTestData.clear();
+    myReleasedTests.clear();
     myGroupData.clear();
     mySuiteData.clear();
     mySuitCount = 0;
@@ -423,11 +479,13 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return doProcessServiceMessages(msg.toString());
   }
 
-  private void addLocationHint(ServiceMessageBuilder messageBuilder, Item item) {
+  private void addLocationHint(@NotNull final ServiceMessageBuilder messageBuilder,
+                               @NotNull final Item item,
+                               @NotNull final ItemData itemData) {
     String location = "unknown";
     String loc;
 
-    final VirtualFile file = item.getUrl() == null ? null : myUrlResolver.findFileByDartUrl(item.getUrl());
+    final VirtualFile file = itemData.myUrl == null ? null : myUrlResolver.findFileByDartUrl(itemData.myUrl);
     if (file != null) {
       loc = FILE_URL_PREFIX + file.getPath();
     }
@@ -440,107 +498,62 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
 
     if (loc != null) {
       String nameList = GSON.toJson(item.nameList(), DartTestLocationProvider.STRING_LIST_TYPE);
-      location = loc + "," + item.getLine() + "," + item.getColumn() + "," + nameList;
+      location = loc + "," + itemData.getLine() + "," + itemData.getColumn() + "," + nameList;
     }
 
     messageBuilder.addAttribute("locationHint", location);
   }
 
-  private static long getTimestamp(JsonObject obj) throws ParseException {
-    return getLong(obj, JSON_MILLIS);
-  }
-
-  private static long getLong(JsonObject obj, String name) throws ParseException {
-    JsonElement val = obj == null ? null : obj.get(name);
-    if (val == null || !val.isJsonPrimitive()) throw new ParseException("Value is not type long: " + val, 0);
-    return val.getAsLong();
-  }
-
-  private static boolean getBoolean(JsonObject obj, String name) throws ParseException {
-    JsonElement val = obj == null ? null : obj.get(name);
-    if (val == null || !val.isJsonPrimitive()) throw new ParseException("Value is not type boolean: " + val, 0);
-    return val.getAsBoolean();
-  }
-
-  @NotNull
-  private Test getTest(JsonObject obj) throws ParseException {
-    return getItem(obj, myTestData);
-  }
-
-  @NotNull
-  private Group getGroup(JsonObject obj) throws ParseException {
-    return getItem(obj, myGroupData);
-  }
-
-  @NotNull
-  private Suite getSuite(JsonObject obj) throws ParseException {
-    return getItem(obj, mySuiteData);
+  private static long getTimestamp(@NotNull final Event event) throws ParseException {
+    if (event.myTime == null) throw new ParseException("Value is not type long: " + JSON_MILLIS, 0);
+    return event.myTime;
   }
 
-  @NotNull
-  private <T extends Item> T getItem(JsonObject obj, Map<Integer, T> items) throws ParseException {
-    if (obj == null) throw new ParseException("Unexpected null json object", 0);
-    T item;
-    JsonElement id = obj.get(JSON_ID);
-    if (id != null) {
-      if (items == myTestData) {
-        @SuppressWarnings("unchecked") T type = (T)Test.from(obj, myGroupData, mySuiteData);
-        item = type;
-      }
-      else if (items == myGroupData) {
-        @SuppressWarnings("unchecked") T group = (T)Group.from(obj, myGroupData, mySuiteData);
-        item = group;
-      }
-      else {
-        @SuppressWarnings("unchecked") T suite = (T)Suite.from(obj);
-        item = suite;
-      }
-      items.put(id.getAsInt(), item);
-    }
-    else {
-      JsonElement testId = obj.get(JSON_TEST_ID);
-      if (testId != null) {
-        int baseId = testId.getAsInt();
-        item = items.get(baseId);
+  /**
+   * Events other than testStart refer to the test by id. A released test is restored if an error or output comes for it after its
+   * suite is done. Returns {@code null} if the test is unknown.
+   */
+  @Nullable
+  private Test findTest(@NotNull final Event event) throws ParseException {
+    if (event.myTestId == null) throw new ParseException("No testId in json object", 0);
+
+    Test test = myTestData.get(event.myTestId);
+    if (test == null) {
+      final ReleasedTest releasedTest = myReleasedTests.remove(event.myTestId);
+      test = releasedTest == null ? null : releasedTest.restore(event.myTestId, myGroupData);
+      if (test != null) {
+        myTestData.put(test.getId(), test);
       }
       else {
-        JsonElement testObj = obj.get(DEF_TEST);
-        if (testObj != null) {
-          return getItem(testObj.getAsJsonObject(), items);
-        }
-        else {
-          throw new ParseException("No testId in json object", 0);
-        }
+        LOG.debug("Unknown test: " + event.myTestId);
       }
     }
-    return item;
+    return test;
   }
 
   @NotNull
-  private static String getErrorMessage(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_ERROR_MESSAGE, "<no error message>");
+  private static String getErrorMessage(@NotNull final Event event) {
+    return nonNullJsonValue(event.myError, "<no error message>");
   }
 
   @NotNull
-  private static String getMessage(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_MESSAGE, "<no message>");
+  private static String getMessage(@NotNull final Event event) {
+    return nonNullJsonValue(event.myMessage, "<no message>");
   }
 
   @NotNull
-  private static String getStackTrace(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_STACK_TRACE, "<no stack trace>");
+  private static String getStackTrace(@NotNull final Event event) {
+    return nonNullJsonValue(event.myStackTrace, "<no stack trace>");
   }
 
   @NotNull
-  private static String getResult(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_RESULT, "<no result>");
+  private static String getResult(@NotNull final Event event) {
+    return nonNullJsonValue(event.myResult, "<no result>");
   }
 
   @NotNull
-  private static String nonNullJsonValue(JsonObject obj, @NotNull String id, @NotNull String def) {
-    JsonElement val = obj == null ? null : obj.get(id);
-    if (val == null || !val.isJsonPrimitive()) return def;
-    return val.getAsString();
+  private static String nonNullJsonValue(@Nullable final String value, @NotNull String def) {
+    return value == null ? def : value;
   }
 
   private static class Item {
@@ -549,46 +562,12 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     private final String myName;
     private final Group myParent;
     private final Suite mySuite;
-    private final Metadata myMetadata;
-    private final int myLine;
-    private final int myColumn;
-    private final String myUrl;
-
-    static int extractInt(JsonObject obj, String memberName) {
-      JsonElement elem = obj.get(memberName);
-      if (elem == null || !elem.isJsonPrimitive()) return -1;
-      return elem.getAsInt();
-    }
-
-    static String extractString(JsonObject obj, String memberName, String defaultResult) {
-      JsonElement elem = obj.get(memberName);
-      if (elem == null || elem.isJsonNull()) return defaultResult;
-      return elem.getAsString();
-    }
 
-    static Metadata extractMetadata(JsonObject obj) {
-      return Metadata.from(obj.get(DEF_METADATA));
-    }
-
-    static Suite lookupSuite(JsonObject obj, Map<Integer, Suite> suites) {
-      JsonElement suiteObj = obj.get(JSON_SUITE_ID);
-      Suite suite = null;
-      if (suiteObj != null && suiteObj.isJsonPrimitive()) {
-        int parentId = suiteObj.getAsInt();
-        suite = suites.get(parentId);
-      }
-      return suite;
-    }
-
-    Item(int id, String name, Group parent, Suite suite, Metadata metadata, int line, int column, String url) {
+    Item(int id, String name, Group parent, Suite suite) {
       myId = id;
       myName = name;
       myParent = parent;
       mySuite = suite;
-      myMetadata = metadata;
-      myLine = line;
-      myColumn = column;
-      myUrl = url;
     }
 
     int getId() {
@@ -643,10 +622,6 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
       return myParent;
     }
 
-    Metadata getMetadata() {
-      return myMetadata;
-    }
-
     boolean isArtificial() {
       return NO_NAME.equals(myName) && myParent == null && !hasSuite();
     }
@@ -682,18 +657,6 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
       names.add(StringUtil.escapeStringCharacters(getBaseName()));
     }
 
-    public int getLine() {
-      return myLine;
-    }
-
-    public int getColumn() {
-      return myColumn;
-    }
-
-    public String getUrl() {
-      return myUrl;
-    }
-
     public String toString() {
       return getClass().getSimpleName() + "(" + myId + "," + myName + ")";
     }
@@ -703,21 +666,25 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     private boolean myTestStartReported = false;
     private boolean myTestErrorReported = false;
 
-    static Test from(JsonObject obj, Map<Integer, Group> groups, Map<Integer, Suite> suites) {
-      int[] groupIds = GSON.fromJson(obj.get(JSON_GROUP_IDS), (Type)int[].class);
+    static Test from(ItemData data, TIntObjectHashMap<Group> groups, TIntObjectHashMap<Suite> suites) {
+      int[] groupIds = data.myGroupIds;
       Group parent = null;
       if (groupIds != null && groupIds.length > 0) {
         parent = groups.get(groupIds[groupIds.length - 1]);
       }
-      Suite suite = lookupSuite(obj, suites);
-      final int line = extractInt(obj, JSON_LINE);
-      final int column = extractInt(obj, JSON_COLUMN);
-      return new Test(extractInt(obj, JSON_ID), extractString(obj, JSON_NAME, NO_NAME), parent, suite, extractMetadata(obj),
-                      line < 0 ? -1 : line - 1, column < 0 ? -1 : column - 1, extractString(obj, JSON_URL, null));
+      final Test test = new Test(data.myId, data.getName(), parent, data.lookupSuite(suites));
+      if (parent != null) {
+        Group root = parent;
+        while (root.getParent() != null) {
+          root = root.getParent();
+        }
+        root.myTestIds.add(test.getId());
+      }
+      return test;
     }
 
-    Test(int id, String name, Group parent, Suite suite, Metadata metadata, int line, int column, String url) {
-      super(id, name, parent, suite, metadata, line, column, url);
+    Test(int id, String name, Group parent, Suite suite) {
+      super(id, name, parent, suite);
     }
 
     public void testDone() {
@@ -727,27 +694,47 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     }
   }
 
+  /**
+   * What is kept of a test after its suite is done, see {@link #releaseTests(Group)}.
+   */
+  private static class ReleasedTest {
+    private final String myName;
+    private final int myParentId;
+    private final boolean myTestStartReported;
+    private final boolean myTestErrorReported;
+
+    ReleasedTest(@NotNull final Test test) {
+      myName = test.getName();
+      myParentId = test.getParent().getId(); // only tests with a group are released
+      myTestStartReported = test.myTestStartReported;
+      myTestErrorReported = test.myTestErrorReported;
+    }
+
+    @Nullable
+    Test restore(final int id, @NotNull final TIntObjectHashMap<Group> groups) {
+      final Group parent = groups.get(myParentId);
+      if (parent == null) return null;
+
+      final Test test = new Test(id, myName, parent, parent.getSuite());
+      test.myTestStartReported = myTestStartReported;
+      test.myTestErrorReported = myTestErrorReported;
+      return test;
+    }
+  }
+
   private static class Group extends Item {
     private int myTestCount = 0;
     private int myDoneTestsCount = 0;
+    // for the root group of a suite: all tests of the suite, see releaseTests()
+    private final TIntArrayList myTestIds = new TIntArrayList();
 
-    static Group from(JsonObject obj, Map<Integer, Group> groups, Map<Integer, Suite> suites) {
-      JsonElement parentObj = obj.get(JSON_PARENT_ID);
-      Group parent = null;
-      if (parentObj != null && parentObj.isJsonPrimitive()) {
-        int parentId = parentObj.getAsInt();
-        parent = groups.get(parentId);
-      }
-      Suite suite = lookupSuite(obj, suites);
-      final int line = extractInt(obj, JSON_LINE);
-      final int column = extractInt(obj, JSON_COLUMN);
-      return new Group(extractInt(obj, JSON_ID), extractString(obj, JSON_NAME, NO_NAME), parent, suite, extractMetadata(obj),
-                       extractInt(obj, JSON_TEST_COUNT), line < 0 ? -1 : line - 1, column < 0 ? -1 : column - 1,
-                       extractString(obj, JSON_URL, null));
+    static Group from(ItemData data, TIntObjectHashMap<Group> groups, TIntObjectHashMap<Suite> suites) {
+      final Group parent = data.myParentId == null ? null : groups.get(data.myParentId);
+      return new Group(data.myId, data.getName(), parent, data.lookupSuite(suites), data.myTestCount);
     }
 
-    Group(int id, String name, Group parent, Suite suite, Metadata metadata, int count, int line, int column, String url) {
-      super(id, name, parent, suite, metadata, line, column, url);
+    Group(int id, String name, Group parent, Suite suite, int count) {
+      super(id, name, parent, suite);
       myTestCount = count;
     }
 
@@ -769,17 +756,16 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   }
 
   private static class Suite extends Item {
-    static Metadata NoMetadata = new Metadata();
     static String NONE = "<none>";
 
-    static Suite from(JsonObject obj) {
-      return new Suite(extractInt(obj, JSON_ID), extractString(obj, JSON_PATH, NONE), extractString(obj, JSON_PLATFORM, NONE));
+    static Suite from(ItemData data) {
+      return new Suite(data.myId, data.myPath == null ? NONE : data.myPath, data.myPlatform == null ? NONE : data.myPlatform);
     }
 
     private final String myPlatform;
 
     Suite(int id, String path, String platform) {
-      super(id, path, null, null, NoMetadata, -1, -1, "file://" + path);
+      super(id, path, null, null);
       myPlatform = platform;
     }
 
@@ -796,13 +782,260 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     }
   }
 
-  private static class Metadata {
-    @SuppressWarnings("unused") private boolean skip; // assigned by GSON via reflection
-    @SuppressWarnings("unused") private String skipReason; // assigned by GSON via reflection
+  /**
+   * Fields of a JSON reporter event used by the converter, read with a pull parser. Values of unexpected types are treated as absent.
+   */
+  private static class Event {
+    @Nullable private String myType;
+    @Nullable private Long myTime;
+    @Nullable private Integer myTestId;
+    @Nullable private Integer myCount;
+    @Nullable private Boolean myIsFailure;
+    @Nullable private String myResult;
+    @Nullable private String myMessage;
+    @Nullable private String myError;
+    @Nullable private String myStackTrace;
+    @Nullable private ItemData myTest;
+    @Nullable private ItemData myGroup;
+    @Nullable private ItemData mySuite;
+
+    /**
+     * Returns {@code null} if the text is not a well-formed JSON object.
+     */
+    @Nullable
+    static Event parse(@NotNull final String text) {
+      int start = 0;
+      while (start < text.length() && Character.isWhitespace(text.charAt(start))) start++;
+      if (start == text.length() || text.charAt(start) != '{') return null;
+
+      final JsonReader reader = new JsonReader(new StringReader(text));
+      reader.setLenient(true);
+      try {
+        final Event event = new Event();
+        reader.beginObject();
+        while (reader.hasNext()) {
+          switch (reader.nextName()) {
+            case JSON_TYPE:
+              event.myType = readString(reader);
+              break;
+            case JSON_MILLIS:
+              event.myTime = readLong(reader);
+              break;
+            case JSON_TEST_ID:
+              event.myTestId = readInt(reader);
+              break;
+            case JSON_COUNT:
+              event.myCount = readInt(reader);
+              break;
+            case JSON_IS_FAILURE:
+              event.myIsFailure = readBoolean(reader);
+              break;
+            case JSON_RESULT:
+              event.myResult = readString(reader);
+              break;
+            case JSON_MESSAGE:
+              event.myMessage = readString(reader);
+              break;
+            case JSON_ERROR_MESSAGE:
+              event.myError = readString(reader);
+              break;
+            case JSON_STACK_TRACE:
+              event.myStackTrace = readString(reader);
+              break;
+            case DEF_TEST:
+              event.myTest = ItemData.read(reader);
+              break;
+            case DEF_GROUP:
+              event.myGroup = ItemData.read(reader);
+              break;
+            case DEF_SUITE:
+              event.mySuite = ItemData.read(reader);
+              break;
+            default:
+              reader.skipValue();
+          }
+        }
+        reader.endObject();
+
+        if (reader.peek() != JsonToken.END_DOCUMENT) throw new MalformedJsonException("Unexpected text after JSON object");
+        return event;
+      }
+      catch (IOException | IllegalStateException | NumberFormatException e) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Fields of 'test', 'group' and 'suite' JSON objects. Location and metadata are needed only while handling the event
+   * and are not kept in {@link Item}s.
+   */
+  private static class ItemData {
+    private boolean myHasId;
+    private int myId = -1;
+    @Nullable private String myName;
+    @Nullable private Integer myParentId;
+    @Nullable private Integer mySuiteId;
+    @Nullable private int[] myGroupIds;
+    private boolean mySkip;
+    @Nullable private String mySkipReason;
+    private int myLine = -1;
+    private int myColumn = -1;
+    @Nullable private String myUrl;
+    private int myTestCount = -1;
+    @Nullable private String myPath;
+    @Nullable private String myPlatform;
+
+    @NotNull
+    String getName() {
+      return myName == null ? Item.NO_NAME : myName;
+    }
+
+    int getLine() {
+      return myLine < 0 ? -1 : myLine - 1;
+    }
+
+    int getColumn() {
+      return myColumn < 0 ? -1 : myColumn - 1;
+    }
+
+    @Nullable
+    Suite lookupSuite(@NotNull final TIntObjectHashMap<Suite> suites) {
+      return mySuiteId == null ? null : suites.get(mySuiteId);
+    }
+
+    @Nullable
+    static ItemData read(@NotNull final JsonReader reader) throws IOException {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        reader.skipValue();
+        return null;
+      }
+
+      final ItemData data = new ItemData();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case JSON_ID:
+            data.myHasId = true;
+            final Integer id = readInt(reader);
+            data.myId = id == null ? -1 : id;
+            break;
+          case JSON_NAME:
+            data.myName = readString(reader);
+            break;
+          case JSON_PARENT_ID:
+            data.myParentId = readInt(reader);
+            break;
+          case JSON_SUITE_ID:
+            data.mySuiteId = readInt(reader);
+            break;
+          case JSON_GROUP_IDS:
+            data.myGroupIds = readIntArray(reader);
+            break;
+          case DEF_METADATA:
+            data.readMetadata(reader);
+            break;
+          case JSON_LINE:
+            final Integer line = readInt(reader);
+            data.myLine = line == null ? -1 : line;
+            break;
+          case JSON_COLUMN:
+            final Integer column = readInt(reader);
+            data.myColumn = column == null ? -1 : column;
+            break;
+          case JSON_URL:
+            data.myUrl = readString(reader);
+            break;
+          case JSON_TEST_COUNT:
+            final Integer testCount = readInt(reader);
+            data.myTestCount = testCount == null ? -1 : testCount;
+            break;
+          case JSON_PATH:
+            data.myPath = readString(reader);
+            break;
+          case JSON_PLATFORM:
+            data.myPlatform = readString(reader);
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return data;
+    }
+
+    private void readMetadata(@NotNull final JsonReader reader) throws IOException {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        reader.skipValue();
+        return;
+      }
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if ("skip".equals(name)) {
+          final Boolean skip = readBoolean(reader);
+          mySkip = skip != null && skip;
+        }
+        else if ("skipReason".equals(name)) {
+          mySkipReason = readString(reader);
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+  }
+
+  @Nullable
+  private static String readString(@NotNull final JsonReader reader) throws IOException {
+    final JsonToken token = reader.peek();
+    if (token == JsonToken.STRING || token == JsonToken.NUMBER) return reader.nextString();
+    if (token == JsonToken.BOOLEAN) return String.valueOf(reader.nextBoolean());
+    reader.skipValue();
+    return null;
+  }
+
+  @Nullable
+  private static Integer readInt(@NotNull final JsonReader reader) throws IOException {
+    final JsonToken token = reader.peek();
+    if (token == JsonToken.NUMBER || token == JsonToken.STRING) return reader.nextInt();
+    reader.skipValue();
+    return null;
+  }
+
+  @Nullable
+  private static Long readLong(@NotNull final JsonReader reader) throws IOException {
+    final JsonToken token = reader.peek();
+    if (token == JsonToken.NUMBER || token == JsonToken.STRING) return reader.nextLong();
+    reader.skipValue();
+    return null;
+  }
+
+  @Nullable
+  private static Boolean readBoolean(@NotNull final JsonReader reader) throws IOException {
+    final JsonToken token = reader.peek();
+    if (token == JsonToken.BOOLEAN) return reader.nextBoolean();
+    if (token == JsonToken.STRING) return Boolean.parseBoolean(reader.nextString());
+    reader.skipValue();
+    return null;
+  }
+
+  @Nullable
+  private static int[] readIntArray(@NotNull final JsonReader reader) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+      reader.skipValue();
+      return null;
+    }
 
-    static Metadata from(JsonElement elem) {
-      if (elem == null) return new Metadata();
-      return GSON.fromJson(elem, (Type)Metadata.class);
+    final TIntArrayList result = new TIntArrayList();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      final Integer value = readInt(reader);
+      result.add(value == null ? 0 : value);
     }
+    reader.endArray();
+    return result.toNativeArray();
   }
 }
@@ -0,0 +1,158 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.google.dart.server.internal.remote.processor;
+
+import com.google.dart.server.AnalysisServerListenerAdapter;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StreamingNotificationDecoderTest extends TestCase {
+
+  private static class RecordingListener extends AnalysisServerListenerAdapter {
+    private final List<Object> myEvents = new ArrayList<>();
+
+    @Override
+    public void computedErrors(String file, List<AnalysisError> errors) {
+      myEvents.add(file);
+      myEvents.add(errors);
+    }
+
+    @Override
+    public void computedHighlights(String file, List<HighlightRegion> highlights) {
+      myEvents.add(file);
+      myEvents.add(highlights);
+    }
+
+    @Override
+    public void computedNavigation(String file, List<NavigationRegion> targets) {
+      myEvents.add(file);
+      myEvents.add(targets);
+      for (NavigationRegion region : targets) {
+        for (NavigationTarget target : region.getTargetObjects()) {
+          myEvents.add(target.getFile());
+        }
+      }
+    }
+
+    @Override
+    public void computedOutline(String file, Outline outline) {
+      myEvents.add(file);
+      addOutline(outline);
+    }
+
+    private void addOutline(Outline outline) {
+      myEvents.add(outline.getElement());
+      myEvents.add(outline.getOffset());
+      myEvents.add(outline.getLength());
+      for (Outline child : outline.getChildren()) {
+        assertSame(outline, child.getParent());
+        addOutline(child);
+      }
+    }
+
+    @Override
+    public void computedCompletion(String completionId,
+                                   int replacementOffset,
+                                   int replacementLength,
+                                   List<CompletionSuggestion> completions,
+                                   boolean isLast) {
+      myEvents.add(completionId);
+      myEvents.add(replacementOffset);
+      myEvents.add(replacementLength);
+      myEvents.add(completions);
+      myEvents.add(isLast);
+    }
+  }
+
+  private static void doTest(final String line, final NotificationProcessor processor, final RecordingListener expected) throws Exception {
+    processor.process((JsonObject)new JsonParser().parse(line));
+
+    final RecordingListener actual = new RecordingListener();
+    assertTrue(new StreamingNotificationDecoder(actual).decode(line));
+    assertFalse(expected.myEvents.isEmpty());
+    assertEquals(expected.myEvents, actual.myEvents);
+  }
+
+  public void testErrors() throws Exception {
+    final RecordingListener expected = new RecordingListener();
+    doTest("{\"event\":\"analysis.errors\",\"params\":{\"file\":\"/a.dart\",\"errors\":[" +
+           "{\"severity\":\"ERROR\",\"type\":\"SYNTACTIC_ERROR\",\"location\":{\"file\":\"/a.dart\",\"offset\":1,\"length\":2," +
+           "\"startLine\":3,\"startColumn\":4},\"message\":\"msg\",\"correction\":\"fix it\",\"code\":\"c\",\"hasFix\":true}," +
+           "{\"severity\":\"INFO\",\"type\":\"LINT\",\"location\":{\"file\":\"/a.dart\",\"offset\":5,\"length\":6," +
+           "\"startLine\":7,\"startColumn\":8},\"message\":\"lint\",\"code\":\"l\"}]}}",
+           new NotificationAnalysisErrorsProcessor(expected), expected);
+  }
+
+  public void testHighlights() throws Exception {
+    final RecordingListener expected = new RecordingListener();
+    doTest("{\"event\":\"analysis.highlights\",\"params\":{\"file\":\"/a.dart\",\"regions\":[" +
+           "{\"type\":\"KEYWORD\",\"offset\":0,\"length\":5},{\"type\":\"CLASS\",\"offset\":6,\"length\":3}]}}",
+           new NotificationAnalysisHighlightsProcessor(expected), expected);
+  }
+
+  public void testNavigation() throws Exception {
+    final RecordingListener expected = new RecordingListener();
+    doTest("{\"event\":\"analysis.navigation\",\"params\":{\"file\":\"/a.dart\",\"regions\":[" +
+           "{\"offset\":0,\"length\":3,\"targets\":[1]},{\"offset\":5,\"length\":1,\"targets\":[0,1]}],\"targets\":[" +
+           "{\"kind\":\"CLASS\",\"fileIndex\":0,\"offset\":1,\"length\":2,\"startLine\":1,\"startColumn\":2}," +
+           "{\"kind\":\"METHOD\",\"fileIndex\":1,\"offset\":3,\"length\":4,\"startLine\":5,\"startColumn\":6}]," +
+           "\"files\":[\"/a.dart\",\"/b.dart\"]}}",
+           new NotificationAnalysisNavigationProcessor(expected), expected);
+  }
+
+  public void testOutline() throws Exception {
+    final RecordingListener expected = new RecordingListener();
+    doTest("{\"event\":\"analysis.outline\",\"params\":{\"file\":\"/a.dart\",\"kind\":\"LIBRARY\",\"outline\":" +
+           "{\"element\":{\"kind\":\"COMPILATION_UNIT\",\"name\":\"<unit>\",\"flags\":0},\"offset\":0,\"length\":20,\"children\":[" +
+           "{\"element\":{\"kind\":\"CLASS\",\"name\":\"A\",\"location\":{\"file\":\"/a.dart\",\"offset\":6,\"length\":1," +
+           "\"startLine\":1,\"startColumn\":7},\"flags\":1,\"typeParameters\":\"<T>\"},\"offset\":0,\"length\":10,\"children\":[" +
+           "{\"children\":[],\"element\":{\"kind\":\"METHOD\",\"name\":\"m\",\"flags\":0,\"parameters\":\"()\",\"returnType\":\"void\"}," +
+           "\"offset\":2,\"length\":3}]}]}}}",
+           new NotificationAnalysisOutlineProcessor(expected), expected);
+  }
+
+  public void testCompletionResults() throws Exception {
+    final RecordingListener expected = new RecordingListener();
+    doTest("{\"event\":\"completion.results\",\"params\":{\"id\":\"7\",\"replacementOffset\":10,\"replacementLength\":2,\"results\":[" +
+           "{\"kind\":\"INVOCATION\",\"relevance\":1000,\"completion\":\"foo\",\"selectionOffset\":3,\"selectionLength\":0," +
+           "\"isDeprecated\":false,\"isPotential\":false,\"declaringType\":\"A\",\"element\":{\"kind\":\"METHOD\",\"name\":\"foo\"," +
+           "\"flags\":0,\"parameters\":\"(int a)\"},\"returnType\":\"int\",\"parameterNames\":[\"a\"],\"parameterTypes\":[\"int\"]," +
+           "\"requiredParameterCount\":1,\"hasNamedParameters\":false,\"defaultArgumentListString\":\"a\"," +
+           "\"defaultArgumentListTextRanges\":[0,1]}],\"isLast\":true}}",
+           new NotificationCompletionResultsProcessor(expected), expected);
+  }
+
+  public void testListenerExceptionIsNotSwallowed() {
+    final RecordingListener listener = new RecordingListener() {
+      @Override
+      public void computedHighlights(String file, List<HighlightRegion> highlights) {
+        super.computedHighlights(file, highlights);
+        throw new IllegalStateException("listener");
+      }
+    };
+    try {
+      new StreamingNotificationDecoder(listener)
+        .decode("{\"event\":\"analysis.highlights\",\"params\":{\"file\":\"/a.dart\",\"regions\":[]}}");
+      fail();
+    }
+    catch (IllegalStateException e) {
+      assertEquals("listener", e.getMessage());
+    }
+    assertEquals(2, listener.myEvents.size());
+  }
+
+  public void testNotDecoded() {
+    final RecordingListener listener = new RecordingListener();
+    final StreamingNotificationDecoder decoder = new StreamingNotificationDecoder(listener);
+    assertFalse(decoder.decode("{\"id\":\"1\",\"result\":{}}"));
+    assertFalse(decoder.decode("{\"event\":\"server.status\",\"params\":{\"analysis\":{\"isAnalyzing\":false}}}"));
+    assertFalse(decoder.decode("{\"params\":{\"file\":\"/a.dart\",\"regions\":[]},\"event\":\"analysis.highlights\"}"));
+    assertFalse(decoder.decode("{\"event\":\"analysis.highlights\",\"params\":{\"file\":\"/a.dart\"}}"));
+    assertFalse(decoder.decode("{\"event\":\"analysis.highlights\",\"params\":{\"file\":\"/a.dart\",\"regions\":[{\"off"));
+    assertTrue(listener.myEvents.isEmpty());
+  }
+}
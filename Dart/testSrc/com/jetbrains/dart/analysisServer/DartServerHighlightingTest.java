@@ -28,6 +28,7 @@ import com.intellij.testFramework.fixtures.CodeInsightFixtureTestCase;
 import com.intellij.testFramework.fixtures.impl.CodeInsightTestFixtureImpl;
 import com.jetbrains.lang.dart.DartFileType;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import com.jetbrains.lang.dart.analyzer.DartHighlightRegions;
 import com.jetbrains.lang.dart.analyzer.DartServerData;
 import com.jetbrains.lang.dart.analyzer.DartServerData.DartNavigationRegion;
 import com.jetbrains.lang.dart.analyzer.DartServerData.DartRegion;
@@ -64,6 +65,13 @@ public class DartServerHighlightingTest extends CodeInsightFixtureTestCase {
     }
   }
 
+  private static void checkRegions(final DartHighlightRegions regions, final TextRange... ranges) {
+    assertEquals("Incorrect regions amount", ranges.length, regions.size());
+    for (int i = 0; i < regions.size(); i++) {
+      assertEquals("Mismatched region " + i, ranges[i], TextRange.create(regions.getOffset(i), regions.getOffset(i) + regions.getLength(i)));
+    }
+  }
+
   private void undoAndUpdateHighlighting(@NotNull final VirtualFile file) {
     // to make sure that navigation and highlighting regions are reset we have to send new document contents both before Undo and after
     DartAnalysisServerService.getInstance(getProject()).updateFilesContent();
@@ -303,7 +311,7 @@ public class DartServerHighlightingTest extends CodeInsightFixtureTestCase {
     final DartAnalysisServerService service = DartAnalysisServerService.getInstance(getProject());
 
     myFixture.doHighlighting();
-    assertNotEmpty(service.getHighlight(firstFile));
+    assertFalse(service.getHighlight(firstFile).isEmpty());
     assertNotEmpty(service.getNavigation(firstFile));
     assertNotEmpty(service.getOverrideMembers(firstFile));
 
@@ -315,22 +323,22 @@ public class DartServerHighlightingTest extends CodeInsightFixtureTestCase {
     getProject().getMessageBus().syncPublisher(FileEditorManagerListener.FILE_EDITOR_MANAGER).selectionChanged(event);
     myFixture.doHighlighting();
 
-    assertNotEmpty(service.getHighlight(firstFile));
+    assertFalse(service.getHighlight(firstFile).isEmpty());
     assertNotEmpty(service.getNavigation(firstFile));
     assertNotEmpty(service.getOverrideMembers(firstFile));
 
-    assertNotEmpty(service.getHighlight(secondFile));
+    assertFalse(service.getHighlight(secondFile).isEmpty());
     assertNotEmpty(service.getNavigation(secondFile));
     assertNotEmpty(service.getOverrideMembers(secondFile));
 
     getProject().getMessageBus().syncPublisher(FileEditorManagerListener.FILE_EDITOR_MANAGER)
                 .fileClosed(FileEditorManager.getInstance(getProject()), firstFile);
 
-    assertNotEmpty(service.getHighlight(firstFile));
+    assertFalse(service.getHighlight(firstFile).isEmpty());
     assertNotEmpty(service.getNavigation(firstFile));
     assertNotEmpty(service.getOverrideMembers(firstFile));
 
-    assertNotEmpty(service.getHighlight(secondFile));
+    assertFalse(service.getHighlight(secondFile).isEmpty());
     assertNotEmpty(service.getNavigation(secondFile));
     assertNotEmpty(service.getOverrideMembers(secondFile));
 
@@ -338,11 +346,11 @@ public class DartServerHighlightingTest extends CodeInsightFixtureTestCase {
     getProject().getMessageBus().syncPublisher(FileEditorManagerListener.FILE_EDITOR_MANAGER)
                 .fileClosed(FileEditorManager.getInstance(getProject()), firstFile);
 
-    assertEmpty(service.getHighlight(firstFile));
+    assertTrue(service.getHighlight(firstFile).isEmpty());
     assertEmpty(service.getNavigation(firstFile));
     assertEmpty(service.getOverrideMembers(firstFile));
 
-    assertNotEmpty(service.getHighlight(secondFile));
+    assertFalse(service.getHighlight(secondFile).isEmpty());
     assertNotEmpty(service.getNavigation(secondFile));
     assertNotEmpty(service.getOverrideMembers(secondFile));
   }
@@ -0,0 +1,150 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.HighlightRegionType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+public class DartHighlightRegionsTest extends TestCase {
+  private Object myRetainedData;
+
+  private static final String[] TYPES = {HighlightRegionType.KEYWORD, HighlightRegionType.CLASS, HighlightRegionType.IDENTIFIER_DEFAULT,
+    HighlightRegionType.LITERAL_STRING, HighlightRegionType.INSTANCE_METHOD_REFERENCE, HighlightRegionType.LOCAL_VARIABLE_REFERENCE};
+
+  private static String dump(final DartHighlightRegions regions) {
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < regions.size(); i++) {
+      builder.append(regions.getOffset(i)).append(':').append(regions.getLength(i)).append(':').append(regions.getType(i)).append(' ');
+    }
+    return builder.toString().trim();
+  }
+
+  private static DartHighlightRegions createRandomRegions(final Random random, final int count) {
+    final int[] offsets = new int[count];
+    final int[] lengths = new int[count];
+    final String[] types = new String[count];
+    int offset = 0;
+    for (int i = 0; i < count; i++) {
+      offsets[i] = offset;
+      lengths[i] = 1 + random.nextInt(10);
+      types[i] = TYPES[random.nextInt(TYPES.length)];
+      offset += lengths[i] + random.nextInt(5);
+    }
+    return DartHighlightRegions.create(offsets, lengths, types);
+  }
+
+  public void testCreateSortsAndSkipsEmpty() {
+    final DartHighlightRegions regions = DartHighlightRegions.create(new int[]{10, 0, 5, 3},
+                                                                     new int[]{2, 3, 0, 1},
+                                                                     new String[]{"CLASS", "KEYWORD", null, "CLASS"});
+    assertEquals("0:3:KEYWORD 3:1:CLASS 10:2:CLASS", dump(regions));
+    assertSame(DartHighlightRegions.EMPTY, DartHighlightRegions.create(new int[]{1}, new int[]{0}, new String[]{null}));
+  }
+
+  public void testTyping() {
+    final DartHighlightRegions regions = DartHighlightRegions.create(new int[]{0, 5, 10}, new int[]{3, 3, 2},
+                                                                     new String[]{"KEYWORD", "CLASS", "CLASS"});
+    // inside the second region, before the third one
+    assertEquals("0:3:KEYWORD 5:5:CLASS 12:2:CLASS", dump(regions.updateForDocumentChange(6, 0, 2)));
+    // right before the second region
+    assertEquals("0:3:KEYWORD 7:3:CLASS 12:2:CLASS", dump(regions.updateForDocumentChange(5, 0, 2)));
+    // nothing changed in length
+    assertSame(regions, regions.updateForDocumentChange(6, 1, 1));
+  }
+
+  public void testDeletion() {
+    final DartHighlightRegions regions = DartHighlightRegions.create(new int[]{0, 5, 10}, new int[]{3, 3, 2},
+                                                                     new String[]{"KEYWORD", "CLASS", "CLASS"});
+    // inside the second region
+    assertEquals("0:3:KEYWORD 5:2:CLASS 9:2:CLASS", dump(regions.updateForDocumentChange(6, 1, 0)));
+    // the whole second region
+    assertEquals("0:3:KEYWORD 7:2:CLASS", dump(regions.updateForDocumentChange(5, 3, 0)));
+    // across the first and the second regions
+    assertEquals("6:2:CLASS", dump(regions.updateForDocumentChange(2, 4, 0)));
+    assertSame(DartHighlightRegions.EMPTY, regions.updateForDocumentChange(0, 12, 0));
+  }
+
+  public void testCreateAndUpdatePerformance() {
+    final Random random = new Random(42);
+    final List<DartHighlightRegions> files = new ArrayList<>();
+    // 500 open files with 10k highlighting regions each
+    PlatformTestUtil.startPerformanceTest("DartHighlightRegions create", 3000, () -> {
+      files.clear();
+      for (int i = 0; i < 500; i++) {
+        files.add(createRandomRegions(random, 10_000));
+      }
+    }).assertTiming();
+
+    PlatformTestUtil.startPerformanceTest("DartHighlightRegions update", 3000, () -> {
+      for (DartHighlightRegions regions : files) {
+        regions.updateForDocumentChange(random.nextInt(regions.getOffset(regions.size() - 1)), 0, 1);
+      }
+    }).assertTiming();
+  }
+
+  public void testRetainedSizeComparedToRegionObjects() {
+    // 200 analyzed files with 5k highlighting regions each, e.g. a mid-size Flutter application
+    final int fileCount = 200;
+    final int regionCount = 5_000;
+
+    final long packedSize = measureRetainedSize(() -> {
+      final Random random = new Random(42);
+      final List<DartHighlightRegions> files = new ArrayList<>(fileCount);
+      for (int i = 0; i < fileCount; i++) {
+        files.add(createRandomRegions(random, regionCount));
+      }
+      return files;
+    });
+
+    // the form the regions were stored in before: a list of region objects with a reference to an interned type string per file
+    final long objectsSize = measureRetainedSize(() -> {
+      final Random random = new Random(42);
+      final List<List<RegionObject>> files = new ArrayList<>(fileCount);
+      for (int i = 0; i < fileCount; i++) {
+        final DartHighlightRegions regions = createRandomRegions(random, regionCount);
+        final List<RegionObject> objects = new ArrayList<>(regions.size());
+        for (int j = 0; j < regions.size(); j++) {
+          objects.add(new RegionObject(regions.getOffset(j), regions.getLength(j), regions.getType(j)));
+        }
+        files.add(objects);
+      }
+      return files;
+    });
+
+    final String sizes = "packed: " + packedSize / 1024 + " KB, region objects: " + objectsSize / 1024 + " KB";
+    assertTrue(sizes, packedSize > 0);
+    assertTrue(sizes, packedSize * 2 < objectsSize);
+  }
+
+  private long measureRetainedSize(final Supplier<Object> dataFactory) {
+    final long before = getUsedMemoryAfterGc();
+    myRetainedData = dataFactory.get();
+    final long after = getUsedMemoryAfterGc();
+    myRetainedData = null;
+    return after - before;
+  }
+
+  private static long getUsedMemoryAfterGc() {
+    final Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+    }
+    return used;
+  }
+
+  private static class RegionObject extends DartServerData.DartRegion {
+    private final String myType;
+
+    private RegionObject(final int offset, final int length, final String type) {
+      super(offset, length);
+      myType = type.intern();
+    }
+  }
+}
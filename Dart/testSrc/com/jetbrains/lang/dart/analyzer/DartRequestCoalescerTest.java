@@ -0,0 +1,112 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.util.Ref;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class DartRequestCoalescerTest extends TestCase {
+  private ScheduledExecutorService myExecutor;
+  private final List<DartRequestCoalescer.Key> mySent = Collections.synchronizedList(new ArrayList<>());
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myExecutor = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myExecutor.shutdownNow();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private static DartRequestCoalescer.Key hover(final int offset) {
+    return new DartRequestCoalescer.Key("analysis.getHover", "/a.dart", offset, 0, 1);
+  }
+
+  // the server responds at once, the result is the key of the request
+  private DartRequestCoalescer.PendingRequest<String> send(final DartRequestCoalescer coalescer,
+                                                           final DartRequestCoalescer.Key key,
+                                                           final boolean supersedeOthers,
+                                                           final Ref<String> cachedResult) {
+    return coalescer.getOrSend(key, supersedeOthers, cachedResult, request -> {
+      mySent.add(key);
+      coalescer.complete(key, request, key.toString());
+    });
+  }
+
+  public void testQueuedRequestReplacedBeforeSent() {
+    final DartRequestCoalescer coalescer = new DartRequestCoalescer(myExecutor, TimeUnit.HOURS.toMillis(1));
+    final DartRequestCoalescer.PendingRequest<String> first = send(coalescer, hover(1), true, Ref.create());
+    final DartRequestCoalescer.PendingRequest<String> second = send(coalescer, hover(2), true, Ref.create());
+
+    assertNotNull(first);
+    assertNotNull(second);
+    assertEquals(0, first.getLatch().getCount());
+    assertNull(first.getResult());
+    assertTrue(mySent.isEmpty());
+
+    coalescer.flush();
+    assertEquals(Collections.singletonList(hover(2)), mySent);
+    assertEquals(0, second.getLatch().getCount());
+    assertEquals(hover(2).toString(), second.getResult());
+  }
+
+  public void testQueueFlushedAfterDelay() throws InterruptedException {
+    final DartRequestCoalescer coalescer = new DartRequestCoalescer(myExecutor, 10);
+    final DartRequestCoalescer.PendingRequest<String> request = send(coalescer, hover(1), true, Ref.create());
+
+    assertNotNull(request);
+    assertTrue(request.getLatch().await(10, TimeUnit.SECONDS));
+    assertEquals(hover(1).toString(), request.getResult());
+    assertEquals(Collections.singletonList(hover(1)), mySent);
+  }
+
+  public void testNotSupersedingRequestSentAtOnce() {
+    final DartRequestCoalescer coalescer = new DartRequestCoalescer(myExecutor, TimeUnit.HOURS.toMillis(1));
+    final DartRequestCoalescer.Key first = new DartRequestCoalescer.Key("analysis.getNavigation", "/a.dart", 1, 2, 1);
+    final DartRequestCoalescer.Key second = new DartRequestCoalescer.Key("analysis.getNavigation", "/a.dart", 5, 2, 1);
+    send(coalescer, first, false, Ref.create());
+    send(coalescer, second, false, Ref.create());
+    assertEquals(Arrays.asList(first, second), mySent);
+  }
+
+  public void testIdenticalRequestsSentOnceAndCached() {
+    final DartRequestCoalescer coalescer = new DartRequestCoalescer(myExecutor, TimeUnit.HOURS.toMillis(1));
+    final DartRequestCoalescer.PendingRequest<String> first = send(coalescer, hover(1), true, Ref.create());
+    assertSame(first, send(coalescer, hover(1), true, Ref.create()));
+
+    coalescer.flush();
+    assertEquals(Collections.singletonList(hover(1)), mySent);
+
+    final Ref<String> cachedResult = Ref.create();
+    assertNull(send(coalescer, hover(1), true, cachedResult));
+    assertEquals(hover(1).toString(), cachedResult.get());
+
+    coalescer.invalidate("/a.dart");
+    assertNotNull(send(coalescer, hover(1), true, Ref.create()));
+  }
+
+  public void testClearReleasesQueuedRequests() {
+    final DartRequestCoalescer coalescer = new DartRequestCoalescer(myExecutor, TimeUnit.HOURS.toMillis(1));
+    final DartRequestCoalescer.PendingRequest<String> request = send(coalescer, hover(1), true, Ref.create());
+
+    coalescer.clear();
+    assertNotNull(request);
+    assertEquals(0, request.getLatch().getCount());
+    coalescer.flush();
+    assertTrue(mySent.isEmpty());
+  }
+}
@@ -0,0 +1,92 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DartServerDataCacheTest extends TestCase {
+
+  public void testSaveAndLoad() throws Exception {
+    final Location location = new Location("/a.dart", 1, 2, 3, 4);
+    final List<AnalysisError> errors =
+      Arrays.asList(new AnalysisError("ERROR", "SYNTACTIC_ERROR", location, "msg", "fix it", "c", true),
+                    new AnalysisError("INFO", "LINT", new Location("/a.dart", 5, 6, 7, 8), "msg", null, null, null));
+
+    final Outline outline = new Outline(null, new Element("COMPILATION_UNIT", "<unit>", null, 0, null, null, null), 0, 20);
+    final Outline child = new Outline(outline, new Element("CLASS", "A", location, 1, null, null, "<T>"), 0, 10);
+    child.setChildren(Collections.emptyList());
+    outline.setChildren(Collections.singletonList(child));
+
+    final OverriddenMember member = new OverriddenMember(new Element("METHOD", "m", location, 0, "()", "void", null), "B");
+    final List<DartServerData.DartOverrideMember> overrides =
+      Collections.singletonList(new DartServerData.DartOverrideMember(2, 3, member, Collections.singletonList(member)));
+
+    final File file = FileUtil.createTempFile("dart-server-data", ".bin", true);
+    DartServerDataCache.save(file, Arrays.asList(
+      new DartServerDataCache.FileData("/a.dart", 123L, 456L, errors.hashCode(), errors, outline, overrides),
+      new DartServerDataCache.FileData("/b.dart", 7L, 8L, 0, Collections.emptyList(), null, null)));
+
+    final List<DartServerDataCache.FileData> loaded = DartServerDataCache.load(file);
+    assertEquals(2, loaded.size());
+
+    final DartServerDataCache.FileData a = loaded.get(0);
+    assertEquals("/a.dart", a.myFilePath);
+    assertEquals(123L, a.myTimeStamp);
+    assertEquals(456L, a.myLength);
+    assertEquals(errors, a.myErrors);
+    assertEquals(errors.hashCode(), a.myErrorsHash);
+    assertEquals(outline, a.myOutline);
+    assertSame(a.myOutline, a.myOutline.getChildren().get(0).getParent());
+    assertEquals(1, a.myOverrides.size());
+    assertEquals(2, a.myOverrides.get(0).getOffset());
+    assertEquals(3, a.myOverrides.get(0).getLength());
+    assertEquals(member, a.myOverrides.get(0).getSuperclassMember());
+    assertEquals(Collections.singletonList(member), a.myOverrides.get(0).getInterfaceMembers());
+
+    final DartServerDataCache.FileData b = loaded.get(1);
+    assertEquals("/b.dart", b.myFilePath);
+    assertTrue(b.myErrors.isEmpty());
+    assertNull(b.myOutline);
+    assertNull(b.myOverrides);
+  }
+
+  public void testSaveOverLoadedFile() throws Exception {
+    final File file = FileUtil.createTempFile("dart-server-data", ".bin", true);
+    DartServerDataCache.save(file, Collections.singletonList(
+      new DartServerDataCache.FileData("/a.dart", 1L, 2L, 0, Collections.emptyList(), null, null)));
+    assertEquals("/a.dart", DartServerDataCache.load(file).get(0).myFilePath);
+
+    // the loaded file must not stay open, otherwise it can't be replaced on Windows
+    DartServerDataCache.save(file, Collections.singletonList(
+      new DartServerDataCache.FileData("/b.dart", 1L, 2L, 0, Collections.emptyList(), null, null)));
+    assertEquals("/b.dart", DartServerDataCache.load(file).get(0).myFilePath);
+  }
+
+  public void testCorruptedFile() throws Exception {
+    final File file = FileUtil.createTempFile("dart-server-data", ".bin", true);
+    FileUtil.writeToFile(file, "garbage");
+    assertTrue(DartServerDataCache.load(file).isEmpty());
+    assertTrue(DartServerDataCache.load(new File(file.getPath() + ".missing")).isEmpty());
+  }
+
+  public void testCorruptedCounts() throws Exception {
+    final File file = FileUtil.createTempFile("dart-server-data", ".bin", true);
+    DartServerDataCache.save(file, Collections.singletonList(
+      new DartServerDataCache.FileData("/b.dart", 7L, 8L, 0, Collections.emptyList(), null, null)));
+    final byte[] bytes = FileUtil.loadFileBytes(file);
+
+    // the string table size follows the magic and the version
+    for (int count : new int[]{-5, Integer.MAX_VALUE}) {
+      ByteBuffer.wrap(bytes).putInt(8, count);
+      FileUtil.writeToFile(file, bytes);
+      assertTrue(DartServerDataCache.load(file).isEmpty());
+    }
+  }
+}
@@ -0,0 +1,28 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.coverage;
+
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.jetbrains.lang.dart.coverage.DartCoverageData.NO_HITS;
+
+public class DartCoverageDataTest extends DartCodeInsightFixtureTestCase {
+
+  public void testReadAndMerge() throws Exception {
+    final String json = "{\"type\":\"CodeCoverage\",\"coverage\":[" +
+                        "{\"source\":\"package:foo/a.dart\",\"script\":{\"type\":\"@Script\",\"uri\":\"package:foo/a.dart\"}," +
+                        "\"hits\":[1,0,3,2,5,1]}," +
+                        "{\"source\":\"package:foo/b.dart\",\"hits\":[]}," +
+                        "{\"source\":\"package:foo/a.dart\",\"hits\":[3,1,4,0,1,7]}," +
+                        "{\"script\":{\"uri\":\"no source\"},\"hits\":[1,1]}" +
+                        "]}";
+
+    final Map<String, int[]> merged = DartCoverageData.read(new StringReader(json)).getMergedDartFileCoverageData();
+    assertEquals(2, merged.size());
+    assertEquals(Arrays.toString(new int[]{NO_HITS, 7, NO_HITS, 3, 0, 1}), Arrays.toString(merged.get("package:foo/a.dart")));
+    assertEquals(0, merged.get("package:foo/b.dart").length);
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.errorTreeView;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import gnu.trove.THashMap;
+import org.dartlang.analysis.server.protocol.AnalysisError;
+import org.dartlang.analysis.server.protocol.AnalysisErrorSeverity;
+import org.dartlang.analysis.server.protocol.Location;
+
+import javax.swing.*;
+import java.util.*;
+
+public class DartProblemsTableModelTest extends DartCodeInsightFixtureTestCase {
+
+  private static final String[] SEVERITIES = {AnalysisErrorSeverity.ERROR, AnalysisErrorSeverity.WARNING, AnalysisErrorSeverity.INFO};
+
+  private static String getFilePath(final int fileIndex) {
+    return "/no/such/project/lib/file" + fileIndex + ".dart";
+  }
+
+  private static List<AnalysisError> createErrors(final String filePath, final int count, final int seed) {
+    final List<AnalysisError> errors = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      final Location location = new Location(filePath, i * 10, 5, i + 1, 1);
+      final String message = "message " + (i * 31 + seed) % 97;
+      errors.add(new AnalysisError(SEVERITIES[i % SEVERITIES.length], "LINT", location, message, null, "code", false));
+    }
+    return errors;
+  }
+
+  private Map<String, List<DartProblem>> createProblems(final int firstFile, final int fileCount, final int errorsPerFile, final int seed) {
+    final Map<String, List<DartProblem>> result = new THashMap<>();
+    for (int i = firstFile; i < firstFile + fileCount; i++) {
+      final String filePath = getFilePath(i);
+      result.put(filePath, DartProblemsTableModel.createProblems(getProject(), filePath, createErrors(filePath, errorsPerFile, seed)));
+    }
+    return result;
+  }
+
+  private DartProblemsTableModel createModel() {
+    return new DartProblemsTableModel(getProject(), new DartProblemsPresentationHelper(getProject()));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void assertSorted(final DartProblemsTableModel model, final int column) {
+    final Comparator<DartProblem> comparator = model.getColumnInfos()[column].getComparator();
+    for (int i = 1; i < model.getRowCount(); i++) {
+      assertTrue(String.valueOf(i), comparator.compare(model.getItem(i - 1), model.getItem(i)) <= 0);
+    }
+  }
+
+  public void testIncrementalUpdates() {
+    final DartProblemsTableModel model = createModel();
+
+    model.setProblemsAndReturnReplacementForSelection(createProblems(0, 10, 5, 0), null);
+    assertEquals(50, model.getRowCount());
+    assertEquals("20 errors, 20 warnings, 10 hints", model.getStatusText());
+    assertSorted(model, 1);
+
+    // small update is applied row by row
+    model.setProblemsAndReturnReplacementForSelection(createProblems(3, 2, 3, 1), null);
+    assertEquals(46, model.getRowCount());
+    assertSorted(model, 1);
+
+    model.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(getFilePath(0), Collections.emptyList()), null);
+    assertEquals(41, model.getRowCount());
+    assertEquals("16 errors, 16 warnings, 9 hints", model.getStatusText());
+
+    // big update reloads the table
+    model.setProblemsAndReturnReplacementForSelection(createProblems(5, 40, 10, 2), null);
+    assertEquals(41 - 25 + 400, model.getRowCount());
+    assertSorted(model, 1);
+
+    // after sort key change items are sorted again on the next update
+    model.setSortKey(new RowSorter.SortKey(0, SortOrder.ASCENDING));
+    model.setProblemsAndReturnReplacementForSelection(createProblems(1, 1, 1, 3), null);
+    assertEquals(41 - 25 + 400 - 5 + 1, model.getRowCount());
+    assertSorted(model, 0);
+
+    model.removeAll();
+    assertEquals(0, model.getRowCount());
+    assertEquals("", model.getStatusText());
+  }
+
+  public void testReplacementForSelection() {
+    final DartProblemsTableModel model = createModel();
+    model.setProblemsAndReturnReplacementForSelection(createProblems(0, 3, 5, 0), null);
+
+    final DartProblem selected = model.getItem(7);
+    final Map<String, List<DartProblem>> update = createProblems(0, 3, 5, 0);
+    update.remove(selected.getSystemIndependentPath());
+    assertNull(model.setProblemsAndReturnReplacementForSelection(update, selected));
+    assertTrue(model.getItems().contains(selected));
+
+    final Map<String, List<DartProblem>> fileUpdate = createProblems(0, 3, 5, 0);
+    fileUpdate.keySet().retainAll(Collections.singleton(selected.getSystemIndependentPath()));
+    final DartProblem replacement = model.setProblemsAndReturnReplacementForSelection(fileUpdate, selected);
+    assertNotNull(replacement);
+    assertNotSame(selected, replacement);
+    assertEquals(selected.getErrorMessage(), replacement.getErrorMessage());
+    assertEquals(selected.getLineNumber(), replacement.getLineNumber());
+  }
+
+  public void testHundredThousandProblems() {
+    final Map<String, List<DartProblem>> initial = createProblems(0, 1000, 100, 0);
+    final List<Map<String, List<DartProblem>>> waves = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      waves.add(createProblems(i * 5, i % 10 == 0 ? 50 : 1, 100, i));
+    }
+
+    PlatformTestUtil.startPerformanceTest("Dart Problems view update with 100k problems", 3000, () -> {
+      final DartProblemsTableModel model = createModel();
+      model.setProblemsAndReturnReplacementForSelection(initial, null);
+      assertEquals(100000, model.getRowCount());
+
+      for (Map<String, List<DartProblem>> wave : waves) {
+        model.setProblemsAndReturnReplacementForSelection(wave, null);
+      }
+
+      assertEquals(100000, model.getRowCount());
+      assertSorted(model, 1);
+    }).attempts(3).assertTiming();
+  }
+}
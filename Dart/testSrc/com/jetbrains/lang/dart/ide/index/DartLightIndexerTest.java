@@ -0,0 +1,115 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.DartFileType;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DartLightIndexerTest extends DartCodeInsightFixtureTestCase {
+
+  private static List<File> getSdkFiles() {
+    final List<File> files = new ArrayList<>();
+    FileUtil.processFilesRecursively(new File(DartTestUtils.SDK_HOME_PATH + "/lib"), file -> {
+      if (file.getName().endsWith(".dart")) files.add(file);
+      return true;
+    });
+    assertFalse(files.isEmpty());
+    return files;
+  }
+
+  private void doTest(final String fileName, final String text) {
+    final PsiFile psiFile = PsiFileFactory.getInstance(getProject()).createFileFromText(fileName, DartFileType.INSTANCE, text);
+    final DartFileIndexData expected = DartIndexUtil.indexFileRoots(psiFile);
+    final DartFileIndexData actual = DartLightIndexer.indexFile(text, fileName);
+
+    assertNotNull(fileName, actual);
+    assertEquals(fileName, expected.getLibraryName(), actual.getLibraryName());
+    assertEquals(fileName, expected.isPart(), actual.isPart());
+    assertEquals(fileName, sorted(expected.getSymbols()), sorted(actual.getSymbols()));
+    assertEquals(fileName, sorted(expected.getClassNames()), sorted(actual.getClassNames()));
+    assertEquals(fileName, expected.getComponentInfoMap(), actual.getComponentInfoMap());
+    assertEquals(fileName, expected.getImportAndExportInfos(), actual.getImportAndExportInfos());
+    assertEquals(fileName, expected.getPartUris(), actual.getPartUris());
+  }
+
+  private static List<String> sorted(final List<String> list) {
+    final List<String> result = new ArrayList<>(list);
+    Collections.sort(result);
+    return result;
+  }
+
+  public void testDeclarations() {
+    doTest("foo.dart",
+           "library foo.bar;\n" +
+           "import 'dart:async' deferred as async show Future, Stream hide Timer;\n" +
+           "import r'package:a/a.dart' hide A, B;\n" +
+           "export \"b.dart\" show C;\n" +
+           "part 'c.dart';\n" +
+           "@deprecated var v1 = 1, v2;\n" +
+           "final int v3 = 0;\n" +
+           "int get g => 1;\n" +
+           "set s(int value) {}\n" +
+           "void f() { var local; g() {} }\n" +
+           "typedef int F1(int a);\n" +
+           "typedef F2<T> = void Function(T);\n" +
+           "enum E { e1, e2, }\n" +
+           "mixin M on Object { int mixinField; }\n" +
+           "class A = Object with M;\n" +
+           "abstract class B<T> extends Object implements Comparable<T> {\n" +
+           "  static const int c1 = 1, c2 = 2;\n" +
+           "  T field;\n" +
+           "  B();\n" +
+           "  B.named(this.field);\n" +
+           "  factory B.f() => null;\n" +
+           "  factory B() = A;\n" +
+           "  int get getter => 0;\n" +
+           "  void set setter(int value) {}\n" +
+           "  bool operator ==(other) => false;\n" +
+           "  operator [](int i) => null;\n" +
+           "  T method<S>(S s) { return field; }\n" +
+           "}\n");
+  }
+
+  public void testPartOf() {
+    doTest("part.dart", "part of foo . bar;\nclass A {}");
+    assertNull(DartLightIndexer.indexFile("part of 'lib.dart';\nclass A {}", "part.dart"));
+  }
+
+  public void testNoLibraryStatement() {
+    doTest("no_library.dart", "import 'a.dart' as a;\nmain() {}\n");
+  }
+
+  public void testIncompleteCode() {
+    doTest("incomplete.dart", "import 'a.dart' as ;\nclass A {\n  int foo(\n}\nvar\n");
+  }
+
+  public void testSameResultAsPsiForSdk() throws IOException {
+    for (File file : getSdkFiles()) {
+      doTest(file.getName(), FileUtil.loadFile(file, true));
+    }
+  }
+
+  public void testIndexingThroughputForSdk() throws IOException {
+    final List<File> files = getSdkFiles();
+    final List<String> texts = new ArrayList<>(files.size());
+    for (File file : files) {
+      texts.add(FileUtil.loadFile(file, true));
+    }
+
+    PlatformTestUtil.startPerformanceTest("Dart light indexing of SDK sources", 1500, () -> {
+      for (int i = 0; i < texts.size(); i++) {
+        assertNotNull(DartLightIndexer.indexFile(texts.get(i), files.get(i).getName()));
+      }
+    }).attempts(3).assertTiming();
+  }
+}
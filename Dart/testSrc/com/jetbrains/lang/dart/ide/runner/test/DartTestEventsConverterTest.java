@@ -273,6 +273,31 @@ public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
     runTest(events, signals, new int[]{});
   }
 
+  public void testErrorAfterSuiteDone() {
+    String[] events = {
+      "{'count':1,'type':'allSuites','time':0}\n",
+      "{'suite':{'id':0,'platform':'vm','path':'test/async_test.dart'},'type':'suite','time':0}\n",
+      "{'group':{'id':1,'suiteID':0,'parentID':null,'name':null,'metadata':{'skip':false,'skipReason':null},'testCount':1},'type':'group','time':10}\n",
+      "{'test':{'id':2,'name':'unawaited future','suiteID':0,'groupIDs':[1],'metadata':{'skip':false,'skipReason':null}},'type':'testStart','time':10}\n",
+      "{'testID':2,'result':'success','hidden':false,'type':'testDone','time':20}\n",
+      "{'testID':2,'message':'late output','type':'print','time':30}\n",
+      "{'testID':2,'error':'late failure','stackTrace':'test/async_test.dart 7:5  main.<fn>','isFailure':false,'type':'error','time':31}\n",
+      "{'testID':2,'error':'2nd late failure','stackTrace':'','isFailure':false,'type':'error','time':32}\n",
+      "{'success':false,'type':'done','time':40}\n",
+    };
+    String[] signals = {
+      "suite started async_test.dart",
+      "start unawaited future",
+      "finish unawaited future",
+      "suite finished async_test.dart",
+      "print unawaited future late output\n",
+      "fail unawaited future true",
+      "print unawaited future test/async_test.dart 7:5  main.<fn>\n",
+      "print unawaited future 2nd late failure\n"
+    };
+    runTest(events, signals, new int[]{});
+  }
+
   public void testGroupsDone() {
     String[] events = {
       "{'protocolVersion':'0.1.0','runnerVersion':'0.12.10','type':'start','time':0}\n",
@@ -338,6 +363,88 @@ public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
     runTest(events, signals, new int[]{});
   }
 
+  public void testReplayLargeJsonReporterLog() {
+    final List<String> log = generateJsonReporterLog(100, 10, 40);
+    final DartTestEventsConverter converter =
+      new DartTestEventsConverter(DartTestRunningState.DART_FRAMEWORK_NAME, createConsoleProperties(),
+                                  DartUrlResolver.getInstance(getProject(), getSourceRoot()));
+    final DartTestEventsProcessor processor = new DartTestEventsProcessor(getProject(), DartTestRunningState.DART_FRAMEWORK_NAME) {
+      @Override
+      public void onTestStarted(@NotNull TestStartedEvent testStartedEvent) {
+      }
+
+      @Override
+      public void onSuiteStarted(@NotNull TestSuiteStartedEvent suiteStartedEvent) {
+      }
+    };
+    converter.setProcessor(processor);
+
+    try {
+      final Key key = new Key("stdout");
+      PlatformTestUtil.startPerformanceTest("Replay of JSON reporter log with 40000 tests", 3000, () -> {
+        processor.signals.clear();
+        for (String line : log) {
+          converter.process(line, key);
+        }
+        // print and finish for each test, fail and stack trace for each 10th test, finish for 1000 groups and 100 file-level groups
+        assertEquals(40000 * 2 + 4000 * 2 + 1100, processor.signals.size());
+      }).attempts(3).assertTiming();
+    }
+    finally {
+      Disposer.dispose(processor);
+    }
+  }
+
+  @NotNull
+  private static List<String> generateJsonReporterLog(final int suiteCount, final int groupsPerSuite, final int testsPerGroup) {
+    final List<String> log = new ArrayList<>();
+    log.add("{\"protocolVersion\":\"0.1.0\",\"runnerVersion\":\"0.12.30\",\"type\":\"start\",\"time\":0}\n");
+    log.add("{\"count\":" + suiteCount + ",\"type\":\"allSuites\",\"time\":0}\n");
+
+    int id = 0;
+    int time = 0;
+    for (int suite = 0; suite < suiteCount; suite++) {
+      final int suiteId = id++;
+      final String path = "/project/test/suite" + suite + "_test.dart";
+      log.add("{\"suite\":{\"id\":" + suiteId + ",\"platform\":\"vm\",\"path\":\"" + path + "\"},\"type\":\"suite\",\"time\":" + time + "}\n");
+
+      final int loadingId = id++;
+      log.add("{\"test\":{\"id\":" + loadingId + ",\"name\":\"loading " + path + "\",\"suiteID\":" + suiteId +
+              ",\"groupIDs\":[],\"metadata\":{\"skip\":false,\"skipReason\":null}},\"type\":\"testStart\",\"time\":" + time + "}\n");
+      log.add("{\"testID\":" + loadingId + ",\"result\":\"success\",\"hidden\":true,\"type\":\"testDone\",\"time\":" + time + "}\n");
+
+      final int rootGroupId = id++;
+      log.add("{\"group\":{\"id\":" + rootGroupId + ",\"suiteID\":" + suiteId + ",\"parentID\":null,\"name\":null," +
+              "\"metadata\":{\"skip\":false,\"skipReason\":null},\"testCount\":" + groupsPerSuite * testsPerGroup +
+              "},\"type\":\"group\",\"time\":" + time + "}\n");
+
+      for (int group = 0; group < groupsPerSuite; group++) {
+        final int groupId = id++;
+        final String groupName = "group " + group;
+        log.add("{\"group\":{\"id\":" + groupId + ",\"suiteID\":" + suiteId + ",\"parentID\":" + rootGroupId + ",\"name\":\"" +
+                groupName + "\",\"metadata\":{\"skip\":false,\"skipReason\":null},\"testCount\":" + testsPerGroup +
+                ",\"line\":" + (group + 1) + ",\"column\":3},\"type\":\"group\",\"time\":" + time + "}\n");
+
+        for (int test = 0; test < testsPerGroup; test++) {
+          final int testId = id++;
+          log.add("{\"test\":{\"id\":" + testId + ",\"name\":\"" + groupName + " test " + test + "\",\"suiteID\":" + suiteId +
+                  ",\"groupIDs\":[" + rootGroupId + "," + groupId + "],\"metadata\":{\"skip\":false,\"skipReason\":null}," +
+                  "\"line\":" + (test + 2) + ",\"column\":5},\"type\":\"testStart\",\"time\":" + time++ + "}\n");
+          log.add("{\"testID\":" + testId + ",\"message\":\"output of test " + test + "\",\"type\":\"print\",\"time\":" + time + "}\n");
+          if (test % 10 == 0) {
+            log.add("{\"testID\":" + testId + ",\"error\":\"Expected: <1>\\n  Actual: <2>\\n\",\"stackTrace\":\"" + path +
+                    " 12:7  main.<fn>\\n\",\"isFailure\":true,\"type\":\"error\",\"time\":" + time + "}\n");
+          }
+          log.add("{\"testID\":" + testId + ",\"result\":\"" + (test % 10 == 0 ? "failure" : "success") +
+                  "\",\"hidden\":false,\"type\":\"testDone\",\"time\":" + time++ + "}\n");
+        }
+      }
+    }
+
+    log.add("{\"success\":false,\"type\":\"done\",\"time\":" + time + "}\n");
+    return log;
+  }
+
   private void runTest(String[] jsonEvents, String[] signals, int[] parents) {
     DartTestEventsConverter parser = myEventsConverter;
     Key key = new Key("stdout");
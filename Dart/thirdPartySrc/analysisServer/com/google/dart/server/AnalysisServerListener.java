@@ -163,6 +163,16 @@ public interface AnalysisServerListener {
    */
   public void requestError(RequestError requestError);
 
+  /**
+   * A response to a request has been received and processed by the consumer of the request.
+   *
+   * @param method the method of the request
+   * @param queueTimeNanos the time between sending the request and writing it to the server
+   * @param serverTimeNanos the time between writing the request and reading the response
+   * @param dispatchTimeNanos the time between reading the response and finishing its processing
+   */
+  public void requestCompleted(String method, long queueTimeNanos, long serverTimeNanos, long dispatchTimeNanos);
+
   /**
    * Reports that the server is running. This notification is issued once after the server has
    * started running to let the client know that it started correctly.
@@ -81,6 +81,10 @@ public class AnalysisServerListenerAdapter implements AnalysisServerListener {
   public void requestError(RequestError requestError) {
   }
 
+  @Override
+  public void requestCompleted(String method, long queueTimeNanos, long serverTimeNanos, long dispatchTimeNanos) {
+  }
+
   @Override
   public void serverConnected(String version) {
   }
@@ -161,6 +161,13 @@ public class BroadcastAnalysisServerListener implements AnalysisServerListener {
     }
   }
 
+  @Override
+  public void requestCompleted(String method, long queueTimeNanos, long serverTimeNanos, long dispatchTimeNanos) {
+    for (AnalysisServerListener listener : getListeners()) {
+      listener.requestCompleted(method, queueTimeNanos, serverTimeNanos, dispatchTimeNanos);
+    }
+  }
+
   @Override
   public void serverConnected(String version) {
     for (AnalysisServerListener listener : getListeners()) {
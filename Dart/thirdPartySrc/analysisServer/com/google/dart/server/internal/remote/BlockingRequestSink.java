@@ -36,6 +36,13 @@ public class BlockingRequestSink implements RequestSink {
    */
   private final LinkedList<JsonObject> queue = Lists.newLinkedList();
 
+  /**
+   * The {@link RequestSink} this sink has been converted into, {@code null} while requests are
+   * enqueued. Requests added by the clients that still hold this sink are forwarded to it.
+   * Synchronize against {@link #queue} before accessing this field.
+   */
+  private RequestSink target;
+
   public BlockingRequestSink(RequestSink base) {
     this.base = base;
   }
@@ -43,7 +50,9 @@ public class BlockingRequestSink implements RequestSink {
   @Override
   public void add(JsonObject request) {
     synchronized (queue) {
-      if (RequestUtilities.isVersionRequest(request)) {
+      if (target != null) {
+        target.add(request);
+      } else if (RequestUtilities.isVersionRequest(request)) {
         base.add(request);
       } else {
         queue.add(request);
@@ -72,6 +81,8 @@ public class BlockingRequestSink implements RequestSink {
       for (JsonObject request : queue) {
         errorRequestSink.add(request);
       }
+      queue.clear();
+      target = errorRequestSink;
     }
     return errorRequestSink;
   }
@@ -84,6 +95,8 @@ public class BlockingRequestSink implements RequestSink {
       for (JsonObject request : queue) {
         base.add(request);
       }
+      queue.clear();
+      target = base;
     }
     return base;
   }
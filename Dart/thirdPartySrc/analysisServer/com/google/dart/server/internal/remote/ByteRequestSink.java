@@ -14,6 +14,7 @@
 package com.google.dart.server.internal.remote;
 
 import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.dart.server.internal.remote.utilities.RequestUtilities;
 import com.google.gson.JsonObject;
 
 import java.io.OutputStream;
@@ -21,16 +22,50 @@ import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
- * An {@link OutputStream} based implementation of {@link RequestSink}.
+ * An {@link OutputStream} based implementation of {@link RequestSink}. Requests are written by a
+ * separate thread, all requests queued by the time the thread wakes up are written with a single
+ * flush.
  *
  * @coverage dart.server.remote
  */
 public class ByteRequestSink implements RequestSink {
+  /**
+   * The listener to be notified when requests are about to be written to the stream.
+   */
+  public interface WriteListener {
+    /**
+     * Invoked on the writer thread right before the request with the given id is written.
+     *
+     * @param id       the id of the request, may be {@code null}
+     * @param nanoTime the value of {@link System#nanoTime()} when writing started
+     */
+    void requestWritten(String id, long nanoTime);
+  }
+
+  private static class Line {
+    private final String id;
+    private final String text;
+
+    private Line(String id, String text) {
+      this.id = id;
+      this.text = text;
+    }
+  }
+
+  private static final Line EOF_LINE = new Line(null, ByteResponseStream.EOF_LINE);
+
+  /**
+   * The maximum number of requests written with a single flush.
+   */
+  private static final int MAX_BATCH_SIZE = 64;
+
   /**
    * The {@link PrintWriter} to print JSON strings to.
    */
@@ -42,7 +77,9 @@ public class ByteRequestSink implements RequestSink {
   /**
    * The queue of lines.
    */
-  private final BlockingQueue<String> lineQueue = new LinkedBlockingQueue<String>();
+  private final BlockingQueue<Line> lineQueue = new LinkedBlockingQueue<Line>();
+
+  private volatile WriteListener writeListener;
 
   /**
    * Initializes a newly created request sink.
@@ -56,6 +93,10 @@ public class ByteRequestSink implements RequestSink {
     new LinesWriterThread().start();
   }
 
+  public void setWriteListener(WriteListener writeListener) {
+    this.writeListener = writeListener;
+  }
+
   @Override
   public void add(JsonObject request) {
     String text = request.toString();
@@ -64,13 +105,13 @@ public class ByteRequestSink implements RequestSink {
         debugStream.println(System.currentTimeMillis() + " => " + text);
       }
     }
-    lineQueue.add(text);
+    lineQueue.add(new Line(RequestUtilities.getId(request), text));
   }
 
   @Override
   public void close() {
     writer.close();
-    lineQueue.add(ByteResponseStream.EOF_LINE);
+    lineQueue.add(EOF_LINE);
   }
 
   public void waitForFlush() {
@@ -90,18 +131,32 @@ public class ByteRequestSink implements RequestSink {
 
     @Override
     public void run() {
+      List<Line> batch = new ArrayList<Line>(MAX_BATCH_SIZE);
       while (true) {
         try {
-          String line = lineQueue.take();
-          if (line == ByteResponseStream.EOF_LINE) {
-            return;
-          }
+          batch.add(lineQueue.take());
+          lineQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
 
-          writer.println(line);
+          // the write time is reported before flushing, so that it is known by the time a response arrives
+          long nanoTime = System.nanoTime();
+          WriteListener listener = writeListener;
+          for (Line line : batch) {
+            if (line == EOF_LINE) {
+              writer.flush();
+              return;
+            }
+            if (listener != null) {
+              listener.requestWritten(line.id, nanoTime);
+            }
+            writer.println(line.text);
+          }
           writer.flush();
         }
         catch (InterruptedException e) {
         }
+        finally {
+          batch.clear();
+        }
       }
     }
   }
@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -83,8 +84,12 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
   // Execution domain
   private static final String LAUNCH_DATA_NOTIFICATION_RESULTS = "execution.launchData";
   private final AnalysisServerSocket socket;
-  private final Object requestSinkLock = new Object();
-  private RequestSink requestSink;
+  /**
+   * The sink to write requests to. It is replaced only during startup, when the server version is
+   * checked; {@link BlockingRequestSink} forwards requests added after that to its replacement, so
+   * requests are added without any lock.
+   */
+  private volatile RequestSink requestSink;
   private ResponseStream responseStream;
   private LineReaderStream errorStream;
   private final AtomicLong lastResponseTime = new AtomicLong(0);
@@ -97,18 +102,32 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
 
   private final List<ResponseListener> responseListenerList = new ArrayList<>();
 
+  /**
+   * The decoder of the high-volume notifications that doesn't build {@link JsonObject}s. It is not
+   * used while there are {@link ResponseListener}s, because they need the whole response object.
+   */
+  private final StreamingNotificationDecoder streamingDecoder = new StreamingNotificationDecoder(listener);
+
+  /**
+   * A flag indicating whether {@link #streamingDecoder} may be used, {@code true} by default.
+   */
+  private static final boolean STREAMING_DECODER_ENABLED = !Boolean.getBoolean("dart.server.disableStreamingDecoder");
+
   private final List<AnalysisServerStatusListener> statusListenerList = new ArrayList<AnalysisServerStatusListener>();
 
   /**
-   * A mapping between {@link String} ids' and the associated {@link Consumer} that was passed when
-   * the request was made.
+   * A mapping between {@link String} ids' and the {@link PendingRequest} with the associated
+   * {@link Consumer} that was passed when the request was made.
    */
-  private final Map<String, Consumer> consumerMap = Maps.newHashMap();
+  private final Map<String, PendingRequest> consumerMap = new ConcurrentHashMap<>();
 
   /**
-   * The object used to synchronize access to {@link #consumerMap}.
+   * Latencies of the requests: time between sending a request and writing it to the server, time
+   * between writing a request and reading the response, and time spent processing the response.
    */
-  private final Object consumerMapLock = new Object();
+  private final RequestLatencyHistogram queueTimeHistogram = new RequestLatencyHistogram();
+  private final RequestLatencyHistogram serverTimeHistogram = new RequestLatencyHistogram();
+  private final RequestLatencyHistogram dispatchTimeHistogram = new RequestLatencyHistogram();
 
   /**
    * The unique ID for the next request.
@@ -118,7 +137,7 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
   /**
    * A mapping between "getRefactoring" request ids and the requested refactoring kinds.
    */
-  private final Map<String, String> requestToRefactoringKindMap = Maps.newHashMap();
+  private final Map<String, String> requestToRefactoringKindMap = new ConcurrentHashMap<>();
 
   /**
    * The thread that restarts an unresponsive server or {@code null} if it has not been started.
@@ -617,6 +636,10 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
   }
 
   private void processResponse(JsonObject response) throws Exception {
+    processResponse(response, System.nanoTime());
+  }
+
+  private void processResponse(JsonObject response, long receivedNanos) throws Exception {
     notifyResponseListeners(response);
     // handle notification
     if (processNotification(response)) {
@@ -629,10 +652,8 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     }
     String idString = idJsonPrimitive.getAsString();
     // prepare consumer
-    Consumer consumer;
-    synchronized (consumerMapLock) {
-      consumer = consumerMap.get(idString);
-    }
+    PendingRequest pendingRequest = consumerMap.get(idString);
+    Consumer consumer = pendingRequest != null ? pendingRequest.consumer : null;
     JsonObject errorObject = (JsonObject)response.get("error");
     RequestError requestError = null;
     if (errorObject != null) {
@@ -759,8 +780,50 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
       ((JsonConsumer)consumer).onResponse(resultObject, requestError);
     }
 
-    synchronized (consumerMapLock) {
-      consumerMap.remove(idString);
+    consumerMap.remove(idString);
+
+    if (pendingRequest != null) {
+      requestCompleted(pendingRequest, receivedNanos);
+    }
+  }
+
+  private void requestCompleted(PendingRequest request, long receivedNanos) {
+    long dispatchedNanos = System.nanoTime();
+    // the request might be never written if the server has incompatible version
+    long writtenNanos = request.writtenNanos != 0 ? request.writtenNanos : receivedNanos;
+    long queueTime = writtenNanos - request.sentNanos;
+    long serverTime = receivedNanos - writtenNanos;
+    long dispatchTime = dispatchedNanos - receivedNanos;
+    queueTimeHistogram.record(queueTime);
+    serverTimeHistogram.record(serverTime);
+    dispatchTimeHistogram.record(dispatchTime);
+    listener.requestCompleted(request.method, queueTime, serverTime, dispatchTime);
+  }
+
+  /**
+   * Returns the histogram of times between sending requests and writing them to the server.
+   */
+  public RequestLatencyHistogram getQueueTimeHistogram() {
+    return queueTimeHistogram;
+  }
+
+  /**
+   * Returns the histogram of times between writing requests to the server and reading responses.
+   */
+  public RequestLatencyHistogram getServerTimeHistogram() {
+    return serverTimeHistogram;
+  }
+
+  /**
+   * Returns the histogram of times spent processing responses by their consumers.
+   */
+  public RequestLatencyHistogram getDispatchTimeHistogram() {
+    return dispatchTimeHistogram;
+  }
+
+  private boolean hasResponseListeners() {
+    synchronized (responseListenerList) {
+      return !responseListenerList.isEmpty();
     }
   }
 
@@ -794,12 +857,15 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
    */
   @Override
   public void sendRequestToServer(String id, JsonObject request, Consumer consumer) {
-    synchronized (consumerMapLock) {
-      consumerMap.put(id, consumer);
-    }
+    consumerMap.put(id, new PendingRequest(consumer, RequestUtilities.getRequestMethod(request)));
     lastRequestTime.set(System.currentTimeMillis());
-    synchronized (requestSinkLock) {
-      requestSink.add(request);
+    requestSink.add(request);
+  }
+
+  private void requestWritten(String id, long nanoTime) {
+    PendingRequest request = id != null ? consumerMap.get(id) : null;
+    if (request != null) {
+      request.writtenNanos = nanoTime;
     }
   }
 
@@ -807,6 +873,9 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     socket.start();
     consumerMap.clear();
     requestSink = socket.getRequestSink();
+    if (requestSink instanceof ByteRequestSink) {
+      ((ByteRequestSink)requestSink).setWriteListener(this::requestWritten);
+    }
     responseStream = socket.getResponseStream();
     errorStream = socket.getErrorStream();
     new ServerResponseReaderThread(responseStream).start();
@@ -843,10 +912,8 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
           }
           // OK
           if (message == null) {
-            synchronized (requestSinkLock) {
-              requestSink = blockRequestSink.toPassthroughSink();
-              return;
-            }
+            requestSink = blockRequestSink.toPassthroughSink();
+            return;
           }
           // report error
           Logging.getLogger().logError(message);
@@ -863,14 +930,12 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
 
         private void sendErrorForEveryRequest(String version) {
           String message = "Incompatible server version: " + version;
-          synchronized (requestSinkLock) {
-            requestSink = blockRequestSink.toErrorSink(new ResponseSink() {
-              @Override
-              public void add(JsonObject response) throws Exception {
-                processResponse(response);
-              }
-            }, ResponseUtilities.INCOMPATIBLE_SERVER_VERSION, message);
-          }
+          requestSink = blockRequestSink.toErrorSink(new ResponseSink() {
+            @Override
+            public void add(JsonObject response) throws Exception {
+              processResponse(response);
+            }
+          }, ResponseUtilities.INCOMPATIBLE_SERVER_VERSION, message);
           server_shutdown();
         }
       });
@@ -1004,6 +1069,24 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     }
   }
 
+  /**
+   * A request that has been sent to the server and is waiting for a response.
+   */
+  private static class PendingRequest {
+    private final Consumer consumer;
+    private final String method;
+    private final long sentNanos = System.nanoTime();
+    /**
+     * The time when the request was written to the server, set by the request writer thread.
+     */
+    private volatile long writtenNanos;
+
+    private PendingRequest(Consumer consumer, String method) {
+      this.consumer = consumer;
+      this.method = method;
+    }
+  }
+
   /**
    * A thread which reads responses from the {@link ResponseStream} and calls the associated
    * {@link Consumer}s from {@link RemoteAnalysisServerImpl#consumerMap}.
@@ -1022,13 +1105,16 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     public void run() {
       while (true) {
         try {
-          JsonObject response = stream.take();
-          if (response == null) {
+          String line = stream.takeLine();
+          if (line == null) {
             return;
           }
+          long receivedNanos = System.nanoTime();
           lastResponseTime.set(System.currentTimeMillis());
           try {
-            processResponse(response);
+            if (!STREAMING_DECODER_ENABLED || hasResponseListeners() || !streamingDecoder.decode(line)) {
+              processResponse(ByteResponseStream.parseResponse(line), receivedNanos);
+            }
           }
           finally {
             stream.lastRequestProcessed();
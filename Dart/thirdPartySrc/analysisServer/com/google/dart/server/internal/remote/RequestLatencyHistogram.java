@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of request latencies. Bucket {@code i} counts latencies in the range
+ * {@code [2^(i-1), 2^i)} microseconds, bucket 0 counts latencies below 1 microsecond.
+ *
+ * @coverage dart.server.remote
+ */
+public class RequestLatencyHistogram {
+  public static final int BUCKET_COUNT = 40;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+    int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getBucketCount(int bucket) {
+    return buckets.get(bucket);
+  }
+
+  /**
+   * Returns the mean latency in microseconds, or 0 if nothing has been recorded.
+   */
+  public long getMeanMicros() {
+    long n = count.get();
+    return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / n);
+  }
+
+  /**
+   * Returns the upper bound (exclusive, in microseconds) of the bucket containing the given
+   * percentile of recorded latencies, or 0 if nothing has been recorded.
+   *
+   * @param percentile a value between 0 and 100
+   */
+  public long getPercentileMicros(double percentile) {
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    long threshold = (long)Math.ceil(n * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += buckets.get(i);
+      if (seen >= threshold) {
+        return 1L << i;
+      }
+    }
+    return 1L << (BUCKET_COUNT - 1);
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets.set(i, 0);
+    }
+    count.set(0);
+    totalNanos.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + getCount() + ", mean=" + getMeanMicros() + "us, p50<" + getPercentileMicros(50) + "us, p99<" +
+           getPercentileMicros(99) + "us";
+  }
+}
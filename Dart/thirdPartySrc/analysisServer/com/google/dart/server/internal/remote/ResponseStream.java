@@ -30,4 +30,10 @@ public interface ResponseStream {
    * Takes the the next response from the stream. Blocks if no response available.
    */
   JsonObject take() throws Exception;
+
+  /**
+   * Takes the the next response from the stream as a line of JSON text, without parsing it. Blocks
+   * if no response available. Returns {@code null} if the end of the stream has been reached.
+   */
+  String takeLine() throws Exception;
 }
@@ -0,0 +1,762 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote.processor;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.dart.server.AnalysisServerListener;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.dartlang.analysis.server.protocol.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoder of the high-volume notifications ("analysis.errors", "analysis.highlights",
+ * "analysis.navigation", "analysis.outline" and "completion.results") that reads the protocol
+ * objects directly from the response line using a {@link JsonReader}, without building the
+ * intermediate {@link com.google.gson.JsonObject} tree.
+ *
+ * Lines that can't be handled by this decoder (responses, other notifications, notifications with
+ * the "event" member not in the first position) are left for the {@link NotificationProcessor}s.
+ *
+ * @coverage dart.server.remote
+ */
+public class StreamingNotificationDecoder {
+  private static final String ANALYSIS_NOTIFICATION_ERRORS = "analysis.errors";
+  private static final String ANALYSIS_NOTIFICATION_HIGHLIGHTS = "analysis.highlights";
+  private static final String ANALYSIS_NOTIFICATION_NAVIGATION = "analysis.navigation";
+  private static final String ANALYSIS_NOTIFICATION_OUTLINE = "analysis.outline";
+  private static final String COMPLETION_NOTIFICATION_RESULTS = "completion.results";
+
+  /**
+   * Maximum number of distinct enum-like strings (region types, element kinds, error codes) kept by
+   * {@link #dedup(String)}.
+   */
+  private static final int MAX_DEDUP_STRINGS = 4096;
+
+  private final AnalysisServerListener listener;
+
+  /**
+   * Enum-like strings that are repeated in every region, so that decoded objects share instances.
+   * Accessed only from the response reader thread.
+   */
+  private final Map<String, String> dedupStrings = Maps.newHashMap();
+
+  public StreamingNotificationDecoder(AnalysisServerListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Checks whether the given line is one of the notifications supported by this decoder, and if
+   * so, decodes it and notifies {@link #listener}.
+   *
+   * @return {@code true} if the line has been handled, {@code false} if it should be parsed and
+   *         processed as usual
+   */
+  public boolean decode(String line) {
+    Runnable notification = parse(line);
+    if (notification == null) {
+      return false;
+    }
+    // listeners are notified outside of the parse, so an exception thrown by a listener is not taken for a malformed line
+    notification.run();
+    return true;
+  }
+
+  private Runnable parse(String line) {
+    try {
+      JsonReader reader = new JsonReader(new StringReader(line));
+      reader.beginObject();
+      if (!reader.hasNext() || !"event".equals(reader.nextName()) || reader.peek() != JsonToken.STRING) {
+        return null;
+      }
+      String event = reader.nextString();
+      Runnable notification = null;
+      while (reader.hasNext()) {
+        if (notification == null && "params".equals(reader.nextName())) {
+          notification = readParams(event, reader);
+          if (notification == null) {
+            return null;
+          }
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return notification;
+    }
+    catch (IOException | IllegalStateException | NumberFormatException e) {
+      // let JsonParser report the problem
+      return null;
+    }
+  }
+
+  /**
+   * Reads the "params" object of the given notification and returns the listener notification
+   * to run, or {@code null} if the notification isn't supported by this decoder.
+   */
+  private Runnable readParams(String event, JsonReader reader) throws IOException {
+    if (event.equals(ANALYSIS_NOTIFICATION_ERRORS)) {
+      return readErrorsParams(reader);
+    }
+    if (event.equals(ANALYSIS_NOTIFICATION_HIGHLIGHTS)) {
+      return readHighlightsParams(reader);
+    }
+    if (event.equals(ANALYSIS_NOTIFICATION_NAVIGATION)) {
+      return readNavigationParams(reader);
+    }
+    if (event.equals(ANALYSIS_NOTIFICATION_OUTLINE)) {
+      return readOutlineParams(reader);
+    }
+    if (event.equals(COMPLETION_NOTIFICATION_RESULTS)) {
+      return readCompletionResultsParams(reader);
+    }
+    return null;
+  }
+
+  private Runnable readErrorsParams(JsonReader reader) throws IOException {
+    String file = null;
+    List<AnalysisError> errors = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("file")) {
+        file = reader.nextString();
+      }
+      else if (name.equals("errors")) {
+        errors = Lists.newArrayList();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          errors.add(readAnalysisError(reader));
+        }
+        reader.endArray();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(file, "file");
+    checkPresent(errors, "errors");
+    final String finalFile = file;
+    final List<AnalysisError> finalErrors = errors;
+    return () -> listener.computedErrors(finalFile, finalErrors);
+  }
+
+  private Runnable readHighlightsParams(JsonReader reader) throws IOException {
+    String file = null;
+    List<HighlightRegion> regions = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("file")) {
+        file = reader.nextString();
+      }
+      else if (name.equals("regions")) {
+        regions = Lists.newArrayList();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          regions.add(readHighlightRegion(reader));
+        }
+        reader.endArray();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(file, "file");
+    checkPresent(regions, "regions");
+    final String finalFile = file;
+    final List<HighlightRegion> finalRegions = regions;
+    return () -> listener.computedHighlights(finalFile, finalRegions);
+  }
+
+  private Runnable readNavigationParams(JsonReader reader) throws IOException {
+    String file = null;
+    List<NavigationRegion> regions = null;
+    List<NavigationTarget> targets = null;
+    String[] targetFiles = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("file")) {
+        file = reader.nextString();
+      }
+      else if (name.equals("regions")) {
+        regions = Lists.newArrayList();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          regions.add(readNavigationRegion(reader));
+        }
+        reader.endArray();
+      }
+      else if (name.equals("targets")) {
+        targets = Lists.newArrayList();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          targets.add(readNavigationTarget(reader));
+        }
+        reader.endArray();
+      }
+      else if (name.equals("files")) {
+        List<String> files = readStringList(reader);
+        targetFiles = files.toArray(new String[files.size()]);
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(file, "file");
+    checkPresent(regions, "regions");
+    checkPresent(targets, "targets");
+    checkPresent(targetFiles, "files");
+    // regions and targets may come in any order, so they are linked when everything is read
+    for (NavigationTarget target : targets) {
+      target.lookupFile(targetFiles);
+    }
+    for (NavigationRegion region : regions) {
+      region.lookupTargets(targets);
+    }
+    final String finalFile = file;
+    final List<NavigationRegion> finalRegions = regions;
+    return () -> listener.computedNavigation(finalFile, finalRegions);
+  }
+
+  private Runnable readOutlineParams(JsonReader reader) throws IOException {
+    String file = null;
+    Outline outline = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("file")) {
+        file = reader.nextString();
+      }
+      else if (name.equals("outline")) {
+        outline = readOutline(null, reader);
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(file, "file");
+    checkPresent(outline, "outline");
+    final String finalFile = file;
+    final Outline finalOutline = outline;
+    return () -> listener.computedOutline(finalFile, finalOutline);
+  }
+
+  private Runnable readCompletionResultsParams(JsonReader reader) throws IOException {
+    String completionId = null;
+    List<CompletionSuggestion> results = null;
+    Integer replacementOffset = null;
+    Integer replacementLength = null;
+    Boolean isLast = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("id")) {
+        completionId = reader.nextString();
+      }
+      else if (name.equals("replacementOffset")) {
+        replacementOffset = reader.nextInt();
+      }
+      else if (name.equals("replacementLength")) {
+        replacementLength = reader.nextInt();
+      }
+      else if (name.equals("isLast")) {
+        isLast = reader.nextBoolean();
+      }
+      else if (name.equals("results")) {
+        results = Lists.newArrayList();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          results.add(readCompletionSuggestion(reader));
+        }
+        reader.endArray();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(completionId, "id");
+    checkPresent(results, "results");
+    checkPresent(replacementOffset, "replacementOffset");
+    checkPresent(replacementLength, "replacementLength");
+    checkPresent(isLast, "isLast");
+    final String finalCompletionId = completionId;
+    final List<CompletionSuggestion> finalResults = results;
+    final int finalReplacementOffset = replacementOffset;
+    final int finalReplacementLength = replacementLength;
+    final boolean finalIsLast = isLast;
+    return () -> listener.computedCompletion(finalCompletionId, finalReplacementOffset, finalReplacementLength, finalResults,
+                                             finalIsLast);
+  }
+
+  private AnalysisError readAnalysisError(JsonReader reader) throws IOException {
+    String severity = null;
+    String type = null;
+    Location location = null;
+    String message = null;
+    String correction = null;
+    String code = null;
+    Boolean hasFix = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("severity")) {
+        severity = dedup(reader.nextString());
+      }
+      else if (name.equals("type")) {
+        type = dedup(reader.nextString());
+      }
+      else if (name.equals("location")) {
+        location = readLocation(reader);
+      }
+      else if (name.equals("message")) {
+        message = reader.nextString();
+      }
+      else if (name.equals("correction")) {
+        correction = readOptionalString(reader);
+      }
+      else if (name.equals("code")) {
+        code = dedup(readOptionalString(reader));
+      }
+      else if (name.equals("hasFix")) {
+        hasFix = readOptionalBoolean(reader);
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(severity, "severity");
+    checkPresent(type, "type");
+    checkPresent(location, "location");
+    checkPresent(message, "message");
+    return new AnalysisError(severity, type, location, message, correction, code, hasFix);
+  }
+
+  private HighlightRegion readHighlightRegion(JsonReader reader) throws IOException {
+    String type = null;
+    int offset = -1;
+    int length = -1;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("type")) {
+        type = dedup(reader.nextString());
+      }
+      else if (name.equals("offset")) {
+        offset = reader.nextInt();
+      }
+      else if (name.equals("length")) {
+        length = reader.nextInt();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(type, "type");
+    return new HighlightRegion(type, offset, length);
+  }
+
+  private NavigationRegion readNavigationRegion(JsonReader reader) throws IOException {
+    int offset = -1;
+    int length = -1;
+    int[] targets = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("offset")) {
+        offset = reader.nextInt();
+      }
+      else if (name.equals("length")) {
+        length = reader.nextInt();
+      }
+      else if (name.equals("targets")) {
+        targets = readIntArray(reader);
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(targets, "targets");
+    return new NavigationRegion(offset, length, targets);
+  }
+
+  private NavigationTarget readNavigationTarget(JsonReader reader) throws IOException {
+    String kind = null;
+    int fileIndex = -1;
+    int offset = -1;
+    int length = -1;
+    int startLine = -1;
+    int startColumn = -1;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("kind")) {
+        kind = dedup(reader.nextString());
+      }
+      else if (name.equals("fileIndex")) {
+        fileIndex = reader.nextInt();
+      }
+      else if (name.equals("offset")) {
+        offset = reader.nextInt();
+      }
+      else if (name.equals("length")) {
+        length = reader.nextInt();
+      }
+      else if (name.equals("startLine")) {
+        startLine = reader.nextInt();
+      }
+      else if (name.equals("startColumn")) {
+        startColumn = reader.nextInt();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(kind, "kind");
+    return new NavigationTarget(kind, fileIndex, offset, length, startLine, startColumn);
+  }
+
+  private Outline readOutline(Outline parent, JsonReader reader) throws IOException {
+    // children refer to the parent outline, which can't be created before its element, offset
+    // and length are known, so the children are read as soon as all of them are available
+    Element element = null;
+    int offset = -1;
+    int length = -1;
+    boolean hasOffset = false;
+    boolean hasLength = false;
+    Outline outline = null;
+    List<Outline> children = Lists.newArrayList();
+    List<Outline> orphans = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("element")) {
+        element = readElement(reader);
+      }
+      else if (name.equals("offset")) {
+        offset = reader.nextInt();
+        hasOffset = true;
+      }
+      else if (name.equals("length")) {
+        length = reader.nextInt();
+        hasLength = true;
+      }
+      else if (name.equals("children") && reader.peek() != JsonToken.NULL) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          if (outline == null && element != null && hasOffset && hasLength) {
+            outline = new Outline(parent, element, offset, length);
+          }
+          if (outline != null) {
+            children.add(readOutline(outline, reader));
+          }
+          else {
+            // unusual member order, re-parent the children below
+            if (orphans == null) {
+              orphans = Lists.newArrayList();
+            }
+            orphans.add(readOutline(null, reader));
+          }
+        }
+        reader.endArray();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(element, "element");
+    if (outline == null) {
+      outline = new Outline(parent, element, offset, length);
+    }
+    if (orphans != null) {
+      for (Outline orphan : orphans) {
+        children.add(reparent(outline, orphan));
+      }
+    }
+    outline.setChildren(children);
+    return outline;
+  }
+
+  private static Outline reparent(Outline parent, Outline outline) {
+    Outline result = new Outline(parent, outline.getElement(), outline.getOffset(), outline.getLength());
+    List<Outline> children = Lists.newArrayList();
+    for (Outline child : outline.getChildren()) {
+      children.add(reparent(result, child));
+    }
+    result.setChildren(children);
+    return result;
+  }
+
+  private Element readElement(JsonReader reader) throws IOException {
+    String kind = null;
+    String name = null;
+    Location location = null;
+    int flags = 0;
+    String parameters = null;
+    String returnType = null;
+    String typeParameters = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String member = reader.nextName();
+      if (member.equals("kind")) {
+        kind = dedup(reader.nextString());
+      }
+      else if (member.equals("name")) {
+        name = reader.nextString();
+      }
+      else if (member.equals("location")) {
+        location = reader.peek() == JsonToken.NULL ? readNull(reader) : readLocation(reader);
+      }
+      else if (member.equals("flags")) {
+        flags = reader.nextInt();
+      }
+      else if (member.equals("parameters")) {
+        parameters = readOptionalString(reader);
+      }
+      else if (member.equals("returnType")) {
+        returnType = readOptionalString(reader);
+      }
+      else if (member.equals("typeParameters")) {
+        typeParameters = readOptionalString(reader);
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(kind, "kind");
+    checkPresent(name, "name");
+    return new Element(kind, name, location, flags, parameters, returnType, typeParameters);
+  }
+
+  private Location readLocation(JsonReader reader) throws IOException {
+    String file = null;
+    int offset = -1;
+    int length = -1;
+    int startLine = -1;
+    int startColumn = -1;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("file")) {
+        file = reader.nextString();
+      }
+      else if (name.equals("offset")) {
+        offset = reader.nextInt();
+      }
+      else if (name.equals("length")) {
+        length = reader.nextInt();
+      }
+      else if (name.equals("startLine")) {
+        startLine = reader.nextInt();
+      }
+      else if (name.equals("startColumn")) {
+        startColumn = reader.nextInt();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(file, "file");
+    return new Location(file, offset, length, startLine, startColumn);
+  }
+
+  private CompletionSuggestion readCompletionSuggestion(JsonReader reader) throws IOException {
+    String kind = null;
+    int relevance = 0;
+    String completion = null;
+    String displayText = null;
+    int selectionOffset = 0;
+    int selectionLength = 0;
+    boolean isDeprecated = false;
+    boolean isPotential = false;
+    String docSummary = null;
+    String docComplete = null;
+    String declaringType = null;
+    String defaultArgumentListString = null;
+    int[] defaultArgumentListTextRanges = null;
+    Element element = null;
+    String returnType = null;
+    List<String> parameterNames = null;
+    List<String> parameterTypes = null;
+    Integer requiredParameterCount = null;
+    Boolean hasNamedParameters = null;
+    String parameterName = null;
+    String parameterType = null;
+    String importUri = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("kind")) {
+        kind = dedup(reader.nextString());
+      }
+      else if (name.equals("relevance")) {
+        relevance = reader.nextInt();
+      }
+      else if (name.equals("completion")) {
+        completion = reader.nextString();
+      }
+      else if (name.equals("displayText")) {
+        displayText = readOptionalString(reader);
+      }
+      else if (name.equals("selectionOffset")) {
+        selectionOffset = reader.nextInt();
+      }
+      else if (name.equals("selectionLength")) {
+        selectionLength = reader.nextInt();
+      }
+      else if (name.equals("isDeprecated")) {
+        isDeprecated = reader.nextBoolean();
+      }
+      else if (name.equals("isPotential")) {
+        isPotential = reader.nextBoolean();
+      }
+      else if (name.equals("docSummary")) {
+        docSummary = readOptionalString(reader);
+      }
+      else if (name.equals("docComplete")) {
+        docComplete = readOptionalString(reader);
+      }
+      else if (name.equals("declaringType")) {
+        declaringType = dedup(readOptionalString(reader));
+      }
+      else if (name.equals("defaultArgumentListString")) {
+        defaultArgumentListString = readOptionalString(reader);
+      }
+      else if (name.equals("defaultArgumentListTextRanges")) {
+        defaultArgumentListTextRanges = reader.peek() == JsonToken.NULL ? readNull(reader) : readIntArray(reader);
+      }
+      else if (name.equals("element")) {
+        element = reader.peek() == JsonToken.NULL ? readNull(reader) : readElement(reader);
+      }
+      else if (name.equals("returnType")) {
+        returnType = dedup(readOptionalString(reader));
+      }
+      else if (name.equals("parameterNames")) {
+        parameterNames = reader.peek() == JsonToken.NULL ? readNull(reader) : readStringList(reader);
+      }
+      else if (name.equals("parameterTypes")) {
+        parameterTypes = reader.peek() == JsonToken.NULL ? readNull(reader) : readStringList(reader);
+      }
+      else if (name.equals("requiredParameterCount")) {
+        requiredParameterCount = reader.peek() == JsonToken.NULL ? readNull(reader) : Integer.valueOf(reader.nextInt());
+      }
+      else if (name.equals("hasNamedParameters")) {
+        hasNamedParameters = readOptionalBoolean(reader);
+      }
+      else if (name.equals("parameterName")) {
+        parameterName = readOptionalString(reader);
+      }
+      else if (name.equals("parameterType")) {
+        parameterType = dedup(readOptionalString(reader));
+      }
+      else if (name.equals("importUri")) {
+        importUri = dedup(readOptionalString(reader));
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkPresent(kind, "kind");
+    checkPresent(completion, "completion");
+    return new CompletionSuggestion(kind, relevance, completion, displayText, selectionOffset, selectionLength, isDeprecated,
+                                    isPotential, docSummary, docComplete, declaringType, defaultArgumentListString,
+                                    defaultArgumentListTextRanges, element, returnType, parameterNames, parameterTypes,
+                                    requiredParameterCount, hasNamedParameters, parameterName, parameterType, importUri);
+  }
+
+  private static int[] readIntArray(JsonReader reader) throws IOException {
+    int[] ints = new int[8];
+    int size = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (size == ints.length) {
+        int[] newInts = new int[size * 2];
+        System.arraycopy(ints, 0, newInts, 0, size);
+        ints = newInts;
+      }
+      ints[size++] = reader.nextInt();
+    }
+    reader.endArray();
+    if (size == ints.length) {
+      return ints;
+    }
+    int[] result = new int[size];
+    System.arraycopy(ints, 0, result, 0, size);
+    return result;
+  }
+
+  private static List<String> readStringList(JsonReader reader) throws IOException {
+    List<String> strings = Lists.newArrayList();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      strings.add(reader.nextString());
+    }
+    reader.endArray();
+    return strings;
+  }
+
+  private static String readOptionalString(JsonReader reader) throws IOException {
+    return reader.peek() == JsonToken.NULL ? readNull(reader) : reader.nextString();
+  }
+
+  private static Boolean readOptionalBoolean(JsonReader reader) throws IOException {
+    return reader.peek() == JsonToken.NULL ? readNull(reader) : Boolean.valueOf(reader.nextBoolean());
+  }
+
+  private static <T> T readNull(JsonReader reader) throws IOException {
+    reader.nextNull();
+    return null;
+  }
+
+  private static void checkPresent(Object value, String memberName) {
+    if (value == null) {
+      throw new IllegalStateException("Required member is missing: " + memberName);
+    }
+  }
+
+  private String dedup(String value) {
+    if (value == null) {
+      return null;
+    }
+    String existing = dedupStrings.get(value);
+    if (existing != null) {
+      return existing;
+    }
+    if (dedupStrings.size() < MAX_DEDUP_STRINGS) {
+      dedupStrings.put(value, value);
+    }
+    return value;
+  }
+}
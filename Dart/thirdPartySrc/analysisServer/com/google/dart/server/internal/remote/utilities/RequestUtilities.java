@@ -1021,7 +1021,7 @@ public class RequestUtilities {
   /**
    * Returns the request method, or {@code null}.
    */
-  private static String getRequestMethod(JsonObject request) {
+  public static String getRequestMethod(JsonObject request) {
     JsonElement child = request.get(METHOD);
     if (child instanceof JsonPrimitive) {
       return child.getAsString();
@@ -42,6 +42,7 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -185,14 +186,9 @@ abstract class VmServiceBase implements VmServiceConst {
 
   /**
    * A mapping between {@link String} ids' and the associated {@link Consumer} that was passed when
-   * the request was made. Synchronize against {@link #consumerMapLock} before accessing this field.
+   * the request was made. Accessed concurrently by request and websocket threads.
    */
-  private final Map<String, Consumer> consumerMap = Maps.newHashMap();
-
-  /**
-   * The object used to synchronize access to {@link #consumerMap}.
-   */
-  private final Object consumerMapLock = new Object();
+  private final Map<String, Consumer> consumerMap = new ConcurrentHashMap<>();
 
   /**
    * The unique ID for the next request.
@@ -341,9 +337,7 @@ abstract class VmServiceBase implements VmServiceConst {
     request.add(PARAMS, params);
 
     // Cache the consumer to receive the response
-    synchronized (consumerMapLock) {
-      consumerMap.put(id, consumer);
-    }
+    consumerMap.put(id, consumer);
 
     // Send the request
     requestSink.add(request);
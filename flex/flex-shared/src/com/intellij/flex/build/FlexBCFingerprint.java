@@ -0,0 +1,124 @@
+package com.intellij.flex.build;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Fingerprint of the inputs of a build configuration compilation: generated and custom compiler config files, sources,
+ * SWC libraries and outputs of dependency build configurations.
+ * <p/>
+ * Files under the target roots are fingerprinted by their paths and the stamps the build process keeps for them, so they are not read.
+ * Config files are small and regenerated before each compilation, they are fingerprinted by content, so a regenerated config with
+ * the same content doesn't change the fingerprint.
+ */
+public class FlexBCFingerprint {
+  private static final Comparator<File> BY_PATH = (file1, file2) -> file1.getPath().compareTo(file2.getPath());
+
+  private final MessageDigest myDigest = createDigest();
+  private final byte[] myBuffer = new byte[64 * 1024];
+
+  /**
+   * Stamp that changes when the file content changes, like the timestamp the build process keeps for each file of a build target.
+   */
+  public interface FileStamps {
+    long getStamp(@NotNull File file) throws IOException;
+  }
+
+  private FlexBCFingerprint() {
+  }
+
+  /**
+   * @param roots source roots, library files and other roots of the build target, directories are walked recursively
+   * @param filter accepts files and directories that are inputs of the compilation, {@code null} means all files
+   */
+  @NotNull
+  public static String computeRootsFingerprint(@NotNull final Collection<File> roots,
+                                               @Nullable final FileFilter filter,
+                                               @NotNull final FileStamps stamps) throws IOException {
+    final FlexBCFingerprint fingerprint = new FlexBCFingerprint();
+    final List<File> sortedRoots = new ArrayList<>(roots);
+    sortedRoots.sort(BY_PATH);
+    for (File root : sortedRoots) {
+      fingerprint.addRecursively(root, filter, stamps);
+    }
+    return fingerprint.toHexString();
+  }
+
+  @NotNull
+  public static String computeBCFingerprint(@NotNull final String rootsFingerprint,
+                                            @NotNull final Collection<File> configFiles) throws IOException {
+    final FlexBCFingerprint fingerprint = new FlexBCFingerprint();
+    fingerprint.addString(rootsFingerprint);
+    for (File configFile : configFiles) {
+      fingerprint.addFile(configFile);
+    }
+    return fingerprint.toHexString();
+  }
+
+  private void addRecursively(final File file, final @Nullable FileFilter filter, final FileStamps stamps) throws IOException {
+    if (file.isFile()) {
+      addString(file.getPath());
+      addString(String.valueOf(stamps.getStamp(file)));
+    }
+    else {
+      final File[] children = file.listFiles();
+      if (children == null) return;
+
+      Arrays.sort(children, BY_PATH);
+      for (File child : children) {
+        if (filter == null || filter.accept(child)) {
+          addRecursively(child, filter, stamps);
+        }
+      }
+    }
+  }
+
+  private void addFile(final File file) throws IOException {
+    addString(file.getPath());
+    if (!file.isFile()) return;
+
+    final InputStream stream = new FileInputStream(file);
+    try {
+      int read;
+      while ((read = stream.read(myBuffer)) > 0) {
+        myDigest.update(myBuffer, 0, read);
+      }
+    }
+    finally {
+      stream.close();
+    }
+  }
+
+  private void addString(final String s) {
+    myDigest.update(s.getBytes(StandardCharsets.UTF_8));
+    myDigest.update((byte)0);
+  }
+
+  private String toHexString() {
+    return new BigInteger(1, myDigest.digest()).toString(16);
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,236 @@
+package com.intellij.flex.build;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fingerprints of the last successful compilation of build configurations (including RLMs and runtime stylesheets), keyed by output
+ * file path. They are stored in the build data folder of the project, so nothing is recompiled after restart if inputs have not changed.
+ * <p/>
+ * Several build processes of the same project may save at the same time, so saving merges the changes into the current file content
+ * under a file lock and replaces the file atomically.
+ */
+public class FlexBCFingerprints {
+  private static final Logger LOG = Logger.getInstance(FlexBCFingerprints.class.getName());
+  private static final String FILE_PATH = "flex/bc-fingerprints.dat";
+  private static final int VERSION = 2;
+  // file locks are held on behalf of the whole JVM, saves by different instances in one process are serialized by this lock
+  private static final Object ourSaveLock = new Object();
+
+  private final File myFile;
+  private final Map<String, Entry> myEntries = new THashMap<>();
+  // entries put or removed since the last save, null value means removed
+  private final Map<String, Entry> myChanges = new THashMap<>();
+
+  private FlexBCFingerprints(final File file) {
+    myFile = file;
+  }
+
+  /**
+   * @param dataStorageRoot {@code ProjectDescriptor.dataManager.getDataPaths().getDataStorageRoot()}
+   */
+  @NotNull
+  public static FlexBCFingerprints load(@NotNull final File dataStorageRoot) {
+    final FlexBCFingerprints fingerprints = new FlexBCFingerprints(new File(dataStorageRoot, FILE_PATH));
+    fingerprints.read(fingerprints.myEntries);
+    return fingerprints;
+  }
+
+  @Nullable
+  public synchronized Entry get(@NotNull final String outputFilePath) {
+    return myEntries.get(outputFilePath);
+  }
+
+  public synchronized void put(@NotNull final String outputFilePath, @Nullable final Entry entry) {
+    if (entry == null ? myEntries.remove(outputFilePath) != null : !entry.equals(myEntries.put(outputFilePath, entry))) {
+      myChanges.put(outputFilePath, entry);
+    }
+  }
+
+  public synchronized void clear() {
+    for (String outputFilePath : myEntries.keySet()) {
+      myChanges.put(outputFilePath, null);
+    }
+    myEntries.clear();
+  }
+
+  /**
+   * Applies changes made since the last save on top of the current file content, which may have been modified by another process.
+   */
+  public synchronized void save() {
+    if (myChanges.isEmpty()) return;
+
+    File tempFile = null;
+    try {
+      FileUtil.createParentDirs(myFile);
+      synchronized (ourSaveLock) {
+        try (FileChannel lockChannel = FileChannel.open(new File(myFile.getPath() + ".lock").toPath(),
+                                                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+          final Map<String, Entry> entries = new THashMap<>();
+          read(entries);
+          for (Map.Entry<String, Entry> change : myChanges.entrySet()) {
+            if (change.getValue() == null) {
+              entries.remove(change.getKey());
+            }
+            else {
+              entries.put(change.getKey(), change.getValue());
+            }
+          }
+
+          tempFile = Files.createTempFile(myFile.getParentFile().toPath(), myFile.getName(), ".tmp").toFile();
+          write(tempFile, entries);
+          move(tempFile, myFile);
+          tempFile = null;
+
+          myEntries.clear();
+          myEntries.putAll(entries);
+          myChanges.clear();
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Failed to save " + myFile.getPath(), e);
+    }
+    finally {
+      if (tempFile != null) {
+        FileUtil.delete(tempFile);
+      }
+    }
+  }
+
+  private static void write(final File file, final Map<String, Entry> entries) throws IOException {
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(VERSION);
+      out.writeInt(entries.size());
+      for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+        out.writeUTF(entry.getKey());
+        entry.getValue().write(out);
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private static void move(final File from, final File to) throws IOException {
+    try {
+      // readers that don't take the lock see either the old or the new content
+      Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (AtomicMoveNotSupportedException e) {
+      Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private void read(final Map<String, Entry> entries) {
+    if (!myFile.isFile()) return;
+
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)));
+      try {
+        if (in.readInt() != VERSION) return;
+
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          final String outputFilePath = in.readUTF();
+          entries.put(outputFilePath, Entry.read(in));
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Failed to load " + myFile.getPath(), e);
+      entries.clear();
+    }
+  }
+
+  public static class Entry {
+    private final String myFingerprint;
+    private final List<String> myRoots;
+    private final List<String> myConfigFiles;
+
+    private Entry(final String fingerprint, final List<String> roots, final List<String> configFiles) {
+      myFingerprint = fingerprint;
+      myRoots = roots;
+      myConfigFiles = configFiles;
+    }
+
+    /**
+     * Allows to share the fingerprint of the roots by all build configurations of a build target.
+     */
+    @NotNull
+    public static Entry create(@NotNull final String rootsFingerprint,
+                               @NotNull final Collection<File> roots,
+                               @NotNull final Collection<File> configFiles) throws IOException {
+      return new Entry(FlexBCFingerprint.computeBCFingerprint(rootsFingerprint, configFiles), toPaths(roots), toPaths(configFiles));
+    }
+
+    private void write(final DataOutput out) throws IOException {
+      out.writeUTF(myFingerprint);
+      writeList(out, myRoots);
+      writeList(out, myConfigFiles);
+    }
+
+    private static Entry read(final DataInput in) throws IOException {
+      return new Entry(in.readUTF(), readList(in), readList(in));
+    }
+
+    private static void writeList(final DataOutput out, final List<String> list) throws IOException {
+      out.writeInt(list.size());
+      for (String s : list) {
+        out.writeUTF(s);
+      }
+    }
+
+    private static List<String> readList(final DataInput in) throws IOException {
+      final int size = in.readInt();
+      final List<String> result = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        result.add(in.readUTF());
+      }
+      return result;
+    }
+
+    private static List<String> toPaths(final Collection<File> files) {
+      final List<String> result = new ArrayList<>(files.size());
+      for (File file : files) {
+        result.add(file.getPath());
+      }
+      return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      final Entry entry = (Entry)o;
+      return myFingerprint.equals(entry.myFingerprint) && myRoots.equals(entry.myRoots) && myConfigFiles.equals(entry.myConfigFiles);
+    }
+
+    @Override
+    public int hashCode() {
+      return myFingerprint.hashCode();
+    }
+  }
+}
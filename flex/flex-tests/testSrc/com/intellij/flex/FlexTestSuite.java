@@ -1,5 +1,6 @@
 package com.intellij.flex;
 
+import com.intellij.flex.bc.FlexBCFingerprintsTest;
 import com.intellij.flex.bc.FlexCompilerConfigTest;
 import com.intellij.flex.bc.FlexProjectConfigTest;
 import com.intellij.flex.codeInsight.*;
@@ -19,11 +20,14 @@ import com.intellij.flex.imports.FlexOptimizeImportsTest;
 import com.intellij.flex.intentions.*;
 import com.intellij.flex.parser.ActionScriptParsingTest;
 import com.intellij.flex.parser.FlexImporterTest;
+import com.intellij.flex.parser.SwfStubBuildingPerformanceTest;
 import com.intellij.flex.projectView.FlexProjectViewTest;
 import com.intellij.flex.refactoring.*;
 import com.intellij.flex.resolver.ActionScriptResolveTest;
 import com.intellij.flex.resolver.FlexCssNavigationTest;
 import com.intellij.flex.uml.FlashUmlTest;
+import com.intellij.jps.flex.build.FlexBCCompilationSchedulerTest;
+import com.intellij.lang.javascript.flex.debug.FlexDebuggerCommandsTest;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -35,6 +39,7 @@ public class FlexTestSuite extends TestCase {
     final TestSuite testSuite = new TestSuite(FlexTestSuite.class.getSimpleName());
 
     // com.intellij.flex.bc.*
+    testSuite.addTestSuite(FlexBCFingerprintsTest.class);
     testSuite.addTestSuite(FlexCompilerConfigTest.class);
     testSuite.addTestSuite(FlexProjectConfigTest.class);
 
@@ -107,6 +112,7 @@ public class FlexTestSuite extends TestCase {
     //com.intellij.flex.parser.*
     testSuite.addTestSuite(ActionScriptParsingTest.class);
     testSuite.addTestSuite(FlexImporterTest.class);
+    testSuite.addTestSuite(SwfStubBuildingPerformanceTest.class);
 
     //com.intellij.flex.projectView.*
     testSuite.addTestSuite(FlexProjectViewTest.class);
@@ -134,6 +140,12 @@ public class FlexTestSuite extends TestCase {
     //com.intellij.flex.uml.*
     testSuite.addTestSuite(FlashUmlTest.class);
 
+    //com.intellij.jps.flex.build.*
+    testSuite.addTestSuite(FlexBCCompilationSchedulerTest.class);
+
+    //com.intellij.lang.javascript.flex.debug.*
+    testSuite.addTestSuite(FlexDebuggerCommandsTest.class);
+
     return testSuite;
   }
 }
@@ -0,0 +1,70 @@
+package com.intellij.flex.bc;
+
+import com.intellij.flex.build.FlexBCFingerprint;
+import com.intellij.flex.build.FlexBCFingerprints;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures only the up-to-date check of a build configuration by its fingerprint, not a build: the JPS file system scan and
+ * the compiler run are not included.
+ */
+public class FlexBCFingerprintsPerformanceTest extends TestCase {
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("flexBCFingerprintsPerformance", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testUpToDateCheck() throws IOException {
+    // a large project: 300 packages of 100 classes and 30 SWC libraries, files are not read, so their size doesn't matter
+    final List<File> roots = new ArrayList<>();
+    roots.add(new File(myDir, "src"));
+    for (int p = 0; p < 300; p++) {
+      for (int c = 0; c < 100; c++) {
+        FileUtil.writeToFile(new File(myDir, "src/p" + p + "/C" + c + ".as"), "package p" + p + " { public class C" + c + " {} }");
+      }
+    }
+    for (int i = 0; i < 30; i++) {
+      final File swc = new File(myDir, "libs/lib" + i + ".swc");
+      FileUtil.writeToFile(swc, "swc");
+      roots.add(swc);
+    }
+    final File dataDir = new File(myDir, "data");
+    final List<File> configFiles = Collections.singletonList(new File(myDir, "config.xml"));
+    FileUtil.writeToFile(configFiles.get(0), "<flex-config/>");
+
+    final FlexBCFingerprints fingerprints = FlexBCFingerprints.load(dataDir);
+    fingerprints.put("out/app.swf", computeEntry(roots, configFiles));
+    fingerprints.save();
+
+    PlatformTestUtil.startPerformanceTest("Up-to-date check of a BC with 30000 sources and 30 SWCs", 1000, () -> {
+      final FlexBCFingerprints.Entry entry = FlexBCFingerprints.load(dataDir).get("out/app.swf");
+      assertNotNull(entry);
+      assertEquals(entry, computeEntry(roots, configFiles));
+    }).attempts(3).assertTiming();
+  }
+
+  private static FlexBCFingerprints.Entry computeEntry(final List<File> roots, final List<File> configFiles) throws IOException {
+    return FlexBCFingerprints.Entry.create(FlexBCFingerprint.computeRootsFingerprint(roots, null, File::lastModified), roots, configFiles);
+  }
+}
@@ -0,0 +1,152 @@
+package com.intellij.flex.bc;
+
+import com.intellij.flex.build.FlexBCFingerprint;
+import com.intellij.flex.build.FlexBCFingerprints;
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class FlexBCFingerprintsTest extends TestCase {
+  private File myDir;
+  private File myDataDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("flexBCFingerprints", null);
+    myDataDir = new File(myDir, "data");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private File createFile(final String relativePath, final String text) throws IOException {
+    final File file = new File(myDir, relativePath);
+    FileUtil.writeToFile(file, text);
+    return file;
+  }
+
+  private FlexBCFingerprints.Entry createEntry(final String root, final File config) throws IOException {
+    final List<File> roots = Collections.singletonList(new File(myDir, root));
+    return FlexBCFingerprints.Entry.create(FlexBCFingerprint.computeRootsFingerprint(roots, null, File::lastModified), roots,
+                                           Collections.singletonList(config));
+  }
+
+  public void testRootsFingerprint() throws IOException {
+    final File as = createFile("src/foo/Foo.as", "package foo { public class Foo {} }");
+    final File swc = createFile("lib/lib.swc", "swc");
+    final List<File> roots = Arrays.asList(swc, new File(myDir, "src"));
+    final Map<File, Long> stamps = new HashMap<>();
+    stamps.put(as, 1L);
+    stamps.put(swc, 1L);
+
+    final String fingerprint = FlexBCFingerprint.computeRootsFingerprint(roots, null, stamps::get);
+    final List<File> reversedRoots = new ArrayList<>(roots);
+    Collections.reverse(reversedRoots);
+    assertEquals("roots order", fingerprint, FlexBCFingerprint.computeRootsFingerprint(reversedRoots, null, stamps::get));
+
+    FileUtil.writeToFile(as, "package foo { public class Foo { public var bar; } }");
+    assertEquals("files are not read", fingerprint, FlexBCFingerprint.computeRootsFingerprint(roots, null, stamps::get));
+
+    stamps.put(as, 2L);
+    assertFalse("changed stamp", fingerprint.equals(FlexBCFingerprint.computeRootsFingerprint(roots, null, stamps::get)));
+    stamps.put(as, 1L);
+
+    stamps.put(createFile("src/foo/Bar.as", "package foo { public class Bar {} }"), 1L);
+    assertFalse("added source", fingerprint.equals(FlexBCFingerprint.computeRootsFingerprint(roots, null, stamps::get)));
+    assertEquals("ignored source", fingerprint,
+                 FlexBCFingerprint.computeRootsFingerprint(roots, file -> !file.getName().equals("Bar.as"), stamps::get));
+  }
+
+  public void testConfigFileContent() throws IOException {
+    final File config = createFile("config.xml", "<flex-config/>");
+    final String rootsFingerprint = "roots";
+    final String fingerprint = FlexBCFingerprint.computeBCFingerprint(rootsFingerprint, Collections.singletonList(config));
+
+    FileUtil.writeToFile(config, "<flex-config><debug>true</debug></flex-config>");
+    assertFalse("changed config",
+                fingerprint.equals(FlexBCFingerprint.computeBCFingerprint(rootsFingerprint, Collections.singletonList(config))));
+
+    // generated config is rewritten before each compilation
+    FileUtil.writeToFile(config, "<flex-config/>");
+    assertEquals("regenerated config", fingerprint,
+                 FlexBCFingerprint.computeBCFingerprint(rootsFingerprint, Collections.singletonList(config)));
+
+    assertFalse("changed roots",
+                fingerprint.equals(FlexBCFingerprint.computeBCFingerprint("other roots", Collections.singletonList(config))));
+  }
+
+  public void testPersistenceAndMerge() throws IOException {
+    final File config = createFile("config.xml", "<flex-config/>");
+    createFile("src1/A.as", "A");
+    createFile("src2/B.as", "B");
+    final FlexBCFingerprints.Entry entry1 = createEntry("src1", config);
+    final FlexBCFingerprints.Entry entry2 = createEntry("src2", config);
+
+    // e.g. two build processes of the project
+    final FlexBCFingerprints fingerprints1 = FlexBCFingerprints.load(myDataDir);
+    final FlexBCFingerprints fingerprints2 = FlexBCFingerprints.load(myDataDir);
+    fingerprints1.put("out/a.swf", entry1);
+    fingerprints1.put("out/c.swf", entry2);
+    fingerprints1.save();
+    fingerprints2.put("out/b.swf", entry2);
+    fingerprints2.save();
+
+    final FlexBCFingerprints loaded = FlexBCFingerprints.load(myDataDir);
+    assertEquals(entry1, loaded.get("out/a.swf"));
+    assertEquals(entry2, loaded.get("out/b.swf"));
+    assertEquals(entry2, loaded.get("out/c.swf"));
+
+    loaded.put("out/c.swf", null);
+    loaded.save();
+    assertNull(FlexBCFingerprints.load(myDataDir).get("out/c.swf"));
+    assertEquals(entry1, FlexBCFingerprints.load(myDataDir).get("out/a.swf"));
+  }
+
+  public void testConcurrentSaves() throws Exception {
+    final FlexBCFingerprints.Entry entry = createEntry("src", createFile("config.xml", "<flex-config/>"));
+    final int count = 8;
+    final ExecutorService executor = Executors.newFixedThreadPool(count);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        final String outputFilePath = "out/" + i + ".swf";
+        futures.add(executor.submit(() -> {
+          final FlexBCFingerprints fingerprints = FlexBCFingerprints.load(myDataDir);
+          fingerprints.put(outputFilePath, entry);
+          fingerprints.save();
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    final FlexBCFingerprints loaded = FlexBCFingerprints.load(myDataDir);
+    for (int i = 0; i < count; i++) {
+      assertEquals(entry, loaded.get("out/" + i + ".swf"));
+    }
+
+    final File[] files = new File(myDataDir, "flex").listFiles();
+    assertNotNull(files);
+    for (File file : files) {
+      assertFalse(file.getName(), file.getName().endsWith(".tmp"));
+    }
+  }
+}
@@ -9,6 +9,7 @@ import junit.framework.TestCase;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.ZipEntry;
@@ -69,6 +70,27 @@ public class FlexImporterTest extends TestCase {
     doTestFor("hotbook.swf");
   }
 
+  public final void testMappedFile() throws Exception {
+    for (String fileName : new String[]{"builtin.abc", "hotbook.swf"}) {
+      final File file = new File(getTestDataPath() + fileName);
+      final String expected = FlexImporter.buildInterfaceFromStream(new FileInputStream(file));
+      assertEquals(fileName, expected, FlexImporter.buildInterfaceFromFile(file));
+    }
+  }
+
+  public final void testWrongUncompressedLengthInHeader() throws Exception {
+    final byte[] contents = FileUtil.loadFileBytes(new File(getTestDataPath() + "hotbook.swf"));
+    final String expected = FlexImporter.buildInterfaceFromStream(new ByteArrayInputStream(contents));
+    for (int length : new int[]{0, 100, Integer.MAX_VALUE}) {
+      // little endian uncompressed length follows the signature and the version
+      contents[4] = (byte)length;
+      contents[5] = (byte)(length >> 8);
+      contents[6] = (byte)(length >> 16);
+      contents[7] = (byte)(length >> 24);
+      assertEquals(expected, FlexImporter.buildInterfaceFromStream(new ByteArrayInputStream(contents)));
+    }
+  }
+
   private void doTestFor(final String fileName) throws IOException {
     final File file = new File(getTestDataPath() + fileName);
     final byte[] contents;
@@ -0,0 +1,89 @@
+package com.intellij.flex.parser;
+
+import com.intellij.flex.util.FlexTestUtils;
+import com.intellij.lang.javascript.JavaScriptSupportLoader;
+import com.intellij.lang.javascript.flex.importer.FlexImporter;
+import com.intellij.lang.javascript.psi.stubs.impl.JSFileCachedData;
+import com.intellij.lang.javascript.psi.stubs.impl.JSFileStubImpl;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class SwfStubBuildingPerformanceTest extends LightCodeInsightFixtureTestCase {
+  private ExecutorService myExecutor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myExecutor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myExecutor.shutdownNow();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private static List<byte[]> loadLibrarySwfs(final String sdkVersion) {
+    final List<byte[]> result = new ArrayList<>();
+    FileUtil.processFilesRecursively(new File(FlexTestUtils.getPathToCompleteFlexSdk(sdkVersion)), file -> {
+      if (file.getName().endsWith(".swc")) {
+        try (ZipFile zipFile = new ZipFile(file)) {
+          final ZipEntry zipEntry = zipFile.getEntry("library.swf");
+          try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+            result.add(FileUtil.loadBytes(inputStream, (int)zipEntry.getSize()));
+          }
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return true;
+    });
+    assertFalse(sdkVersion, result.isEmpty());
+    return result;
+  }
+
+  private static JSFileStubImpl buildStubs(final byte[] content, @Nullable final ExecutorService executor) throws Exception {
+    final JSFileStubImpl stub = new JSFileStubImpl(JavaScriptSupportLoader.ECMA_SCRIPT_L4, new JSFileCachedData());
+    FlexImporter.buildStubsInterfaceFromBytes(content, stub, executor);
+    return stub;
+  }
+
+  private void doTest(final String sdkVersion, final int expectedMs) throws Exception {
+    final List<byte[]> swfs = loadLibrarySwfs(sdkVersion);
+    for (byte[] swf : swfs) {
+      assertEquals(DebugUtil.stubTreeToString(buildStubs(swf, null)), DebugUtil.stubTreeToString(buildStubs(swf, myExecutor)));
+    }
+
+    PlatformTestUtil.startPerformanceTest("SWF stub building for Flex SDK " + sdkVersion, expectedMs, () -> {
+      for (byte[] swf : swfs) {
+        buildStubs(swf, myExecutor);
+      }
+    }).usesAllCPUCores().attempts(3).assertTiming();
+  }
+
+  public void testFlexSdk45() throws Exception {
+    doTest("4.5", 6000);
+  }
+
+  public void testFlexSdk46() throws Exception {
+    doTest("4.6", 6000);
+  }
+}
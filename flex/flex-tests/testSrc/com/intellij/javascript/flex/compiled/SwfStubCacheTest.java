@@ -0,0 +1,89 @@
+package com.intellij.javascript.flex.compiled;
+
+import com.intellij.flex.util.FlexTestUtils;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.psi.stubs.PsiFileStub;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+public class SwfStubCacheTest extends LightCodeInsightFixtureTestCase {
+  // not the version of the real SWF stubs, so that the test doesn't interfere with them
+  private static final int STUB_VERSION = -1;
+
+  private byte[] myContent;
+  private String myKey;
+  private PsiFileStub myStub;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    SwfStubCache.reset();
+    myContent = FileUtil.loadFileBytes(new File(FlexTestUtils.getTestDataPath("flex_importer"), "hotbook.swf"));
+    myKey = SwfStubCache.computeKey(myContent);
+    myStub = SwfFileStubBuilder.buildFileStub(null, myContent);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      SwfStubCache.reset();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testKey() {
+    assertEquals(myKey, SwfStubCache.computeKey(myContent.clone()));
+    final byte[] changedContent = myContent.clone();
+    changedContent[changedContent.length - 1]++;
+    assertFalse(myKey.equals(SwfStubCache.computeKey(changedContent)));
+  }
+
+  public void testHitAndMiss() {
+    assertNull(SwfStubCache.get(myKey, STUB_VERSION));
+    SwfStubCache.put(myKey, STUB_VERSION, myStub);
+    assertNotNull(SwfStubCache.get(myKey, STUB_VERSION));
+    assertNull(SwfStubCache.get(SwfStubCache.computeKey(new byte[]{1, 2, 3}), STUB_VERSION));
+  }
+
+  public void testRoundTrip() {
+    SwfStubCache.put(myKey, STUB_VERSION, myStub);
+    final PsiFileStub cachedStub = SwfStubCache.get(myKey, STUB_VERSION);
+    assertNotNull(cachedStub);
+    assertEquals(DebugUtil.stubTreeToString(SwfFileStubBuilder.buildFileStub(null, myContent)), DebugUtil.stubTreeToString(cachedStub));
+  }
+
+  public void testStubVersionChange() {
+    SwfStubCache.put(myKey, STUB_VERSION, myStub);
+    assertNull(SwfStubCache.get(myKey, STUB_VERSION - 1));
+    // the storage of the previous version is deleted
+    assertNull(SwfStubCache.get(myKey, STUB_VERSION));
+  }
+
+  public void testStorageClearedWhenTooLarge() {
+    SwfStubCache.put(myKey, STUB_VERSION, myStub);
+    SwfStubCache.setMaxStorageSize(1024);
+    final String otherKey = SwfStubCache.computeKey(new byte[]{1, 2, 3});
+    SwfStubCache.put(otherKey, STUB_VERSION, myStub);
+    assertNull(SwfStubCache.get(myKey, STUB_VERSION));
+    assertNotNull(SwfStubCache.get(otherKey, STUB_VERSION));
+  }
+
+  public void testRecoveryFromBrokenState() {
+    SwfStubCache.put(myKey, STUB_VERSION, myStub);
+    SwfStubCache.markBroken(new IOException("test"));
+
+    assertNull(SwfStubCache.get(myKey, STUB_VERSION));
+    SwfStubCache.put(myKey, STUB_VERSION, myStub);
+    assertNull(SwfStubCache.get(myKey, STUB_VERSION));
+
+    // enabled again with a new stub version, the broken storage is not reused
+    assertNull(SwfStubCache.get(myKey, STUB_VERSION - 1));
+    SwfStubCache.put(myKey, STUB_VERSION - 1, myStub);
+    assertNotNull(SwfStubCache.get(myKey, STUB_VERSION - 1));
+  }
+}
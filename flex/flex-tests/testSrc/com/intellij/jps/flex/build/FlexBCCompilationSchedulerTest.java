@@ -0,0 +1,208 @@
+package com.intellij.jps.flex.build;
+
+import com.intellij.flex.build.FlexBCFingerprint;
+import com.intellij.flex.build.FlexBCFingerprints;
+import com.intellij.jps.flex.build.FlexBuilder.Status;
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FlexBCCompilationSchedulerTest extends TestCase {
+  private ExecutorService myExecutor;
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myExecutor = Executors.newCachedThreadPool();
+    myDir = FileUtil.createTempDirectory("flexBCCompilationScheduler", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myExecutor.shutdownNow();
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private FlexBCCompilationScheduler<String> createScheduler(final int permits, final String... itemsAndPrerequisites) {
+    final FlexBCCompilationScheduler<String> scheduler = new FlexBCCompilationScheduler<>(myExecutor, new Semaphore(permits));
+    for (int i = 0; i < itemsAndPrerequisites.length; i += 2) {
+      scheduler.add(itemsAndPrerequisites[i], itemsAndPrerequisites[i + 1]);
+    }
+    return scheduler;
+  }
+
+  public void testDependentCompiledAfterPrerequisite() throws Exception {
+    final FlexBCCompilationScheduler<String> scheduler = createScheduler(4, "app", null, "rlm", "app", "css", null);
+    final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch cssStarted = new CountDownLatch(1);
+
+    final Status status = scheduler.run(false, () -> false, (item, forced) -> {
+      events.add(item + " started");
+      if (item.equals("app")) {
+        // independent stylesheet is compiled at the same time as the application
+        try {
+          assertTrue(cssStarted.await(10, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException e) {
+          return Status.Cancelled;
+        }
+      }
+      else if (item.equals("css")) {
+        cssStarted.countDown();
+      }
+      return Status.Ok;
+    }, (item, itemStatus, wallTime) -> events.add(item + " finished"));
+
+    assertEquals(Status.Ok, status);
+    assertEquals(events.toString(), 6, events.size());
+    assertTrue(events.toString(), events.indexOf("app finished") < events.indexOf("rlm started"));
+    assertTrue(events.toString(), events.indexOf("css started") < events.indexOf("app finished"));
+  }
+
+  public void testDependentNotCompiledIfPrerequisiteFailed() throws Exception {
+    final FlexBCCompilationScheduler<String> scheduler = createScheduler(4, "app", null, "rlm", "app");
+    final List<String> compiled = Collections.synchronizedList(new ArrayList<>());
+
+    final Status status = scheduler.run(false, () -> false, (item, forced) -> {
+      compiled.add(item);
+      return item.equals("app") ? Status.Failed : Status.Ok;
+    }, (item, itemStatus, wallTime) -> {});
+
+    assertEquals(Status.Failed, status);
+    assertEquals(Collections.singletonList("app"), compiled);
+  }
+
+  public void testCancelledBuildStartsNothing() throws Exception {
+    final FlexBCCompilationScheduler<String> scheduler = createScheduler(4, "app", null, "css", null);
+    final Status status = scheduler.run(false, () -> true, (item, forced) -> {
+      fail(item);
+      return Status.Ok;
+    }, (item, itemStatus, wallTime) -> fail(item));
+    assertEquals(Status.Cancelled, status);
+  }
+
+  public void testParallelismLimit() throws Exception {
+    final Semaphore permits = new Semaphore(2);
+    final FlexBCCompilationScheduler<String> scheduler = new FlexBCCompilationScheduler<>(myExecutor, permits);
+    for (int i = 0; i < 8; i++) {
+      scheduler.add("css" + i, null);
+    }
+
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final List<String> finished = new ArrayList<>();
+
+    final Status status = scheduler.run(false, () -> false, (item, forced) -> {
+      final int current = running.incrementAndGet();
+      maxRunning.accumulateAndGet(current, Math::max);
+      try {
+        Thread.sleep(10);
+      }
+      catch (InterruptedException e) {
+        return Status.Cancelled;
+      }
+      finally {
+        running.decrementAndGet();
+      }
+      return Status.Ok;
+    }, (item, itemStatus, wallTime) -> finished.add(item));
+
+    assertEquals(Status.Ok, status);
+    assertEquals(8, finished.size());
+    assertTrue(String.valueOf(maxRunning.get()), maxRunning.get() <= 2);
+    assertEquals(2, permits.availablePermits());
+  }
+
+  public void testUnchangedBuildConfigurationsSkipped() throws Exception {
+    final File source = new File(myDir, "src/Main.as");
+    FileUtil.writeToFile(source, "package { public class Main {} }");
+    final List<File> roots = Collections.singletonList(new File(myDir, "src"));
+    final Map<File, Long> stamps = new ConcurrentHashMap<>();
+    stamps.put(source, 1L);
+
+    final Map<String, File> configFiles = new HashMap<>();
+    for (String item : Arrays.asList("app", "rlm", "css")) {
+      final File configFile = new File(myDir, item + "-config.xml");
+      FileUtil.writeToFile(configFile, "<flex-config/>");
+      configFiles.put(item, configFile);
+    }
+
+    final FlexBCFingerprints fingerprints = FlexBCFingerprints.load(new File(myDir, "data"));
+    final Map<String, Status> statuses = new LinkedHashMap<>();
+
+    final FlexBCCompilationScheduler.Compiler<String> compiler = (item, forced) -> {
+      try {
+        final String rootsFingerprint = FlexBCFingerprint.computeRootsFingerprint(roots, null, stamps::get);
+        final FlexBCFingerprints.Entry fingerprint =
+          FlexBCFingerprints.Entry.create(rootsFingerprint, roots, Collections.singletonList(configFiles.get(item)));
+        final String outputFilePath = getOutputFile(item).getPath();
+        if (!forced && FlexBuilder.isUpToDate(fingerprint, fingerprints.get(outputFilePath), outputFilePath)) {
+          return Status.UpToDate;
+        }
+        FileUtil.writeToFile(getOutputFile(item), "swf");
+        fingerprints.put(outputFilePath, fingerprint);
+        return Status.Ok;
+      }
+      catch (IOException e) {
+        return Status.Failed;
+      }
+    };
+
+    final Runnable build = () -> {
+      statuses.clear();
+      try {
+        assertEquals(Status.Ok, createScheduler(2, "app", null, "rlm", "app", "css", null)
+          .run(false, () -> false, compiler, (item, status, wallTime) -> statuses.put(item, status)));
+      }
+      catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    };
+
+    build.run();
+    assertStatuses(statuses, Status.Ok, Status.Ok, Status.Ok);
+
+    build.run();
+    assertStatuses(statuses, Status.UpToDate, Status.UpToDate, Status.UpToDate);
+
+    FileUtil.writeToFile(configFiles.get("css"), "<flex-config><debug>true</debug></flex-config>");
+    build.run();
+    assertStatuses(statuses, Status.UpToDate, Status.UpToDate, Status.Ok);
+
+    // RLM optimized for the application is recompiled when the application is
+    FileUtil.writeToFile(configFiles.get("app"), "<flex-config><debug>true</debug></flex-config>");
+    build.run();
+    assertStatuses(statuses, Status.Ok, Status.Ok, Status.UpToDate);
+
+    assertTrue(getOutputFile("rlm").delete());
+    build.run();
+    assertStatuses(statuses, Status.UpToDate, Status.Ok, Status.UpToDate);
+
+    // source roots are shared by all build configurations of the target
+    stamps.put(source, 2L);
+    build.run();
+    assertStatuses(statuses, Status.Ok, Status.Ok, Status.Ok);
+  }
+
+  private File getOutputFile(final String item) {
+    return new File(myDir, "out/" + item + ".swf");
+  }
+
+  private static void assertStatuses(final Map<String, Status> statuses, final Status app, final Status rlm, final Status css) {
+    assertEquals(statuses.toString(), 3, statuses.size());
+    assertEquals("app", app, statuses.get("app"));
+    assertEquals("rlm", rlm, statuses.get("rlm"));
+    assertEquals("css", css, statuses.get("css"));
+  }
+}
@@ -0,0 +1,126 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class FlexDebuggerCommandsTest extends TestCase {
+  private final List<String> myPosted = new ArrayList<>();
+  private final List<String> myResponses = new ArrayList<>();
+
+  public void testReadOnlyCommands() {
+    assertTrue(new DebuggerCommand("info locals").isReadOnly());
+    assertTrue(new DebuggerCommand("frame 2\ninfo arguments").isReadOnly());
+    assertTrue(new DebuggerCommand("bt").isReadOnly());
+
+    // may call functions and getters
+    assertFalse(new DebuggerCommand("print foo.bar").isReadOnly());
+    assertFalse(new DebuggerCommand("frame 1\nprint this").isReadOnly());
+    assertFalse(new DebuggerCommand("frame 1\ninfo locals\nprint foo").isReadOnly());
+    assertFalse(new DebuggerCommand("set a = 1").isReadOnly());
+    assertFalse(new DebuggerCommand("step").isReadOnly());
+  }
+
+  public void testUserEvaluationsNotCachedNorPipelined() {
+    final FlexStackFrame frame = new FlexStackFrame(null, null);
+
+    final FlexStackFrame.EvaluateCommand watch = frame.new EvaluateCommand("foo.compute()", null);
+    assertFalse(watch.isReadOnly());
+    assertFalse(watch.isPipelinable());
+    assertFalse(watch.isCached());
+
+    final FlexStackFrame.EvaluateCommand children = frame.new EvaluateCommand("#123.", null).cacheable();
+    assertTrue(children.isReadOnly());
+    assertFalse(children.isPipelinable());
+  }
+
+  public void testEvaluationCache() {
+    final EvaluationCache cache = new EvaluationCache();
+    final List<String> responses = Arrays.asList("frame", "$1 = 3 (0x3)");
+
+    cache.put("print a.length", responses, 0, 0);
+    assertEquals(responses, cache.get("print a.length", 0));
+    assertNull(cache.get("print b.length", 0));
+
+    // e.g. after a step or an evaluation typed by the user
+    assertNull(cache.get("print a.length", 1));
+    assertNull(cache.get("print a.length", 0));
+
+    // the state has changed after the command was sent
+    cache.put("print a.length", responses, 1, 2);
+    assertNull(cache.get("print a.length", 2));
+  }
+
+  public void testConsecutivePipelinableCommandsPostedAtOnce() throws Exception {
+    final CompositeDebuggerCommand composite =
+      new CompositeDebuggerCommand(command("info arguments", true), command("info locals", true), command("print this", false));
+
+    composite.post(null);
+    assertEquals(Arrays.asList("info arguments", "info locals"), myPosted);
+
+    assertEquals(CommandOutputProcessingMode.PROCEEDING, composite.onTextAvailable("a = 1"));
+    // response to 'info locals' is already on its way
+    composite.post(null);
+    assertEquals(Arrays.asList("info arguments", "info locals"), myPosted);
+    assertEquals(Collections.singletonList("info arguments: a = 1"), myResponses);
+  }
+
+  public void testPipelinedResponsesReadInOrder() throws Exception {
+    final boolean[] succeeded = new boolean[1];
+    final CompositeDebuggerCommand composite =
+      new CompositeDebuggerCommand(command("info arguments", true), command("info locals", true)) {
+        @Override
+        protected void succeeded() {
+          super.succeeded();
+          succeeded[0] = true;
+        }
+      };
+
+    composite.post(null);
+    readResponses(composite);
+    assertTrue(succeeded[0]);
+    assertEquals(Arrays.asList("info arguments: a = 1", "info locals: b = 2"), myResponses);
+  }
+
+  public void testPipelinedResponsesReadWhenObsolete() throws Exception {
+    final boolean[] obsolete = new boolean[1];
+    final CompositeDebuggerCommand composite =
+      new CompositeDebuggerCommand(() -> obsolete[0], command("info arguments", true), command("info locals", true));
+
+    composite.post(null);
+    obsolete[0] = true;
+    readResponses(composite);
+    // otherwise the response to 'info locals' would be taken for the response to the next command
+    assertEquals(Arrays.asList("info arguments: a = 1", "info locals: b = 2"), myResponses);
+  }
+
+  private void readResponses(final CompositeDebuggerCommand composite) {
+    assertEquals(Arrays.asList("info arguments", "info locals"), myPosted);
+    assertEquals(CommandOutputProcessingMode.PROCEEDING, composite.onTextAvailable("a = 1"));
+    assertEquals(CommandOutputProcessingMode.DONE, composite.onTextAvailable("b = 2"));
+  }
+
+  private DebuggerCommand command(@NotNull final String text, final boolean pipelinable) {
+    return new DebuggerCommand(text, CommandOutputProcessingType.SPECIAL_PROCESSING) {
+      @Override
+      boolean isPipelinable() {
+        return pipelinable;
+      }
+
+      @Override
+      public void post(FlexDebugProcess flexDebugProcess) {
+        myPosted.add(getText());
+      }
+
+      @Override
+      CommandOutputProcessingMode onTextAvailable(String s) {
+        myResponses.add(getText() + ": " + s);
+        return CommandOutputProcessingMode.DONE;
+      }
+    };
+  }
+}
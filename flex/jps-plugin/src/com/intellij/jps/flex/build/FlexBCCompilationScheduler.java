@@ -0,0 +1,165 @@
+package com.intellij.jps.flex.build;
+
+import com.intellij.jps.flex.build.FlexBuilder.Status;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.api.CanceledStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Compiles the build configurations of a build target (the main BC, its RLMs and runtime stylesheets) as a small dependency graph.
+ * A compilation starts when its prerequisite has finished successfully, independent compilations run concurrently. The number of
+ * compilations running at once is limited by permits that are shared by all targets built in parallel.
+ * <p/>
+ * Compilations run on the executor, finished compilations are reported on the thread that called {@link #run}, in the order they finish.
+ * After a failure or cancellation no more compilations are started, the running ones are waited for.
+ */
+class FlexBCCompilationScheduler<T> {
+
+  interface Compiler<T> {
+    /**
+     * Called on an executor thread while a compilation permit is held.
+     *
+     * @param forced if the compilation must not be skipped even if its inputs have not changed
+     */
+    @NotNull
+    Status compile(@NotNull T item, boolean forced);
+  }
+
+  interface Listener<T> {
+    void compilationFinished(@NotNull T item, @NotNull Status status, long wallTime) throws IOException;
+  }
+
+  private final Executor myExecutor;
+  private final Semaphore myPermits;
+  private final List<Compilation<T>> myCompilations = new ArrayList<>();
+
+  FlexBCCompilationScheduler(@NotNull final Executor executor, @NotNull final Semaphore permits) {
+    myExecutor = executor;
+    myPermits = permits;
+  }
+
+  /**
+   * @param prerequisite an item added before, the compilation of which must finish successfully before {@code item} is compiled.
+   *                     If it was not skipped, {@code item} is compiled even if its own inputs have not changed.
+   */
+  void add(@NotNull final T item, @Nullable final T prerequisite) {
+    Compilation<T> prerequisiteCompilation = null;
+    if (prerequisite != null) {
+      for (Compilation<T> compilation : myCompilations) {
+        if (compilation.myItem == prerequisite) {
+          prerequisiteCompilation = compilation;
+          break;
+        }
+      }
+      if (prerequisiteCompilation == null) throw new IllegalArgumentException("Prerequisite is not added: " + prerequisite);
+    }
+    myCompilations.add(new Compilation<>(item, prerequisiteCompilation));
+  }
+
+  /**
+   * @return {@link Status#Failed} if any compilation failed, {@link Status#Cancelled} if any compilation or the build was cancelled,
+   * {@link Status#Ok} otherwise
+   */
+  @NotNull
+  Status run(final boolean forced,
+             @NotNull final CanceledStatus canceledStatus,
+             @NotNull final Compiler<T> compiler,
+             @NotNull final Listener<T> listener) throws IOException, InterruptedException {
+    final BlockingQueue<Compilation<T>> finished = new LinkedBlockingQueue<>();
+    int running = 0;
+    boolean failed = false;
+    boolean cancelled = false;
+
+    while (true) {
+      if (!failed && !cancelled && canceledStatus.isCanceled()) {
+        cancelled = true;
+      }
+
+      if (!failed && !cancelled) {
+        for (final Compilation<T> compilation : myCompilations) {
+          if (compilation.myStarted || compilation.myPrerequisite != null && !compilation.myPrerequisite.isSuccessful()) continue;
+
+          compilation.myStarted = true;
+          // e.g. RLM optimized for the main application must be recompiled if the link report of the application has changed
+          final boolean compilationForced =
+            forced || compilation.myPrerequisite != null && compilation.myPrerequisite.myStatus == Status.Ok;
+          running++;
+
+          myExecutor.execute(() -> {
+            try {
+              compilation.myStatus = compile(compilation, compilationForced, compiler);
+            }
+            finally {
+              if (compilation.myStatus == null) compilation.myStatus = Status.Failed;
+              finished.add(compilation);
+            }
+          });
+        }
+      }
+
+      if (running == 0) break;
+
+      final Compilation<T> compilation = finished.take();
+      running--;
+      compilation.myFinished = true;
+
+      listener.compilationFinished(compilation.myItem, compilation.myStatus, compilation.myWallTime);
+
+      if (compilation.myStatus == Status.Failed) {
+        failed = true;
+      }
+      else if (compilation.myStatus == Status.Cancelled) {
+        cancelled = true;
+      }
+    }
+
+    return failed ? Status.Failed : cancelled ? Status.Cancelled : Status.Ok;
+  }
+
+  private Status compile(final Compilation<T> compilation, final boolean forced, final Compiler<T> compiler) {
+    try {
+      myPermits.acquire();
+    }
+    catch (InterruptedException e) {
+      return Status.Cancelled;
+    }
+
+    final long start = System.currentTimeMillis();
+    try {
+      return compiler.compile(compilation.myItem, forced);
+    }
+    finally {
+      compilation.myWallTime = System.currentTimeMillis() - start;
+      myPermits.release();
+    }
+  }
+
+  private static class Compilation<T> {
+    private final T myItem;
+    private final @Nullable Compilation<T> myPrerequisite;
+
+    // accessed only by the thread that runs the scheduler
+    private boolean myStarted;
+    private boolean myFinished;
+
+    private volatile Status myStatus;
+    private volatile long myWallTime;
+
+    private Compilation(final T item, final @Nullable Compilation<T> prerequisite) {
+      myItem = item;
+      myPrerequisite = prerequisite;
+    }
+
+    private boolean isSuccessful() {
+      return myFinished && (myStatus == Status.Ok || myStatus == Status.UpToDate);
+    }
+  }
+}
@@ -3,6 +3,8 @@ package com.intellij.jps.flex.build;
 import com.intellij.flex.FlexCommonBundle;
 import com.intellij.flex.FlexCommonUtils;
 import com.intellij.flex.build.CompilerConfigGeneratorRt;
+import com.intellij.flex.build.FlexBCFingerprint;
+import com.intellij.flex.build.FlexBCFingerprints;
 import com.intellij.flex.build.FlexBuildTarget;
 import com.intellij.flex.build.FlexBuildTargetType;
 import com.intellij.flex.model.JpsFlexCompilerProjectExtension;
@@ -18,12 +20,15 @@ import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.PathUtilRt;
 import com.intellij.util.concurrency.Semaphore;
+import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.builders.BuildOutputConsumer;
 import org.jetbrains.jps.builders.BuildRootDescriptor;
 import org.jetbrains.jps.builders.DirtyFilesHolder;
 import org.jetbrains.jps.builders.FileProcessor;
 import org.jetbrains.jps.cmdline.ProjectDescriptor;
+import org.jetbrains.jps.indices.IgnoredFileIndex;
 import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.ProjectBuildException;
 import org.jetbrains.jps.incremental.StopBuildException;
@@ -31,9 +36,11 @@ import org.jetbrains.jps.incremental.TargetBuilder;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
 import org.jetbrains.jps.incremental.messages.ProgressMessage;
+import org.jetbrains.jps.incremental.storage.Timestamps;
 import org.jetbrains.jps.model.JpsProject;
 import org.jetbrains.jps.model.library.sdk.JpsSdk;
 import org.jetbrains.jps.model.module.JpsModule;
+import org.jetbrains.jps.service.SharedThreadPool;
 
 import java.io.File;
 import java.io.IOException;
@@ -41,13 +48,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTarget> {
 
   private static final Logger LOG = Logger.getInstance(FlexBuilder.class.getName());
   private JpsBuiltInFlexCompilerHandler myBuiltInCompilerHandler;
+  // limits the number of build configurations compiled at once by all targets built in parallel
+  private java.util.concurrent.Semaphore myCompilationPermits;
+  private FlexBCFingerprints myFingerprints;
 
-  private enum Status {Ok, Failed, Cancelled}
+  enum Status {Ok, UpToDate, Failed, Cancelled}
 
   protected FlexBuilder() {
     super(Collections.singletonList(FlexBuildTargetType.INSTANCE));
@@ -62,15 +73,22 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
   @Override
   public void buildStarted(final CompileContext context) {
     super.buildStarted(context);
-    myBuiltInCompilerHandler = new JpsBuiltInFlexCompilerHandler(context.getProjectDescriptor().getProject());
+    final JpsProject project = context.getProjectDescriptor().getProject();
+    myBuiltInCompilerHandler = new JpsBuiltInFlexCompilerHandler(project);
+    myCompilationPermits =
+      new java.util.concurrent.Semaphore(Math.max(1, JpsFlexCompilerProjectExtension.getInstance(project).MAX_PARALLEL_COMPILATIONS));
+    myFingerprints = FlexBCFingerprints.load(context.getProjectDescriptor().dataManager.getDataPaths().getDataStorageRoot());
   }
 
   @Override
   public void buildFinished(final CompileContext context) {
     LOG.assertTrue(myBuiltInCompilerHandler.getActiveCompilationsNumber() == 0,
                    myBuiltInCompilerHandler.getActiveCompilationsNumber() + " Flex compilation(s) are not finished!");
-    myBuiltInCompilerHandler.stopCompilerProcess();
+    myBuiltInCompilerHandler.stopCompilerProcesses();
     myBuiltInCompilerHandler = null;
+    myCompilationPermits = null;
+    myFingerprints.save();
+    myFingerprints = null;
 
     FlexCommonUtils.deleteTempFlexConfigFiles(context.getProjectDescriptor().getProject().getName());
 
@@ -133,32 +151,137 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
       }
     }
 
+    // fingerprints are not used for FlexUnit BCs because their generated launcher class is not under the target roots
+    final RootsFingerprint rootsFingerprint =
+      FlexCommonUtils.isFlexUnitBC(mainBC) ? null : computeRootsFingerprint(context, buildTarget, dirtyFilePaths);
+    try {
+      compileBuildConfigurations(context, buildTarget, bcsToCompile, rootsFingerprint, dirtyFilePaths, outputConsumer);
+    }
+    finally {
+      // saved after each target, so that compilations are not repeated if the build is interrupted
+      myFingerprints.save();
+    }
+  }
+
+  /**
+   * Compiles independent build configurations of the target concurrently, the number of compilations running at once is limited by
+   * {@link JpsFlexCompilerProjectExtension#MAX_PARALLEL_COMPILATIONS}. RLMs optimized for the main application need its link report,
+   * so they are compiled after it. Build configurations with the same fingerprint as at the last successful compilation are skipped.
+   */
+  private void compileBuildConfigurations(final CompileContext context,
+                                          final FlexBuildTarget buildTarget,
+                                          final List<JpsFlexBuildConfiguration> bcsToCompile,
+                                          final @Nullable RootsFingerprint rootsFingerprint,
+                                          final Collection<String> dirtyFilePaths,
+                                          final BuildOutputConsumer outputConsumer) throws ProjectBuildException, IOException {
+    final JpsFlexBuildConfiguration mainBC = bcsToCompile.get(0);
+    final FlexBCCompilationScheduler<BCCompilation> scheduler =
+      new FlexBCCompilationScheduler<>(SharedThreadPool.getInstance()::executeOnPooledThread, myCompilationPermits);
+    BCCompilation mainCompilation = null;
     for (JpsFlexBuildConfiguration bc : bcsToCompile) {
-      final Status status = compileBuildConfiguration(context, bc, myBuiltInCompilerHandler);
+      final BCCompilation compilation = new BCCompilation(bc);
+      final boolean dependsOnMainBC = bc != mainBC && FlexCommonUtils.isRLMTemporaryBC(bc) && !bc.getOptimizeFor().isEmpty();
+      scheduler.add(compilation, dependsOnMainBC ? mainCompilation : null);
+      if (bc == mainBC) mainCompilation = compilation;
+    }
 
-      switch (status) {
-        case Ok:
-          outputConsumer.registerOutputFile(new File(mainBC.getActualOutputFilePath()), dirtyFilePaths);
-          FlexBuilderUtils.performPostCompileActions(context, bc, dirtyFilePaths, outputConsumer);
-          context.processMessage(
-            new CompilerMessage(FlexBuilderUtils.getCompilerName(bc), BuildMessage.Kind.INFO,
-                                FlexCommonBundle.message("compilation.successful")));
-          break;
+    final Status status;
+    try {
+      status = scheduler.run(context.getScope().isBuildForced(buildTarget), context.getCancelStatus(),
+                             (compilation, forced) -> compileBuildConfiguration(context, compilation, forced, rootsFingerprint),
+                             (compilation, compilationStatus, wallTime) ->
+                               compilationFinished(context, mainBC, compilation, compilationStatus, wallTime, dirtyFilePaths,
+                                                   outputConsumer));
+    }
+    catch (InterruptedException e) {
+      throw new ProjectBuildException(e);
+    }
 
-        case Failed:
-          final String message = bc.getOutputType() == OutputType.Application
-                                 ? FlexCommonBundle.message("compilation.failed")
-                                 : FlexCommonBundle.message("compilation.failed.dependent.will.be.skipped");
-          context.processMessage(new CompilerMessage(FlexBuilderUtils.getCompilerName(bc), BuildMessage.Kind.INFO, message));
+    if (status == Status.Failed) {
+      throw new StopBuildException();
+    }
+  }
 
-          throw new StopBuildException();
+  private void compilationFinished(final CompileContext context,
+                                   final JpsFlexBuildConfiguration mainBC,
+                                   final BCCompilation compilation,
+                                   final Status status,
+                                   final long wallTime,
+                                   final Collection<String> dirtyFilePaths,
+                                   final BuildOutputConsumer outputConsumer) throws IOException {
+    final JpsFlexBuildConfiguration bc = compilation.myBC;
+    final String compilerName = FlexBuilderUtils.getCompilerName(bc);
 
-        case Cancelled:
+    switch (status) {
+      case Ok:
+      case UpToDate:
+        outputConsumer.registerOutputFile(new File(mainBC.getActualOutputFilePath()), dirtyFilePaths);
+        FlexBuilderUtils.performPostCompileActions(context, bc, dirtyFilePaths, outputConsumer);
+        myFingerprints.put(bc.getActualOutputFilePath(), compilation.myFingerprint);
+        if (status == Status.UpToDate) {
+          context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.INFO,
+                                                     FlexCommonBundle.message("compilation.skipped.inputs.not.changed")));
+        }
+        else {
           context.processMessage(
-            new CompilerMessage(FlexBuilderUtils.getCompilerName(bc), BuildMessage.Kind.INFO,
-                                FlexCommonBundle.message("compilation.cancelled")));
-          return;
+            new CompilerMessage(compilerName, BuildMessage.Kind.INFO, FlexCommonBundle.message("compilation.successful")));
+          reportWallTime(context, compilerName, wallTime);
+        }
+        break;
+
+      case Failed:
+        myFingerprints.put(bc.getActualOutputFilePath(), null);
+        final String message = bc.getOutputType() == OutputType.Application
+                               ? FlexCommonBundle.message("compilation.failed")
+                               : FlexCommonBundle.message("compilation.failed.dependent.will.be.skipped");
+        context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.INFO, message));
+        reportWallTime(context, compilerName, wallTime);
+        break;
+
+      case Cancelled:
+        context.processMessage(
+          new CompilerMessage(compilerName, BuildMessage.Kind.INFO, FlexCommonBundle.message("compilation.cancelled")));
+        break;
+    }
+  }
+
+  private static void reportWallTime(final CompileContext context, final String compilerName, final long wallTime) {
+    context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.INFO,
+                                               FlexCommonBundle.message("compilation.wall.time", wallTime)));
+  }
+
+  /**
+   * Files are fingerprinted by the stamps the build process keeps for the target, so they are not read. Stamps of dirty files are
+   * saved only after the target is built, their current timestamps are used meanwhile.
+   */
+  @Nullable
+  private static RootsFingerprint computeRootsFingerprint(final CompileContext context,
+                                                          final FlexBuildTarget target,
+                                                          final Collection<String> dirtyFilePaths) {
+    final List<File> roots = new ArrayList<>();
+    for (BuildRootDescriptor descriptor : context.getProjectDescriptor().getBuildRootIndex().getTargetRoots(target, context)) {
+      roots.add(descriptor.getRootFile());
+    }
+
+    final IgnoredFileIndex ignoredFileIndex = context.getProjectDescriptor().getIgnoredFileIndex();
+    final Timestamps timestamps = context.getProjectDescriptor().timestamps.getStorage();
+    final Set<String> dirtyPaths = new THashSet<>(dirtyFilePaths);
+    final FlexBCFingerprint.FileStamps stamps = file -> {
+      if (!dirtyPaths.contains(file.getPath())) {
+        final long stamp = timestamps.getStamp(file, target);
+        if (stamp != -1L) return stamp;
       }
+      return file.lastModified();
+    };
+
+    try {
+      final String fingerprint =
+        FlexBCFingerprint.computeRootsFingerprint(roots, file -> !ignoredFileIndex.isIgnored(file.getName()), stamps);
+      return new RootsFingerprint(roots, fingerprint);
+    }
+    catch (IOException e) {
+      LOG.info("Failed to compute fingerprint of " + target.getId(), e);
+      return null;
     }
   }
 
@@ -279,24 +402,35 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
     return cssBC;
   }
 
-  private static Status compileBuildConfiguration(final CompileContext context,
-                                                  final JpsFlexBuildConfiguration bc,
-                                                  final JpsBuiltInFlexCompilerHandler builtInCompilerHandler) {
-    setProgressMessage(context, bc);
-
+  private Status compileBuildConfiguration(final CompileContext context,
+                                           final BCCompilation compilation,
+                                           final boolean forced,
+                                           final @Nullable RootsFingerprint rootsFingerprint) {
+    final JpsFlexBuildConfiguration bc = compilation.myBC;
     final String compilerName = FlexBuilderUtils.getCompilerName(bc);
 
     try {
       final List<File> configFiles = createConfigFiles(bc, context.getProjectDescriptor());
       final String outputFilePath = bc.getActualOutputFilePath();
 
+      if (rootsFingerprint != null) {
+        compilation.myFingerprint =
+          FlexBCFingerprints.Entry.create(rootsFingerprint.myFingerprint, rootsFingerprint.myRoots, configFiles);
+        if (!forced && isUpToDate(compilation.myFingerprint, myFingerprints.get(outputFilePath), outputFilePath)) {
+          LOG.debug("inputs not changed since the last compilation: " + outputFilePath);
+          return Status.UpToDate;
+        }
+      }
+
+      setProgressMessage(context, bc);
+
       if (!ensureCanCreateFile(new File(outputFilePath))) {
         context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.ERROR,
                                                    FlexCommonBundle.message("failed.to.create.file", bc.getActualOutputFilePath())));
         return Status.Failed;
       }
 
-      return doCompile(context, bc, configFiles, compilerName, builtInCompilerHandler);
+      return doCompile(context, bc, configFiles, compilerName, myBuiltInCompilerHandler);
     }
     catch (IOException e) {
       context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.ERROR, e.getMessage()));
@@ -304,6 +438,12 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
     }
   }
 
+  static boolean isUpToDate(@NotNull final FlexBCFingerprints.Entry fingerprint,
+                            @Nullable final FlexBCFingerprints.Entry lastCompiledFingerprint,
+                            @NotNull final String outputFilePath) {
+    return fingerprint.equals(lastCompiledFingerprint) && new File(outputFilePath).isFile();
+  }
+
   private static boolean ensureCanCreateFile(@NotNull File file) {
     final int maxAttempts = 3; // FileUtil.ensureCanCreateFile() may return false because of race conditions
 
@@ -363,7 +503,9 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
                             builtInCompilerHandler.canBeUsedForSdk(sdk.getHomePath());
 
     if (builtIn) {
-      return doCompileWithBuiltInCompiler(context, bc, configFiles, compilerName, builtInCompilerHandler);
+      final Status status = doCompileWithBuiltInCompiler(context, bc, configFiles, compilerName, builtInCompilerHandler);
+      // null if concurrent compilations took all built-in compiler processes for other SDKs meanwhile
+      if (status != null) return status;
     }
 
     final List<String> compilerCommand = asc20 ? getASC20Command(bc.getModule().getProject(), sdk, app)
@@ -393,13 +535,14 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
     }
   }
 
+  @Nullable
   private static Status doCompileWithBuiltInCompiler(final CompileContext context,
                                                      final JpsFlexBuildConfiguration bc,
                                                      final List<File> configFiles,
                                                      final String compilerName,
                                                      final JpsBuiltInFlexCompilerHandler builtInCompilerHandler) {
     try {
-      builtInCompilerHandler.startCompilerIfNeeded(bc.getSdk(), context, compilerName);
+      if (!builtInCompilerHandler.startCompilerIfNeeded(bc.getSdk(), context, compilerName)) return null;
     }
     catch (IOException e) {
       context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.ERROR, e.toString()));
@@ -418,7 +561,7 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
 
     final BuiltInCompilerListener listener = new BuiltInCompilerListener(context, compilerName, () -> semaphore.up());
 
-    builtInCompilerHandler.sendCompilationCommand(plainCommand, listener);
+    builtInCompilerHandler.sendCompilationCommand(bc.getSdk().getHomePath(), plainCommand, listener);
 
     semaphore.waitFor();
     builtInCompilerHandler.removeListener(listener);
@@ -483,11 +626,34 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
     }
   }
 
+  private static class BCCompilation {
+    private final JpsFlexBuildConfiguration myBC;
+    private volatile FlexBCFingerprints.Entry myFingerprint;
+
+    private BCCompilation(final JpsFlexBuildConfiguration bc) {
+      myBC = bc;
+    }
+  }
+
+  private static class RootsFingerprint {
+    private final List<File> myRoots;
+    private final String myFingerprint;
+
+    private RootsFingerprint(final List<File> roots, final String fingerprint) {
+      myRoots = roots;
+      myFingerprint = fingerprint;
+    }
+  }
+
   private static class BuiltInCompilerListener extends CompilerMessageHandlerBase implements JpsBuiltInFlexCompilerHandler.Listener {
+    private final CompileContext myContext;
+    private final String myCompilerName;
     private final Runnable myOnCompilationFinishedRunnable;
 
     BuiltInCompilerListener(final CompileContext context, final String compilerName, final Runnable onCompilationFinishedRunnable) {
       super(context, false, compilerName);
+      myContext = context;
+      myCompilerName = compilerName;
       myOnCompilationFinishedRunnable = onCompilationFinishedRunnable;
     }
 
@@ -496,6 +662,11 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
       handleText(text);
     }
 
+    @Override
+    public void compilationTimingsAvailable(final String timings) {
+      myContext.processMessage(new CompilerMessage(myCompilerName, BuildMessage.Kind.INFO, "Compilation phases: " + timings));
+    }
+
     @Override
     public void compilationFinished() {
       registerCompilationFinished();
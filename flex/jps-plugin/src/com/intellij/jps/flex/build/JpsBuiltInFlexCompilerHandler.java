@@ -3,10 +3,10 @@ package com.intellij.jps.flex.build;
 import com.intellij.flex.FlexCommonUtils;
 import com.intellij.flex.model.sdk.JpsFlexSdkType;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import gnu.trove.THashMap;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
@@ -17,29 +17,39 @@ import org.jetbrains.jps.service.SharedThreadPool;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs built-in compiler processes, one per SDK, so that each of them stays warm for all compilations with its SDK during the build.
+ * A process compiles up to {@link #COMPILATION_THREADS} build configurations at a time; compilations share the socket of the process
+ * and are told apart by a command number prefix of every line.
+ * <p/>
+ * A process is registered for its SDK before it is started, so the limit of {@link #MAX_COMPILER_PROCESSES} is checked and the slot is
+ * taken atomically. The process is started and connected outside of the handler lock, other compilations with the same SDK wait for it.
+ */
 public class JpsBuiltInFlexCompilerHandler {
 
   private static final Logger LOG = Logger.getInstance(JpsBuiltInFlexCompilerHandler.class.getName());
   private static final String CONNECTION_SUCCESSFUL = "Connection successful";
   public static final String COMPILATION_FINISHED = "Compilation finished";
+  public static final String COMPILATION_TIMINGS = "Compilation timings: ";
 
-  private final JpsProject myProject;
-
-  private String mySdkHome;
+  private static final int MAX_COMPILER_PROCESSES = 2;
+  private static final int COMPILATION_THREADS =
+    Integer.getInteger("flex.builtin.compiler.threads", Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
 
-  private ServerSocket myServerSocket;
-  private DataInputStream myDataInputStream;
-  private DataOutputStream myDataOutputStream;
+  private final JpsProject myProject;
 
-  private int commandNumber = 1;
-  private final Map<String, Listener> myActiveListeners = new THashMap<>();
+  private final Map<String, CompilerProcess> myCompilerProcesses = new THashMap<>();
 
   public interface Listener {
     void textAvailable(String text);
 
+    void compilationTimingsAvailable(String timings);
+
     void compilationFinished();
   }
 
@@ -47,40 +57,73 @@ public class JpsBuiltInFlexCompilerHandler {
     myProject = project;
   }
 
+  /**
+   * A quick check, {@link #startCompilerIfNeeded(JpsSdk, CompileContext, String)} checks the limit again when it takes a slot.
+   */
   public synchronized boolean canBeUsedForSdk(final String sdkHome) {
-    return mySdkHome == null || mySdkHome.equals(sdkHome);
+    return myCompilerProcesses.containsKey(sdkHome) || myCompilerProcesses.size() < MAX_COMPILER_PROCESSES;
   }
 
-  public synchronized void startCompilerIfNeeded(final JpsSdk<?> sdk,
-                                                 final CompileContext context,
-                                                 final String compilerName) throws IOException {
-    if (!Comparing.equal(sdk.getHomePath(), mySdkHome)) {
-      stopCompilerProcess();
-    }
-
-    if (myServerSocket == null) {
-      try {
-        //context.processMessage(new ProgressMessage("Starting Flex compiler"));
-        myServerSocket = new ServerSocket(0);
-        myServerSocket.setSoTimeout(10000);
-        final int port = myServerSocket.getLocalPort();
-
-        startCompilerProcess(sdk, port, context, compilerName);
-
-        final Socket socket = myServerSocket.accept();
-        myDataInputStream = new DataInputStream(socket.getInputStream());
-        myDataOutputStream = new DataOutputStream(socket.getOutputStream());
-        mySdkHome = sdk.getHomePath();
-        scheduleInputReading();
+  /**
+   * @return false if the process for the SDK is not running and can't be started because of {@link #MAX_COMPILER_PROCESSES}
+   * @throws IOException if the process for the SDK failed to start, either by this call or by a concurrent one
+   */
+  public boolean startCompilerIfNeeded(final JpsSdk<?> sdk,
+                                       final CompileContext context,
+                                       final String compilerName) throws IOException {
+    final String sdkHome = sdk.getHomePath();
+    final CompilerProcess existingProcess;
+    final CompilerProcess compilerProcess;
+    synchronized (this) {
+      existingProcess = myCompilerProcesses.get(sdkHome);
+      if (existingProcess == null) {
+        if (myCompilerProcesses.size() >= MAX_COMPILER_PROCESSES) return false;
+        compilerProcess = new CompilerProcess(sdkHome);
+        myCompilerProcesses.put(sdkHome, compilerProcess);
       }
-      catch (IOException e) {
-        stopCompilerProcess();
-        throw e;
+      else {
+        compilerProcess = null;
       }
     }
+
+    if (existingProcess != null) {
+      existingProcess.waitUntilStarted();
+      return true;
+    }
+
+    try {
+      //context.processMessage(new ProgressMessage("Starting Flex compiler"));
+      final ServerSocket serverSocket = compilerProcess.openServerSocket();
+      serverSocket.setSoTimeout(10000);
+
+      startCompilerProcess(compilerProcess, sdk, serverSocket.getLocalPort(), context, compilerName);
+
+      // may take up to the socket timeout, the handler is not locked meanwhile
+      compilerProcess.connected(serverSocket.accept());
+      scheduleInputReading(compilerProcess);
+      compilerProcess.startFinished(null);
+      return true;
+    }
+    catch (IOException e) {
+      startFailed(compilerProcess, e);
+      throw e;
+    }
+    catch (RuntimeException e) {
+      startFailed(compilerProcess, new IOException(e));
+      throw e;
+    }
   }
 
-  private void startCompilerProcess(final JpsSdk<?> sdk,
+  private void startFailed(final CompilerProcess compilerProcess, final IOException error) {
+    synchronized (this) {
+      myCompilerProcesses.remove(compilerProcess.mySdkHome, compilerProcess);
+    }
+    compilerProcess.closeSocket();
+    compilerProcess.startFinished(error);
+  }
+
+  private void startCompilerProcess(final CompilerProcess compilerProcess,
+                                    final JpsSdk<?> sdk,
                                     final int port,
                                     final CompileContext context,
                                     final String compilerName) throws IOException {
@@ -97,6 +140,7 @@ public class JpsBuiltInFlexCompilerHandler {
     final List<String> commandLine =
       FlexCommonUtils.getCommandLineForSdkTool(myProject, sdk, classpath.toString(), "com.intellij.flex.compiler.FlexCompiler");
     commandLine.add(String.valueOf(port));
+    commandLine.add(String.valueOf(COMPILATION_THREADS));
 
     final ProcessBuilder processBuilder = new ProcessBuilder(commandLine);
     processBuilder.redirectErrorStream(true);
@@ -106,10 +150,13 @@ public class JpsBuiltInFlexCompilerHandler {
     context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.INFO, "Starting Flex compiler:\n" + plainCommand));
 
     final Process process = processBuilder.start();
-    readInputStreamUntilConnected(process, context, compilerName);
+    readInputStreamUntilConnected(compilerProcess, process, context, compilerName);
   }
 
-  private void readInputStreamUntilConnected(final Process process, final CompileContext context, final String compilerName) {
+  private static void readInputStreamUntilConnected(final CompilerProcess compilerProcess,
+                                                    final Process process,
+                                                    final CompileContext context,
+                                                    final String compilerName) {
     SharedThreadPool.getInstance().executeOnPooledThread(() -> {
       final InputStreamReader reader = FlexCommonUtils.createInputStreamReader(process.getInputStream());
 
@@ -122,13 +169,13 @@ public class JpsBuiltInFlexCompilerHandler {
             break;
           }
           else {
-            closeSocket();
+            compilerProcess.closeSocket();
             context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.ERROR, output));
           }
         }
       }
       catch (IOException e) {
-        closeSocket();
+        compilerProcess.closeSocket();
         context.processMessage(
           new CompilerMessage(compilerName, BuildMessage.Kind.ERROR, "Failed to start Flex compiler: " + e.toString()));
       }
@@ -141,11 +188,11 @@ public class JpsBuiltInFlexCompilerHandler {
     });
   }
 
-  private void scheduleInputReading() {
+  private void scheduleInputReading(final CompilerProcess compilerProcess) {
     SharedThreadPool.getInstance().executeOnPooledThread(() -> {
       final StringBuilder buffer = new StringBuilder();
       while (true) {
-        final DataInputStream dataInputStream = myDataInputStream;
+        final DataInputStream dataInputStream = compilerProcess.myDataInputStream;
         if (dataInputStream != null) {
           try {
             buffer.append(dataInputStream.readUTF());
@@ -154,12 +201,12 @@ public class JpsBuiltInFlexCompilerHandler {
             while ((index = buffer.indexOf("\n")) > -1) {
               final String line = buffer.substring(0, index);
               buffer.delete(0, index + 1);
-              handleInputLine(line);
+              compilerProcess.handleInputLine(line);
             }
           }
           catch (IOException e) {
-            if (dataInputStream == myDataInputStream) {
-              stopCompilerProcess();
+            if (dataInputStream == compilerProcess.myDataInputStream) {
+              stopCompilerProcess(compilerProcess);
             }
             break;
           }
@@ -171,112 +218,205 @@ public class JpsBuiltInFlexCompilerHandler {
     });
   }
 
-  private synchronized void handleInputLine(final String line) {
-    LOG.debug("RECEIVED: [" + line + "]");
+  public void sendCompilationCommand(final String sdkHome, final String command, final Listener listener) {
+    final CompilerProcess compilerProcess;
+    synchronized (this) {
+      compilerProcess = myCompilerProcesses.get(sdkHome);
+    }
 
-    final int colonPos = line.indexOf(":");
-    if (colonPos <= 0) {
-      LOG.error("Incorrect command: [" + line + "]");
+    if (compilerProcess == null) {
+      listener.textAvailable("Error: Compiler process is not started.");
+      listener.compilationFinished();
       return;
     }
 
-    final String prefix = line.substring(0, colonPos + 1);
-    final Listener listener = myActiveListeners.get(prefix);
-    if (listener == null) {
-      LOG.warn("No active listener for input line: [" + line + "]");  // could be message from cancelled compilation
-    }
-    else {
-      final String text = line.substring(colonPos + 1);
-      if (text.startsWith(COMPILATION_FINISHED)) {
-        listener.compilationFinished();
-        myActiveListeners.remove(prefix);
-      }
-      else {
-        listener.textAvailable(text);
-      }
-    }
+    compilerProcess.sendCompilationCommand(command, listener);
   }
 
-  public synchronized void sendCompilationCommand(final String command, final Listener listener) {
-    if (myDataOutputStream == null) {
-      listener.textAvailable("Error: Compiler process is not started.");
-      listener.compilationFinished();
-      return;
+  private void stopCompilerProcess(final CompilerProcess compilerProcess) {
+    synchronized (this) {
+      myCompilerProcesses.remove(compilerProcess.mySdkHome, compilerProcess);
     }
+    compilerProcess.cancelAllCompilations(true);
+    compilerProcess.closeSocket();
+  }
 
-    try {
-      final String prefix = (commandNumber++) + ":";
-      final String commandToSend = prefix + command + "\n";
-      LOG.debug("SENDING: [" + commandToSend + "]");
-      myDataOutputStream.writeUTF(commandToSend);
-      myActiveListeners.put(prefix, listener);
+  public void stopCompilerProcesses() {
+    final List<CompilerProcess> compilerProcesses;
+    synchronized (this) {
+      compilerProcesses = new ArrayList<>(myCompilerProcesses.values());
     }
-    catch (IOException e) {
-      listener.textAvailable("Error: Can't start compilation: " + e.toString());
-      listener.compilationFinished();
+    for (CompilerProcess compilerProcess : compilerProcesses) {
+      stopCompilerProcess(compilerProcess);
     }
   }
 
-  private synchronized void cancelAllCompilations(final boolean reportError) {
-    for (final Listener listener : myActiveListeners.values()) {
-      if (reportError) {
-        listener.textAvailable("Error: Compilation terminated");
-      }
-      listener.compilationFinished();
+  public synchronized void removeListener(final Listener listener) {
+    for (CompilerProcess compilerProcess : myCompilerProcesses.values()) {
+      compilerProcess.removeListener(listener);
     }
-    myActiveListeners.clear();
   }
 
-  public synchronized void stopCompilerProcess() {
-    cancelAllCompilations(true);
-    closeSocket();
+  public synchronized int getActiveCompilationsNumber() {
+    int result = 0;
+    for (CompilerProcess compilerProcess : myCompilerProcesses.values()) {
+      result += compilerProcess.getActiveCompilationsNumber();
+    }
+    return result;
   }
 
-  private synchronized void closeSocket() {
-    // compiler process exits when socket closes, so it's enough just to close streams
+  private static class CompilerProcess {
+    private final String mySdkHome;
 
-    if (myDataInputStream != null) {
-      try {
-        myDataInputStream.close();
+    private ServerSocket myServerSocket;
+    private volatile DataInputStream myDataInputStream;
+    private DataOutputStream myDataOutputStream;
+
+    private final CountDownLatch myStarted = new CountDownLatch(1);
+    private volatile IOException myStartError;
+
+    private int commandNumber = 1;
+    private final Map<String, Listener> myActiveListeners = new THashMap<>();
+
+    CompilerProcess(final String sdkHome) {
+      mySdkHome = sdkHome;
+    }
+
+    private synchronized ServerSocket openServerSocket() throws IOException {
+      myServerSocket = new ServerSocket(0);
+      return myServerSocket;
+    }
+
+    private synchronized void connected(final Socket socket) throws IOException {
+      if (myServerSocket == null) {
+        // stopped while waiting for the connection
+        socket.close();
+        throw new IOException("Flex compiler process stopped");
       }
-      catch (IOException ignored) {/**/}
+      myDataInputStream = new DataInputStream(socket.getInputStream());
+      myDataOutputStream = new DataOutputStream(socket.getOutputStream());
     }
 
-    if (myDataOutputStream != null) {
+    private void startFinished(@Nullable final IOException error) {
+      myStartError = error;
+      myStarted.countDown();
+    }
+
+    private void waitUntilStarted() throws IOException {
       try {
-        myDataOutputStream.close();
+        myStarted.await();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for Flex compiler process to start", e);
+      }
+      if (myStartError != null) {
+        throw new IOException("Flex compiler process failed to start: " + myStartError.getMessage(), myStartError);
+      }
+    }
+
+    private void handleInputLine(final String line) {
+      LOG.debug("RECEIVED: [" + line + "]");
+
+      final int colonPos = line.indexOf(":");
+      if (colonPos <= 0) {
+        LOG.error("Incorrect command: [" + line + "]");
+        return;
+      }
+
+      final String prefix = line.substring(0, colonPos + 1);
+      final String text = line.substring(colonPos + 1);
+      final boolean finished = text.startsWith(COMPILATION_FINISHED);
+      final Listener listener;
+      synchronized (this) {
+        listener = finished ? myActiveListeners.remove(prefix) : myActiveListeners.get(prefix);
+      }
+
+      // listeners are notified outside of the lock, so that compilations running in parallel don't wait for each other's messages
+      if (listener == null) {
+        LOG.warn("No active listener for input line: [" + line + "]");  // could be message from cancelled compilation
+      }
+      else if (finished) {
+        listener.compilationFinished();
+      }
+      else if (text.startsWith(COMPILATION_TIMINGS)) {
+        listener.compilationTimingsAvailable(text.substring(COMPILATION_TIMINGS.length()));
+      }
+      else {
+        listener.textAvailable(text);
       }
-      catch (IOException ignored) {/**/}
     }
 
-    if (myServerSocket != null) {
+    private synchronized void sendCompilationCommand(final String command, final Listener listener) {
+      if (myDataOutputStream == null) {
+        listener.textAvailable("Error: Compiler process is not started.");
+        listener.compilationFinished();
+        return;
+      }
+
       try {
-        myServerSocket.close();
+        final String prefix = (commandNumber++) + ":";
+        final String commandToSend = prefix + command + "\n";
+        LOG.debug("SENDING: [" + commandToSend + "]");
+        myActiveListeners.put(prefix, listener);
+        myDataOutputStream.writeUTF(commandToSend);
+      }
+      catch (IOException e) {
+        myActiveListeners.values().remove(listener);
+        listener.textAvailable("Error: Can't start compilation: " + e.toString());
+        listener.compilationFinished();
       }
-      catch (IOException ignored) {/**/}
     }
 
-    myServerSocket = null;
-    myDataInputStream = null;
-    myDataOutputStream = null;
-  }
+    private void cancelAllCompilations(final boolean reportError) {
+      final List<Listener> listeners;
+      synchronized (this) {
+        listeners = new ArrayList<>(myActiveListeners.values());
+        myActiveListeners.clear();
+      }
+      for (final Listener listener : listeners) {
+        if (reportError) {
+          listener.textAvailable("Error: Compilation terminated");
+        }
+        listener.compilationFinished();
+      }
+    }
 
-  public synchronized void removeListener(final Listener listener) {
-    String toRemove = null;
-    for (final Map.Entry<String, Listener> entry : myActiveListeners.entrySet()) {
-      if (entry.getValue() == listener) {
-        toRemove = entry.getKey();
-        break;
+    private synchronized void closeSocket() {
+      // compiler process exits when socket closes, so it's enough just to close streams
+
+      if (myDataInputStream != null) {
+        try {
+          myDataInputStream.close();
+        }
+        catch (IOException ignored) {/**/}
       }
+
+      if (myDataOutputStream != null) {
+        try {
+          myDataOutputStream.close();
+        }
+        catch (IOException ignored) {/**/}
+      }
+
+      if (myServerSocket != null) {
+        try {
+          myServerSocket.close();
+        }
+        catch (IOException ignored) {/**/}
+      }
+
+      myServerSocket = null;
+      myDataInputStream = null;
+      myDataOutputStream = null;
     }
 
-    if (toRemove != null) {
-      myActiveListeners.remove(toRemove);
+    private synchronized void removeListener(final Listener listener) {
+      myActiveListeners.values().remove(listener);
     }
-  }
 
-  public synchronized int getActiveCompilationsNumber() {
-    return myActiveListeners.size();
+    private synchronized int getActiveCompilationsNumber() {
+      return myActiveListeners.size();
+    }
   }
 }
-
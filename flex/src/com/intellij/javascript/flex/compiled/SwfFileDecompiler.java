@@ -4,6 +4,8 @@ import com.intellij.lang.javascript.flex.importer.FlexImporter;
 import com.intellij.openapi.fileTypes.BinaryFileDecompiler;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.ArrayUtil;
 import org.jetbrains.annotations.NotNull;
@@ -20,6 +22,10 @@ public class SwfFileDecompiler implements BinaryFileDecompiler {
     final Project project = findProject();
     if (project == null) return "";
     try {
+      // memory mapped files stay locked on Windows until the mapping is garbage collected
+      if (file.isInLocalFileSystem() && !SystemInfo.isWindows) {
+        return FlexImporter.buildInterfaceFromFile(VfsUtilCore.virtualToIoFile(file));
+      }
       return FlexImporter.buildInterfaceFromStream(file.getInputStream());
     }
     catch (IOException ex) {
@@ -7,16 +7,17 @@ import com.intellij.lang.javascript.psi.stubs.impl.JSFileCachedData;
 import com.intellij.lang.javascript.psi.stubs.impl.JSFileStubImpl;
 import com.intellij.lang.javascript.types.JSFileElementType;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.vfs.JarFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.stubs.BinaryFileStubBuilder;
 import com.intellij.psi.stubs.PsiFileStub;
-import com.intellij.psi.stubs.PsiFileStubImpl;
 import com.intellij.psi.stubs.StubElement;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.indexing.FileContent;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.ByteArrayInputStream;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @author Maxim.Mossienko
@@ -24,6 +25,11 @@ import java.io.ByteArrayInputStream;
 public class SwfFileStubBuilder implements BinaryFileStubBuilder {
   private static final int VERSION = 3;
 
+  // ABC blocks of library.swf files are independent; indexing threads feed this pool and create stubs while it parses
+  private static final ExecutorService ourAbcParsingExecutor =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("SWF Stub Builder Pool",
+                                                         Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
   @Override
   public boolean acceptsFile(@NotNull final VirtualFile file) {
     return file.getFileType() == FlexApplicationComponent.SWF_FILE_TYPE &&
@@ -32,23 +38,49 @@ public class SwfFileStubBuilder implements BinaryFileStubBuilder {
 
   @Override
   public StubElement buildStubTree(@NotNull FileContent fileContent) {
-    return buildFileStub(fileContent.getFile(), fileContent.getContent());
+    final byte[] content = fileContent.getContent();
+    if (content.length < SwfStubCache.MIN_CACHED_CONTENT_LENGTH) {
+      return buildFileStub(fileContent.getFile(), content);
+    }
+
+    final String key = SwfStubCache.computeKey(content);
+    if (key == null) return buildFileStub(fileContent.getFile(), content);
+
+    final int stubVersion = getStubVersion();
+    final PsiFileStub cachedStub = SwfStubCache.get(key, stubVersion);
+    if (cachedStub != null) return cachedStub;
+
+    final PsiFileStub stub = createFileStub();
+    // stubs of a file that failed to decompile are partial, they are not cached so that the file is decompiled again next time
+    if (buildStubs(fileContent.getFile(), content, stub)) {
+      SwfStubCache.put(key, stubVersion, stub);
+    }
+    return stub;
   }
 
   static PsiFileStub buildFileStub(VirtualFile file, byte[] content) {
-    PsiFileStubImpl stub = new JSFileStubImpl(JavaScriptSupportLoader.ECMA_SCRIPT_L4, new JSFileCachedData());
-    try {
+    final PsiFileStub stub = createFileStub();
+    buildStubs(file, content, stub);
+    return stub;
+  }
 
-      FlexImporter.buildStubsInterfaceFromStream(
-        new ByteArrayInputStream(content),
-        stub
-      );
+  @NotNull
+  private static PsiFileStub createFileStub() {
+    return new JSFileStubImpl(JavaScriptSupportLoader.ECMA_SCRIPT_L4, new JSFileCachedData());
+  }
 
-    } catch (Exception ex) {
+  private static boolean buildStubs(VirtualFile file, byte[] content, PsiFileStub stub) {
+    try {
+      FlexImporter.buildStubsInterfaceFromBytes(content, stub, ourAbcParsingExecutor);
+      return true;
+    }
+    catch (ProcessCanceledException ex) {
+      throw ex;
+    }
+    catch (Exception ex) {
       Logger.getInstance(SwfFileStubBuilder.class.getName()).warn(file.getPath(), ex);
+      return false;
     }
-
-    return stub;
   }
 
   @Override
@@ -0,0 +1,257 @@
+package com.intellij.javascript.flex.compiled;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.ShutDownTracker;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.stubs.PsiFileStub;
+import com.intellij.psi.stubs.SerializationManagerEx;
+import com.intellij.psi.stubs.Stub;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.PersistentHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Stub trees of SWF files keyed by SHA-1 of the file content. The same SDK and library SWCs are usually attached to many projects
+ * and jars under different paths; their stubs are decompiled once. Each stub version has its own storage, storages of other versions
+ * are deleted when the cache is opened.
+ * <p>
+ * Serialized stubs refer to stub serializers by ids of the registry kept in the index root, so the cache is stored there as well
+ * and is deleted together with the registry. The cache is not used while the registry is corrupted.
+ * <p>
+ * The storage is cleared when it grows over {@link #MAX_STORAGE_SIZE}: PersistentHashMap can't evict single entries, and stubs of
+ * libraries that are still in use are rebuilt and cached again soon. After an I/O error the storage is deleted and the cache
+ * is disabled until the stub version changes.
+ *
+ * @see SwfFileStubBuilder
+ */
+final class SwfStubCache {
+  private static final Logger LOG = Logger.getInstance(SwfStubCache.class);
+
+  // hashing and storage access cost more than decompiling of small files
+  static final int MIN_CACHED_CONTENT_LENGTH = 64 * 1024;
+  static final long MAX_STORAGE_SIZE = 256 * 1024 * 1024;
+
+  private static final Object ourLock = new Object();
+  private static PersistentHashMap<String, byte[]> ourStubs;
+  private static int ourStubVersion;
+  // approximate size of the storage files, updated on each put
+  private static long ourStorageSize;
+  private static long ourMaxStorageSize = MAX_STORAGE_SIZE;
+  private static boolean ourBroken;
+  private static boolean ourShutdownTaskRegistered;
+
+  private SwfStubCache() {
+  }
+
+  @Nullable
+  static String computeKey(@NotNull final byte[] content) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      return StringUtil.toHexString(digest.digest(content));
+    }
+    catch (NoSuchAlgorithmException e) {
+      LOG.error(e);
+      return null;
+    }
+  }
+
+  @Nullable
+  static PsiFileStub get(@NotNull final String key, final int stubVersion) {
+    final byte[] bytes;
+    synchronized (ourLock) {
+      final PersistentHashMap<String, byte[]> stubs = getStubs(stubVersion);
+      if (stubs == null) return null;
+      try {
+        bytes = stubs.get(key);
+      }
+      catch (IOException e) {
+        markBroken(e);
+        return null;
+      }
+    }
+    if (bytes == null) return null;
+
+    try {
+      final Stub stub = SerializationManagerEx.getInstanceEx().deserialize(new ByteArrayInputStream(bytes));
+      return stub instanceof PsiFileStub ? (PsiFileStub)stub : null;
+    }
+    catch (Exception e) {
+      LOG.info("Cannot read cached SWF stubs: " + e.getMessage());
+      return null;
+    }
+  }
+
+  static void put(@NotNull final String key, final int stubVersion, @NotNull final PsiFileStub stub) {
+    final BufferExposingByteArrayOutputStream out = new BufferExposingByteArrayOutputStream();
+    SerializationManagerEx.getInstanceEx().serialize(stub, out);
+    final byte[] bytes = out.toByteArray();
+
+    synchronized (ourLock) {
+      PersistentHashMap<String, byte[]> stubs = getStubs(stubVersion);
+      if (stubs == null) return;
+
+      final long entrySize = key.length() + bytes.length;
+      if (ourStorageSize + entrySize > ourMaxStorageSize) {
+        LOG.info("SWF stubs cache is cleared, its size exceeds " + ourMaxStorageSize + " bytes");
+        close();
+        FileUtil.delete(getVersionDir(stubVersion));
+        stubs = openStubs(stubVersion);
+        if (stubs == null) return;
+      }
+
+      try {
+        stubs.put(key, bytes);
+        ourStorageSize += entrySize;
+      }
+      catch (IOException e) {
+        markBroken(e);
+      }
+    }
+  }
+
+  @Nullable
+  private static PersistentHashMap<String, byte[]> getStubs(final int stubVersion) {
+    if (SerializationManagerEx.getInstanceEx().isNameStorageCorrupted()) {
+      // serializer ids are going to be reassigned, serialized stubs of any version are not readable with them
+      close();
+      FileUtil.delete(getCacheDir());
+      ourBroken = false;
+      return null;
+    }
+    if (ourBroken) {
+      if (ourStubVersion == stubVersion) return null;
+      ourBroken = false;
+    }
+    if (ourStubs != null && ourStubVersion == stubVersion) return ourStubs;
+
+    close();
+
+    final File versionDir = getVersionDir(stubVersion);
+    final File[] oldVersionDirs = getCacheDir().listFiles(file -> !file.equals(versionDir));
+    if (oldVersionDirs != null) {
+      for (File dir : oldVersionDirs) {
+        FileUtil.delete(dir);
+      }
+    }
+
+    ourStubVersion = stubVersion;
+    return openStubs(stubVersion);
+  }
+
+  @Nullable
+  private static PersistentHashMap<String, byte[]> openStubs(final int stubVersion) {
+    final File versionDir = getVersionDir(stubVersion);
+    final File file = new File(versionDir, "stubs");
+    try {
+      ourStubs = createStubs(file);
+    }
+    catch (IOException e) {
+      LOG.info("SWF stubs cache is corrupted, it will be rebuilt: " + e.getMessage());
+      FileUtil.delete(versionDir);
+      try {
+        ourStubs = createStubs(file);
+      }
+      catch (IOException e1) {
+        markBroken(e1);
+        return null;
+      }
+    }
+
+    ourStorageSize = 0;
+    final File[] storageFiles = versionDir.listFiles();
+    if (storageFiles != null) {
+      for (File storageFile : storageFiles) {
+        ourStorageSize += storageFile.length();
+      }
+    }
+    return ourStubs;
+  }
+
+  @NotNull
+  private static File getCacheDir() {
+    return new File(PathManager.getIndexRoot(), "flex_swf_stubs");
+  }
+
+  @NotNull
+  private static File getVersionDir(final int stubVersion) {
+    return new File(getCacheDir(), String.valueOf(stubVersion));
+  }
+
+  @NotNull
+  private static PersistentHashMap<String, byte[]> createStubs(@NotNull final File file) throws IOException {
+    final PersistentHashMap<String, byte[]> stubs =
+      new PersistentHashMap<>(file, EnumeratorStringDescriptor.INSTANCE, new BytesExternalizer());
+    if (!ourShutdownTaskRegistered) {
+      ourShutdownTaskRegistered = true;
+      ShutDownTracker.getInstance().registerShutdownTask(() -> {
+        synchronized (ourLock) {
+          close();
+        }
+      });
+    }
+    return stubs;
+  }
+
+  static void markBroken(@NotNull final IOException e) {
+    synchronized (ourLock) {
+      LOG.warn("SWF stubs cache is disabled", e);
+      close();
+      // the storage may be corrupted, it is rebuilt from scratch when the cache is enabled again
+      FileUtil.delete(getVersionDir(ourStubVersion));
+      ourBroken = true;
+    }
+  }
+
+  @TestOnly
+  static void setMaxStorageSize(final long maxStorageSize) {
+    synchronized (ourLock) {
+      ourMaxStorageSize = maxStorageSize;
+    }
+  }
+
+  @TestOnly
+  static void reset() {
+    synchronized (ourLock) {
+      close();
+      FileUtil.delete(getCacheDir());
+      ourBroken = false;
+      ourMaxStorageSize = MAX_STORAGE_SIZE;
+    }
+  }
+
+  private static void close() {
+    if (ourStubs == null) return;
+    try {
+      ourStubs.close();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+    ourStubs = null;
+  }
+
+  private static class BytesExternalizer implements DataExternalizer<byte[]> {
+    @Override
+    public void save(@NotNull DataOutput out, byte[] value) throws IOException {
+      out.writeInt(value.length);
+      out.write(value);
+    }
+
+    @Override
+    public byte[] read(@NotNull DataInput in) throws IOException {
+      final byte[] value = new byte[in.readInt()];
+      in.readFully(value);
+      return value;
+    }
+  }
+}
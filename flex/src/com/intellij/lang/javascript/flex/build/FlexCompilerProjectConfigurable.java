@@ -31,6 +31,7 @@ public class FlexCompilerProjectConfigurable implements SearchableConfigurable,
   private JRadioButton myMxmlcCompcRadioButton;
   private JCheckBox myPreferASC20CheckBox;
 
+  private JTextField myMaxParallelCompilationsTextField;
   private JTextField myHeapSizeTextField;
   private RawCommandLineEditor myVMOptionsEditor;
 
@@ -71,6 +72,7 @@ public class FlexCompilerProjectConfigurable implements SearchableConfigurable,
     return myConfig.USE_MXMLC_COMPC != myMxmlcCompcRadioButton.isSelected() ||
            myConfig.USE_BUILT_IN_COMPILER != myBuiltInCompilerRadioButton.isSelected() ||
            myConfig.PREFER_ASC_20 != myPreferASC20CheckBox.isSelected() ||
+           !myMaxParallelCompilationsTextField.getText().trim().equals(String.valueOf(myConfig.MAX_PARALLEL_COMPILATIONS)) ||
            !myHeapSizeTextField.getText().trim().equals(String.valueOf(myConfig.HEAP_SIZE_MB)) ||
            !myVMOptionsEditor.getText().trim().equals(myConfig.VM_OPTIONS);
   }
@@ -81,6 +83,19 @@ public class FlexCompilerProjectConfigurable implements SearchableConfigurable,
     myConfig.USE_MXMLC_COMPC = myMxmlcCompcRadioButton.isSelected();
     myConfig.PREFER_ASC_20 = myPreferASC20CheckBox.isSelected();
 
+    try {
+      final int maxParallelCompilations = Integer.parseInt(myMaxParallelCompilationsTextField.getText().trim());
+      if (maxParallelCompilations > 0) {
+        myConfig.MAX_PARALLEL_COMPILATIONS = maxParallelCompilations;
+      }
+      else {
+        throw new ConfigurationException(FlexBundle.message("invalid.max.parallel.flex.compilations"));
+      }
+    }
+    catch (NumberFormatException e) {
+      throw new ConfigurationException(FlexBundle.message("invalid.max.parallel.flex.compilations"));
+    }
+
     try {
       final int heapSizeMb = Integer.parseInt(myHeapSizeTextField.getText().trim());
       if (heapSizeMb > 0) {
@@ -102,6 +117,7 @@ public class FlexCompilerProjectConfigurable implements SearchableConfigurable,
     myBuiltInCompilerRadioButton.setSelected(myConfig.USE_BUILT_IN_COMPILER);
     myMxmlcCompcRadioButton.setSelected(myConfig.USE_MXMLC_COMPC);
     myPreferASC20CheckBox.setSelected(myConfig.PREFER_ASC_20);
+    myMaxParallelCompilationsTextField.setText(String.valueOf(myConfig.MAX_PARALLEL_COMPILATIONS));
     myHeapSizeTextField.setText(String.valueOf(myConfig.HEAP_SIZE_MB));
     myVMOptionsEditor.setText(myConfig.VM_OPTIONS);
   }
@@ -8,11 +8,15 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 
 /**
+ * Executes commands one after another. Consecutive {@link DebuggerCommand#isPipelinable() pipelinable} commands are sent to fdb
+ * at once and their responses are read in the same order afterwards, so e.g. the variables of a frame dump cost one round-trip.
+ *
  * @author Maxim.Mossienko
  */
 class CompositeDebuggerCommand extends DebuggerCommand {
   private final DebuggerCommand[] myCommands;
   private int myCurrentIndex;
+  private int myPostedCount; // commands with smaller indices are already sent to fdb
   private FlexDebugProcess myFlexDebugProcess;
   private final Obsolescent myObsolescent;
   private volatile boolean myBecomeObsolete;
@@ -37,7 +41,21 @@ class CompositeDebuggerCommand extends DebuggerCommand {
       dispatchObsolete();
       return;
     }
+    if (myCurrentIndex < myPostedCount) return;
+
     myCommands[myCurrentIndex].post(flexDebugProcess);
+    myPostedCount = myCurrentIndex + 1;
+
+    if (myCommands[myCurrentIndex].isPipelinable()) {
+      while (myPostedCount < myCommands.length && myCommands[myPostedCount].isPipelinable()) {
+        myCommands[myPostedCount].post(flexDebugProcess);
+        ++myPostedCount;
+      }
+    }
+  }
+
+  private boolean hasPostedCommandsToRead() {
+    return myCurrentIndex < myPostedCount;
   }
 
   private void dispatchObsolete() {
@@ -67,17 +85,22 @@ class CompositeDebuggerCommand extends DebuggerCommand {
 
   @Override
   CommandOutputProcessingMode onTextAvailable(@NonNls String s) {
-    if (myBecomeObsolete) {
+    if (myBecomeObsolete && !hasPostedCommandsToRead()) {
       return CommandOutputProcessingMode.DONE;
     }
+    // responses to the commands already sent to fdb are processed even if the result is obsolete, otherwise they would be taken
+    // for responses to the following commands
     final CommandOutputProcessingMode b = myCommands[myCurrentIndex].onTextAvailable(s);
 
     if (b == CommandOutputProcessingMode.DONE) {
-      if (myObsolescent != null && myObsolescent.isObsolete()) {
+      ++myCurrentIndex;
+      if (hasPostedCommandsToRead()) {
+        return CommandOutputProcessingMode.PROCEEDING; // response to the next command is already on its way
+      }
+      if (myBecomeObsolete || myObsolescent != null && myObsolescent.isObsolete()) {
         dispatchObsolete();
         return CommandOutputProcessingMode.DONE;
       }
-      ++myCurrentIndex;
       if (myCurrentIndex != myCommands.length) {
         myFlexDebugProcess.insertCommand(this);
       } else {
@@ -93,7 +116,7 @@ class CompositeDebuggerCommand extends DebuggerCommand {
 
   @Override
   public String read(FlexDebugProcess flexDebugProcess) throws IOException {
-    if (myBecomeObsolete) {
+    if (myBecomeObsolete && !hasPostedCommandsToRead()) {
       return "*obsolete*";
     }
     return myCommands[myCurrentIndex].read(flexDebugProcess);
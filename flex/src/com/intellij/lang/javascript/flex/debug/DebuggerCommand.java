@@ -1,11 +1,15 @@
 package com.intellij.lang.javascript.flex.debug;
 
+import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 
 class DebuggerCommand {
+  // 'print' is not here: the evaluated expression may call functions and getters that change the state of the program
+  @NonNls private static final String[] READ_ONLY_COMMANDS = {"info ", "frame", "bt", "where"};
+
   private final String myText;
   private final CommandOutputProcessingType myOutputProcessingType; // program will consume immediate server response (no infinite blocking allowed)
   private final VMState myEndVMState;
@@ -37,6 +41,32 @@ class DebuggerCommand {
     return myStartVMState;
   }
 
+  /**
+   * @return {@code true} if the command only inspects the player and doesn't change its state,
+   * so evaluation results obtained since the player has been suspended are still valid after this command
+   */
+  boolean isReadOnly() {
+    for (String line : StringUtil.splitByLines(myText)) {
+      if (!isReadOnlyCommandLine(line)) return false;
+    }
+    return true;
+  }
+
+  private static boolean isReadOnlyCommandLine(final String line) {
+    for (String command : READ_ONLY_COMMANDS) {
+      if (line.startsWith(command)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return {@code true} if the command may be sent to fdb before responses to the previously sent commands are read, i.e. it is
+   * read-only, uses special output processing and doesn't send other commands while its response is processed
+   */
+  boolean isPipelinable() {
+    return false;
+  }
+
   CommandOutputProcessingMode onTextAvailable(@NonNls String s) {
     assert myOutputProcessingType != CommandOutputProcessingType.NO_PROCESSING;
     return CommandOutputProcessingMode.DONE;
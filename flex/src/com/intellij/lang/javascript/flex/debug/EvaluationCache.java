@@ -0,0 +1,38 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * fdb responses to the evaluations the variables tree repeats for the same objects while the player is suspended,
+ * see {@link FlexStackFrame.EvaluateCommand#cacheable()}. The responses are valid until a command that may change the player state
+ * is sent, i.e. while {@link FlexDebugProcess#getStateModificationCount()} stays the same.
+ */
+class EvaluationCache {
+  private final Map<String, List<String>> myResponses = new HashMap<>();
+  private int myModificationCount;
+
+  @Nullable
+  synchronized List<String> get(@NotNull final String commandText, final int modificationCount) {
+    if (myModificationCount != modificationCount) {
+      myResponses.clear();
+      myModificationCount = modificationCount;
+    }
+    return myResponses.get(commandText);
+  }
+
+  /**
+   * @param modificationCount the state modification count at the moment the command was sent; responses received after the player
+   *                          state has changed since then are not stored
+   */
+  synchronized void put(@NotNull final String commandText, @NotNull final List<String> responses, final int modificationCount,
+                        final int currentModificationCount) {
+    if (modificationCount == currentModificationCount && get(commandText, currentModificationCount) == null) {
+      myResponses.put(commandText, responses);
+    }
+  }
+}
@@ -82,6 +82,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.*;
+import java.util.concurrent.LinkedBlockingDeque;
 
 import static com.intellij.lang.javascript.flex.run.FlashRunnerParameters.AirMobileDebugTransport;
 import static com.intellij.lang.javascript.flex.run.FlashRunnerParameters.AirMobileRunTarget;
@@ -136,38 +137,9 @@ public class FlexDebugProcess extends XDebugProcess {
 
   private String myFdbLaunchCommand;
 
-  private final LinkedList<DebuggerCommand> commandsToWrite = new LinkedList<DebuggerCommand>() {
-    @Override
-    public synchronized DebuggerCommand removeFirst() {
-      waitForData();
-      return super.removeFirst();
-    }
-
-    @Override
-    public synchronized void addFirst(final DebuggerCommand debuggerCommand) {
-      super.addFirst(debuggerCommand);
-      notify();
-    }
-
-    @Override
-    public synchronized void addLast(final DebuggerCommand debuggerCommand) {
-      super.addLast(debuggerCommand);
-      notify();
-    }
-
-    // TODO: other methods
-
-    private void waitForData() {
-      try {
-        while (size() == 0) {
-          wait();
-        }
-      }
-      catch (InterruptedException ex) {
-        throw new RuntimeException(ex);
-      }
-    }
-  };
+  private final LinkedBlockingDeque<DebuggerCommand> commandsToWrite = new LinkedBlockingDeque<>();
+  // incremented by each command that may change the state of the player, see DebuggerCommand.isReadOnly()
+  private volatile int myStateModificationCount;
 
   private boolean suspended;
   private boolean fdbWaitingForPlayerStateReached;
@@ -278,6 +250,7 @@ public class FlexDebugProcess extends XDebugProcess {
     }
 
     reader = new MyFdbOutputReader(fdbProcess.getInputStream());
+    reader.startReading();
 
     startCommandProcessingThread();
   }
@@ -951,8 +924,8 @@ public class FlexDebugProcess extends XDebugProcess {
     }
   }
 
-  private DebuggerCommand postCommand() throws IOException {
-    DebuggerCommand command = commandsToWrite.removeFirst();
+  private DebuggerCommand postCommand() throws IOException, InterruptedException {
+    DebuggerCommand command = commandsToWrite.takeFirst();
     final boolean currentlyExecuting = !suspended && startupDone;
 
     if (command.getStartVMState() == VMState.RUNNING) {
@@ -965,9 +938,9 @@ public class FlexDebugProcess extends XDebugProcess {
     }
     else if (!currentlyExecuting) {
       if (command.getEndVMState() == VMState.RUNNING) {
-        final DebuggerCommand nextCommand = commandsToWrite.peek();
+        final DebuggerCommand nextCommand = commandsToWrite.peekFirst();
         if (nextCommand != null && nextCommand.getStartVMState() == VMState.SUSPENDED) {
-          command = commandsToWrite.removeFirst();
+          command = commandsToWrite.takeFirst();
           if (nextCommand.getEndVMState() == VMState.SUSPENDED && !(nextCommand instanceof QuitCommand)) {
             insertCommand(new ContinueCommand());
           }
@@ -997,6 +970,9 @@ public class FlexDebugProcess extends XDebugProcess {
 
     setSuspended(
       command.getOutputProcessingMode() == CommandOutputProcessingType.NO_PROCESSING && command.getEndVMState() == VMState.SUSPENDED);
+    if (!command.isReadOnly()) {
+      myStateModificationCount++;
+    }
     log("Sent:" + text);
     fdbProcess.getOutputStream().write((text + "\n").getBytes());
     try {
@@ -1064,25 +1040,11 @@ public class FlexDebugProcess extends XDebugProcess {
   }
 
   private void scheduleOutputReading() {
-    if (myOutputAlarm.isDisposed()) return;
+    reader.dumpOutputWhenAvailable();
+  }
 
-    Runnable action = new Runnable() {
-      @Override
-      public void run() {
-        try {
-          if (reader.hasSomeDataPending()) {
-            sendCommand(new DumpOutputCommand());
-          }
-          else if (!myOutputAlarm.isDisposed()) {
-            myOutputAlarm.addRequest(this, 100);
-          }
-        }
-        catch (IOException ex) {
-          myOutputAlarm.cancelAllRequests();
-        }
-      }
-    };
-    myOutputAlarm.addRequest(action, 0);
+  int getStateModificationCount() {
+    return myStateModificationCount;
   }
 
   void addPendingCommand(final DebuggerCommand command, int delay) {
@@ -1220,36 +1182,92 @@ public class FlexDebugProcess extends XDebugProcess {
     return null;
   }
 
+  /**
+   * Reads fdb output on a separate thread as soon as it is available, so the debugger manager thread only waits for a complete
+   * response (text up to the fdb prompt) instead of polling the stream.
+   */
   class MyFdbOutputReader {
     private final InputStreamReader myReader;
-    private final char[] buf = new char[8192];
-    private final StringBuilder lastText = new StringBuilder();
+    private final StringBuilder lastText = new StringBuilder(); // guarded by itself
     private int lastTextMarkerScanningStart;
-    private final InputStream myInputStream;
+    private boolean myEndOfStream;
+    private IOException myException;
+    private boolean myDumpOutputRequested;
 
     MyFdbOutputReader(final InputStream _inputStream) {
       myReader = FlexCommonUtils.createInputStreamReader(_inputStream);
-      myInputStream = _inputStream;
     }
 
-    boolean hasSomeDataPending() throws IOException {
-      return myInputStream.available() > 0;
+    void startReading() {
+      ApplicationManager.getApplication().executeOnPooledThread(() -> {
+        final char[] buf = new char[8192];
+        try {
+          int read;
+          while ((read = myReader.read(buf, 0, buf.length)) >= 0) {
+            final boolean dumpOutput;
+            synchronized (lastText) {
+              lastText.append(buf, 0, read);
+              dumpOutput = myDumpOutputRequested;
+              myDumpOutputRequested = false;
+              lastText.notifyAll();
+            }
+            if (dumpOutput) {
+              sendCommand(new DumpOutputCommand());
+            }
+          }
+        }
+        catch (IOException e) {
+          synchronized (lastText) {
+            myException = e;
+          }
+        }
+        finally {
+          synchronized (lastText) {
+            myEndOfStream = true;
+            lastText.notifyAll();
+          }
+        }
+      });
     }
 
-    String readLine(boolean nonblock) throws IOException {
-      if (lastText != null) {
-        final String lastText = getNextLine(nonblock);
-        if (lastText != null) return lastText;
+    /**
+     * Output that is not a response to a command (e.g. trace or a breakpoint hit while the player is running) will be processed
+     * by {@link DumpOutputCommand} that is sent as soon as the output arrives.
+     */
+    void dumpOutputWhenAvailable() {
+      synchronized (lastText) {
+        if (myEndOfStream) return;
+        if (lastText.length() == 0) {
+          myDumpOutputRequested = true;
+          return;
+        }
       }
+      sendCommand(new DumpOutputCommand());
+    }
+
+    boolean hasSomeDataPending() {
+      synchronized (lastText) {
+        return lastText.length() > 0;
+      }
+    }
+
+    String readLine(boolean nonblock) throws IOException {
+      synchronized (lastText) {
+        while (true) {
+          final String line = getNextLine(nonblock);
+          if (line != null) return line;
 
-      while (true) {
-        int read = myReader.read(buf, 0, buf.length);
-        if (read == -1) return null;
-        lastText.append(buf, 0, read);
+          if (myEndOfStream) {
+            if (myException != null) throw myException;
+            return null;
+          }
 
-        if (read < buf.length) {
-          final String lastText = getNextLine(nonblock);
-          if (lastText != null) return lastText;
+          try {
+            lastText.wait();
+          }
+          catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
         }
       }
     }
@@ -1282,7 +1300,8 @@ public class FlexDebugProcess extends XDebugProcess {
         return result;
       }
       else {
-        lastTextMarkerScanningStart = lastText.length();
+        // a marker may be split between chunks of the output, so the tail of the text is scanned again when more text arrives
+        lastTextMarkerScanningStart = Math.max(0, lastText.length() - WAITING_PLAYER_MARKER_1.length());
         result = null;
       }
       return result;
@@ -53,6 +53,7 @@ public class FlexStackFrame extends XStackFrame {
   private final XDebuggerEvaluator myXDebuggerEvaluator = new FlexDebuggerEvaluator();
   private String myScope = UNKNOWN_SCOPE;
   private int myFrameIndex;
+  private final EvaluationCache myEvaluationCache = new EvaluationCache();
   @NonNls protected static final String UNKNOWN_SCOPE = "<unknown>";
   static final String CLASS_MARKER = ", class='";
   static final String CANNOT_EVALUATE_EXPRESSION = "Cannot evaluate expression: ";
@@ -267,6 +268,13 @@ public class FlexStackFrame extends XStackFrame {
     private final String expression;
     private int responseCount;
     private boolean myFinished;
+    private boolean myCacheable;
+    private boolean myEvaluatedFromTypeMap;
+    private final List<String> myResponses = new ArrayList<>();
+    private int myModificationCount;
+    // responses to the same command received earlier in this suspend, replayed instead of sending the command to fdb
+    private List<String> myCachedResponses;
+    private int myReplayedCount;
 
     EvaluateCommand(String _expression, final XDebuggerEvaluator.XEvaluationCallback _callback) {
       super(buildCommandForExpression(_expression), CommandOutputProcessingType.SPECIAL_PROCESSING);
@@ -274,6 +282,43 @@ public class FlexStackFrame extends XStackFrame {
       callback = _callback;
     }
 
+    /**
+     * Marks an evaluation that the variables tree repeats for the same object while the player is suspended: children of an object
+     * or size of a collection. Its response is reused until a command that may change the player state is sent, and it doesn't
+     * invalidate cached responses itself. Expressions typed by the user (Evaluate dialog, watches) may call functions and getters
+     * with side effects, so they must not be cacheable.
+     */
+    EvaluateCommand cacheable() {
+      myCacheable = true;
+      return this;
+    }
+
+    @Override
+    boolean isReadOnly() {
+      return myCacheable;
+    }
+
+    boolean isCached() {
+      return myCacheable && myEvaluationCache.get(getText(), myDebugProcess.getStateModificationCount()) != null;
+    }
+
+    @Override
+    public void post(final FlexDebugProcess flexDebugProcess) throws IOException {
+      myCachedResponses = myCacheable ? myEvaluationCache.get(getText(), flexDebugProcess.getStateModificationCount()) : null;
+      if (myCachedResponses == null) {
+        myModificationCount = flexDebugProcess.getStateModificationCount();
+        super.post(flexDebugProcess);
+      }
+    }
+
+    @Override
+    public String read(final FlexDebugProcess flexDebugProcess) throws IOException {
+      if (myCachedResponses != null) {
+        return myReplayedCount < myCachedResponses.size() ? myCachedResponses.get(myReplayedCount++) : null;
+      }
+      return super.read(flexDebugProcess);
+    }
+
     @Override
     CommandOutputProcessingMode onTextAvailable(@NonNls String line) {
       if (myDebugProcess.filterStdResponse(line)) return CommandOutputProcessingMode.PROCEEDING;
@@ -281,15 +326,21 @@ public class FlexStackFrame extends XStackFrame {
     }
 
     private CommandOutputProcessingMode proceedWithEvaluationResponse(String line) {
+      if (myCachedResponses == null) myResponses.add(line);
       ++responseCount;
       if (responseCount == 1) { // skip frame
         return CommandOutputProcessingMode.PROCEEDING;
       }
-      return doOnTextAvailable(line);
+      final CommandOutputProcessingMode mode = doOnTextAvailable(line);
+      if (mode == CommandOutputProcessingMode.DONE && myCachedResponses == null && !myEvaluatedFromTypeMap && myCacheable) {
+        myEvaluationCache.put(getText(), new ArrayList<>(myResponses), myModificationCount, myDebugProcess.getStateModificationCount());
+      }
+      return mode;
     }
 
     CommandOutputProcessingMode doOnTextAvailable(@NonNls String s) {
       if (cannotEvaluateResponse(s) && mySourcePosition != null) {
+        myEvaluatedFromTypeMap = true;
         ensureQName2IdMapLoaded();
         evaluateFromTypeMap();
         return CommandOutputProcessingMode.DONE;
@@ -513,6 +564,12 @@ public class FlexStackFrame extends XStackFrame {
       myValueType = valueType;
     }
 
+    @Override
+    boolean isPipelinable() {
+      // 'info arguments' and 'info locals' are sent together, 'print this' waits for the response to the previous command
+      return isReadOnly();
+    }
+
     @Override
     CommandOutputProcessingMode onTextAvailable(@NonNls final String s) {
       final int offsetIndex = hasFrame ? 1:0; // frame command
@@ -228,9 +228,9 @@ class FlexValue extends XValue {
         @Override
         public void errorOccurred(@NotNull String errorMessage) {
         }
-      });
+      }).cacheable();
 
-    myDebugProcess.addPendingCommand(new CompositeDebuggerCommand(node, command), 100);
+    schedulePresentationCommand(node, command, 100);
   }
 
   private void scheduleCollectionSizePresentation(final XValueNode node, final String type, final String prefix) {
@@ -252,9 +252,14 @@ class FlexValue extends XValue {
         @Override
         public void errorOccurred(@NotNull String errorMessage) {
         }
-      });
+      }).cacheable();
 
-    myDebugProcess.addPendingCommand(new CompositeDebuggerCommand(node, command), 100);
+    schedulePresentationCommand(node, command, 100);
+  }
+
+  private void schedulePresentationCommand(final XValueNode node, final FlexStackFrame.EvaluateCommand command, final int delay) {
+    // results evaluated earlier in this suspend are taken from the frame cache, so there's no need to wait until the node settles
+    myDebugProcess.addPendingCommand(new CompositeDebuggerCommand(node, command), command.isCached() ? 0 : delay);
   }
 
   private static void setXmlListPresentation(final XValueNode node, final String value, final FlexValue flexValue) {
@@ -339,7 +344,7 @@ class FlexValue extends XValue {
       }
     });
 
-    myDebugProcess.addPendingCommand(new CompositeDebuggerCommand(node, command), 700);
+    schedulePresentationCommand(node, command, 700);
   }
 
   private static String setFullValueEvaluatorIfNeeded(final XValueNode node, String value, final boolean isXml) {
@@ -472,7 +477,7 @@ class FlexValue extends XValue {
 
         return CommandOutputProcessingMode.DONE;
       }
-    };
+    }.cacheable();
 
     myDebugProcess.sendCommand(command);
   }
@@ -67,6 +67,10 @@ class AS3InterfaceStubDumper extends AS3InterfaceDumper {
   @Override
     public void append(@NotNull @NonNls String str) {}
 
+  // text output is not used for stubs; also called by ABC parsing, that may run concurrently
+  @Override
+  public void hasError(@NotNull String error) {}
+
   @Override
   public void processFunction(MethodInfo methodInfo, boolean referenceNameRequested, Abc abc, String indent, String attr) {
     parents.add(
@@ -6,6 +6,7 @@ import gnu.trove.THashSet;
 import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -301,23 +302,6 @@ class Abc {
     }
 
     parseCpool();
-
-    defaults[CONSTANT_Utf8] = strings;
-    defaults[CONSTANT_Int] = ints;
-    defaults[CONSTANT_UInt] = uints;
-    defaults[CONSTANT_Double] = doubles;
-    defaults[CONSTANT_Int] = ints;
-    defaults[CONSTANT_False] = buildSparseArray(10, "false");
-    defaults[CONSTANT_True] = buildSparseArray(11, "true");
-    defaults[CONSTANT_Namespace] = namespaces;
-    defaults[CONSTANT_PrivateNs] = namespaces;
-    defaults[CONSTANT_PackageNs] = namespaces;
-    defaults[CONSTANT_PackageInternalNs] = namespaces;
-    defaults[CONSTANT_ProtectedNs] = namespaces;
-    defaults[CONSTANT_StaticProtectedNs] = namespaces;
-    defaults[CONSTANT_StaticProtectedNs2] = namespaces;
-    defaults[CONSTANT_Null] = buildSparseArray(12, "null");
-
     parseMethodInfos();
     parseMetadataInfos();
     parseInstanceInfos();
@@ -326,10 +310,36 @@ class Abc {
     parseMethodBodies();
   }
 
-  private static Object[] buildSparseArray(int index, @NonNls String s1) {
-    final Object[] result = new Object[index + 1];
-    result[index] = s1;
-    return result;
+  /**
+   * @return null if there's no constant of such kind
+   */
+  @Nullable
+  private Object getDefaultValue(int kind, int index) {
+    switch (kind) {
+      case CONSTANT_Utf8:
+        return getString(index);
+      case CONSTANT_Int:
+        return ints[index];
+      case CONSTANT_UInt:
+        return uints[index];
+      case CONSTANT_Double:
+        return doubles[index];
+      case CONSTANT_False:
+      case CONSTANT_True:
+      case CONSTANT_Null:
+        // value index of these constants is their kind
+        return index == kind ? constantKinds[kind] : null;
+      case CONSTANT_Namespace:
+      case CONSTANT_PrivateNs:
+      case CONSTANT_PackageNs:
+      case CONSTANT_PackageInternalNs:
+      case CONSTANT_ProtectedNs:
+      case CONSTANT_StaticProtectedNs:
+      case CONSTANT_StaticProtectedNs2:
+        return namespaces[index];
+      default:
+        return null;
+    }
   }
 
   public void dump(String indent) {
@@ -362,16 +372,16 @@ class Abc {
 
   private final ByteBuffer data;
 
-  Integer[] ints;
-  Integer[] uints;
-  Double[] doubles;
-  @NonNls String[] strings;
+  int[] ints;
+  int[] uints;
+  double[] doubles;
+  // decoded on first access, see getString()
+  @NonNls private String[] strings;
+  private int[] stringOffsets;
   @NonNls String[] namespaces;
   @NonNls String[][] nssets;
   Multiname[] names;
 
-  final Object[][] defaults = new Object[Math.max(constantKinds.length, CONSTANT_MultinameLA + 1)][];
-
   MethodInfo methods[];
   Traits instances[];
   Traits classes[];
@@ -384,6 +394,21 @@ class Abc {
     return data.readU32();
   }
 
+  /**
+   * Most of the strings in the constant pool are never needed when building stubs, so they are not decoded until asked for.
+   */
+  @NonNls
+  String getString(int index) {
+    String s = strings[index];
+    if (s == null) {
+      final int position = data.getPosition();
+      data.setPosition(stringOffsets[index]);
+      s = strings[index] = data.readUTFBytes(readU32());
+      data.setPosition(position);
+    }
+    return s;
+  }
+
   void parseCpool() {
     int i, j;
     int n;
@@ -391,7 +416,7 @@ class Abc {
 
     // ints
     n = readU32();
-    ints = new Integer[n > 0 ? n : 1];
+    ints = new int[n > 0 ? n : 1];
     ints[0] = 0;
     for (i = 1; i < n; i++) {
       ints[i] = readU32();
@@ -399,7 +424,7 @@ class Abc {
 
     // uints
     n = readU32();
-    uints = new Integer[n > 0 ? n : 1];
+    uints = new int[n > 0 ? n : 1];
     uints[0] = 0;
     for (i = 1; i < n; i++) {
       uints[i] = readU32();
@@ -407,7 +432,7 @@ class Abc {
 
     // doubles
     n = readU32();
-    doubles = new Double[n > 0 ? n : 1];
+    doubles = new double[n > 0 ? n : 1];
     doubles[0] = Double.NaN;
     for (i = 1; i < n; i++) {
       doubles[i] = data.readDouble();
@@ -419,9 +444,11 @@ class Abc {
     // strings
     n = readU32();
     strings = new String[n];
+    stringOffsets = new int[n];
     strings[0] = "";
     for (i = 1; i < n; i++) {
-      strings[i] = data.readUTFBytes(readU32());
+      stringOffsets[i] = data.getPosition();
+      data.incPosition(readU32());
     }
 
     reportAboutPercentage("Cpool strings count " + n + " size ", data, start, processor);
@@ -439,7 +466,7 @@ class Abc {
         case CONSTANT_ProtectedNs:
         case CONSTANT_StaticProtectedNs:
         case CONSTANT_StaticProtectedNs2: {
-          namespaces[i] = strings[readU32()];
+          namespaces[i] = getString(readU32());
           // todo mark kind of namespace.
           break;
         }
@@ -485,12 +512,12 @@ class Abc {
       switch (data.readByte()) {
         case CONSTANT_Qname:
         case CONSTANT_QnameA:
-          names[i] = new Multiname(new String[]{namespaces[readU32()]}, strings[readU32()]);
+          names[i] = new Multiname(new String[]{namespaces[readU32()]}, getString(readU32()));
           break;
 
         case CONSTANT_RTQname:
         case CONSTANT_RTQnameA:
-          names[i] = new Multiname(new String[]{strings[readU32()]}, null);
+          names[i] = new Multiname(new String[]{getString(readU32())}, null);
           break;
 
         case CONSTANT_RTQnameL:
@@ -505,7 +532,7 @@ class Abc {
 
         case CONSTANT_Multiname:
         case CONSTANT_MultinameA:
-          String name = strings[readU32()];
+          String name = getString(readU32());
           names[i] = new Multiname(nssets[readU32()], name);
           break;
 
@@ -609,7 +636,7 @@ class Abc {
         m.paramTypes[j] = names[readU32()];
         if (m.paramTypes[j] == null) m.paramTypes[j] = OpaqueAssetsType;
       }
-      m.debugName = strings[readU32()];
+      m.debugName = getString(readU32());
       m.flags = data.readByte();
 
       if ((m.flags & HAS_OPTIONAL) != 0) {
@@ -640,11 +667,12 @@ class Abc {
             m.optionalValues[k] = new Multiname(null, value);
           }
           else {
-            if (defaults[kind] == null) {
+            final Object value = getDefaultValue(kind, index);
+            if (value == null) {
               processor.hasError("ERROR kind=" + kind + " method_id " + i + "\n");
             }
             else {
-              m.optionalValues[k] = new Multiname(null, defaults[kind][index].toString());
+              m.optionalValues[k] = new Multiname(null, value.toString());
             }
           }
         }
@@ -655,7 +683,7 @@ class Abc {
           Set<String> usedNames = new THashSet<>(m.paramNames.length);
           for (int k = 0; k < param_count; ++k) {
             final int index = readU32();
-            final String name = strings[index];
+            final String name = getString(index);
             m.paramNames[k] = StringUtil.isJavaIdentifier(name) && usedNames.add(name) ? name : "_" + k;
           }
         } else {
@@ -689,15 +717,15 @@ class Abc {
     for (int i = 0; i < count; i++) {
       // MetadataInfo
       MetaData m = metadata[i] = new MetaData();
-      m.name = strings[readU32()];
+      m.name = getString(readU32());
       int values_count = readU32();
       String names[] = new String[values_count];
 
       for (int q = 0; q < values_count; ++q) {
-        names[q] = strings[readU32()]; // name
+        names[q] = getString(readU32()); // name
       }
       for (int q = 0; q < values_count; ++q) {
-        m.put(names[q], strings[readU32()]); // value
+        m.put(names[q], getString(readU32())); // value
       }
     }
   }
@@ -765,7 +793,7 @@ class Abc {
               slot.type = OpaqueAssetsType;
             }
             int index = readU32();
-            if (index > 0) slot.value = defaults[data.readByte()][index];
+            if (index > 0) slot.value = getDefaultValue(data.readByte(), index);
           }
           else // (kind == Class)
           {
@@ -863,11 +891,9 @@ class Abc {
       int maxScopeDepth = readU32();
       m.max_scope = maxScopeDepth - initScopeDepth;
       int code_length = readU32();
-      m.code = new ByteBuffer();
+      m.code = data.readBytes(code_length);
       m.code.setLittleEndian();
 
-      if (code_length > 0) data.readBytes(m.code, code_length);
-
       int ex_count = readU32();
       for (int j = 0; j < ex_count; j++) {
         int from = readU32();
@@ -1,42 +1,80 @@
 package com.intellij.lang.javascript.flex.importer;
 
+import com.intellij.util.ArrayUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.InputStream;
-import java.io.IOException;
-import java.io.ByteArrayInputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.zip.InflaterInputStream;
 
 /**
+ * Random access reader over a heap or memory-mapped {@link java.nio.ByteBuffer}; {@link #readBytes(int)} returns a view, not a copy.
+ * A buffer created by {@link #inflate(int)} reads compressed data sequentially instead, so an uncompressed SWF is never materialized:
+ * only the parts that are asked for with {@link #readBytes(int)} are. Such a buffer ends where the compressed data ends,
+ * the uncompressed size declared in the SWF header is not trusted.
+ *
  * @author Maxim.Mossienko
 */
 class ByteBuffer {
-  private byte[] bytes;
+  private static final int INFLATER_BUFFER_SIZE = 8192;
+
+  private final java.nio.ByteBuffer buffer;
+  private final int size;
   private int position;
-  private boolean littleEndian;
 
-  void read(@NotNull InputStream inputStream) throws IOException {
+  // sequential mode, see inflate(); such buffers are always little endian
+  @Nullable private final InputStream stream;
+
+  private ByteBuffer(@NotNull java.nio.ByteBuffer buffer) {
+    this.buffer = buffer;
+    size = buffer.limit();
+    stream = null;
+  }
+
+  private ByteBuffer(@NotNull InputStream stream, int size) {
+    buffer = null;
+    this.size = size;
+    this.stream = stream;
+  }
+
+  @NotNull
+  static ByteBuffer wrap(@NotNull byte[] bytes) {
+    return new ByteBuffer(java.nio.ByteBuffer.wrap(bytes));
+  }
+
+  @NotNull
+  static ByteBuffer read(@NotNull InputStream inputStream) throws IOException {
     try {
-      bytes = readStream(inputStream);
+      return wrap(readStream(inputStream));
     }
     finally {
-      if (inputStream != null) inputStream.close();
+      inputStream.close();
+    }
+  }
+
+  /**
+   * The file content is not copied to the Java heap, the mapping is released when the buffer is garbage collected.
+   */
+  @NotNull
+  static ByteBuffer map(@NotNull File file) throws IOException {
+    try (FileInputStream inputStream = new FileInputStream(file)) {
+      final FileChannel channel = inputStream.getChannel();
+      return new ByteBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
     }
   }
 
   void setLittleEndian() {
-    littleEndian = true;
+    if (buffer != null) buffer.order(ByteOrder.LITTLE_ENDIAN);
   }
 
   int readInt() {
-    int result;
-    if (littleEndian) {
-      result = (((bytes[position + 3] & 0xFF) << 8 | (bytes[position + 2] & 0xFF)) << 16) + ((bytes[position + 1] & 0xFF) << 8) | (bytes[position] & 0xFF);
-    }
-    else {
-      result = (((bytes[position] & 0xFF) << 8 | (bytes[position + 1] & 0xFF)) << 16) + ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+    if (stream != null) {
+      return readUnsignedByte() | readUnsignedByte() << 8 | readUnsignedByte() << 16 | readUnsignedByte() << 24;
     }
+    int result = buffer.getInt(position);
     position += 4;
     return result;
   }
@@ -46,28 +84,38 @@ class ByteBuffer {
   }
 
   public void setPosition(final int i) {
+    if (stream != null) throw new IllegalStateException("sequential buffer");
     position = i;
   }
 
   public int bytesSize() {
-    return bytes.length;
+    return size;
   }
 
-  public void uncompress() throws IOException {
-    final InflaterInputStream zipInputStream = new InflaterInputStream(new ByteArrayInputStream(bytes));
-
-    bytes = readStream(zipInputStream);
+  /**
+   * Returns a sequential buffer with data inflated from the rest of this buffer.
+   *
+   * @param uncompressedSize size of the inflated data as declared in the SWF header, used only for statistics
+   */
+  @NotNull
+  public ByteBuffer inflate(int uncompressedSize) {
+    final java.nio.ByteBuffer compressed = slice(position, size - position);
+    position = size;
+    final InputStream inflaterStream = new InflaterInputStream(new ByteBufferInputStream(compressed));
+    return new ByteBuffer(new BufferedInputStream(inflaterStream, INFLATER_BUFFER_SIZE), uncompressedSize);
+  }
 
-    zipInputStream.close();
+  void close() throws IOException {
+    if (stream != null) stream.close();
   }
 
-  private static byte[] readStream(final InputStream zipInputStream) throws IOException {
+  private static byte[] readStream(final InputStream inputStream) throws IOException {
     final byte[] buf = new byte[8192];
-    byte[] result = new byte[8192];
+    byte[] result = new byte[Math.max(inputStream.available(), 8192)];
     int total = 0;
 
     while (true) {
-      int read = zipInputStream.read(buf);
+      int read = inputStream.read(buf);
       if (read == -1) break;
       if (total + read >= result.length) {
         byte[] newresult = new byte[result.length * 2];
@@ -79,53 +127,118 @@ class ByteBuffer {
       total += read;
     }
 
-    final byte[] realResult = new byte[total];
-    System.arraycopy(result, 0, realResult, 0, total);
-    return realResult;
+    return total == result.length ? result : ArrayUtil.realloc(result, total);
   }
 
   public int readUnsignedByte() {
-    return bytes[position++] & 0xFF;
+    if (stream != null) {
+      try {
+        final int b = stream.read();
+        if (b == -1) throw new EOFException("Unexpected end of compressed data at " + position);
+        position++;
+        return b;
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return buffer.get(position++) & 0xFF;
   }
 
   public int readByte() {
-    return bytes[position++];
+    if (stream != null) return (byte)readUnsignedByte();
+    return buffer.get(position++);
   }
 
   public int readUnsignedShort() {
-    int result;
-    if (littleEndian) {
-      result = (bytes[position + 1] & 0xFF) << 8 | (bytes[position] & 0xFF);
-    }
-    else {
-      result = (bytes[position] & 0xFF) << 8 | (bytes[position + 1] & 0xFF);
+    if (stream != null) {
+      return readUnsignedByte() | readUnsignedByte() << 8;
     }
+    int result = buffer.getShort(position) & 0xFFFF;
     position += 2;
     return result;
   }
 
-  public void readBytes(ByteBuffer data2, int length) {
-    data2.bytes = new byte[length];
-    System.arraycopy(bytes, position, data2.bytes, 0, length);
+  /**
+   * Returns a view of the next {@code length} bytes, they are not copied unless this buffer is sequential.
+   */
+  @NotNull
+  public ByteBuffer readBytes(int length) {
+    if (length < 0 || stream == null && length > size - position) {
+      throw new IndexOutOfBoundsException("Invalid length " + length + " at " + position + ", size " + size);
+    }
+
+    final ByteBuffer result;
+    if (stream != null) {
+      result = wrap(readStreamFully(stream, length));
+    }
+    else {
+      result = new ByteBuffer(slice(position, length));
+    }
     position += length;
+    return result;
   }
 
-  public boolean eof() {
-    return position >= bytes.length;
+  @NotNull
+  private java.nio.ByteBuffer slice(int offset, int length) {
+    final java.nio.ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(offset);
+    duplicate.limit(offset + length);
+    return duplicate.slice();
   }
 
-  public String readUTFBytes(int i) {
+  /**
+   * The array grows as data is actually read, so a corrupted length doesn't allocate more than the stream has.
+   */
+  @NotNull
+  private byte[] readStreamFully(@NotNull InputStream stream, int length) {
+    byte[] bytes = new byte[Math.min(length, INFLATER_BUFFER_SIZE)];
+    int total = 0;
     try {
-      final byte[] buf = new byte[i];
-      while (i > 0) {
-        buf[buf.length - i] = (byte)readByte();
-        --i;
+      while (total < length) {
+        if (total == bytes.length) {
+          bytes = ArrayUtil.realloc(bytes, (int)Math.min(length, 2L * bytes.length));
+        }
+        final int read = stream.read(bytes, total, bytes.length - total);
+        if (read == -1) throw new EOFException("Unexpected end of compressed data at " + (position + total));
+        total += read;
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes;
+  }
+
+  public boolean eof() {
+    if (stream != null) {
+      try {
+        stream.mark(1);
+        final int b = stream.read();
+        stream.reset();
+        return b == -1;
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
       }
-      return new String(buf, "utf-8");
     }
-    catch (UnsupportedEncodingException e) {
-      throw new RuntimeException(e);
+    return position >= size;
+  }
+
+  public String readUTFBytes(int i) {
+    if (stream != null) return readBytes(i).readUTFBytes(i);
+
+    final String result;
+    if (buffer.hasArray()) {
+      result = new String(buffer.array(), buffer.arrayOffset() + position, i, StandardCharsets.UTF_8);
+    }
+    else {
+      final byte[] bytes = new byte[i];
+      slice(position, i).get(bytes);
+      result = new String(bytes, StandardCharsets.UTF_8);
     }
+    position += i;
+    return result;
   }
 
   public double readDouble() {
@@ -147,7 +260,7 @@ class ByteBuffer {
   }
 
   public byte getByte(int i) {
-    return bytes[i];
+    return buffer.get(i);
   }
 
   public int getPosition() {
@@ -155,6 +268,45 @@ class ByteBuffer {
   }
 
   public void incPosition(final int length) {
+    if (stream != null) {
+      try {
+        long toSkip = length;
+        while (toSkip > 0) {
+          final long skipped = stream.skip(toSkip);
+          if (skipped <= 0) throw new EOFException("Unexpected end of compressed data at " + position);
+          toSkip -= skipped;
+        }
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
     position += length;
   }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final java.nio.ByteBuffer myBuffer;
+
+    ByteBufferInputStream(@NotNull java.nio.ByteBuffer buffer) {
+      myBuffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return myBuffer.hasRemaining() ? myBuffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) {
+      if (!myBuffer.hasRemaining()) return -1;
+      final int count = Math.min(len, myBuffer.remaining());
+      myBuffer.get(b, off, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return myBuffer.remaining();
+    }
+  }
 }
@@ -4,8 +4,10 @@ import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.psi.stubs.StubElement;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.util.concurrent.Executor;
 
 /**
  * Produced from abcdump.as
@@ -26,7 +28,9 @@ public class FlexImporter {
 
       for (String file : args) {
         try {
-          String result = dumpContentsFromStream(new BufferedInputStream(new FileInputStream(file)), true);
+          final AbstractDumpProcessor abcDumper = new AbcDumper(true);
+          processFlexByteCode(ByteBuffer.map(new File(file)), abcDumper);
+          String result = abcDumper.getResult();
 
           saveStringAsFile(result, file + ".il");
         }
@@ -44,35 +48,81 @@ public class FlexImporter {
 
   public static String dumpContentsFromStream(final InputStream in, boolean _dumpCode) throws IOException {
     final AbstractDumpProcessor abcDumper = new AbcDumper(_dumpCode);
-    processFlexByteCode(in, abcDumper);
+    processFlexByteCode(ByteBuffer.read(in), abcDumper);
     return abcDumper.getResult();
   }
 
   @NonNls
   public static String buildInterfaceFromStream(final InputStream in) {
+    try {
+      return buildInterface(ByteBuffer.read(in));
+    }
+    catch (IOException ex) {
+      return "/* " + ex.getLocalizedMessage() + " */";
+    }
+  }
+
+  /**
+   * Uncompressed SWF and ABC files are read through a memory mapped buffer. If the file is truncated or rewritten while it is mapped,
+   * access to the mapping fails with {@link InternalError}, then the file is read again to the Java heap.
+   */
+  @NonNls
+  public static String buildInterfaceFromFile(@NotNull final File file) {
+    try {
+      try {
+        return buildInterface(ByteBuffer.map(file));
+      }
+      catch (InternalError e) {
+        return buildInterface(ByteBuffer.read(new FileInputStream(file)));
+      }
+    }
+    catch (IOException ex) {
+      return "/* " + ex.getLocalizedMessage() + " */";
+    }
+  }
+
+  private static String buildInterface(@NotNull final ByteBuffer data) throws IOException {
     try {
       final AbstractDumpProcessor abcDumper = new AS3InterfaceDumper();
-      processFlexByteCode(in, abcDumper);
+      processFlexByteCode(data, abcDumper);
       final String s = abcDumper.getResult();
       //saveStringAsFile(s, File.createTempFile("fleximport", ".as").getPath());
       return s;
     }
-    catch (IOException ex) {
-      return "/* " + ex.getLocalizedMessage() + " */";
-    }
-    catch (ArrayIndexOutOfBoundsException ex) {
+    catch (IndexOutOfBoundsException ex) {
       return "/* Invalid format */";
     }
   }
 
   @NonNls
   public static void buildStubsInterfaceFromStream(final InputStream in, final StubElement parent) throws Exception {
-    processFlexByteCode(in, new AS3InterfaceStubDumper(parent));
+    processFlexByteCode(ByteBuffer.read(in), new AS3InterfaceStubDumper(parent));
+  }
+
+  /**
+   * Same as {@link #buildStubsInterfaceFromStream(InputStream, StubElement)} but {@code content} is parsed in place, without copying.
+   */
+  public static void buildStubsInterfaceFromBytes(@NotNull final byte[] content, final StubElement parent) throws Exception {
+    buildStubsInterfaceFromBytes(content, parent, null);
   }
 
-  private static void processFlexByteCode(@NotNull final InputStream in, @NotNull FlexByteCodeInformationProcessor processor) throws IOException {
-    ByteBuffer data = new ByteBuffer();
-    data.read(in);
+  /**
+   * @param abcParsingExecutor if not null, ABC blocks of SWF are parsed on it concurrently; stubs are still created on the calling thread
+   */
+  public static void buildStubsInterfaceFromBytes(@NotNull final byte[] content,
+                                                  final StubElement parent,
+                                                  @Nullable final Executor abcParsingExecutor) throws Exception {
+    processFlexByteCode(ByteBuffer.wrap(content), new AS3InterfaceStubDumper(parent), abcParsingExecutor);
+  }
+
+  private static void processFlexByteCode(@NotNull final ByteBuffer data, @NotNull FlexByteCodeInformationProcessor processor)
+    throws IOException {
+    processFlexByteCode(data, processor, null);
+  }
+
+  private static void processFlexByteCode(@NotNull final ByteBuffer data,
+                                          @NotNull FlexByteCodeInformationProcessor processor,
+                                          @Nullable Executor abcParsingExecutor) throws IOException {
     data.setLittleEndian();
     if (data.bytesSize() == 0) return;
     int version = data.readUnsignedInt();
@@ -83,19 +133,25 @@ public class FlexImporter {
     }
     else if ((version & SWF_MAGIC) == SWF_MAGIC) {
       final int delta = 8;
+      final int fileLength = data.readInt(); // uncompressed, including header
       data.setPosition(delta);
-      ByteBuffer udata = new ByteBuffer();
-      udata.setLittleEndian();
-      data.readBytes(udata, data.bytesSize() - delta);
-      int csize = udata.bytesSize();
-      udata.uncompress();
-      processor.dumpStat("decompressed swf " + csize + " -> " + udata.bytesSize() + "\n");
-      udata.setPosition(0);
-      new Swf(udata, processor);
+      int csize = data.bytesSize() - delta;
+      // tags are inflated one by one while Swf reads them, only DoABC tags are kept in memory
+      ByteBuffer udata = data.inflate(Math.max(0, fileLength - delta));
+      try {
+        processor.dumpStat("decompressed swf " + csize + " -> " + udata.bytesSize() + "\n");
+        new Swf(udata, processor, abcParsingExecutor);
+      }
+      catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      finally {
+        udata.close();
+      }
     }
     else if ((version & SWF_MAGIC2) == SWF_MAGIC2) {
       data.setPosition(8); // skip header and length
-      new Swf(data, processor);
+      new Swf(data, processor, abcParsingExecutor);
     }
     else {
       processor.hasError("unknown format " + version + ", swf version: " + (version >> 24) + "\n");
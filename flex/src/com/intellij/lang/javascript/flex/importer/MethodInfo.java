@@ -70,7 +70,7 @@ class MethodInfo extends MemberInfo {
       switch (opcode) {
         case OP_debugfile:
         case OP_pushstring:
-          processor.append('"' + StringUtil.replace(StringUtil.replace(abc.strings[readU32()], "\n", "\\n"), "\t", "\\t") + '"');
+          processor.append('"' + StringUtil.replace(StringUtil.replace(abc.getString(readU32()), "\n", "\\n"), "\t", "\\t") + '"');
           break;
         case OP_pushnamespace:
           processor.append(abc.namespaces[readU32()]);
@@ -84,7 +84,7 @@ class MethodInfo extends MemberInfo {
           processor.append(u + "\t// 0x" + Integer.toString(u, 16));
           break;
         case OP_pushdouble:
-          processor.append(abc.doubles[readU32()].toString());
+          processor.append(Double.toString(abc.doubles[readU32()]));
           break;
         case OP_getsuper:
         case OP_setsuper:
@@ -1,6 +1,13 @@
 package com.intellij.lang.javascript.flex.importer;
 
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
 
 /**
  * @author Maxim.Mossienko
@@ -22,6 +29,12 @@ class Swf {
 
   private final ByteBuffer data;
 
+  // DoABC tags are parsed here when not null and dumped in tag order on the calling thread
+  @Nullable private final Executor abcParsingExecutor;
+  private final Deque<CompletableFuture<Abc>> parsedAbcs = new ArrayDeque<>();
+  private static final int MAX_ABCS_IN_FLIGHT = 16;
+  private static final int CHECK_CANCELED_PERIOD_MS = 10;
+
   private static final int stagDoABC = 72;   // embedded .abc (AVM+) bytecode
   private static final int stagDoABC2 = 82;   // revised ABC version with a name
 
@@ -147,8 +160,18 @@ class Swf {
 
 
   Swf(final ByteBuffer _data, final FlexByteCodeInformationProcessor _processor) {
+    this(_data, _processor, null);
+  }
+
+  /**
+   * @param _abcParsingExecutor executor to parse DoABC tags concurrently with reading the rest of SWF,
+   *                            {@code _processor} must not depend on the order of {@link FlexByteCodeInformationProcessor#dumpStat(String)}
+   *                            and {@link FlexByteCodeInformationProcessor#hasError(String)} calls then
+   */
+  Swf(final ByteBuffer _data, final FlexByteCodeInformationProcessor _processor, @Nullable Executor _abcParsingExecutor) {
     data = _data;
     processor = _processor;
+    abcParsingExecutor = _abcParsingExecutor;
 
     final Rect rect = decodeRect();
     final int rate = data.readUnsignedByte() << 8 | data.readUnsignedByte();
@@ -158,19 +181,28 @@ class Swf {
     processor.dumpStat("frame rate " + rate + "\n");
     processor.dumpStat("frame count " + count + "\n");
 
-    decodeTags();
+    try {
+      decodeTags();
+      dumpParsedAbcs(0);
+    }
+    finally {
+      // not empty only if decoding failed or was canceled, ABCs that are not parsed yet are not needed anymore
+      for (CompletableFuture<Abc> future : parsedAbcs) {
+        future.cancel(false);
+      }
+    }
   }
 
   private void decodeTags() {
     int type, h, length;
 
-    while (data.getPosition() < data.bytesSize()) {
+    while (!data.eof()) {
       type = (h = data.readUnsignedShort()) >> 6;
 
       if (((length = h & 0x3F) == 0x3F)) length = data.readInt();
 
       processor.dumpStat(
-        (type < tagNames.length ? tagNames[type] : "undefined") + " " + length + "b " + ((int)100f * length / data.bytesSize()) + "%\n");
+        (type < tagNames.length ? tagNames[type] : "undefined") + " " + length + "b " + ((int)100f * length / Math.max(1, data.bytesSize())) + "%\n");
 
       switch (type) {
         case 0:
@@ -183,11 +215,15 @@ class Swf {
           length -= (data.getPosition() - pos1);
           // fall through
         case stagDoABC:
-          ByteBuffer data2 = new ByteBuffer();
+          ByteBuffer data2 = data.readBytes(length);
           data2.setLittleEndian();
-          data.readBytes(data2, length);
-          new Abc(data2, processor).dump(processor.getAbcInSwfIndent());
-          processor.append("\n");
+          if (abcParsingExecutor != null) {
+            parsedAbcs.addLast(CompletableFuture.supplyAsync(() -> new Abc(data2, processor), abcParsingExecutor));
+            dumpParsedAbcs(MAX_ABCS_IN_FLIGHT);
+          }
+          else {
+            dumpAbc(new Abc(data2, processor));
+          }
           break;
         default:
           data.incPosition(length);
@@ -195,6 +231,42 @@ class Swf {
     }
   }
 
+  private void dumpAbc(final Abc abc) {
+    abc.dump(processor.getAbcInSwfIndent());
+    processor.append("\n");
+  }
+
+  /**
+   * Dumps parsed ABCs in tag order until no more than {@code maxLeft} of them are left, waiting for parsing if needed.
+   * The wait is interrupted by the progress cancellation of the calling thread.
+   */
+  private void dumpParsedAbcs(final int maxLeft) {
+    while (parsedAbcs.size() > maxLeft) {
+      dumpAbc(waitForAbc(parsedAbcs.peekFirst()));
+      parsedAbcs.removeFirst();
+    }
+  }
+
+  private static Abc waitForAbc(final Future<Abc> future) {
+    while (true) {
+      ProgressManager.checkCanceled();
+      try {
+        return future.get(CHECK_CANCELED_PERIOD_MS, TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException ignored) {
+      }
+      catch (InterruptedException e) {
+        throw new ProcessCanceledException(e);
+      }
+      catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+        if (cause instanceof Error) throw (Error)cause;
+        throw new RuntimeException(cause);
+      }
+    }
+  }
+
   private String readString() {
     String s = "";
     int c;
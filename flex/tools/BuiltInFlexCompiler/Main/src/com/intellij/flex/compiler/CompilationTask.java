@@ -3,7 +3,7 @@ package com.intellij.flex.compiler;
 import flex2.compiler.ILocalizableMessage;
 import flex2.compiler.common.Configuration;
 
-public class CompilationThread extends Thread {
+public class CompilationTask implements Runnable {
 
   private static int omitTraceCompilationsCount = 0;
   private static int traceCompilationsCount = 0;
@@ -13,15 +13,17 @@ public class CompilationThread extends Thread {
   private final SdkSpecificHandler mySdkSpecificHandler;
   private final String[] myParams;
   private final OutputLogger myLogger;
+  private final long mySubmittedTime;
 
-  public CompilationThread(final boolean isSwf,
-                           final SdkSpecificHandler sdkSpecificHandler,
-                           final String[] params,
-                           final OutputLogger logger) {
+  public CompilationTask(final boolean isSwf,
+                         final SdkSpecificHandler sdkSpecificHandler,
+                         final String[] params,
+                         final OutputLogger logger) {
     mySwf = isSwf;
     mySdkSpecificHandler = sdkSpecificHandler;
     myParams = params;
     myLogger = logger;
+    mySubmittedTime = System.currentTimeMillis();
   }
 
   static {
@@ -34,14 +36,24 @@ public class CompilationThread extends Thread {
   }
 
   public void run() {
+    final long startTime = System.currentTimeMillis();
+    long configurationTime = 0;
+    long waitingTime = 0;
+    long compilationTime = 0;
+
     try {
       mySdkSpecificHandler.initThreadLocals(myLogger);
 
+      long phaseStart = System.currentTimeMillis();
       final boolean omitTrace = mySdkSpecificHandler.isOmitTrace(mySwf, myParams);
+      configurationTime = System.currentTimeMillis() - phaseStart;
 
-      try {
-        acquire(omitTrace);
+      phaseStart = System.currentTimeMillis();
+      acquire(omitTrace);
+      waitingTime = System.currentTimeMillis() - phaseStart;
 
+      phaseStart = System.currentTimeMillis();
+      try {
         mySdkSpecificHandler.setupOmitTraceOption(omitTrace);
 
         if (mySwf) {
@@ -52,6 +64,7 @@ public class CompilationThread extends Thread {
         }
       }
       finally {
+        compilationTime = System.currentTimeMillis() - phaseStart;
         release(omitTrace);
       }
 
@@ -81,9 +94,13 @@ public class CompilationThread extends Thread {
       System.exit(1);
     }
     finally {
+      myLogger.log(FlexCompiler.COMPILATION_TIMINGS +
+                   "queued " + (startTime - mySubmittedTime) + " ms" +
+                   ", configuration " + configurationTime + " ms" +
+                   ", waiting for compilations with other trace options " + waitingTime + " ms" +
+                   ", compilation " + compilationTime + " ms");
       myLogger.log(FlexCompiler.COMPILATION_FINISHED);
       mySdkSpecificHandler.cleanThreadLocals();
-      System.gc();
     }
   }
 
@@ -125,4 +142,3 @@ public class CompilationThread extends Thread {
     }
   }
 }
-
@@ -8,6 +8,9 @@ import flex2.tools.VersionInfo;
 import java.io.*;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FlexCompiler implements MessageSender {
 
@@ -16,6 +19,7 @@ public class FlexCompiler implements MessageSender {
   private static final String FINISH_COMMAND = "Finish";
   public static final String CANCEL_COMMAND = "Cancel";
   public static final String COMPILATION_FINISHED = "Compilation finished";
+  public static final String COMPILATION_TIMINGS = "Compilation timings: ";
 
   public static String SDK_MAJOR_VERSION = VersionInfo.FLEX_MAJOR_VERSION;
   public static String SDK_MINOR_VERSION = VersionInfo.FLEX_MINOR_VERSION;
@@ -24,6 +28,25 @@ public class FlexCompiler implements MessageSender {
   private DataInputStream myDataInputStream;
   private DataOutputStream myDataOutputStream;
 
+  // the process is started for one SDK and serves all compilations with it, so the handler and everything the compiler
+  // initializes once stay warm between commands
+  private final SdkSpecificHandler mySdkSpecificHandler = getSdkSpecificHandler();
+  private final ExecutorService myExecutor;
+  // not finished compilations by log message prefix
+  private final Map<String, Future<?>> myCompilations = new ConcurrentHashMap<String, Future<?>>();
+
+  private FlexCompiler(final int threadCount) {
+    final AtomicInteger threadNumber = new AtomicInteger();
+    myExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                                        new ThreadFactory() {
+                                          public Thread newThread(final Runnable runnable) {
+                                            final Thread thread = new Thread(runnable, "Flex compilation " + threadNumber.incrementAndGet());
+                                            thread.setDaemon(true);
+                                            return thread;
+                                          }
+                                        });
+  }
+
   private void openSocket(int port) throws IOException {
     final int maxAttempts = 10;
     Socket socket;
@@ -48,20 +71,31 @@ public class FlexCompiler implements MessageSender {
     }
   }
 
+  /**
+   * Arguments are the port to connect to and optionally the maximum number of concurrent compilations, 1 by default.
+   */
   public static void main(String[] args) {
-    if (args.length != 1) {
+    if (args.length < 1 || args.length > 2) {
       System.out.println("Missing port parameter");
+      return;
     }
     final int port;
+    final int threadCount;
     try {
       port = Integer.parseInt(args[0]);
     } catch (NumberFormatException e) {
       System.out.println("Incorrect port parameter");
       return;
     }
+    try {
+      threadCount = args.length > 1 ? Math.max(1, Integer.parseInt(args[1])) : 1;
+    } catch (NumberFormatException e) {
+      System.out.println("Incorrect compilation thread count parameter");
+      return;
+    }
 
     try {
-      final FlexCompiler flexCompiler = new FlexCompiler();
+      final FlexCompiler flexCompiler = new FlexCompiler(threadCount);
       flexCompiler.openSocket(port);
       flexCompiler.processInput();
     } catch (IOException e) {
@@ -104,14 +138,14 @@ public class FlexCompiler implements MessageSender {
         exit();
         return true;
       } else {
-        startCompilationThread(command);
+        startCompilation(command);
       }
     }
 
     return false;
   }
 
-  private void startCompilationThread(final String command) {
+  private void startCompilation(final String command) {
     final int colonPos = command.indexOf(":");
     if (colonPos <= 0) {
       sendMessage("Error: Incorrect command: [" + command + "]");
@@ -139,8 +173,7 @@ public class FlexCompiler implements MessageSender {
 
     final String logMessagePrefix = commandNumberStr + ":";
     final OutputLogger logger = new OutputLogger(this, logMessagePrefix);
-    final SdkSpecificHandler sdkSpecificHandler = getSdkSpecificHandler();
-    if (sdkSpecificHandler == null) {
+    if (mySdkSpecificHandler == null) {
       logger.log(
         "Error: Flex SDK " + SDK_MAJOR_VERSION + '.' + SDK_MINOR_VERSION + '.' + SDK_REVISION_VERSION
           + " is not supported by built-in compiler shell. Please change compiler at " +
@@ -149,14 +182,17 @@ public class FlexCompiler implements MessageSender {
       return;
     }
 
-    final CompilationThread compilationThread =
-      new CompilationThread(isSwf, sdkSpecificHandler, getParams(compilationCommand), logger);
-    compilationThread.setPriority(Thread.MAX_PRIORITY);
-    compilationThread.setDaemon(true);
-    compilationThread.start();
+    final CompilationTask compilationTask = new CompilationTask(isSwf, mySdkSpecificHandler, getParams(compilationCommand), logger);
+    final FutureTask<Object> future = new FutureTask<Object>(compilationTask, null) {
+      protected void done() {
+        myCompilations.remove(logMessagePrefix);
+      }
+    };
+    myCompilations.put(logMessagePrefix, future);
+    myExecutor.execute(future);
   }
 
-  private SdkSpecificHandler getSdkSpecificHandler() {
+  private static SdkSpecificHandler getSdkSpecificHandler() {
     if ("3".equals(SDK_MAJOR_VERSION)) {
       return new Flex3Handler();
     }
@@ -182,13 +218,21 @@ public class FlexCompiler implements MessageSender {
 
   private void exit() {
     cancelAllCompilations();
+    myExecutor.shutdown();
     try {
       myDataInputStream.close();
     } catch (IOException ignored) {
     }
   }
 
+  /**
+   * Compilations that are not started yet are cancelled, running ones can't be interrupted and finish as usual.
+   */
   private void cancelAllCompilations() {
-    // todo implement
+    for (final Map.Entry<String, Future<?>> entry : myCompilations.entrySet()) {
+      if (entry.getValue().cancel(false)) {
+        sendMessage(entry.getKey() + COMPILATION_FINISHED);
+      }
+    }
   }
 }
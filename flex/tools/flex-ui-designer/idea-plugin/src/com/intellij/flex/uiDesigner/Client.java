@@ -32,7 +32,7 @@ import org.jetbrains.io.InfoMap;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
@@ -52,7 +52,7 @@ public class Client implements Disposable {
     return DesignerApplicationManager.getService(Client.class);
   }
 
-  public void setOut(@NotNull OutputStream socketOut) {
+  public void setOut(@NotNull WritableByteChannel socketOut) {
     blockOut.setOut(socketOut);
   }
 
@@ -632,13 +632,15 @@ public class Client implements Disposable {
     }
   }
 
-  public ActionCallback updatePropertyOrStyle(int documentId, int componentId, Consumer<AmfOutputStream> streamConsumer) {
-    final ActionCallback callback = new ActionCallback("updatePropertyOrStyle");
+  /**
+   * Delta of the document: only changed property and style records, see IncrementalDocumentSynchronizer
+   */
+  public ActionCallback updatePropertiesOrStyles(int documentId, Consumer<AmfOutputStream> streamConsumer) {
+    final ActionCallback callback = new ActionCallback("updatePropertiesOrStyles");
     boolean hasError = true;
     try {
-      beginMessage(ClientMethod.updatePropertyOrStyle, callback);
+      beginMessage(ClientMethod.updatePropertiesOrStyles, callback);
       out.writeUInt29(documentId);
-      out.writeUInt29(componentId);
       streamConsumer.consume(out);
       hasError = false;
     }
@@ -715,7 +717,7 @@ public class Client implements Disposable {
   private enum ClientMethod {
     openProject, closeProject, registerLibrarySet, registerModule, unregisterModule, registerDocumentFactory, updateDocumentFactory, renderDocument, renderDocumentsAndDependents,
     initStringRegistry, updateStringRegistry, fillImageClassPool, fillSwfClassPool, fillViewClassPool,
-    selectComponent, getDocumentImage, updatePropertyOrStyle, updateLocalStyleHolders;
+    selectComponent, getDocumentImage, updatePropertiesOrStyles, updateLocalStyleHolders;
     
     public static final int METHOD_CLASS = 0;
   }
@@ -26,8 +26,8 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.URL;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -54,8 +54,8 @@ public class DesignerApplicationLauncher extends DocumentTask {
     this(module, postTask, false);
   }
 
-  public void clientOpened(@NotNull OutputStream outputStream) {
-    Client.getInstance().setOut(outputStream);
+  public void clientOpened(@NotNull WritableByteChannel out) {
+    Client.getInstance().setOut(out);
     LOG.info("Client opened");
     semaphore.up();
   }
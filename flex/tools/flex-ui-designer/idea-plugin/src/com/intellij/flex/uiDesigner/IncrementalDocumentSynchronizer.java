@@ -27,18 +27,34 @@ import com.intellij.psi.xml.XmlTag;
 import com.intellij.util.ui.update.Update;
 import com.intellij.xml.XmlAttributeDescriptor;
 import com.intellij.xml.XmlElementDescriptor;
+import gnu.trove.THashSet;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
 import static com.intellij.flex.uiDesigner.DocumentFactoryManager.DocumentInfo;
 
+/**
+ * Changes of a file made while the update is queued are merged into it and sent as one delta message with the changed property
+ * and style records only. The document is rendered again only if some change cannot be expressed as a property record.
+ */
 final class IncrementalDocumentSynchronizer extends Update {
-  private final PsiTreeChangeEvent event;
+  private static final int RECORD_UNSUPPORTED = 0;
+  private static final int RECORD_SKIPPED = 1;
+  private static final int RECORD_WRITTEN = 2;
+
+  private final PsiFile file;
+  private final List<PsiTreeChangeEvent> events = new ArrayList<>(1);
   private boolean isSkippedXml;
   private boolean isStyleDataChanged;
 
   IncrementalDocumentSynchronizer(PsiTreeChangeEvent event) {
-    super("FlashUIDesigner.incrementalUpdate");
-    this.event = event;
+    // equal updates replace each other in the queue, so only updates of the same file must be equal
+    super(event.getFile());
+    file = event.getFile();
+    events.add(event);
   }
 
   @Override
@@ -47,18 +63,29 @@ final class IncrementalDocumentSynchronizer extends Update {
       return false;
     }
 
-    PsiTreeChangeEvent otherEvent = ((IncrementalDocumentSynchronizer)update).event;
-    if (event.getFile() != otherEvent.getFile()) {
+    IncrementalDocumentSynchronizer other = (IncrementalDocumentSynchronizer)update;
+    if (file != other.file) {
       return false;
     }
 
     // todo we don't support incremental update for CSS
-    if (event.getFile() instanceof StylesheetFile) {
-      return true;
+    if (!(file instanceof StylesheetFile)) {
+      for (PsiTreeChangeEvent otherEvent : other.events) {
+        if (!hasEventWithSameTarget(otherEvent)) {
+          events.add(otherEvent);
+        }
+      }
     }
+    return true;
+  }
 
-    return event.getParent() == otherEvent.getParent() &&
-           event.getElement() == otherEvent.getElement();
+  private boolean hasEventWithSameTarget(PsiTreeChangeEvent otherEvent) {
+    for (PsiTreeChangeEvent event : events) {
+      if (event.getParent() == otherEvent.getParent() && event.getElement() == otherEvent.getElement()) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
@@ -72,11 +99,11 @@ final class IncrementalDocumentSynchronizer extends Update {
     // (so, if CSS is injected, we get psi event about mxml file, but not about injected css file)
     // WELL, IT IS NOT TRUE!!! YESTERDAY IT ALWAYS WAS XmlFile, but TODAY IT IS CssFile :)
     final XmlFile xmlFile;
-    if (event.getFile() instanceof XmlFile) {
-      xmlFile = (XmlFile)event.getFile();
+    if (file instanceof XmlFile) {
+      xmlFile = (XmlFile)file;
     }
     else {
-      assert event.getFile() instanceof StylesheetFile;
+      assert file instanceof StylesheetFile;
       styleChanged();
       return;
     }
@@ -95,17 +122,17 @@ final class IncrementalDocumentSynchronizer extends Update {
   private void styleChanged() {
     // BE AWARE!!! INJECTION BEHAVIOR IS NOT PREDICTABLE, file may be injected.
     //noinspection ConstantConditions
-    VirtualFile file = event.getFile().getViewProvider().getVirtualFile();
-    if (file instanceof VirtualFileWindow) {
-      file = ((VirtualFileWindow)file).getDelegate();
+    VirtualFile virtualFile = file.getViewProvider().getVirtualFile();
+    if (virtualFile instanceof VirtualFileWindow) {
+      virtualFile = ((VirtualFileWindow)virtualFile).getDelegate();
     }
 
     DesignerApplicationManager.getInstance().renderDocumentsAndCheckLocalStyleModification(
-      new Document[]{FileDocumentManager.getInstance().getCachedDocument(file)}, true, false);
+      new Document[]{FileDocumentManager.getInstance().getCachedDocument(virtualFile)}, true, false);
   }
 
   @Nullable
-  private XmlElementValueProvider findSupportedTarget() {
+  private XmlElementValueProvider findSupportedTarget(PsiTreeChangeEvent event) {
     PsiElement element = event.getParent();
     // if we change attribute value via line marker, so, event.getParent() will be XmlAttribute instead of XmlAttributeValue
     while (!(element instanceof XmlAttribute)) {
@@ -178,19 +205,82 @@ final class IncrementalDocumentSynchronizer extends Update {
   }
 
   private boolean incrementalSync(final DocumentInfo info) {
-    final XmlElementValueProvider valueProvider = findSupportedTarget();
-    if (valueProvider == null) {
-      return false;
+    final StringRegistry.StringWriter stringWriter = new StringRegistry.StringWriter();
+    //noinspection IOResourceOpenedButNotSafelyClosed
+    final PrimitiveAmfOutputStream dataOut = new PrimitiveAmfOutputStream(new ByteArrayOutputStreamEx(16));
+    final PrimitiveWriter writer = new PrimitiveWriter(dataOut, stringWriter);
+    final Set<PsiElement> processedTargets = new THashSet<>();
+    int recordCount = 0;
+    boolean needRollbackStringWriter = true;
+    try {
+      for (PsiTreeChangeEvent event : events) {
+        isSkippedXml = false;
+        // merged events may refer to elements that were replaced or removed by later changes, render the document again
+        if (!event.getParent().isValid()) {
+          return false;
+        }
+
+        final XmlElementValueProvider valueProvider = findSupportedTarget(event);
+        if (valueProvider == null) {
+          if (isSkippedXml && !isStyleDataChanged) {
+            continue;
+          }
+          return false;
+        }
+
+        if (!processedTargets.add(valueProvider.getElement())) {
+          continue;
+        }
+
+        final int recordStart = dataOut.getByteOut().size();
+        final int result = writePropertyRecord(info, valueProvider, writer, dataOut, stringWriter);
+        if (result == RECORD_UNSUPPORTED) {
+          return false;
+        }
+        else if (result == RECORD_WRITTEN) {
+          recordCount++;
+        }
+        else {
+          dataOut.getByteOut().setPosition(recordStart);
+        }
+      }
+
+      if (recordCount == 0) {
+        return true;
+      }
+
+      needRollbackStringWriter = false;
     }
+    finally {
+      if (needRollbackStringWriter) {
+        stringWriter.rollback();
+      }
+    }
+
+    final int finalRecordCount = recordCount;
+    Client.getInstance().updatePropertiesOrStyles(info.getId(), stream -> {
+      stringWriter.writeTo(stream);
+      stream.writeUInt29(finalRecordCount);
+      dataOut.writeTo(stream);
+    }).doWhenDone(() -> DesignerApplicationManager.createDocumentRenderedNotificationDoneHandler(true).consume(info));
+
+    return true;
+  }
 
+  // record: component id, is style, name, value
+  private static int writePropertyRecord(DocumentInfo info,
+                                         XmlElementValueProvider valueProvider,
+                                         PrimitiveWriter writer,
+                                         PrimitiveAmfOutputStream dataOut,
+                                         StringRegistry.StringWriter stringWriter) {
     XmlTag tag = (XmlTag)valueProvider.getElement().getParent();
     if (!(tag.getDescriptor() instanceof ClassBackedElementDescriptor)) {
-      return false;
+      return RECORD_UNSUPPORTED;
     }
 
     int componentId = info.rangeMarkerIndexOf(tag);
     if (componentId == -1) {
-      return false;
+      return RECORD_UNSUPPORTED;
     }
 
     final AnnotationBackedDescriptor descriptor = (AnnotationBackedDescriptor)valueProvider.getPsiMetaData();
@@ -198,23 +288,20 @@ final class IncrementalDocumentSynchronizer extends Update {
     final String typeName = descriptor.getTypeName();
     final String type = descriptor.getType();
     if (type == null) {
-      return !typeName.equals(FlexAnnotationNames.EFFECT);
+      return typeName.equals(FlexAnnotationNames.EFFECT) ? RECORD_UNSUPPORTED : RECORD_SKIPPED;
     }
     else if (type.equals(JSCommonTypeNames.FUNCTION_CLASS_NAME) || typeName.equals(FlexAnnotationNames.EVENT)) {
-      return true;
+      return RECORD_SKIPPED;
     }
 
-    final StringRegistry.StringWriter stringWriter = new StringRegistry.StringWriter();
-    //noinspection IOResourceOpenedButNotSafelyClosed
-    final PrimitiveAmfOutputStream dataOut = new PrimitiveAmfOutputStream(new ByteArrayOutputStreamEx(16));
-    PrimitiveWriter writer = new PrimitiveWriter(dataOut, stringWriter);
-    boolean needRollbackStringWriter = true;
+    dataOut.writeUInt29(componentId);
+    dataOut.write(descriptor.isStyle());
     try {
       if (descriptor.isAllowsPercentage()) {
         String value = valueProvider.getTrimmed();
         final boolean hasPercent;
         if (value.isEmpty() || ((hasPercent = value.endsWith("%")) && value.length() == 1)) {
-          return true;
+          return RECORD_SKIPPED;
         }
 
         final String name;
@@ -232,33 +319,17 @@ final class IncrementalDocumentSynchronizer extends Update {
       else {
         stringWriter.write(descriptor.getName(), dataOut);
         if (!writer.writeIfApplicable(valueProvider, dataOut, descriptor)) {
-          needRollbackStringWriter = false;
-          stringWriter.rollback();
-          return false;
+          return RECORD_UNSUPPORTED;
         }
       }
-
-      needRollbackStringWriter = false;
     }
     catch (InvalidPropertyException ignored) {
-      return true;
+      return RECORD_SKIPPED;
     }
     catch (NumberFormatException ignored) {
-      return true;
-    }
-    finally {
-      if (needRollbackStringWriter) {
-        stringWriter.rollback();
-      }
+      return RECORD_SKIPPED;
     }
 
-    Client.getInstance().updatePropertyOrStyle(info.getId(), componentId, stream -> {
-      stringWriter.writeTo(stream);
-      stream.write(descriptor.isStyle());
-      dataOut.writeTo(stream);
-    }).doWhenDone(() -> DesignerApplicationManager.createDocumentRenderedNotificationDoneHandler(true).consume(info));
-
-    return true;
+    return RECORD_WRITTEN;
   }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package com.intellij.flex.uiDesigner.abc;
+
+import com.intellij.openapi.util.io.FileUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * SWF read into memory and inflated if it was compressed. Decoding doesn't depend on the state of a transcoder, so SWFs of
+ * different libraries may be decoded in parallel and then processed one by one.
+ */
+public final class DecodedSwf {
+  private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+  final byte[] partialHeader;
+  // uncompressed data after the partial header
+  final byte[] data;
+
+  private DecodedSwf(byte[] partialHeader, byte[] data) {
+    this.partialHeader = partialHeader;
+    this.data = data;
+  }
+
+  // in will be closed
+  public static DecodedSwf decode(InputStream in, long inputLength) throws IOException {
+    final byte[] partialHeader = new byte[SwfTranscoder.PARTIAL_HEADER_LENGTH];
+    final int uncompressedBodyLength;
+    final boolean compressed;
+    byte[] data;
+    try {
+      int n = in.read(partialHeader);
+      assert n == SwfTranscoder.PARTIAL_HEADER_LENGTH;
+      uncompressedBodyLength = (partialHeader[4] & 0xFF | (partialHeader[5] & 0xFF) << 8 |
+                                (partialHeader[6] & 0xFF) << 16 | partialHeader[7] << 24) - SwfTranscoder.PARTIAL_HEADER_LENGTH;
+      compressed = partialHeader[0] == 0x43;
+      data = FileUtil.loadBytes(in, compressed ? (int)inputLength - SwfTranscoder.PARTIAL_HEADER_LENGTH : uncompressedBodyLength);
+    }
+    finally {
+      in.close();
+    }
+
+    if (compressed) {
+      final Inflater inflater = INFLATER.get();
+      try {
+        inflater.setInput(data);
+        byte[] uncompressedData = new byte[uncompressedBodyLength];
+        try {
+          inflater.inflate(uncompressedData);
+        }
+        catch (DataFormatException e) {
+          throw new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid ZLIB data format");
+        }
+        data = uncompressedData;
+      }
+      finally {
+        inflater.reset();
+      }
+    }
+
+    return new DecodedSwf(partialHeader, data);
+  }
+}
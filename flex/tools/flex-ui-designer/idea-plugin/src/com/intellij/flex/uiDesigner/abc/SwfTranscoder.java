@@ -1,17 +1,10 @@
 package com.intellij.flex.uiDesigner.abc;
 
-import com.intellij.openapi.util.io.FileUtil;
-
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
-import java.util.zip.ZipException;
 
 abstract class SwfTranscoder extends AbcEncoder {
-  private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
-
   protected static final int PARTIAL_HEADER_LENGTH = 8;
 
   private final byte[] partialHeader = new byte[PARTIAL_HEADER_LENGTH];
@@ -23,42 +16,14 @@ abstract class SwfTranscoder extends AbcEncoder {
 
   // in will be closed
   protected void readSource(InputStream in, long inputLength) throws IOException {
-    final int uncompressedBodyLength;
-    final boolean compressed;
-    byte[] data;
-    try {
-      int n = in.read(partialHeader);
-      assert n == PARTIAL_HEADER_LENGTH;
-      uncompressedBodyLength = (partialHeader[4] & 0xFF | (partialHeader[5] & 0xFF) << 8 |
-                                (partialHeader[6] & 0xFF) << 16 | partialHeader[7] << 24) - PARTIAL_HEADER_LENGTH;
-      compressed = partialHeader[0] == 0x43;
-      data = FileUtil.loadBytes(in, compressed ? (int)inputLength - PARTIAL_HEADER_LENGTH : uncompressedBodyLength);
-    }
-    finally {
-      in.close();
-    }
-
-    if (compressed) {
-      final Inflater inflater = INFLATER.get();
-      try {
-        inflater.setInput(data);
-        byte[] uncompressedData = new byte[uncompressedBodyLength];
-        try {
-          inflater.inflate(uncompressedData);
-        }
-        catch (DataFormatException e) {
-          throw new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid ZLIB data format");
-        }
-        data = uncompressedData;
-      }
-      finally {
-        inflater.reset();
-      }
-    }
+    readSource(DecodedSwf.decode(in, inputLength));
+  }
 
-    buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+  protected void readSource(DecodedSwf swf) throws IOException {
+    System.arraycopy(swf.partialHeader, 0, partialHeader, 0, PARTIAL_HEADER_LENGTH);
+    buffer = ByteBuffer.wrap(swf.data).order(ByteOrder.LITTLE_ENDIAN);
 
-    readFrameSizeFrameRateAndFrameCount(data[0]);
+    readFrameSizeFrameRateAndFrameCount(swf.data[0]);
   }
 
   protected void readFrameSizeFrameRateAndFrameCount(byte b) throws IOException {
@@ -1,21 +1,30 @@
 package com.intellij.flex.uiDesigner.io;
 
-import com.intellij.openapi.application.ApplicationManager;
 import gnu.trove.TLinkable;
 import gnu.trove.TLinkedList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.*;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 
 public class BlockDataOutputStream extends AbstractByteArrayOutputStream implements WritableByteChannel {
   private static final int SERVICE_DATA_SIZE = 8;
+  private static final int DIRECT_BUFFER_SIZE = 64 * 1024;
 
   private int lastBlockBegin;
-  private OutputStream out;
+  private WritableByteChannel out;
   private final TLinkedList<Marker> markers = new TLinkedList<>();
 
+  // reused for all messages: data ranges of a message are copied to it in the order of markers and written to the socket at once,
+  // instead of a socket write per range (a document consists of thousands of ranges)
+  private ByteBuffer directBuffer;
+
   private int messageCounter;
 
   public BlockDataOutputStream() {
@@ -27,26 +36,23 @@ public class BlockDataOutputStream extends AbstractByteArrayOutputStream impleme
     count = SERVICE_DATA_SIZE;
   }
 
-  @SuppressWarnings("ConstantConditions")
-  public void setOut(@NotNull OutputStream out) {
+  public void setOut(@NotNull WritableByteChannel out) {
     String debugFilename = System.getProperty("fud.socket.dump");
-    DebugOutput debugOut;
     if (debugFilename != null) {
       try {
-        debugOut = new DebugOutput(out, new File(debugFilename));
+        this.out = new DebugChannel(out, new File(debugFilename));
       }
       catch (FileNotFoundException e) {
         throw new RuntimeException(e);
       }
-
-      this.out = debugOut;
-    }
-    else if (true || ApplicationManager.getApplication().isUnitTestMode()) {
-      this.out = new AuditorOutput(out);
     }
     else {
       this.out = out;
     }
+
+    if (directBuffer == null) {
+      directBuffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+    }
   }
 
   @Override
@@ -64,11 +70,12 @@ public class BlockDataOutputStream extends AbstractByteArrayOutputStream impleme
 
   private void flushBuffer() throws IOException {
     if (markers.isEmpty()) {
-      out.write(buffer, 0, count);
+      writeSegment(0, count);
     }
     else {
       writeMarkered();
     }
+    writeDirectBuffer();
 
     lastBlockBegin = 0;
     count = SERVICE_DATA_SIZE;
@@ -102,19 +109,13 @@ public class BlockDataOutputStream extends AbstractByteArrayOutputStream impleme
 
   private void writeMarkered() throws IOException {
     int lastEnd = 0;
-    AuditorOutput auditorOutput = null;
-    if (out instanceof AuditorOutput) {
-      auditorOutput = (AuditorOutput)out;
-      auditorOutput.written = 0;
-    }
-
     Marker marker = markers.getFirst();
     do {
       int length = marker.getStart() - lastEnd;
       // may be < 0 if nested
       if (length >= 0) {
         if (length > 0) {
-          out.write(buffer, lastEnd, length);
+          writeSegment(lastEnd, length);
         }
         lastEnd = marker.getEnd();
       }
@@ -127,12 +128,7 @@ public class BlockDataOutputStream extends AbstractByteArrayOutputStream impleme
 
     int tailLength = count - lastEnd;
     if (tailLength > 0) {
-      out.write(buffer, lastEnd, tailLength);
-    }
-
-    if (auditorOutput != null) {
-      //assert auditorOutput.written == (count - (lastBlockBegin + SERVICE_DATA_SIZE));
-      auditorOutput.written = -1;
+      writeSegment(lastEnd, tailLength);
     }
 
     markers.clear();
@@ -150,14 +146,14 @@ public class BlockDataOutputStream extends AbstractByteArrayOutputStream impleme
 
       possibleChild = (ByteRange)next;
       if (possibleChild == null || possibleChild.getEnd() > ownEnd) {
-        out.write(buffer, start, ownEnd - start);
+        writeSegment(start, ownEnd - start);
         break;
       }
       else {
         int length = possibleChild.getStart() - start;
         if (length > -1) {
           if (length != 0) {
-            out.write(buffer, start, length);
+            writeSegment(start, length);
           }
           start = possibleChild.getEnd();
         }
@@ -165,6 +161,31 @@ public class BlockDataOutputStream extends AbstractByteArrayOutputStream impleme
     }
   }
 
+  private void writeSegment(int offset, int length) throws IOException {
+    while (length > 0) {
+      if (!directBuffer.hasRemaining()) {
+        writeDirectBuffer();
+      }
+
+      final int n = Math.min(length, directBuffer.remaining());
+      directBuffer.put(buffer, offset, n);
+      offset += n;
+      length -= n;
+    }
+  }
+
+  private void writeDirectBuffer() throws IOException {
+    directBuffer.flip();
+    try {
+      while (directBuffer.hasRemaining()) {
+        out.write(directBuffer);
+      }
+    }
+    finally {
+      directBuffer.clear();
+    }
+  }
+
   public static int getDataRangeOwnLength(ByteRange dataRange) {
     if (dataRange.getOwnLength() != -1) {
       return dataRange.getOwnLength();
@@ -205,8 +226,6 @@ public class BlockDataOutputStream extends AbstractByteArrayOutputStream impleme
       writeHeader();
       flushBuffer();
     }
-
-    out.flush();
   }
 
   @Override
@@ -264,42 +283,37 @@ public class BlockDataOutputStream extends AbstractByteArrayOutputStream impleme
     markers.addLast(new ByteRangePointer(count, dataRange));
   }
 
-  private static class DebugOutput extends AuditorOutput {
-    private final FileOutputStream fileOut;
-
-    private DebugOutput(OutputStream out, File file) throws FileNotFoundException {
-      super(out);
-      fileOut = new FileOutputStream(file);
-    }
+  private static class DebugChannel implements WritableByteChannel {
+    private final WritableByteChannel out;
+    private final FileChannel fileOut;
 
-    @Override
-    public void write(int b) throws IOException {
-      fileOut.write(b);
-      super.write(b);
-    }
-
-    @Override
-    public void write(byte[] b) throws IOException {
-      fileOut.write(b);
-      super.write(b);
+    private DebugChannel(WritableByteChannel out, File file) throws FileNotFoundException {
+      this.out = out;
+      fileOut = new FileOutputStream(file).getChannel();
     }
 
     @Override
-    public void write(byte[] b, int off, int len) throws IOException {
-      fileOut.write(b, off, len);
-      super.write(b, off, len);
+    public int write(ByteBuffer src) throws IOException {
+      final ByteBuffer written = src.duplicate();
+      final int n = out.write(src);
+      written.limit(written.position() + n);
+      fileOut.write(written);
+      return n;
     }
 
     @Override
-    public void flush() throws IOException {
-      fileOut.flush();
-      super.flush();
+    public boolean isOpen() {
+      return out.isOpen();
     }
 
     @Override
     public void close() throws IOException {
-      fileOut.close();
-      super.close();
+      try {
+        fileOut.close();
+      }
+      finally {
+        out.close();
+      }
     }
   }
 }
\ No newline at end of file
@@ -5,20 +5,23 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 
 @SuppressWarnings("SocketOpenedButNotSafelyClosed")
 abstract class SocketManager implements Runnable, Disposable {
   protected static final Logger LOG = Logger.getInstance(SocketManager.class.getName());
 
-  protected ServerSocket serverSocket;
+  protected ServerSocketChannel serverSocket;
   protected Socket socket;
 
   public int listen() throws IOException {
-    serverSocket = new ServerSocket(0, 1);
-    int port = serverSocket.getLocalPort();
+    serverSocket = ServerSocketChannel.open();
+    serverSocket.bind(new InetSocketAddress(0), 1);
+    int port = serverSocket.socket().getLocalPort();
     assert port != -1;
     ApplicationManager.getApplication().executeOnPooledThread(this);
     return port;
@@ -27,11 +30,14 @@ abstract class SocketManager implements Runnable, Disposable {
   @Override
   public void run() {
     try {
-      socket = serverSocket.accept();
+      // blocking channel: its socket input stream is used for reading, but we write only to the channel itself -
+      // the socket output stream shares a lock with the input stream, so a pending read would block writes
+      SocketChannel channel = serverSocket.accept();
+      socket = channel.socket();
       serverSocket.close();
-      setOut(socket.getOutputStream());
+      setOut(channel);
       serverSocket = null;
-      clientSocketAccepted(socket.getOutputStream());
+      clientSocketAccepted(channel);
     }
     catch (IOException e) {
       // if null, so, already disposed (exception thrown by accept)
@@ -44,13 +50,13 @@ abstract class SocketManager implements Runnable, Disposable {
     }
   }
 
-  protected void clientSocketAccepted(OutputStream outputStream) {
+  protected void clientSocketAccepted(WritableByteChannel out) {
   }
 
   protected void clientSocketNotAccepted() {
   }
 
-  protected abstract void setOut(OutputStream out);
+  protected abstract void setOut(WritableByteChannel out);
 
   @Override
   public void dispose() {
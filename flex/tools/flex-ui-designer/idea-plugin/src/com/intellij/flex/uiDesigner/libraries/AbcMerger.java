@@ -54,10 +54,21 @@ class AbcMerger extends AbcTranscoder {
   }
 
   public void process(Library library) throws IOException {
+    process(library, decode(library));
+  }
+
+  /**
+   * @param swf decoded SWF of the library, see {@link #decode(Library)}
+   */
+  public void process(Library library, DecodedSwf swf) throws IOException {
     this.library = library;
+    readSource(swf);
+    processDecodedSource();
+  }
 
+  static DecodedSwf decode(Library library) throws IOException {
     VirtualFile file = library.getSwfFile();
-    process(file.getInputStream(), (int)file.getLength());
+    return DecodedSwf.decode(file.getInputStream(), (int)file.getLength());
   }
 
   public void process(InputStream in) throws IOException {
@@ -66,6 +77,10 @@ class AbcMerger extends AbcTranscoder {
 
   public void process(InputStream in, int length) throws IOException {
     readSource(in, length);
+    processDecodedSource();
+  }
+
+  private void processDecodedSource() throws IOException {
     processTags(null);
     library = null;
 
@@ -3,28 +3,52 @@ package com.intellij.flex.uiDesigner.libraries;
 import com.intellij.flex.uiDesigner.LogMessageUtil;
 import com.intellij.flex.uiDesigner.abc.AbcTranscoder;
 import com.intellij.ide.util.PropertiesComponent;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.EnumeratorStringDescriptor;
 import com.intellij.util.io.PersistentHashMap;
 import gnu.trove.THashMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
 
 import static com.intellij.flex.uiDesigner.libraries.LibrarySorter.SortResult;
 
+/**
+ * Sort results of library sets and merged library SWFs, keyed by content hashes of libraries (and Flex SDK version), so they survive
+ * restarts and are shared by modules and projects with the same libraries under different paths. Merged SWFs of the least recently
+ * used library sets are deleted when the cache grows over {@link #MAX_CACHE_SIZE}.
+ */
 class LibrariesData {
-  final PersistentHashMap<String, SortResult> librarySets;
+  private final PersistentHashMap<String, SortResult> librarySets;
+  private final File cacheDir;
+  private final long maxCacheSize;
 
-  private static final String ABC_FILTER_VERSION = "40";
+  private static final String ABC_FILTER_VERSION = "41";
   private static final String ABC_FILTER_VERSION_VALUE_NAME = "fud_abcFilterVersion";
 
+  private static final long MAX_CACHE_SIZE = 256 * 1024 * 1024;
+
   static final char NAME_PREFIX = '@';
+  private static final String SWF_EXTENSION = ".swf";
 
   LibrariesData(File cacheDir) throws IOException {
+    this(cacheDir, MAX_CACHE_SIZE);
+  }
+
+  LibrariesData(File cacheDir, long maxCacheSize) throws IOException {
+    this.cacheDir = cacheDir;
+    this.maxCacheSize = maxCacheSize;
+
     PropertiesComponent propertiesComponent = PropertiesComponent.getInstance();
     if (!ABC_FILTER_VERSION.equals(propertiesComponent.getValue(ABC_FILTER_VERSION_VALUE_NAME))) {
       clearCache(cacheDir);
@@ -34,6 +58,72 @@ class LibrariesData {
     librarySets = createLibrarySetsCache(cacheDir);
   }
 
+  int enumerate(String key) throws IOException {
+    return librarySets.enumerate(key);
+  }
+
+  File getSwfFile(int id) {
+    return new File(cacheDir, NAME_PREFIX + Integer.toString(id) + SWF_EXTENSION);
+  }
+
+  /**
+   * @return cached sort result if its merged SWF still exists, the library set becomes the most recently used one
+   */
+  @Nullable
+  SortResult get(String key) throws IOException {
+    final SortResult result = librarySets.get(key);
+    if (result == null) {
+      return null;
+    }
+
+    final File swfFile = getSwfFile(enumerate(key));
+    if (!swfFile.isFile()) {
+      librarySets.remove(key);
+      return null;
+    }
+
+    //noinspection ResultOfMethodCallIgnored
+    swfFile.setLastModified(System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * @param result sort result restored from cache, i.e. with library content hashes
+   * @param keysInUse library sets registered in the client, their SWFs are never deleted
+   */
+  void put(String key, SortResult result, Collection<String> keysInUse) throws IOException {
+    assert result.libraryHashes != null;
+    librarySets.put(key, result);
+    deleteLeastRecentlyUsed(keysInUse);
+  }
+
+  private void deleteLeastRecentlyUsed(Collection<String> keysInUse) throws IOException {
+    long size = 0;
+    final List<Pair<String, File>> candidates = new ArrayList<>();
+    for (String key : librarySets.getAllKeysWithExistingMapping()) {
+      final File swfFile = getSwfFile(enumerate(key));
+      size += swfFile.length();
+      if (!keysInUse.contains(key)) {
+        candidates.add(Pair.create(key, swfFile));
+      }
+    }
+
+    if (size <= maxCacheSize) {
+      return;
+    }
+
+    candidates.sort(Comparator.comparingLong(candidate -> candidate.second.lastModified()));
+    for (Pair<String, File> candidate : candidates) {
+      if (size <= maxCacheSize) {
+        break;
+      }
+
+      size -= candidate.second.length();
+      librarySets.remove(candidate.first);
+      FileUtil.delete(candidate.second);
+    }
+  }
+
   public void close() {
     try {
       librarySets.close();
@@ -67,9 +157,9 @@ class LibrariesData {
   private static class LibrarySetDataExternalizer implements DataExternalizer<SortResult> {
     @Override
     public void save(@NotNull final DataOutput out, SortResult value) throws IOException {
-      out.writeShort(value.libraries.size());
-      for (Library library : value.libraries) {
-        out.writeUTF(library.getFile().getPath());
+      out.writeShort(value.libraryHashes.length);
+      for (String libraryHash : value.libraryHashes) {
+        out.writeUTF(libraryHash);
       }
 
       if (value.definitionMap == null) {
@@ -93,9 +183,9 @@ class LibrariesData {
     @Override
     public SortResult read(@NotNull DataInput in) throws IOException {
       int librariesSize = in.readShort();
-      String[] libraryPaths = new String[librariesSize];
+      String[] libraryHashes = new String[librariesSize];
       while (librariesSize-- > 0) {
-        libraryPaths[librariesSize] = in.readUTF();
+        libraryHashes[librariesSize] = in.readUTF();
       }
 
       int size = in.readInt();
@@ -110,7 +200,7 @@ class LibrariesData {
         map = null;
       }
 
-      return new SortResult(map, libraryPaths);
+      return new SortResult(map, libraryHashes);
     }
   }
 }
\ No newline at end of file
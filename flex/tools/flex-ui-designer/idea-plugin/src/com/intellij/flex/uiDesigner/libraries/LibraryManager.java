@@ -37,11 +37,13 @@ import org.jetbrains.io.RetainCondition;
 import java.io.File;
 import java.io.IOException;
 import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 @SuppressWarnings("MethodMayBeStatic")
 public class LibraryManager implements Disposable {
-  private static final String SWF_EXTENSION = ".swf";
   static final String PROPERTIES_EXTENSION = ".properties";
 
   private final File appDir;
@@ -51,6 +53,9 @@ public class LibraryManager implements Disposable {
 
   private final Map<VirtualFile, Set<CharSequence>> globalDefinitionsMap = new THashMap<>();
 
+  // SWC file => (its timestamp, SHA-1 of its catalog and library SWF)
+  private final Map<VirtualFile, Pair<Long, String>> contentHashes = new THashMap<>();
+
   private LibrariesData data;
 
   public LibraryManager() {
@@ -132,7 +137,7 @@ public class LibraryManager implements Disposable {
       librarySet = null;
     }
     else {
-      final String key = createKey(libraryCollector.externalLibraries, false);
+      final String key = createKey(libraryCollector, false);
       librarySet = librarySets.get(key);
       if (librarySet == null) {
         final SortResult sortResult = sortLibraries(new LibrarySorter(), libraryCollector, flexLibrarySet.contains, key, false);
@@ -172,7 +177,7 @@ public class LibraryManager implements Disposable {
   }
 
   private FlexLibrarySet getOrCreateFlexLibrarySet(LibraryCollector libraryCollector, AssetCounter assetCounter) throws InitException {
-    final String key = createKey(libraryCollector.sdkLibraries, true);
+    final String key = createKey(libraryCollector, true);
     FlexLibrarySet flexLibrarySet = (FlexLibrarySet)librarySets.get(key);
     if (flexLibrarySet == null) {
       final Set<CharSequence> globalDefinitions = getGlobalDefinitions(libraryCollector.getGlobalLibrary());
@@ -209,25 +214,61 @@ public class LibraryManager implements Disposable {
     return globalDefinitions;
   }
 
-  private String createKey(List<Library> libraries, boolean isSdk) {
+  /**
+   * Sort result doesn't depend on paths of libraries, so the key consists of Flex SDK version and content hashes of SDK libraries
+   * (which define external definitions for other libraries) and, for non-SDK library set, of its libraries.
+   * The same key is used for the persistent cache, so library sets with the same content are merged once and registered once.
+   */
+  private String createKey(LibraryCollector collector, boolean isSdk) throws InitException {
+    try {
+      final String sdkKey = createKey(collector.sdkLibraries, "_" + collector.getFlexSdkVersion() + ":");
+      return isSdk ? sdkKey : createKey(collector.externalLibraries, sdkKey + "/");
+    }
+    catch (IOException e) {
+      throw new InitException(e, "error.sort.libraries");
+    }
+  }
+
+  String createKey(List<Library> libraries, String prefix) throws IOException {
     // we don't depend on library order
-    final VirtualFile[] files = new VirtualFile[libraries.size()];
+    final String[] hashes = new String[libraries.size()];
     for (int i = 0, librariesSize = libraries.size(); i < librariesSize; i++) {
-      files[i] = libraries.get(i).getFile();
+      final Library library = libraries.get(i);
+      // resource bundles and styles are collected from other SWC entries, but they affect which libraries the sort result contains
+      hashes[i] = getContentHash(library) + (library.hasResourceBundles() ? 'r' : '-') + (library.isStyleOwner() ? 's' : '-');
     }
-    
-    Arrays.sort(files, (o1, o2) -> StringUtil.compare(o1.getPath(), o2.getPath(), false));
+    Arrays.sort(hashes);
 
-    final StringBuilder stringBuilder = new StringBuilder();
-    if (isSdk) {
-      stringBuilder.append('_');
+    final MessageDigest digest = createDigest();
+    for (String hash : hashes) {
+      digest.update(hash.getBytes(StandardCharsets.UTF_8));
     }
+    return prefix + StringUtil.toHexString(digest.digest());
+  }
 
-    for (VirtualFile file : files) {
-      stringBuilder.append(file.getTimeStamp()).append(file.getPath()).append(':');
+  private String getContentHash(Library library) throws IOException {
+    final VirtualFile file = library.getFile();
+    Pair<Long, String> contentHash = contentHashes.get(file);
+    if (contentHash == null || contentHash.first != file.getTimeStamp()) {
+      final MessageDigest digest = createDigest();
+      digest.update(library.getCatalogFile().contentsToByteArray());
+      final VirtualFile swfFile = library.getSwfFile();
+      if (swfFile != null) {
+        digest.update(swfFile.contentsToByteArray());
+      }
+      contentHash = Pair.create(file.getTimeStamp(), StringUtil.toHexString(digest.digest()));
+      contentHashes.put(file, contentHash);
     }
+    return contentHash.second;
+  }
 
-    return stringBuilder.toString();
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
   }
 
   @NotNull
@@ -235,17 +276,24 @@ public class LibraryManager implements Disposable {
     throws InitException {
     final List<Library> libraries = isSdk ? collector.sdkLibraries : collector.externalLibraries;
     try {
-      final int id = data.librarySets.enumerate(key);
-      SortResult result = data.librarySets.get(key);
+      final int id = data.enumerate(key);
+      SortResult result = data.get(key);
       if (result == null) {
-        result = sorter.sort(libraries, new File(appDir, LibrariesData.NAME_PREFIX + Integer.toString(id) + SWF_EXTENSION), isExternal, isSdk);
-        data.librarySets.put(key, result);
+        result = sorter.sort(libraries, data.getSwfFile(id), isExternal, isSdk);
+
+        final String[] libraryHashes = new String[result.libraries.size()];
+        for (int i = 0; i < libraryHashes.length; i++) {
+          libraryHashes[i] = getContentHash(result.libraries.get(i));
+        }
+        final Set<String> keysInUse = new THashSet<>(librarySets.keySet());
+        keysInUse.add(key);
+        data.put(key, new SortResult(result.definitionMap, libraryHashes), keysInUse);
       }
       else {
-        final String[] libraryPaths = result.libraryPaths;
-        final List<Library> filteredLibraries = new ArrayList<>(libraryPaths.length);
+        final String[] libraryHashes = result.libraryHashes;
+        final List<Library> filteredLibraries = new ArrayList<>(libraryHashes.length);
         for (Library library : libraries) {
-          if (ArrayUtil.indexOf(libraryPaths, library.getFile().getPath()) != -1) {
+          if (ArrayUtil.indexOf(libraryHashes, getContentHash(library)) != -1) {
             filteredLibraries.add(library);
           }
         }
@@ -1,26 +1,36 @@
 package com.intellij.flex.uiDesigner.libraries;
 
 import com.intellij.flex.uiDesigner.abc.AbcTranscoder;
+import com.intellij.flex.uiDesigner.abc.DecodedSwf;
 import com.intellij.flex.uiDesigner.abc.Decoder;
 import com.intellij.flex.uiDesigner.abc.DecoderException;
 import com.intellij.flex.uiDesigner.abc.Encoder;
 import com.intellij.flex.uiDesigner.io.IOUtil;
 import com.intellij.openapi.util.Condition;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import gnu.trove.THashMap;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static com.intellij.flex.uiDesigner.libraries.Definition.ResolvedState;
 
 public class LibrarySorter {
+  private static final int DECODING_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  private static final ExecutorService ourDecodingExecutor =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("Flash UI Designer Library Decoding Pool", DECODING_THREADS);
+
   @Nullable
   private final DefinitionProcessor definitionProcessor;
   @Nullable
@@ -57,6 +67,7 @@ public class LibrarySorter {
     final AbcMerger abcMerger = new AbcMerger(definitionMap, outFile, definitionProcessor);
     try {
       final ArrayList<Library> resourceOrStyleHolders = new ArrayList<>(unsortedItems.size());
+      final List<Library> librariesToMerge = new ArrayList<>(unsortedItems.size());
       for (LibrarySetItem item : unsortedItems) {
         if (!item.hasDefinitions()) {
           if (item.library.hasResourceBundles()) {
@@ -69,9 +80,11 @@ public class LibrarySorter {
           resourceOrStyleHolders.add(item.library);
         }
 
-        abcMerger.process(item.library);
+        librariesToMerge.add(item.library);
       }
-      
+
+      merge(librariesToMerge, abcMerger);
+
       if (definitionMapProcessor != null) {
         definitionMapProcessor.process(definitionMap, abcMerger);
       }
@@ -96,6 +109,52 @@ public class LibrarySorter {
     }
   }
 
+  // library SWFs are independent, so they are read and inflated in parallel ahead of merging, which is sequential
+  private static void merge(List<Library> libraries, AbcMerger abcMerger) throws IOException {
+    final List<Future<DecodedSwf>> decodedSwfs = new ArrayList<>(libraries.size());
+    try {
+      for (int i = 0; i < libraries.size(); i++) {
+        // decode no more than DECODING_THREADS libraries ahead, decoded SWF of the whole SDK doesn't have to be in memory
+        while (decodedSwfs.size() < libraries.size() && decodedSwfs.size() < i + DECODING_THREADS) {
+          final Library library = libraries.get(decodedSwfs.size());
+          decodedSwfs.add(ourDecodingExecutor.submit(() -> AbcMerger.decode(library)));
+        }
+
+        abcMerger.process(libraries.get(i), getDecodedSwf(decodedSwfs.get(i)));
+        decodedSwfs.set(i, null);
+      }
+    }
+    finally {
+      for (Future<DecodedSwf> future : decodedSwfs) {
+        if (future != null) {
+          future.cancel(false);
+        }
+      }
+    }
+  }
+
+  private static DecodedSwf getDecodedSwf(Future<DecodedSwf> future) throws IOException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      throw new ClosedByInterruptException();
+    }
+    catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
   private static Decoder createDecoder(Definition definition) {
     final Decoder decoder = new Decoder(definition.doAbcData, definition.doAbcData.abcModifier);
     definition.doAbcData = null;
@@ -151,21 +210,21 @@ public class LibrarySorter {
     final @Nullable THashMap<CharSequence, Definition> definitionMap;
     final List<Library> libraries;
 
-    // only if restored from cache
-    final String[] libraryPaths;
+    // only if restored from cache, content hashes of libraries, see LibraryManager.getContentHash
+    final String[] libraryHashes;
 
     int id;
 
     SortResult(@Nullable THashMap<CharSequence, Definition> definitionMap, List<Library> libraries) {
       this.definitionMap = definitionMap;
       this.libraries = libraries;
-      libraryPaths = null;
+      libraryHashes = null;
     }
 
-    SortResult(@Nullable THashMap<CharSequence, Definition> definitionMap, String[] libraryPaths) {
+    SortResult(@Nullable THashMap<CharSequence, Definition> definitionMap, String[] libraryHashes) {
       this.definitionMap = definitionMap;
       libraries = null;
-      this.libraryPaths = libraryPaths;
+      this.libraryHashes = libraryHashes;
     }
   }
 }
\ No newline at end of file
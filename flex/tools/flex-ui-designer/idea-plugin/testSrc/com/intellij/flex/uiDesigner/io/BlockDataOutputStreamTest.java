@@ -0,0 +1,91 @@
+package com.intellij.flex.uiDesigner.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+public class BlockDataOutputStreamTest {
+  @Test
+  public void movedRange() throws Exception {
+    MyChannel channel = new MyChannel();
+    BlockDataOutputStream out = new BlockDataOutputStream();
+    out.setOut(channel);
+
+    out.write('a');
+    ByteRange range = out.startRange();
+    out.write('b');
+    out.write('c');
+    out.endRange(range);
+    out.write('d');
+    out.append(range);
+    out.end();
+
+    byte[] bytes = channel.data.toByteArray();
+    Assert.assertEquals(8 + 4, bytes.length);
+    Assert.assertEquals(4, ByteBuffer.wrap(bytes).getInt());
+    Assert.assertEquals("adbc", new String(bytes, 8, 4, "US-ASCII"));
+    Assert.assertEquals(1, channel.writeCount);
+  }
+
+  // a large MXML document: component data ranges are written in place and then moved to their parents
+  @Test
+  public void largeDocument() throws Exception {
+    final int componentCount = 20000;
+    final int componentDataLength = 40;
+
+    MyChannel channel = new MyChannel();
+    BlockDataOutputStream out = new BlockDataOutputStream();
+    out.setOut(channel);
+
+    final byte[] componentData = new byte[componentDataLength];
+    int messageCount = 0;
+    for (int i = 0; i < 50; i++) {
+      ByteRange previous = null;
+      for (int c = 0; c < componentCount; c++) {
+        out.write(c & 0x7F);
+        ByteRange range = out.startRange();
+        out.write(componentData, 0, componentDataLength);
+        out.endRange(range);
+        if (previous != null) {
+          out.append(previous);
+        }
+        previous = range;
+      }
+      out.append(previous);
+      out.end();
+      messageCount++;
+    }
+
+    final int messageLength = 8 + componentCount * (1 + componentDataLength);
+    Assert.assertEquals(messageCount * messageLength, channel.data.size());
+    // each message is written by chunks of direct buffer size, not a socket write per range
+    Assert.assertTrue(channel.writeCount <= messageCount * ((messageLength >> 16) + 1));
+  }
+
+  private static class MyChannel implements WritableByteChannel {
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    int writeCount;
+
+    @Override
+    public int write(ByteBuffer src) {
+      writeCount++;
+      int n = src.remaining();
+      byte[] bytes = new byte[n];
+      src.get(bytes);
+      data.write(bytes, 0, n);
+      return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
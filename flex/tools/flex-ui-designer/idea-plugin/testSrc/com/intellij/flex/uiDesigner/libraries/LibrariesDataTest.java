@@ -0,0 +1,141 @@
+package com.intellij.flex.uiDesigner.libraries;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.testFramework.LightVirtualFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.intellij.flex.uiDesigner.libraries.LibrarySorter.SortResult;
+
+public class LibrariesDataTest extends LightPlatformTestCase {
+  private File cacheDir;
+  private LibrariesData data;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    cacheDir = FileUtil.createTempDirectory("librariesData", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      if (data != null) {
+        data.close();
+      }
+      FileUtil.delete(cacheDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private static class SwcFile extends LightVirtualFile {
+    long timeStamp;
+
+    SwcFile(String path) {
+      super(path);
+    }
+
+    @Override
+    public long getTimeStamp() {
+      return timeStamp;
+    }
+  }
+
+  private static class TestLibrary extends Library {
+    private final LightVirtualFile catalogFile;
+
+    TestLibrary(String path, String catalog) {
+      super(new SwcFile(path));
+      catalogFile = new LightVirtualFile(path + "/catalog.xml", catalog);
+    }
+
+    @Override
+    public VirtualFile getCatalogFile() {
+      return catalogFile;
+    }
+
+    @Override
+    public VirtualFile getSwfFile() {
+      return null;
+    }
+  }
+
+  private void put(String key, int swfSize, long lastModified, String... keysInUse) throws IOException {
+    final File swfFile = data.getSwfFile(data.enumerate(key));
+    FileUtil.writeToFile(swfFile, new byte[swfSize]);
+    assertTrue(swfFile.setLastModified(lastModified));
+    data.put(key, new SortResult(null, new String[]{key + " hash"}), Arrays.asList(keysInUse));
+  }
+
+  public void testKeyDoesNotDependOnPath() throws IOException {
+    final LibraryManager libraryManager = new LibraryManager();
+    final String key = libraryManager.createKey(Collections.singletonList(new TestLibrary("/a/lib.swc", "<swc/>")), "_4.5:");
+    assertEquals(key, libraryManager.createKey(Collections.singletonList(new TestLibrary("/b/other.swc", "<swc/>")), "_4.5:"));
+
+    data = new LibrariesData(cacheDir);
+    put(key, 10, System.currentTimeMillis());
+    final List<Library> sameLibraries = Collections.singletonList(new TestLibrary("/c/lib.swc", "<swc/>"));
+    final SortResult result = data.get(libraryManager.createKey(sameLibraries, "_4.5:"));
+    assertNotNull(result);
+    assertEquals(Collections.singletonList(key + " hash"), Arrays.asList(result.libraryHashes));
+  }
+
+  public void testKeyChangesWithContent() throws IOException {
+    final LibraryManager libraryManager = new LibraryManager();
+    final TestLibrary library = new TestLibrary("/a/lib.swc", "<swc/>");
+    final List<Library> libraries = Collections.singletonList(library);
+    final String key = libraryManager.createKey(libraries, "_4.5:");
+
+    ((LightVirtualFile)library.getCatalogFile()).setContent(null, "<swc version='2'/>", false);
+    ((SwcFile)library.getFile()).timeStamp++;
+    final String changedKey = libraryManager.createKey(libraries, "_4.5:");
+    assertFalse(key.equals(changedKey));
+
+    data = new LibrariesData(cacheDir);
+    put(key, 10, System.currentTimeMillis());
+    assertNull(data.get(changedKey));
+  }
+
+  public void testMissingSwf() throws IOException {
+    data = new LibrariesData(cacheDir);
+    put("a", 10, System.currentTimeMillis());
+    assertNotNull(data.get("a"));
+
+    FileUtil.delete(data.getSwfFile(data.enumerate("a")));
+    assertNull(data.get("a"));
+    // the entry is removed, the SWF has to be merged again
+    FileUtil.writeToFile(data.getSwfFile(data.enumerate("a")), new byte[10]);
+    assertNull(data.get("a"));
+  }
+
+  public void testDeleteLeastRecentlyUsed() throws IOException {
+    data = new LibrariesData(cacheDir, 350);
+    final long now = System.currentTimeMillis() / 1000 * 1000;
+    put("inUse", 100, now - 40_000, "inUse");
+    put("old", 100, now - 30_000, "inUse", "old");
+    put("recent", 100, now - 20_000, "inUse", "recent");
+    put("new", 100, now - 10_000, "inUse", "new");
+
+    // the cache is over the limit after 'new' is added, the least recently used set that is not in use is deleted
+    assertNotNull(data.get("inUse"));
+    assertNull(data.get("old"));
+    assertFalse(data.getSwfFile(data.enumerate("old")).exists());
+    assertNotNull(data.get("recent"));
+    assertNotNull(data.get("new"));
+
+    // sets in use are kept even if the cache stays too large
+    put("newest", 100, now, "inUse", "recent", "new", "newest");
+    assertNotNull(data.get("inUse"));
+    assertNotNull(data.get("recent"));
+    assertNotNull(data.get("new"));
+    assertNotNull(data.get("newest"));
+  }
+}
@@ -121,8 +121,8 @@ internal class DefaultSocketDataHandler implements SocketDataHandler {
         getDocumentImage(input, callbackId);
         break;
 
-      case ClientMethod.updatePropertyOrStyle:
-        updatePropertyOrStyle(input, callbackId);
+      case ClientMethod.updatePropertiesOrStyles:
+        updatePropertiesOrStyles(input, callbackId);
         break;
 
       case ClientMethod.updateLocalStyleHolders:
@@ -243,24 +243,26 @@ internal class DefaultSocketDataHandler implements SocketDataHandler {
     server.writeDocumentImage(bitmapData);
   }
 
-  private function updatePropertyOrStyle(input:IDataInput, callbackId:int):void {
-    const documentId:int = AmfUtil.readUInt29(input);
-    const componentId:int = AmfUtil.readUInt29(input);
+  private function updatePropertiesOrStyles(input:IDataInput, callbackId:int):void {
+    const documentFactory:DocumentFactory = getDocumentFactoryManager().getById(AmfUtil.readUInt29(input));
     stringRegistry.readTable(input);
-    const isStyle:Boolean = input.readBoolean();
-    const propertyName:String = stringRegistry.readNotNull(input);
-    const propertyValue:Object = MxmlReader.readPrimitive(input.readByte(), input, stringRegistry);
-
-    var documentFactory:DocumentFactory = getDocumentFactoryManager().getById(documentId);
-    var component:Object = documentFactory.getComponent(componentId);
-    if (component == null) {
-      UncaughtErrorManager.instance.logWarning("Can't find target component " + documentFactory.id + ":" + componentId);
-    }
-    else if (isStyle) {
-      component.setStyle(propertyName, propertyValue);
-    }
-    else {
-      component[propertyName] = propertyValue;
+    var n:int = AmfUtil.readUInt29(input);
+    while (n-- > 0) {
+      var componentId:int = AmfUtil.readUInt29(input);
+      var isStyle:Boolean = input.readBoolean();
+      var propertyName:String = stringRegistry.readNotNull(input);
+      var propertyValue:Object = MxmlReader.readPrimitive(input.readByte(), input, stringRegistry);
+
+      var component:Object = documentFactory.getComponent(componentId);
+      if (component == null) {
+        UncaughtErrorManager.instance.logWarning("Can't find target component " + documentFactory.id + ":" + componentId);
+      }
+      else if (isStyle) {
+        component.setStyle(propertyName, propertyValue);
+      }
+      else {
+        component[propertyName] = propertyValue;
+      }
     }
 
     Server.instance.callback(callbackId);
@@ -423,6 +425,6 @@ final class ClientMethod {
 
   public static const selectComponent:int = 14;
   public static const getDocumentImage:int = 15;
-  public static const updatePropertyOrStyle:int = 16;
+  public static const updatePropertiesOrStyles:int = 16;
   public static const updateLocalStyleHolders:int = 17;
 }
\ No newline at end of file
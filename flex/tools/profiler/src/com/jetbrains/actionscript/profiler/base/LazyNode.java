@@ -18,6 +18,19 @@ public abstract class LazyNode extends DefaultMutableTreeNode {
     return super.getChildAt(index);
   }
 
+  @Override
+  public boolean isLeaf() {
+    return (myChildrenLoaded || !isLoadingDeferred()) && super.isLeaf();
+  }
+
+  /**
+   * @return true if children are expensive to load and should not be loaded until the node is expanded, the node is shown as not a
+   * leaf until then
+   */
+  protected boolean isLoadingDeferred() {
+    return false;
+  }
+
   private void loadChildren() {
     if (!myChildrenLoaded) {
       myChildrenLoaded = true;
@@ -1,68 +1,223 @@
 package com.jetbrains.actionscript.profiler.calltree;
 
 import com.intellij.openapi.util.Pair;
-import com.intellij.util.ArrayUtil;
 import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
-import gnu.trove.THashSet;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfoBuilder;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.Map;
 
+/**
+ * Call tree of CPU samples. Nodes are indices in parallel arrays, parent of a node always has a smaller index and the root is 0.
+ * Frames are interned to ids by {@link FrameInfoBuilder}, a child is found by (parent, frame id) in an open addressing table.
+ */
 public class CallTree {
-  private final CallTreeNode root;
+  static final int ROOT = 0;
+  static final int NO_NODE = -1;
+  static final int NO_FRAME = -1;
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final FrameInfoBuilder frames;
+
+  private int nodeCount;
+  private int[] parents;
+  private int[] frameIds;
+  private int[] firstChildren;
+  private int[] nextSiblings;
+  private long[] cumulativeTimes;
+  // cumulative time of the node minus cumulative times of its children
+  private long[] selfTimes;
+
+  // nodes except the root, slot is chosen by (parent, frame id); size is a power of 2, at least twice the node count
+  private int[] childTable;
 
   public CallTree() {
-    root = new CallTreeNode();
+    this(new FrameInfoBuilder());
   }
 
-  CallTree(CallTreeNode root) {
-    this.root = root;
+  public CallTree(FrameInfoBuilder frames) {
+    this.frames = frames;
+    parents = new int[INITIAL_CAPACITY];
+    frameIds = new int[INITIAL_CAPACITY];
+    firstChildren = new int[INITIAL_CAPACITY];
+    nextSiblings = new int[INITIAL_CAPACITY];
+    cumulativeTimes = new long[INITIAL_CAPACITY];
+    selfTimes = new long[INITIAL_CAPACITY];
+    childTable = new int[INITIAL_CAPACITY * 2];
+    Arrays.fill(childTable, NO_NODE);
+    createNode(NO_NODE, NO_FRAME);
   }
 
-  CallTreeNode getRoot() {
-    return root;
+  FrameInfoBuilder getFrames() {
+    return frames;
   }
 
+  /**
+   * @param frames stack of the sample, the innermost call first
+   */
   public void addFrames(FrameInfo[] frames, long duration) {
-    root.addChildren(Arrays.asList(ArrayUtil.reverseArray(frames)), duration);
+    int node = ROOT;
+    for (int i = frames.length - 1; i >= 0; --i) {
+      node = getOrCreateChild(node, this.frames.getFrameId(frames[i]));
+      cumulativeTimes[node] += duration;
+    }
+    if (node != ROOT) {
+      selfTimes[node] += duration;
+      selfTimes[ROOT] -= duration;
+    }
+  }
+
+  /**
+   * @param frameIds ids from the {@link FrameInfoBuilder} of this tree, the stack is in [from, to), the innermost call first
+   */
+  public void addFrames(int[] frameIds, int from, int to, long duration) {
+    int node = ROOT;
+    for (int i = to - 1; i >= from; --i) {
+      node = getOrCreateChild(node, frameIds[i]);
+      cumulativeTimes[node] += duration;
+    }
+    if (node != ROOT) {
+      selfTimes[node] += duration;
+      selfTimes[ROOT] -= duration;
+    }
   }
 
   /*
    * @return pair <cumulative time map, self time map>
    */
   public Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> getTimeMaps() {
-    return TimeMapBuilder.buildTimeMaps(root, root.getChildren());
+    return TimeMapBuilder.buildTimeMaps(this);
   }
 
   /*
    * @return pair <cumulative time map, self time map>
    */
   public Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> getCallersTimeMaps(FrameInfo[] frames) {
-    List<CallTreeNode> calls = CallerFinder.findCallsByFrames(root, frames);
-    Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> timeMaps = TimeMapBuilder.buildTimeMaps(root, calls);
-    Set<FrameInfo> callerNames = getNamesOfNodes(calls);
-    Map<FrameInfo, Long> filteredCountMap = filterMap(timeMaps.getFirst(), callerNames);
-    Map<FrameInfo, Long> filteredSelfTimeMap = filterMap(timeMaps.getSecond(), callerNames);
-    return Pair.create(filteredCountMap, filteredSelfTimeMap);
+    return TimeMapBuilder.buildCallersTimeMaps(this, frames);
   }
 
   /*
    * @return pair <cumulative time map, self time map>
    */
   public Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> getCalleesTimeMaps(FrameInfo[] frames) {
-    List<CallTreeNode> calls = CalleeFinder.findCallsByFrameName(root, frames);
-    return TimeMapBuilder.buildTimeMaps(root, calls);
+    return TimeMapBuilder.buildCalleesTimeMaps(this, frames);
+  }
+
+  int getNodeCount() {
+    return nodeCount;
+  }
+
+  int getParent(int node) {
+    return parents[node];
+  }
+
+  int getFrameId(int node) {
+    return frameIds[node];
+  }
+
+  int getFirstChild(int node) {
+    return firstChildren[node];
+  }
+
+  int getNextSibling(int node) {
+    return nextSiblings[node];
+  }
+
+  long getCumulativeTime(int node) {
+    return cumulativeTimes[node];
   }
 
-  private static Map<FrameInfo, Long> filterMap(Map<FrameInfo, Long> first, Set<FrameInfo> callerNames) {
-    first.keySet().retainAll(callerNames);
-    return first;
+  long getSelfTime(int node) {
+    return selfTimes[node];
   }
 
-  private static Set<FrameInfo> getNamesOfNodes(Collection<CallTreeNode> nodes) {
-    THashSet<FrameInfo> names = new THashSet<>();
-    for (CallTreeNode node : nodes) {
-      names.add(node.getFrameInfo());
+  void setTimes(int node, long cumulativeTime, long selfTime) {
+    cumulativeTimes[node] = cumulativeTime;
+    selfTimes[node] = selfTime;
+  }
+
+  /**
+   * Adds <code>time</code> to the cumulative time of the node, self time of its parent is decreased accordingly.
+   */
+  void addTime(int node, long time) {
+    cumulativeTimes[node] += time;
+    selfTimes[node] += time;
+    if (node != ROOT) {
+      selfTimes[parents[node]] -= time;
+    }
+  }
+
+  int findChild(int parent, int frameId) {
+    final int mask = childTable.length - 1;
+    for (int slot = hash(parent, frameId) & mask; ; slot = (slot + 1) & mask) {
+      final int node = childTable[slot];
+      if (node == NO_NODE || parents[node] == parent && frameIds[node] == frameId) {
+        return node;
+      }
+    }
+  }
+
+  int getOrCreateChild(int parent, int frameId) {
+    final int mask = childTable.length - 1;
+    int slot = hash(parent, frameId) & mask;
+    for (int node = childTable[slot]; node != NO_NODE; node = childTable[slot]) {
+      if (parents[node] == parent && frameIds[node] == frameId) {
+        return node;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    final int node = createNode(parent, frameId);
+    if (nodeCount * 2 > childTable.length) {
+      rehash(childTable.length * 2);
+    }
+    else {
+      childTable[slot] = node;
     }
-    return names;
+    return node;
+  }
+
+  private int createNode(int parent, int frameId) {
+    if (nodeCount == parents.length) {
+      final int capacity = nodeCount * 2;
+      parents = Arrays.copyOf(parents, capacity);
+      frameIds = Arrays.copyOf(frameIds, capacity);
+      firstChildren = Arrays.copyOf(firstChildren, capacity);
+      nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+      cumulativeTimes = Arrays.copyOf(cumulativeTimes, capacity);
+      selfTimes = Arrays.copyOf(selfTimes, capacity);
+    }
+
+    final int node = nodeCount++;
+    parents[node] = parent;
+    frameIds[node] = frameId;
+    firstChildren[node] = NO_NODE;
+    if (parent != NO_NODE) {
+      nextSiblings[node] = firstChildren[parent];
+      firstChildren[parent] = node;
+    }
+    else {
+      nextSiblings[node] = NO_NODE;
+    }
+    return node;
+  }
+
+  private void rehash(int size) {
+    childTable = new int[size];
+    Arrays.fill(childTable, NO_NODE);
+    final int mask = size - 1;
+    for (int node = ROOT + 1; node < nodeCount; ++node) {
+      int slot = hash(parents[node], frameIds[node]) & mask;
+      while (childTable[slot] != NO_NODE) {
+        slot = (slot + 1) & mask;
+      }
+      childTable[slot] = node;
+    }
+  }
+
+  private static int hash(int parent, int frameId) {
+    final int h = parent * 0x9E3779B1 + frameId;
+    return h ^ (h >>> 16);
   }
 }
@@ -0,0 +1,454 @@
+package com.jetbrains.actionscript.profiler.calltree;
+
+import com.intellij.lang.javascript.psi.JSFunction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.ThrowableComputable;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfoBuilder;
+import gnu.trove.THashMap;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.jetbrains.actionscript.profiler.calltree.CallTree.ROOT;
+
+/**
+ * A call tree as it is shown by a CPU snapshot view, either a tree in memory or the content of a CPU snapshot file.
+ * <p/>
+ * The file starts with a header: interned strings, frames made of string indices, and time maps of the whole tree, i.e. everything
+ * the view shows before a node is expanded. The nodes follow the header in the order of their indices, a node is the distance to its
+ * parent, the interned frame and the self time, all as variable length numbers; cumulative times are summed up when the nodes are
+ * read. Only the header is read when a snapshot is opened, the nodes are read when the tree is needed for the first time,
+ * see {@link #loadCallTree(ProgressIndicator)}. A corrupted file is reported as an {@link IOException}.
+ */
+public class CallTreeSnapshot {
+  private static final Logger LOG = Logger.getInstance(CallTreeSnapshot.class.getName());
+
+  private static final int MAGIC = 0x41534350; // ASCP
+  private static final int VERSION = 1;
+  private static final int NO_STRING = 0;
+  // arrays sized by counts read from a file grow as the data is actually read, a corrupted count doesn't allocate them at once
+  private static final int INITIAL_CAPACITY = 1 << 16;
+  private static final int PROGRESS_PERIOD = 1 << 16;
+
+  @Nullable private final ThrowableComputable<InputStream, IOException> contents;
+  @Nullable private final FrameInfoBuilder frames;
+  @Nullable private final int[] treeFrameIds;
+
+  private volatile Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> timeMaps;
+  // written under the lock, read without it, so the UI can check whether the tree is loaded while it is being loaded
+  private volatile CallTree callTree;
+
+  public CallTreeSnapshot(CallTree callTree) {
+    this.callTree = callTree;
+    contents = null;
+    frames = null;
+    treeFrameIds = null;
+  }
+
+  private CallTreeSnapshot(ThrowableComputable<InputStream, IOException> contents,
+                           FrameInfoBuilder frames,
+                           int[] treeFrameIds,
+                           Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> timeMaps) {
+    this.contents = contents;
+    this.frames = frames;
+    this.treeFrameIds = treeFrameIds;
+    this.timeMaps = timeMaps;
+  }
+
+  /*
+   * @return pair <cumulative time map, self time map> of the whole tree, see {@link CallTree#getTimeMaps()}
+   */
+  public Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> getTimeMaps() {
+    Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> result = timeMaps;
+    if (result == null) {
+      // a snapshot without time maps is created with its tree
+      result = callTree.getTimeMaps();
+      timeMaps = result;
+    }
+    return result;
+  }
+
+  public boolean isCallTreeLoaded() {
+    return callTree != null;
+  }
+
+  /**
+   * Same as {@link #loadCallTree(ProgressIndicator)} without a progress. Reading a large snapshot takes seconds, so in the UI
+   * it is loaded in background and this method is called only when {@link #isCallTreeLoaded()}.
+   */
+  public CallTree getCallTree() {
+    return loadCallTree(null);
+  }
+
+  /**
+   * Reads the nodes of a snapshot file on the first call. If the file cannot be read or is corrupted the tree is empty.
+   */
+  public synchronized CallTree loadCallTree(@Nullable ProgressIndicator indicator) {
+    if (callTree == null) {
+      assert contents != null && frames != null && treeFrameIds != null;
+      try (InputStream stream = contents.compute()) {
+        final SnapshotInput in = new SnapshotInput(stream);
+        in.skip(readPrefix(in));
+        callTree = readNodes(in, frames, treeFrameIds, indicator);
+      }
+      catch (IOException e) {
+        LOG.warn(e);
+        callTree = new CallTree(frames);
+      }
+    }
+    return callTree;
+  }
+
+  /**
+   * Reads the header of a snapshot file, <code>contents</code> is opened again when the nodes are read.
+   */
+  public static CallTreeSnapshot read(ThrowableComputable<InputStream, IOException> contents) throws IOException {
+    try (InputStream stream = contents.compute()) {
+      final SnapshotInput in = new SnapshotInput(stream);
+      readPrefix(in);
+
+      final List<String> strings = new ArrayList<>();
+      for (int i = in.readCount(); i > 0; --i) {
+        strings.add(in.readString());
+      }
+
+      final FrameInfoBuilder frames = new FrameInfoBuilder();
+      final List<FrameInfo> frameTable = new ArrayList<>();
+      for (int i = in.readCount(); i > 0; --i) {
+        final String fileDirectory = readString(in, strings);
+        final String fileName = readString(in, strings);
+        final int fileLine = in.readInt() - 1;
+        final String packageName = readString(in, strings);
+        final String qName = readString(in, strings);
+        final String methodName = readString(in, strings);
+        final String kind = readString(in, strings);
+        final String namespace = readString(in, strings);
+        frameTable.add(frames.createInstance(fileDirectory, fileName, fileLine, packageName, qName == null ? "" : qName, methodName,
+                                             readKind(kind), namespace));
+      }
+      final int[] treeFrameIds = new int[frameTable.size()];
+      for (int i = 0; i < treeFrameIds.length; ++i) {
+        treeFrameIds[i] = frames.getFrameId(frameTable.get(i));
+      }
+
+      final Map<FrameInfo, Long> countMap = new THashMap<>();
+      final Map<FrameInfo, Long> selfCountMap = new THashMap<>();
+      for (int i = in.readCount(); i > 0; --i) {
+        final FrameInfo frame = frameTable.get(readIndex(in, frameTable.size()));
+        countMap.put(frame, in.readLong());
+        selfCountMap.put(frame, in.readLong());
+      }
+      return new CallTreeSnapshot(contents, frames, treeFrameIds, Pair.create(countMap, selfCountMap));
+    }
+  }
+
+  /**
+   * @return length of the header
+   */
+  private static int readPrefix(SnapshotInput in) throws IOException {
+    if (in.readFixedInt() != MAGIC) throw new IOException("Not a CPU snapshot");
+    final int version = in.readFixedInt();
+    if (version != VERSION) throw new IOException("Unsupported CPU snapshot version: " + version);
+    final int headerLength = in.readFixedInt();
+    if (headerLength < 0) throw new CorruptedSnapshotException("header length " + headerLength);
+    return headerLength;
+  }
+
+  @Nullable
+  private static String readString(SnapshotInput in, List<String> strings) throws IOException {
+    final int index = in.readInt();
+    return index == NO_STRING ? null : strings.get(readIndex(index - 1, strings.size()));
+  }
+
+  private static int readIndex(SnapshotInput in, int size) throws IOException {
+    return readIndex(in.readInt(), size);
+  }
+
+  private static int readIndex(int index, int size) throws IOException {
+    if (index < 0 || index >= size) throw new CorruptedSnapshotException("index " + index + " of " + size);
+    return index;
+  }
+
+  @Nullable
+  private static JSFunction.FunctionKind readKind(@Nullable String kind) throws IOException {
+    if (kind == null) return null;
+    try {
+      return JSFunction.FunctionKind.valueOf(kind);
+    }
+    catch (IllegalArgumentException e) {
+      throw new CorruptedSnapshotException("function kind " + kind);
+    }
+  }
+
+  private static CallTree readNodes(SnapshotInput in, FrameInfoBuilder frames, int[] treeFrameIds, @Nullable ProgressIndicator indicator)
+    throws IOException {
+    final int nodeCount = in.readCount();
+    if (nodeCount <= ROOT) throw new CorruptedSnapshotException("node count " + nodeCount);
+    int[] parents = new int[Math.min(nodeCount, INITIAL_CAPACITY)];
+    int[] frameIds = new int[parents.length];
+    long[] selfTimes = new long[parents.length];
+    selfTimes[ROOT] = in.readLong();
+    for (int node = ROOT + 1; node < nodeCount; ++node) {
+      if (node == parents.length) {
+        final int capacity = (int)Math.min(nodeCount, 2L * node);
+        parents = Arrays.copyOf(parents, capacity);
+        frameIds = Arrays.copyOf(frameIds, capacity);
+        selfTimes = Arrays.copyOf(selfTimes, capacity);
+      }
+      if (indicator != null && node % PROGRESS_PERIOD == 0) {
+        indicator.checkCanceled();
+        indicator.setFraction(0.8 * node / nodeCount);
+      }
+      // a parent has a smaller index than its children
+      final int distance = in.readInt();
+      if (distance <= 0 || distance > node) throw new CorruptedSnapshotException("parent distance " + distance + " of node " + node);
+      parents[node] = node - distance;
+      frameIds[node] = treeFrameIds[readIndex(in, treeFrameIds.length)];
+      selfTimes[node] = in.readLong();
+    }
+
+    final long[] cumulativeTimes = selfTimes.clone();
+    for (int node = nodeCount - 1; node > ROOT; --node) {
+      cumulativeTimes[parents[node]] += cumulativeTimes[node];
+    }
+
+    final CallTree tree = new CallTree(frames);
+    tree.setTimes(ROOT, cumulativeTimes[ROOT], selfTimes[ROOT]);
+    for (int node = ROOT + 1; node < nodeCount; ++node) {
+      if (indicator != null && node % PROGRESS_PERIOD == 0) {
+        indicator.checkCanceled();
+        indicator.setFraction(0.8 + 0.2 * node / nodeCount);
+      }
+      // a node gets the next index unless its parent already has a child with the same frame
+      if (tree.getOrCreateChild(parents[node], frameIds[node]) != node) {
+        throw new CorruptedSnapshotException("duplicate child of node " + parents[node]);
+      }
+      tree.setTimes(node, cumulativeTimes[node], selfTimes[node]);
+    }
+    return tree;
+  }
+
+  public static void write(CallTree tree, OutputStream stream) throws IOException {
+    // frames and strings are interned in the order of appearance, ids in the map are id + 1
+    final TObjectIntHashMap<String> stringIds = new TObjectIntHashMap<>();
+    final List<String> strings = new ArrayList<>();
+    final int[] snapshotFrameIds = new int[tree.getFrames().getFrameCount()];
+    final List<FrameInfo> frameTable = new ArrayList<>();
+    for (int node = ROOT + 1; node < tree.getNodeCount(); ++node) {
+      final int frameId = tree.getFrameId(node);
+      if (snapshotFrameIds[frameId] != 0) continue;
+      final FrameInfo frame = tree.getFrames().getFrame(frameId);
+      frameTable.add(frame);
+      snapshotFrameIds[frameId] = frameTable.size();
+      for (String s : getStrings(frame)) {
+        if (s != null && !stringIds.containsKey(s)) {
+          strings.add(s);
+          stringIds.put(s, strings.size());
+        }
+      }
+    }
+
+    final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    final SnapshotOutput header = new SnapshotOutput(headerBytes);
+    header.writeInt(strings.size());
+    for (String s : strings) {
+      header.writeString(s);
+    }
+    header.writeInt(frameTable.size());
+    for (FrameInfo frame : frameTable) {
+      final String[] frameStrings = getStrings(frame);
+      for (int i = 0; i < frameStrings.length; ++i) {
+        header.writeInt(frameStrings[i] == null ? NO_STRING : stringIds.get(frameStrings[i]));
+        if (i == 1) header.writeInt(frame.getFileLine() + 1);
+      }
+    }
+    final Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> timeMaps = tree.getTimeMaps();
+    header.writeInt(timeMaps.getFirst().size());
+    for (Map.Entry<FrameInfo, Long> entry : timeMaps.getFirst().entrySet()) {
+      header.writeInt(snapshotFrameIds[tree.getFrames().findFrameId(entry.getKey())] - 1);
+      header.writeLong(entry.getValue());
+      final Long selfTime = timeMaps.getSecond().get(entry.getKey());
+      header.writeLong(selfTime != null ? selfTime : 0);
+    }
+    header.flush();
+
+    final SnapshotOutput out = new SnapshotOutput(stream);
+    out.writeFixedInt(MAGIC);
+    out.writeFixedInt(VERSION);
+    out.writeFixedInt(headerBytes.size());
+    out.writeBytes(headerBytes.toByteArray());
+
+    out.writeInt(tree.getNodeCount());
+    out.writeLong(tree.getSelfTime(ROOT));
+    for (int node = ROOT + 1; node < tree.getNodeCount(); ++node) {
+      out.writeInt(node - tree.getParent(node));
+      out.writeInt(snapshotFrameIds[tree.getFrameId(node)] - 1);
+      out.writeLong(tree.getSelfTime(node));
+    }
+    out.flush();
+  }
+
+  /**
+   * Strings of a frame in the order they are written, the file line goes after the file name.
+   */
+  private static String[] getStrings(FrameInfo frame) {
+    final JSFunction.FunctionKind kind = frame.getKind();
+    return new String[]{frame.getFileDirectory(), frame.getFileName(), frame.getPackageName(), frame.getQName(), frame.getMethodName(),
+      kind != null ? kind.name() : null, frame.getNamespace()};
+  }
+
+  /**
+   * Unsigned LEB128 ints and zigzag encoded longs over a buffer of its own, buffered streams are synchronized per byte.
+   */
+  private static class SnapshotOutput {
+    private final OutputStream stream;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position;
+
+    SnapshotOutput(OutputStream stream) {
+      this.stream = stream;
+    }
+
+    void writeFixedInt(int value) throws IOException {
+      ensureCapacity(4);
+      buffer[position++] = (byte)(value >>> 24);
+      buffer[position++] = (byte)(value >>> 16);
+      buffer[position++] = (byte)(value >>> 8);
+      buffer[position++] = (byte)value;
+    }
+
+    void writeInt(int value) throws IOException {
+      ensureCapacity(5);
+      while ((value & ~0x7F) != 0) {
+        buffer[position++] = (byte)(value & 0x7F | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte)value;
+    }
+
+    void writeLong(long value) throws IOException {
+      ensureCapacity(10);
+      long zigzag = (value << 1) ^ (value >> 63);
+      while ((zigzag & ~0x7FL) != 0) {
+        buffer[position++] = (byte)(zigzag & 0x7F | 0x80);
+        zigzag >>>= 7;
+      }
+      buffer[position++] = (byte)zigzag;
+    }
+
+    void writeString(String s) throws IOException {
+      final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      writeInt(bytes.length);
+      writeBytes(bytes);
+    }
+
+    void writeBytes(byte[] bytes) throws IOException {
+      flush();
+      stream.write(bytes);
+    }
+
+    void flush() throws IOException {
+      stream.write(buffer, 0, position);
+      position = 0;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+      if (position + length > buffer.length) flush();
+    }
+  }
+
+  private static class SnapshotInput {
+    private final InputStream stream;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position;
+    private int limit;
+
+    SnapshotInput(InputStream stream) {
+      this.stream = stream;
+    }
+
+    int readFixedInt() throws IOException {
+      return (readByte() & 0xFF) << 24 | (readByte() & 0xFF) << 16 | (readByte() & 0xFF) << 8 | readByte() & 0xFF;
+    }
+
+    int readInt() throws IOException {
+      int result = 0;
+      for (int shift = 0; ; shift += 7) {
+        if (shift > 28) throw new CorruptedSnapshotException("malformed int");
+        final byte b = readByte();
+        result |= (b & 0x7F) << shift;
+        if (b >= 0) return result;
+      }
+    }
+
+    int readCount() throws IOException {
+      final int count = readInt();
+      if (count < 0) throw new CorruptedSnapshotException("count " + count);
+      return count;
+    }
+
+    long readLong() throws IOException {
+      long zigzag = 0;
+      for (int shift = 0; ; shift += 7) {
+        if (shift > 63) throw new CorruptedSnapshotException("malformed long");
+        final byte b = readByte();
+        zigzag |= (long)(b & 0x7F) << shift;
+        if (b >= 0) break;
+      }
+      return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    String readString() throws IOException {
+      final int length = readCount();
+      byte[] bytes = new byte[Math.min(length, buffer.length)];
+      for (int i = 0; i < length; ++i) {
+        if (i == bytes.length) bytes = Arrays.copyOf(bytes, (int)Math.min(length, 2L * i));
+        bytes[i] = readByte();
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    void skip(long length) throws IOException {
+      final int buffered = (int)Math.min(length, limit - position);
+      position += buffered;
+      length -= buffered;
+      while (length > 0) {
+        final long skipped = stream.skip(length);
+        if (skipped <= 0) {
+          if (stream.read() < 0) throw new EOFException();
+          --length;
+        }
+        else {
+          length -= skipped;
+        }
+      }
+    }
+
+    private byte readByte() throws IOException {
+      if (position == limit) {
+        limit = stream.read(buffer);
+        position = 0;
+        if (limit <= 0) {
+          limit = 0;
+          throw new EOFException();
+        }
+      }
+      return buffer[position++];
+    }
+  }
+
+  private static class CorruptedSnapshotException extends IOException {
+    CorruptedSnapshotException(String message) {
+      super("Corrupted CPU snapshot: " + message);
+    }
+  }
+}
@@ -4,23 +4,33 @@ package com.jetbrains.actionscript.profiler.calltree;
  * @author: Fedor.Korotkov
  */
 public class CallTreeUtil {
+  /**
+   * Nodes of system frames are removed, their children are merged into the nearest non-system ancestor.
+   */
   public static CallTree filterSystemStuff(CallTree tree) {
-    return new CallTree(filterSystemStuffImpl(tree.getRoot()));
-  }
+    final CallTree result = new CallTree(tree.getFrames());
+    result.addTime(CallTree.ROOT, tree.getCumulativeTime(CallTree.ROOT));
 
-  private static CallTreeNode filterSystemStuffImpl(CallTreeNode node) {
-    CallTreeNode result = new CallTreeNode(node.getFrameInfo(), node.getCumulativeTiming());
+    final boolean[] systemFrames = new boolean[tree.getFrames().getFrameCount()];
+    for (int frameId = 0; frameId < systemFrames.length; ++frameId) {
+      systemFrames[frameId] = tree.getFrames().getFrame(frameId).isSystem();
+    }
 
-    for (CallTreeNode child : node.getChildren()) {
-      CallTreeNode newChild = filterSystemStuffImpl(child);
-      if (newChild.getFrameInfo().isSystem()) {
-        result.addChildrenRecursive(newChild.getChildren());
+    // parents go before children, so the new node of the parent is known when a node is visited
+    final int[] newNodes = new int[tree.getNodeCount()];
+    newNodes[CallTree.ROOT] = CallTree.ROOT;
+    for (int node = CallTree.ROOT + 1; node < tree.getNodeCount(); ++node) {
+      final int newParent = newNodes[tree.getParent(node)];
+      final int frameId = tree.getFrameId(node);
+      if (systemFrames[frameId]) {
+        newNodes[node] = newParent;
       }
       else {
-        result.addChildRecursive(newChild);
+        final int newNode = result.getOrCreateChild(newParent, frameId);
+        result.addTime(newNode, tree.getCumulativeTime(node));
+        newNodes[node] = newNode;
       }
     }
-
     return result;
   }
 }
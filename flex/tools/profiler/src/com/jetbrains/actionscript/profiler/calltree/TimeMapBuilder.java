@@ -2,60 +2,175 @@ package com.jetbrains.actionscript.profiler.calltree;
 
 import com.intellij.openapi.util.Pair;
 import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfoBuilder;
 import gnu.trove.THashMap;
-import gnu.trove.THashSet;
 
-import java.util.List;
 import java.util.Map;
 
+import static com.jetbrains.actionscript.profiler.calltree.CallTree.NO_FRAME;
+import static com.jetbrains.actionscript.profiler.calltree.CallTree.NO_NODE;
+import static com.jetbrains.actionscript.profiler.calltree.CallTree.ROOT;
+
+/**
+ * Computes time maps in one depth-first pass over the tree. Only calls, i.e. nodes selected by a {@link CallMatcher}, and their
+ * subtrees are counted. Cumulative time of a frame is taken from the nearest to the root counted node with that frame on each path,
+ * so that recursive calls are not counted twice; self times of all counted nodes are summed up.
+ */
 class TimeMapBuilder {
   private TimeMapBuilder() {
   }
 
+  private interface CallMatcher {
+    boolean isCall(int node);
+  }
+
   /*
   * @return pair <cumulative time map, self time map>
   */
-  static Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> buildTimeMaps(CallTreeNode root, List<CallTreeNode> calls) {
-    Map<FrameInfo, Long> countMap = new THashMap<>();
-    Map<FrameInfo, Long> selfCountMap = new THashMap<>();
-    THashSet<CallTreeNode> trackedCalls = new THashSet<>(calls);
+  static Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> buildTimeMaps(CallTree tree) {
+    return buildTimeMaps(tree, node -> tree.getParent(node) == ROOT, false);
+  }
 
-    for (CallTreeNode node : root.getChildren()) {
-      fillTimeMaps(node, countMap, selfCountMap, trackedCalls.contains(node), trackedCalls);
+  /*
+  * Calls are children of nodes which call stack ends with <code>frames</code>, the innermost call first.
+  */
+  static Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> buildCalleesTimeMaps(CallTree tree, FrameInfo[] frames) {
+    final int[] frameIds = getFrameIds(tree.getFrames(), frames);
+    if (frameIds == null) {
+      return Pair.create(new THashMap<>(), new THashMap<>());
     }
-    return Pair.create(countMap, selfCountMap);
+
+    return buildTimeMaps(tree, node -> {
+      int ancestor = tree.getParent(node);
+      for (int frameId : frameIds) {
+        if (ancestor == NO_NODE || tree.getFrameId(ancestor) != frameId) return false;
+        ancestor = tree.getParent(ancestor);
+      }
+      return true;
+    }, false);
   }
 
-  private static void fillTimeMaps(CallTreeNode node,
-                                   Map<FrameInfo, Long> countMap,
-                                   Map<FrameInfo, Long> selfCountMap,
-                                   boolean tracking,
-                                   THashSet<CallTreeNode> trackedCalls) {
-    if (tracking) {
-      updateSelfTime(node, selfCountMap);
+  /*
+  * Find nodes that call <code>frames</code> in reverse order.
+  *
+  * For example
+  *
+  * <code>foo</code> call <code>bar</code> call <code>baz</code>
+  * <code>bad</code> call <code>bar</code> call <code>foo</code> call <code>baz</code>
+  * <code>frames = [baz, bar]</code>
+  *
+  * Only <code>foo</code> is a call. Only the nearest to the root call with the same frame on each path is taken;
+  * time maps contain only frames of the calls.
+  */
+  static Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> buildCallersTimeMaps(CallTree tree, FrameInfo[] frames) {
+    final int[] frameIds = getFrameIds(tree.getFrames(), frames);
+    if (frameIds == null || frameIds.length == 0) {
+      return Pair.create(new THashMap<>(), new THashMap<>());
     }
 
-    //save value before subcalls
-    Long countBefore = countMap.get(node.getFrameInfo());
-    if (countBefore == null) {
-      countBefore = 0L;
-    }
-    for (CallTreeNode child : node.getChildren()) {
-      fillTimeMaps(child, countMap, selfCountMap, tracking || trackedCalls.contains(child), trackedCalls);
-    }
-    if (tracking) {
-      //rewrite values that were added in subcalls.
-      //cause of that we get value only of the nearest node to the root
-      countMap.put(node.getFrameInfo(), countBefore + node.getCumulativeTiming());
+    return buildTimeMaps(tree, node -> {
+      int descendant = node;
+      for (int i = frameIds.length - 1; i >= 0 && descendant != NO_NODE; --i) {
+        descendant = tree.findChild(descendant, frameIds[i]);
+      }
+      return descendant != NO_NODE;
+    }, true);
+  }
+
+  /**
+   * @return ids of <code>frames</code> or null if some frame is not in the tree
+   */
+  private static int[] getFrameIds(FrameInfoBuilder frameInfoBuilder, FrameInfo[] frames) {
+    final int[] frameIds = new int[frames.length];
+    for (int i = 0; i < frames.length; ++i) {
+      frameIds[i] = frameInfoBuilder.findFrameId(frames[i]);
+      if (frameIds[i] == NO_FRAME) return null;
     }
+    return frameIds;
   }
 
-  private static void updateSelfTime(CallTreeNode node, Map<FrameInfo, Long> selfCountMap) {
-    long currentSelfTime = node.getCumulativeTiming() - node.calcSelfTiming();
-    Long selfTime = selfCountMap.get(node.getFrameInfo());
-    if (selfTime == null) {
-      selfTime = 0L;
+  /**
+   * @param onlyOutermostCalls a node is not a call if there is a call with the same frame among its ancestors,
+   *                           and only frames of calls are kept in the result
+   */
+  private static Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> buildTimeMaps(CallTree tree,
+                                                                               CallMatcher matcher,
+                                                                               boolean onlyOutermostCalls) {
+    final int frameCount = tree.getFrames().getFrameCount();
+    final long[] cumulativeTimes = new long[frameCount];
+    final long[] selfTimes = new long[frameCount];
+    final boolean[] counted = new boolean[frameCount];
+    final boolean[] callFrames = onlyOutermostCalls ? new boolean[frameCount] : null;
+    // number of counted nodes / calls with the frame on the current path
+    final int[] countedOnPath = new int[frameCount];
+    final int[] callsOnPath = onlyOutermostCalls ? new int[frameCount] : null;
+    // whether a node on the current path is a call, indexed by depth
+    boolean[] isCallOnPath = new boolean[64];
+
+    int trackingRoot = NO_NODE;
+    int depth = 0;
+    int node = tree.getFirstChild(ROOT);
+    while (node != NO_NODE) {
+      final int frameId = tree.getFrameId(node);
+      final boolean isCall = (callsOnPath == null || callsOnPath[frameId] == 0) && matcher.isCall(node);
+      if (depth == isCallOnPath.length) {
+        final boolean[] newIsCallOnPath = new boolean[depth * 2];
+        System.arraycopy(isCallOnPath, 0, newIsCallOnPath, 0, depth);
+        isCallOnPath = newIsCallOnPath;
+      }
+      isCallOnPath[depth] = isCall;
+
+      if (isCall) {
+        if (callsOnPath != null) {
+          ++callsOnPath[frameId];
+          callFrames[frameId] = true;
+        }
+        if (trackingRoot == NO_NODE) trackingRoot = node;
+      }
+      if (trackingRoot != NO_NODE) {
+        if (countedOnPath[frameId]++ == 0) cumulativeTimes[frameId] += tree.getCumulativeTime(node);
+        selfTimes[frameId] += tree.getSelfTime(node);
+        counted[frameId] = true;
+      }
+
+      final int firstChild = tree.getFirstChild(node);
+      if (firstChild != NO_NODE) {
+        node = firstChild;
+        ++depth;
+        continue;
+      }
+
+      // leave the node and its finished ancestors
+      while (true) {
+        final int exitedFrameId = tree.getFrameId(node);
+        if (trackingRoot != NO_NODE) --countedOnPath[exitedFrameId];
+        if (trackingRoot == node) trackingRoot = NO_NODE;
+        if (isCallOnPath[depth] && callsOnPath != null) --callsOnPath[exitedFrameId];
+
+        final int sibling = tree.getNextSibling(node);
+        if (sibling != NO_NODE) {
+          node = sibling;
+          break;
+        }
+        node = tree.getParent(node);
+        --depth;
+        if (node == ROOT) {
+          node = NO_NODE;
+          break;
+        }
+      }
     }
-    selfCountMap.put(node.getFrameInfo(), selfTime + currentSelfTime);
+
+    final FrameInfoBuilder frames = tree.getFrames();
+    final Map<FrameInfo, Long> countMap = new THashMap<>();
+    final Map<FrameInfo, Long> selfCountMap = new THashMap<>();
+    for (int frameId = 0; frameId < frameCount; ++frameId) {
+      if (counted[frameId] && (callFrames == null || callFrames[frameId])) {
+        final FrameInfo frame = frames.getFrame(frameId);
+        countMap.put(frame, cumulativeTimes[frameId]);
+        selfCountMap.put(frame, selfTimes[frameId]);
+      }
+    }
+    return Pair.create(countMap, selfCountMap);
   }
 }
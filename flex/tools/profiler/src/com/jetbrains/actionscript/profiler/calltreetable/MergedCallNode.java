@@ -9,6 +9,7 @@ import com.jetbrains.actionscript.profiler.base.FrameInfoProducer;
 import com.jetbrains.actionscript.profiler.base.LazyNode;
 import com.jetbrains.actionscript.profiler.base.NavigatableDataProducer;
 import com.jetbrains.actionscript.profiler.calltree.CallTree;
+import com.jetbrains.actionscript.profiler.calltree.CallTreeSnapshot;
 import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
 import com.jetbrains.actionscript.profiler.sampler.Sample;
 import com.jetbrains.actionscript.profiler.sampler.SampleLocationResolver;
@@ -22,26 +23,30 @@ import java.util.List;
 import java.util.Map;
 
 public class MergedCallNode<T extends Sample> extends LazyNode implements NavigatableDataProducer, FrameInfoProducer, FilePathProducer {
-  private final CallTree callTree;
+  private final CallTreeSnapshot snapshot;
   private final FrameInfo[] callFrames;
   private final boolean backTrace;
   private final GlobalSearchScope scope;
   private SampleLocationResolver sampleLocationResolver;
 
   public MergedCallNode(CallInfo callInfo,
-                        CallTree callTree,
+                        CallTreeSnapshot snapshot,
                         FrameInfo[] callFrames,
                         boolean backTrace,
                         GlobalSearchScope scope) {
     setUserObject(callInfo);
-    this.callTree = callTree;
+    this.snapshot = snapshot;
     this.callFrames = callFrames;
     this.backTrace = backTrace;
     this.scope = scope;
   }
 
+  public CallTreeSnapshot getSnapshot() {
+    return snapshot;
+  }
+
   public CallTree getCallTree() {
-    return callTree;
+    return snapshot.getCallTree();
   }
 
   @Nullable
@@ -59,8 +64,16 @@ public class MergedCallNode<T extends Sample> extends LazyNode implements Naviga
     return callInfo != null ? callInfo.getFrameInfo() : null;
   }
 
+  @Override
+  protected boolean isLoadingDeferred() {
+    return !snapshot.isCallTreeLoaded();
+  }
+
   @Override
   protected void doLoadChildren() {
+    // the tree of a snapshot file is loaded in background, the view rebuilds its nodes when it is loaded
+    if (!snapshot.isCallTreeLoaded()) return;
+    final CallTree callTree = snapshot.getCallTree();
     FrameInfo[] frames = Arrays.copyOf(callFrames, callFrames.length + 1);
     frames[frames.length - 1] = getFrameInfo();
 
@@ -81,7 +94,7 @@ public class MergedCallNode<T extends Sample> extends LazyNode implements Naviga
     }
 
     for (int index = 0; index < callInfos.size(); ++index) {
-      insert(new MergedCallNode<T>(callInfos.get(index), callTree, frames, backTrace, scope), index);
+      insert(new MergedCallNode<T>(callInfos.get(index), snapshot, frames, backTrace, scope), index);
     }
   }
 
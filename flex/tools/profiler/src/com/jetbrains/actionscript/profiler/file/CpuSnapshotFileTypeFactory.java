@@ -0,0 +1,16 @@
+package com.jetbrains.actionscript.profiler.file;
+
+import com.intellij.openapi.fileTypes.FileTypeConsumer;
+import com.intellij.openapi.fileTypes.FileTypeFactory;
+import com.intellij.openapi.fileTypes.WildcardFileNameMatcher;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Saved CPU snapshots, the double extension is matched by a wildcard so that the generic "snapshot" file type does not take them.
+ */
+public class CpuSnapshotFileTypeFactory extends FileTypeFactory {
+  @Override
+  public void createFileTypes(@NotNull FileTypeConsumer consumer) {
+    consumer.consume(new CpuSnapshotFileType(), new WildcardFileNameMatcher("*." + CpuSnapshotFileType.DEFAULT_EXTENSION));
+  }
+}
@@ -0,0 +1,173 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+
+/**
+ * Reads packets the agent writes with <code>writeUTF</code>: unsigned 16-bit big endian length followed by UTF-8 bytes.
+ * Everything available in the stream is read at once into a reusable buffer and packets are parsed in place, a String is created only
+ * by {@link #toString()} and {@link #substring(int, int)}. Offsets are byte offsets, numbers and markers are ASCII.
+ */
+class AgentPacketReader {
+  private static final int MAX_PACKET_SIZE = 2 + 0xFFFF;
+
+  private final InputStream myInput;
+  private final byte[] myBuffer = new byte[MAX_PACKET_SIZE * 2];
+  private int myLimit;
+  private int myStart;
+  private int myEnd;
+
+  AgentPacketReader(InputStream input) {
+    myInput = input;
+  }
+
+  /**
+   * Reads the next packet, blocks if it is not buffered yet.
+   *
+   * @throws EOFException if the stream ends
+   */
+  void next() throws IOException {
+    int lengthStart = myEnd;
+    if (myBuffer.length - lengthStart < MAX_PACKET_SIZE) {
+      System.arraycopy(myBuffer, lengthStart, myBuffer, 0, myLimit - lengthStart);
+      myLimit -= lengthStart;
+      lengthStart = 0;
+    }
+
+    fill(lengthStart + 2);
+    myStart = lengthStart + 2;
+    myEnd = myStart + ((myBuffer[lengthStart] & 0xFF) << 8 | myBuffer[lengthStart + 1] & 0xFF);
+    fill(myEnd);
+  }
+
+  private void fill(int limit) throws IOException {
+    while (myLimit < limit) {
+      final int read = myInput.read(myBuffer, myLimit, myBuffer.length - myLimit);
+      if (read == -1) throw new EOFException();
+      myLimit += read;
+    }
+  }
+
+  /**
+   * @return true if the next packet is read without blocking
+   */
+  boolean hasBufferedPacket() {
+    final int available = myLimit - myEnd;
+    return available >= 2 && available - 2 >= ((myBuffer[myEnd] & 0xFF) << 8 | myBuffer[myEnd + 1] & 0xFF);
+  }
+
+  int length() {
+    return myEnd - myStart;
+  }
+
+  byte byteAt(int index) {
+    return myBuffer[myStart + index];
+  }
+
+  boolean startsWith(String asciiPrefix) {
+    return startsWith(asciiPrefix, asciiPrefix.length());
+  }
+
+  private boolean startsWith(String asciiPrefix, int prefixLength) {
+    if (prefixLength > length()) return false;
+    for (int i = 0; i < prefixLength; ++i) {
+      if (myBuffer[myStart + i] != asciiPrefix.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * @param marker ASCII chars followed by '\0', that may be written as a single zero byte or in modified UTF-8 as 0xC0 0x80
+   */
+  boolean hasMarker(String marker) {
+    final int prefixLength = marker.length() - 1;
+    return startsWith(marker, prefixLength) && getNullCharLength(prefixLength) != 0;
+  }
+
+  /**
+   * @return offset after the first '\0' or 0 if there is no '\0'
+   */
+  int getMarkerEnd() {
+    for (int i = 0; i < length(); ++i) {
+      final int nullCharLength = getNullCharLength(i);
+      if (nullCharLength != 0) return i + nullCharLength;
+    }
+    return 0;
+  }
+
+  private int getNullCharLength(int index) {
+    if (index < length() && byteAt(index) == 0) return 1;
+    if (index + 1 < length() && (byteAt(index) & 0xFF) == 0xC0 && (byteAt(index + 1) & 0xFF) == 0x80) return 2;
+    return 0;
+  }
+
+  int indexOf(char asciiChar, int from) {
+    for (int i = from; i < length(); ++i) {
+      if (byteAt(i) == asciiChar) return i;
+    }
+    return -1;
+  }
+
+  boolean isDigit(int index) {
+    return index < length() && byteAt(index) >= '0' && byteAt(index) <= '9';
+  }
+
+  int parseInt(int from, int to) throws IOException {
+    final long value = parseLong(from, to);
+    if (value != (int)value) throw new IOException("Number is too big: " + substring(from, to));
+    return (int)value;
+  }
+
+  long parseLong(int from, int to) throws IOException {
+    int i = from;
+    final boolean negative = i < to && byteAt(i) == '-';
+    if (negative) ++i;
+    if (i == to) throw new IOException("Number expected at " + from + ": " + this);
+
+    long value = 0;
+    for (; i < to; ++i) {
+      final int digit = byteAt(i) - '0';
+      if (digit < 0 || digit > 9) throw new IOException("Number expected at " + from + ": " + this);
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  String substring(int from, int to) throws UTFDataFormatException {
+    final char[] chars = new char[to - from];
+    int count = 0;
+    int i = myStart + from;
+    final int end = myStart + to;
+    while (i < end) {
+      final int c = myBuffer[i] & 0xFF;
+      if (c < 0x80) {
+        chars[count++] = (char)c;
+        i++;
+      }
+      else if ((c >> 5) == 0x6 && i + 1 < end) {
+        chars[count++] = (char)((c & 0x1F) << 6 | myBuffer[i + 1] & 0x3F);
+        i += 2;
+      }
+      else if ((c >> 4) == 0xE && i + 2 < end) {
+        chars[count++] = (char)((c & 0x0F) << 12 | (myBuffer[i + 1] & 0x3F) << 6 | myBuffer[i + 2] & 0x3F);
+        i += 3;
+      }
+      else {
+        throw new UTFDataFormatException("Malformed input around byte " + (i - myStart));
+      }
+    }
+    return new String(chars, 0, count);
+  }
+
+  @Override
+  public String toString() {
+    try {
+      return substring(0, length());
+    }
+    catch (UTFDataFormatException e) {
+      return e.getMessage();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntProcedure;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Live objects by agent id. An object takes a slot in parallel primitive arrays, slots of removed objects are reused;
+ * class names are interned to ints.
+ */
+public class ObjectTable {
+  private static final int NO_CLASS = -1;
+
+  // slot + 1 by id
+  private final TIntIntHashMap slots = new TIntIntHashMap();
+  private int[] sizes = new int[1024];
+  private int[] classIds = new int[1024];
+  private int slotCount;
+  private int[] freeSlots = new int[64];
+  private int freeSlotCount;
+
+  private final TObjectIntHashMap<String> classIdsByName = new TObjectIntHashMap<>();
+  private final List<String> classNames = new ArrayList<>();
+
+  public void put(int id, @Nullable String className, int size) {
+    int slot = slots.get(id) - 1;
+    if (slot < 0) {
+      if (freeSlotCount > 0) {
+        slot = freeSlots[--freeSlotCount];
+      }
+      else {
+        if (slotCount == sizes.length) {
+          final int capacity = slotCount * 2;
+          sizes = Arrays.copyOf(sizes, capacity);
+          classIds = Arrays.copyOf(classIds, capacity);
+        }
+        slot = slotCount++;
+      }
+      slots.put(id, slot + 1);
+    }
+    sizes[slot] = size;
+    classIds[slot] = getClassId(className);
+  }
+
+  /**
+   * @return false if there is no such object
+   */
+  public boolean remove(int id) {
+    final int slot = slots.remove(id) - 1;
+    if (slot < 0) return false;
+    if (freeSlotCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+    freeSlots[freeSlotCount++] = slot;
+    return true;
+  }
+
+  public boolean contains(int id) {
+    return slots.containsKey(id);
+  }
+
+  public void forEachId(TIntProcedure procedure) {
+    slots.forEachKey(procedure);
+  }
+
+  public int size() {
+    return slots.size();
+  }
+
+  /**
+   * @return size of the object or 0 if there is no such object
+   */
+  public int getSize(int id) {
+    final int slot = slots.get(id) - 1;
+    return slot < 0 ? 0 : sizes[slot];
+  }
+
+  @Nullable
+  public String getClassName(int id) {
+    final int slot = slots.get(id) - 1;
+    final int classId = slot < 0 ? NO_CLASS : classIds[slot];
+    return classId == NO_CLASS ? null : classNames.get(classId);
+  }
+
+  public void clear() {
+    slots.clear();
+    slotCount = 0;
+    freeSlotCount = 0;
+  }
+
+  private int getClassId(@Nullable String className) {
+    if (className == null) return NO_CLASS;
+    int classId = classIdsByName.get(className) - 1;
+    if (classId < 0) {
+      classId = classNames.size();
+      classNames.add(className);
+      classIdsByName.put(className, classId + 1);
+    }
+    return classId;
+  }
+}
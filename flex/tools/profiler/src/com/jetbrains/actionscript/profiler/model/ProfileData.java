@@ -3,13 +3,14 @@ package com.jetbrains.actionscript.profiler.model;
 import com.intellij.openapi.util.Key;
 import com.jetbrains.actionscript.profiler.calltree.CallTree;
 import com.jetbrains.actionscript.profiler.livetable.LiveModelController;
+import com.jetbrains.actionscript.profiler.sampler.CpuSampleBatch;
 import com.jetbrains.actionscript.profiler.sampler.CreateObjectSample;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfoBuilder;
 import com.jetbrains.actionscript.profiler.sampler.Sample;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * @author: Fedor.Korotkov
@@ -19,36 +20,94 @@ public class ProfileData {
   public static final Key<LiveModelController> CONTROLLER = Key.create("ASLiveController");
   public static final Key<ProfilingManager> PROFILING_MANAGER = Key.create("ASProfilingManager");
 
-  private CallTree callTree = new CallTree();
-  private final Map<Integer, CreateObjectSample> objects = new HashMap<>();
-  private final Map<Integer, Set<Integer>> references = new LinkedHashMap<>(50);
+  private FrameInfoBuilder frameInfoBuilder = new FrameInfoBuilder();
+  private CallTree callTree = new CallTree(frameInfoBuilder);
+  // frame ids of the call tree by ids of the last added batch, -1 if not resolved yet
+  private List<FrameInfo> batchFrames;
+  private int[] treeFrameIds = new int[0];
+  private int[] stack = new int[64];
+  private final ObjectTable objects = new ObjectTable();
+  private ReferenceGraph.Builder references = new ReferenceGraph.Builder();
+  private volatile ReferenceGraph lastReferences;
 
   public CallTree getCallTree() {
     return callTree;
   }
 
-  public Map<Integer, Set<Integer>> getReferences() {
-    return references;
+  public ObjectTable getObjects() {
+    return objects;
   }
 
   public void putNewObject(int id, CreateObjectSample sample) {
-    objects.put(id, sample);
+    objects.put(id, sample.className, sample.size);
   }
 
-  public CreateObjectSample removeObject(int id) {
+  public boolean removeObject(int id) {
     return objects.remove(id);
   }
 
+  public void addReference(int fromId, int toId) {
+    references.addReference(fromId, toId);
+  }
+
+  /**
+   * Builds the graph of references added since the previous call and of live objects.
+   */
+  public void finishReferences() {
+    lastReferences = references.build(objects);
+    references = new ReferenceGraph.Builder();
+  }
+
+  /**
+   * @return references of the last memory snapshot or null
+   */
+  public ReferenceGraph getReferences() {
+    return lastReferences;
+  }
+
   public void addPerformanceSample(Sample sample) {
     callTree.addFrames(sample.frames, sample.duration);
   }
 
+  public void addPerformanceSamples(CpuSampleBatch samples) {
+    if (batchFrames != samples.getFrames()) {
+      batchFrames = samples.getFrames();
+      Arrays.fill(treeFrameIds, -1);
+    }
+    if (treeFrameIds.length < batchFrames.size()) {
+      final int oldLength = treeFrameIds.length;
+      treeFrameIds = Arrays.copyOf(treeFrameIds, Math.max(oldLength * 2, batchFrames.size()));
+      Arrays.fill(treeFrameIds, oldLength, treeFrameIds.length, -1);
+    }
+
+    final int[] frameIds = samples.getFrameIds();
+    for (int i = 0; i < samples.size(); ++i) {
+      final int start = samples.getSampleStart(i);
+      final int length = samples.getSampleEnd(i) - start;
+      if (stack.length < length) stack = new int[Math.max(stack.length * 2, length)];
+      for (int j = 0; j < length; ++j) {
+        final int frameId = frameIds[start + j];
+        int treeFrameId = treeFrameIds[frameId];
+        if (treeFrameId == -1) {
+          treeFrameId = frameInfoBuilder.getFrameId(batchFrames.get(frameId));
+          treeFrameIds[frameId] = treeFrameId;
+        }
+        stack[j] = treeFrameId;
+      }
+      callTree.addFrames(stack, 0, length, samples.getDuration(i));
+    }
+  }
+
   public void clearMemory() {
     objects.clear();
-    references.clear();
+    references = new ReferenceGraph.Builder();
+    lastReferences = null;
   }
 
   public void clearPerformance() {
-    callTree = new CallTree();
+    // the old tree may be shown in a snapshot view, it keeps its own frames
+    frameInfoBuilder = new FrameInfoBuilder();
+    callTree = new CallTree(frameInfoBuilder);
+    batchFrames = null;
   }
 }
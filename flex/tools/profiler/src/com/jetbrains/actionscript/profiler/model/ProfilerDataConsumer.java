@@ -1,13 +1,9 @@
 package com.jetbrains.actionscript.profiler.model;
 
-import com.jetbrains.actionscript.profiler.sampler.CreateObjectSample;
-import com.jetbrains.actionscript.profiler.sampler.DeleteObjectSample;
-import com.jetbrains.actionscript.profiler.sampler.ObjectSampleHandler;
-import com.jetbrains.actionscript.profiler.sampler.Sample;
+import com.jetbrains.actionscript.profiler.sampler.*;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.List;
 
 public class ProfilerDataConsumer {
   private final ProfileData profileData = new ProfileData();
@@ -21,6 +17,16 @@ public class ProfilerDataConsumer {
     return profileData;
   }
 
+  public void process(CpuSampleBatch samples) {
+    profileData.addPerformanceSamples(samples);
+  }
+
+  public void process(List<Sample> samples) {
+    for (Sample sample : samples) {
+      process(sample);
+    }
+  }
+
   public void process(Sample sample) {
     if (sample instanceof CreateObjectSample) {
       final CreateObjectSample createObjectSample = (CreateObjectSample)sample;
@@ -45,12 +51,14 @@ public class ProfilerDataConsumer {
   }
 
   public void referenced(int pid, int id) {
-    Set<Integer> integers = profileData.getReferences().get(pid);
-    if (integers == null) {
-      integers = new LinkedHashSet<>(3);
-      profileData.getReferences().put(pid, integers);
-    }
-    integers.add(id);
+    profileData.addReference(pid, id);
+  }
+
+  /**
+   * Called when the agent finished dumping references. The bundled agent doesn't send the dump yet.
+   */
+  public void referencesFinished() {
+    profileData.finishReferences();
   }
 
   public void resetCpuUsageData() {
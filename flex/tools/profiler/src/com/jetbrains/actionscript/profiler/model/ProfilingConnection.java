@@ -11,18 +11,17 @@ import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.*;
 
 public class ProfilingConnection {
   private static final Logger LOG = Logger.getInstance(ProfilingConnection.class.getName());
   private ServerSocket myServerSocket;
   private ServerSocket myPolicyServerSocket;
   private OutputStream myOutputStream;
-  private DataInputStream myInputStream;
+  private InputStream myInputStream;
   private PacketProcessor myCurrentPacketProcessor;
   private final Map<String, PacketProcessor> myInitialString2ProcessorsMap = new HashMap<>();
+  private final BatchSamplesProcessor mySamplesProcessor;
   private final Callback myIoHandler;
   private final int myPort;
   private static final int ourAgentVersion = 4;
@@ -36,25 +35,25 @@ public class ProfilingConnection {
       new PolicyFileRequestProcessor(port)
     );
 
-    BatchSamplesProcessor samplesProcessor = new BatchSamplesProcessor(sampleProcessor);
+    mySamplesProcessor = new BatchSamplesProcessor(sampleProcessor);
     myInitialString2ProcessorsMap.put(
       BatchSamplesProcessor.BATCH_MARKER,
-      samplesProcessor
+      mySamplesProcessor
     );
 
     myInitialString2ProcessorsMap.put(
       BatchSamplesProcessor.CREATE_OBJECT_SAMPLE_MARKER,
-      samplesProcessor
+      mySamplesProcessor
     );
 
     myInitialString2ProcessorsMap.put(
       BatchSamplesProcessor.SAMPLE_MARKER,
-      samplesProcessor
+      mySamplesProcessor
     );
 
     myInitialString2ProcessorsMap.put(
       BatchSamplesProcessor.DELETE_OBJECT_SAMPLE_MARKER,
-      samplesProcessor
+      mySamplesProcessor
     );
 
     myInitialString2ProcessorsMap.put(
@@ -82,7 +81,7 @@ public class ProfilingConnection {
     try {
       myServerSocket = new ServerSocket(myPort);
       Socket socket = myServerSocket.accept();
-      myInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      myInputStream = socket.getInputStream();
       myOutputStream = socket.getOutputStream();
       myServerSocket.close();
       myServerSocket = null;
@@ -101,39 +100,10 @@ public class ProfilingConnection {
     }
 
     ApplicationManager.getApplication().executeOnPooledThread(() -> {
-      int bytesRead = 0;
       try {
-        while (true) {
-          String x = myInputStream.readUTF();
-          if (x == null) break;
-          LOG.debug(x);
-          bytesRead += x.length();
-          try {
-            if (myCurrentPacketProcessor == null) {
-              String marker = x;
-              int i = x.indexOf('\0');
-              if (i != -1) marker = x.substring(0, i + 1);
-              myCurrentPacketProcessor = myInitialString2ProcessorsMap.get(marker);
-              if (myCurrentPacketProcessor != null) {
-                myCurrentPacketProcessor.startingPacket(x);
-              }
-            }
-            if (myCurrentPacketProcessor != null) {
-              PacketProcessor.ProcessingResult processingResult = myCurrentPacketProcessor.process(x);
-              if (processingResult == PacketProcessor.ProcessingResult.FINISHED) myCurrentPacketProcessor = null;
-              if (processingResult == PacketProcessor.ProcessingResult.STOP) return;
-            }
-            else {
-              LOG.warn("No processing:" + x);
-            }
-          }
-          catch (Exception e) {
-            LOG.error(e);
-          }
-        }
+        readPackets(myInputStream);
       }
       catch (IOException ex) {
-        LOG.debug("Bytes read:" + bytesRead);
         myIoHandler.finished(null, ex);
       }
       catch (Throwable t) {
@@ -142,6 +112,64 @@ public class ProfilingConnection {
     });
   }
 
+  /**
+   * Decodes packets until the stream ends or a processor stops reading. Samples are passed to the consumer in batches: when all
+   * received data is decoded, when a batch is full and before any other command is processed.
+   */
+  void readPackets(InputStream input) throws IOException {
+    final AgentPacketReader packet = new AgentPacketReader(input);
+    long bytesRead = 0;
+    try {
+      while (true) {
+        if (!packet.hasBufferedPacket()) flushSamples();
+        packet.next();
+        if (LOG.isDebugEnabled()) LOG.debug(packet.toString());
+        bytesRead += packet.length();
+        try {
+          if (myCurrentPacketProcessor == null) {
+            myCurrentPacketProcessor = findProcessor(packet);
+            if (myCurrentPacketProcessor != mySamplesProcessor) flushSamples();
+            if (myCurrentPacketProcessor != null) {
+              myCurrentPacketProcessor.startingPacket(packet);
+            }
+          }
+          if (myCurrentPacketProcessor != null) {
+            PacketProcessor.ProcessingResult processingResult = myCurrentPacketProcessor.process(packet);
+            if (processingResult == PacketProcessor.ProcessingResult.FINISHED) myCurrentPacketProcessor = null;
+            if (processingResult == PacketProcessor.ProcessingResult.STOP) return;
+          }
+          else {
+            LOG.warn("No processing:" + packet);
+          }
+        }
+        catch (Exception e) {
+          LOG.error(e);
+        }
+      }
+    }
+    catch (IOException ex) {
+      LOG.debug("Bytes read:" + bytesRead);
+      throw ex;
+    }
+  }
+
+  @Nullable
+  private PacketProcessor findProcessor(AgentPacketReader packet) {
+    for (Map.Entry<String, PacketProcessor> entry : myInitialString2ProcessorsMap.entrySet()) {
+      if (packet.hasMarker(entry.getKey())) return entry.getValue();
+    }
+    return null;
+  }
+
+  private void flushSamples() {
+    try {
+      mySamplesProcessor.flush();
+    }
+    catch (Exception e) {
+      LOG.error(e);
+    }
+  }
+
   private void ensurePolicyServedEvenOnFlashSecurityPort() {
     ApplicationManager.getApplication().executeOnPooledThread(() -> {
       try {
@@ -169,8 +197,7 @@ public class ProfilingConnection {
   private static final int STOP_COLLECTING_LIVE_OBJECTS = 6;
 
   private void clearProfilingState() {
-    final PacketProcessor processor = myInitialString2ProcessorsMap.get(BatchSamplesProcessor.BATCH_MARKER);
-    ((BatchSamplesProcessor)processor).clearProfilingState();
+    mySamplesProcessor.clearProfilingState();
   }
 
   interface Callback {
@@ -235,13 +262,25 @@ public class ProfilingConnection {
       CONTINUE, FINISHED, STOP
     }
 
-    void startingPacket(String output) {
+    void startingPacket(AgentPacketReader packet) {
+    }
+
+    abstract ProcessingResult process(AgentPacketReader packet) throws IOException;
+  }
+
+  /**
+   * Processor of rare commands, packets are decoded to strings.
+   */
+  abstract static class TextPacketProcessor extends PacketProcessor {
+    @Override
+    final ProcessingResult process(AgentPacketReader packet) throws IOException {
+      return process(packet.toString());
     }
 
     abstract ProcessingResult process(String output) throws IOException;
   }
 
-  class PolicyFileRequestProcessor extends PacketProcessor {
+  class PolicyFileRequestProcessor extends TextPacketProcessor {
     static final String POLICY_FILE_REQUEST = "<policy-file-request/>\0";
     private final int myPort;
 
@@ -270,27 +309,47 @@ public class ProfilingConnection {
            "</cross-domain-policy>\0";
   }
 
+  /**
+   * Decodes samples in place from packet bytes. Frames of the string dictionary get int ids, indices in {@link #frames}, and only a new
+   * dictionary entry is decoded to a String. CPU samples are collected to a {@link CpuSampleBatch}, memory samples to a list; both
+   * are passed to the consumer by {@link #flush()}.
+   */
   static class BatchSamplesProcessor extends PacketProcessor {
     private static final String BATCH_MARKER = "b\0";
     private static final String SAMPLE_MARKER = "s\0";
     private static final String CREATE_OBJECT_SAMPLE_MARKER = "c\0";
     private static final String DELETE_OBJECT_SAMPLE_MARKER = "d\0";
+    private static final String REUSED_FRAMES_PREFIX = "u>:";
+    private static final int MAX_BATCH_SIZE = 4096;
+
+    private static final int CPU_SAMPLE = 0;
+    private static final int CREATE_OBJECT_SAMPLE = 1;
+    private static final int DELETE_OBJECT_SAMPLE = 2;
 
     private final ProfilerDataConsumer mySampleProcessor;
 
     private long sampleDuration = -1;
+    private int sampleKind;
+    // -1 if a sample header is expected
+    private int frameCount = -1;
     private int frameIndex;
-
-    private final Map<String, String> dictionary = new HashMap<>(1000);
-    private final Map<String, String> typeDictionary = new HashMap<>(1000);
-    private FrameInfo[] frames;
-    private String type;
-    private String specialArgs;
-    static final int INDEX = SAMPLE_MARKER.length();
+    private int[] stack = new int[64];
+    private int objectId;
+    private String objectType;
+    private int objectSize;
+
+    // string dictionary entry n is frames[n - 1]; type dictionary entry n is typeDictionary[n]
+    private List<FrameInfo> frames = new ArrayList<>(1000);
+    private final List<String> typeDictionary = new ArrayList<>(1000);
+    private int[] lastCpuStack = new int[64];
+    private int lastCpuStackLength = -1;
+    private int[] lastCreateObjectStack = new int[64];
+    private int lastCreateObjectStackLength = -1;
+
+    private CpuSampleBatch cpuSampleBatch = new CpuSampleBatch(frames);
+    private final List<Sample> memorySampleBatch = new ArrayList<>();
     private int cpuSamples;
     private int memorySamples;
-    private Sample lastCpuSample;
-    private Sample lastCreateObjectSample;
     private final FrameInfoBuilder frameInfoBuilder = new FrameInfoBuilder();
 
     BatchSamplesProcessor(ProfilerDataConsumer sampleProcessor) {
@@ -298,152 +357,171 @@ public class ProfilingConnection {
     }
 
     @Override
-    ProcessingResult process(String output) throws IOException {
-      if (frameIndex == -1) {
-        if (output.startsWith(BATCH_MARKER)) return ProcessingResult.FINISHED;
-
-        int i = INDEX + 1; //output.indexOf(' ', INDEX);
-        final boolean cpuSample = output.startsWith(SAMPLE_MARKER);
-
-        if (cpuSample) {
-          i = output.indexOf(' ', INDEX);
-          sampleDuration = Long.parseLong(output.substring(INDEX, i));
-          i += 2;
+    ProcessingResult process(AgentPacketReader packet) throws IOException {
+      if (frameCount == -1) {
+        if (packet.hasMarker(BATCH_MARKER)) return ProcessingResult.FINISHED;
+
+        if (packet.hasMarker(SAMPLE_MARKER)) {
+          final int start = packet.getMarkerEnd();
+          final int i = packet.indexOf(' ', start);
+          if (i == -1) throw new IOException("Unexpected:" + packet);
+          sampleKind = CPU_SAMPLE;
+          sampleDuration = packet.parseLong(start, i);
+          startSample(packet.parseInt(i + 1, packet.length()));
+          return maybeFinishSample();
         }
 
-        if (cpuSample ||
-            output.startsWith(CREATE_OBJECT_SAMPLE_MARKER) ||
-            output.startsWith(DELETE_OBJECT_SAMPLE_MARKER)) {
-          int i2 = output.indexOf(' ', i);
-          int frameCount = Integer.parseInt(output.substring(i - 1, i2 != -1 ? i2 : output.length()));
-          frames = frameCount > 0 ? new FrameInfo[frameCount] : FrameInfo.EMPTY_FRAME_INFO_ARRAY;
-          frameIndex = 0;
-          type = output;
-          specialArgs = i2 != -1 ? output.substring(i2 + 1) : "";
-
+        if (packet.hasMarker(CREATE_OBJECT_SAMPLE_MARKER) || packet.hasMarker(DELETE_OBJECT_SAMPLE_MARKER)) {
+          sampleKind = packet.hasMarker(CREATE_OBJECT_SAMPLE_MARKER) ? CREATE_OBJECT_SAMPLE : DELETE_OBJECT_SAMPLE;
+          final int start = packet.getMarkerEnd();
+          final int i = packet.indexOf(' ', start);
+          if (i == -1) throw new IOException("Unexpected:" + packet);
+          final int count = packet.parseInt(start, i);
+          final int i2 = packet.indexOf(' ', i + 1);
+          if (i2 == -1) throw new IOException("Unexpected:" + packet);
+          objectId = packet.parseInt(i + 1, i2);
+          int i3 = packet.indexOf(' ', i2 + 1);
+          if (i3 == -1) i3 = packet.length();
+          objectType = getClassName(packet, i2 + 1, i3);
+          objectSize = i3 != packet.length() ? packet.parseInt(i3 + 1, packet.length()) : 0;
+          startSample(count);
           return maybeFinishSample();
         }
       }
 
-      if (frames != null && frameIndex >= 0 && frameIndex < frames.length) {
-
-        char ch = output.charAt(0);
-        if (output.startsWith("u>:")) {
-          int count = Integer.parseInt(output.substring(output.indexOf(':') + 1));
-          Sample s =
-            type.startsWith(CREATE_OBJECT_SAMPLE_MARKER) ? lastCreateObjectSample : type.startsWith(SAMPLE_MARKER) ? lastCpuSample : null;
-          for (int i = s.frames.length - count; i < s.frames.length; ++i) {
-            frames[frameIndex++] = s.frames[i];
+      if (frameCount != -1 && frameIndex < frameCount) {
+        if (packet.startsWith(REUSED_FRAMES_PREFIX)) {
+          final int count = packet.parseInt(REUSED_FRAMES_PREFIX.length(), packet.length());
+          final int[] lastStack = sampleKind == CPU_SAMPLE ? lastCpuStack : sampleKind == CREATE_OBJECT_SAMPLE ? lastCreateObjectStack : null;
+          final int lastStackLength =
+            sampleKind == CPU_SAMPLE ? lastCpuStackLength : sampleKind == CREATE_OBJECT_SAMPLE ? lastCreateObjectStackLength : -1;
+          if (lastStack == null || count > lastStackLength || frameIndex + count > frameCount) {
+            throw new IOException("Unexpected:" + packet);
           }
+          System.arraycopy(lastStack, lastStackLength - count, stack, frameIndex, count);
+          frameIndex += count;
+        }
+        else if (packet.isDigit(0)) {
+          final int frameId = packet.parseInt(0, packet.length()) - 1;
+          if (frameId < 0 || frameId >= frames.size()) throw new IOException("Unknown frame:" + packet);
+          stack[frameIndex++] = frameId;
         }
         else {
-          if (Character.isDigit(ch)) {
-            output = dictionary.get(output);
-          }
-          else {
-            dictionary.put("" + (dictionary.size() + 1), output);
-          }
-
-          frames[frameIndex++] = frameInfoBuilder.buildInstance(output);
+          stack[frameIndex++] = frames.size();
+          frames.add(frameInfoBuilder.buildInstance(packet.toString()));
         }
         return maybeFinishSample();
       }
 
-      LOG.warn("Unexpected:" + output);
+      LOG.warn("Unexpected:" + packet);
 
       return ProcessingResult.FINISHED;
     }
 
+    private void startSample(int count) throws IOException {
+      if (count < 0) throw new IOException("Invalid frame count: " + count);
+      frameCount = count;
+      frameIndex = 0;
+      if (stack.length < count) stack = new int[Math.max(stack.length * 2, count)];
+    }
+
     private ProcessingResult maybeFinishSample() {
-      if (frameIndex == frames.length) {
-        Sample sample;
-        if (type.startsWith(CREATE_OBJECT_SAMPLE_MARKER)) {
-          ++memorySamples;
-          final int endIndex = specialArgs.indexOf(' ');
-          final int endIndex2 = specialArgs.indexOf(' ', endIndex + 1);
-
-          final int id = Integer.parseInt(specialArgs.substring(0, endIndex));
-          String className = specialArgs.substring(endIndex + 1, endIndex2);
-          className = getClassName(className);
-          final int size = Integer.parseInt(specialArgs.substring(endIndex2 + 1));
-          sample = new CreateObjectSample(
-            sampleDuration,
-            frames,
-            id,
-            className,
-            size
-          );
-          lastCreateObjectSample = sample;
-        }
-        else if (type.startsWith(DELETE_OBJECT_SAMPLE_MARKER)) {
-          ++memorySamples;
-          final int endIndex = specialArgs.indexOf(' ');
-          int endIndex2 = specialArgs.indexOf(' ', endIndex + 1);
-          if (endIndex2 == -1) endIndex2 = specialArgs.length();
-          final int id = Integer.parseInt(specialArgs.substring(0, endIndex));
-          String type = specialArgs.substring(endIndex + 1, endIndex2);
-          final int size = endIndex2 != specialArgs.length() ? Integer.parseInt(specialArgs.substring(endIndex2 + 1)) : 0;
-          if (type != null) {
-            type = getClassName(type);
-            mySampleProcessor.process(new DeleteObjectSample(sampleDuration, frames, id, type, size));
-          }
-          return ProcessingResult.FINISHED;
-        }
-        else {
-          ++cpuSamples;
-          sample = new Sample(sampleDuration, frames);
-          lastCpuSample = sample;
-        }
-        mySampleProcessor.process(sample);
-        frameIndex = -1;
-        return ProcessingResult.FINISHED;
+      if (frameIndex < frameCount) return ProcessingResult.CONTINUE;
+
+      if (sampleKind == CPU_SAMPLE) {
+        ++cpuSamples;
+        cpuSampleBatch.add(stack, frameCount, sampleDuration);
+        if (lastCpuStack.length < frameCount) lastCpuStack = new int[stack.length];
+        System.arraycopy(stack, 0, lastCpuStack, 0, frameCount);
+        lastCpuStackLength = frameCount;
+      }
+      else if (sampleKind == CREATE_OBJECT_SAMPLE) {
+        ++memorySamples;
+        memorySampleBatch.add(new CreateObjectSample(sampleDuration, getFrames(), objectId, objectType, objectSize));
+        if (lastCreateObjectStack.length < frameCount) lastCreateObjectStack = new int[stack.length];
+        System.arraycopy(stack, 0, lastCreateObjectStack, 0, frameCount);
+        lastCreateObjectStackLength = frameCount;
       }
       else {
-        return ProcessingResult.CONTINUE;
+        ++memorySamples;
+        if (objectType != null) {
+          memorySampleBatch.add(new DeleteObjectSample(sampleDuration, getFrames(), objectId, objectType, objectSize));
+        }
       }
+      frameCount = -1;
+
+      if (cpuSampleBatch.size() >= MAX_BATCH_SIZE || memorySampleBatch.size() >= MAX_BATCH_SIZE) {
+        flush();
+      }
+      return ProcessingResult.FINISHED;
     }
 
-    private String getClassName(String className) {
-      if (Character.isDigit(className.charAt(0))) {
-        className = typeDictionary.get(className);
+    private FrameInfo[] getFrames() {
+      if (frameCount == 0) return FrameInfo.EMPTY_FRAME_INFO_ARRAY;
+      final FrameInfo[] result = new FrameInfo[frameCount];
+      for (int i = 0; i < frameCount; ++i) {
+        result[i] = frames.get(stack[i]);
       }
-      else {
-        className = className.replace("::", ".");
-        if (className.startsWith(CodeContext.AS3_VEC_VECTOR_QUALIFIED_NAME)) {
-          className = JSCommonTypeNames.VECTOR_CLASS_NAME + className.substring(CodeContext.AS3_VEC_VECTOR_QUALIFIED_NAME.length());
-        }
-        typeDictionary.put(String.valueOf(typeDictionary.size()), className);
+      return result;
+    }
+
+    @Nullable
+    private String getClassName(AgentPacketReader packet, int from, int to) throws IOException {
+      if (packet.isDigit(from)) {
+        final int index = packet.parseInt(from, to);
+        return index < typeDictionary.size() ? typeDictionary.get(index) : null;
       }
+
+      String className = packet.substring(from, to).replace("::", ".");
+      if (className.startsWith(CodeContext.AS3_VEC_VECTOR_QUALIFIED_NAME)) {
+        className = JSCommonTypeNames.VECTOR_CLASS_NAME + className.substring(CodeContext.AS3_VEC_VECTOR_QUALIFIED_NAME.length());
+      }
+      typeDictionary.add(className);
       return className;
     }
 
+    /**
+     * Passes collected samples to the consumer.
+     */
+    void flush() {
+      try {
+        if (!memorySampleBatch.isEmpty()) mySampleProcessor.process(memorySampleBatch);
+        if (cpuSampleBatch.size() != 0) mySampleProcessor.process(cpuSampleBatch);
+      }
+      finally {
+        memorySampleBatch.clear();
+        cpuSampleBatch.clear();
+      }
+    }
+
     @Override
-    void startingPacket(String output) {
-      if (output.startsWith(BATCH_MARKER)) {
+    void startingPacket(AgentPacketReader packet) {
+      if (packet.hasMarker(BATCH_MARKER)) {
         if (LOG.isDebugEnabled()) {
-          LOG.debug(output + "," + System.currentTimeMillis() + "," + cpuSamples + "," + memorySamples);
+          LOG.debug(packet + "," + System.currentTimeMillis() + "," + cpuSamples + "," + memorySamples);
         }
         memorySamples = 0;
         cpuSamples = 0;
       }
 
-      frameIndex = -1;
-      frames = null;
-      type = null;
-      specialArgs = null;
+      frameCount = -1;
+      objectType = null;
     }
 
     private void clearProfilingState() {
-      dictionary.clear();
+      flush();
+      // ids of the old dictionary are not valid anymore, the consumer recognizes that by the new frame list
+      frames = new ArrayList<>(1000);
+      cpuSampleBatch = new CpuSampleBatch(frames);
       typeDictionary.clear();
-      lastCpuSample = null;
-      lastCreateObjectSample = null;
+      lastCpuStackLength = -1;
+      lastCreateObjectStackLength = -1;
       cpuSamples = 0;
       memorySamples = 0;
     }
   }
 
-  class FinishCommandProcessor extends PacketProcessor {
+  class FinishCommandProcessor extends TextPacketProcessor {
     static final String END_COMMAND_MARKER = "e\0";
 
     @Override
@@ -457,7 +535,7 @@ public class ProfilingConnection {
     }
   }
 
-  class VersionHandShakeProcessor extends PacketProcessor {
+  class VersionHandShakeProcessor extends TextPacketProcessor {
     static final String VERSION_COMMAND_MARKER = "v\0";
 
     @Override
@@ -472,6 +550,9 @@ public class ProfilingConnection {
     }
   }
 
+  /**
+   * Reads references of a memory snapshot: a line is an object id followed by ids of objects it references, lines are parsed in place.
+   */
   private static class SampleInfoProcessor extends PacketProcessor {
     public static final String COMMAND_MARKER = "si\0";
     private final ProfilerDataConsumer myDataConsumer;
@@ -481,22 +562,24 @@ public class ProfilingConnection {
     }
 
     @Override
-    ProcessingResult process(String output) throws IOException {
-      if (output.startsWith("EndSnapshot")) return ProcessingResult.FINISHED;
-      if (output.startsWith(COMMAND_MARKER)) return ProcessingResult.CONTINUE;
-      if (output.startsWith("cls:")) {
+    ProcessingResult process(AgentPacketReader packet) throws IOException {
+      if (packet.startsWith("EndSnapshot")) {
+        myDataConsumer.referencesFinished();
+        return ProcessingResult.FINISHED;
+      }
+      if (packet.hasMarker(COMMAND_MARKER)) return ProcessingResult.CONTINUE;
+      if (packet.startsWith("cls:")) {
         return ProcessingResult.CONTINUE;
       }
 
-      int i = output.indexOf(',');
-      int id = Integer.parseInt(output.substring(0, i));
+      int i = packet.indexOf(',', 0);
+      if (i == -1) return ProcessingResult.CONTINUE;
+      final int id = packet.parseInt(0, i);
 
-      while (i != -1) {
-        int nextI = output.indexOf(',', i + 1);
-        if (nextI == -1) nextI = output.length();
-        int nextId = Integer.parseInt(output.substring(i + 1, nextI));
-        myDataConsumer.referenced(id, nextId);
-        if (nextI == output.length()) break;
+      while (i != packet.length()) {
+        int nextI = packet.indexOf(',', i + 1);
+        if (nextI == -1) nextI = packet.length();
+        myDataConsumer.referenced(id, packet.parseInt(i + 1, nextI));
         i = nextI;
       }
       return ProcessingResult.CONTINUE;
@@ -0,0 +1,103 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import gnu.trove.TIntIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * References between objects of a memory snapshot in compressed sparse row form: objects are dense node indices, references of
+ * node <code>n</code> are <code>targets[edgeStarts[n]..edgeStarts[n + 1])</code>. The graph is immutable and can be analyzed on any thread.
+ */
+public class ReferenceGraph {
+  private final int[] objectIds;
+  private final int[] edgeStarts;
+  private final int[] targets;
+
+  private ReferenceGraph(int[] objectIds, int[] edgeStarts, int[] targets) {
+    this.objectIds = objectIds;
+    this.edgeStarts = edgeStarts;
+    this.targets = targets;
+  }
+
+  public int getNodeCount() {
+    return objectIds.length;
+  }
+
+  public int getObjectId(int node) {
+    return objectIds[node];
+  }
+
+  public int getEdgeStart(int node) {
+    return edgeStarts[node];
+  }
+
+  public int getEdgeEnd(int node) {
+    return edgeStarts[node + 1];
+  }
+
+  public int getTarget(int edge) {
+    return targets[edge];
+  }
+
+  public int getEdgeCount() {
+    return targets.length;
+  }
+
+  /**
+   * Collects references as they are dumped by the agent, object ids become nodes in the order of appearance. Live objects without
+   * references become nodes when the graph is built.
+   */
+  static class Builder {
+    // node + 1 by object id
+    private final TIntIntHashMap nodes = new TIntIntHashMap();
+    private int[] objectIds = new int[1024];
+    private int nodeCount;
+    private int[] sources = new int[4096];
+    private int[] edgeTargets = new int[4096];
+    private int edgeCount;
+
+    void addReference(int fromId, int toId) {
+      final int from = getNode(fromId);
+      final int to = getNode(toId);
+      if (edgeCount == sources.length) {
+        sources = Arrays.copyOf(sources, edgeCount * 2);
+        edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+      }
+      sources[edgeCount] = from;
+      edgeTargets[edgeCount] = to;
+      ++edgeCount;
+    }
+
+    private int getNode(int objectId) {
+      int node = nodes.get(objectId) - 1;
+      if (node < 0) {
+        if (nodeCount == objectIds.length) objectIds = Arrays.copyOf(objectIds, nodeCount * 2);
+        node = nodeCount++;
+        objectIds[node] = objectId;
+        nodes.put(objectId, node + 1);
+      }
+      return node;
+    }
+
+    ReferenceGraph build(ObjectTable objects) {
+      objects.forEachId(id -> {
+        getNode(id);
+        return true;
+      });
+
+      final int[] edgeStarts = new int[nodeCount + 1];
+      for (int i = 0; i < edgeCount; ++i) {
+        ++edgeStarts[sources[i] + 1];
+      }
+      for (int node = 0; node < nodeCount; ++node) {
+        edgeStarts[node + 1] += edgeStarts[node];
+      }
+      final int[] targets = new int[edgeCount];
+      final int[] nextEdges = Arrays.copyOf(edgeStarts, nodeCount);
+      for (int i = 0; i < edgeCount; ++i) {
+        targets[nextEdges[sources[i]]++] = edgeTargets[i];
+      }
+      return new ReferenceGraph(Arrays.copyOf(objectIds, nodeCount), edgeStarts, targets);
+    }
+  }
+}
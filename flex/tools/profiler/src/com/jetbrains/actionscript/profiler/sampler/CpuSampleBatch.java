@@ -0,0 +1,65 @@
+package com.jetbrains.actionscript.profiler.sampler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CPU samples decoded from the agent stream. A frame is an int id, index in {@link #getFrames()}; stacks of all samples are
+ * stored one after another in {@link #getFrameIds()}, the innermost call first. Ids are valid as long as the frame list is the same.
+ */
+public class CpuSampleBatch {
+  private final List<FrameInfo> frames;
+  private int[] frameIds = new int[4096];
+  private int frameIdCount;
+  private int[] sampleEnds = new int[256];
+  private long[] durations = new long[256];
+  private int size;
+
+  public CpuSampleBatch(List<FrameInfo> frames) {
+    this.frames = frames;
+  }
+
+  public List<FrameInfo> getFrames() {
+    return frames;
+  }
+
+  public void add(int[] stack, int length, long duration) {
+    if (frameIdCount + length > frameIds.length) {
+      frameIds = Arrays.copyOf(frameIds, Math.max(frameIds.length * 2, frameIdCount + length));
+    }
+    if (size == sampleEnds.length) {
+      sampleEnds = Arrays.copyOf(sampleEnds, size * 2);
+      durations = Arrays.copyOf(durations, size * 2);
+    }
+    System.arraycopy(stack, 0, frameIds, frameIdCount, length);
+    frameIdCount += length;
+    sampleEnds[size] = frameIdCount;
+    durations[size] = duration;
+    ++size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int[] getFrameIds() {
+    return frameIds;
+  }
+
+  public int getSampleStart(int index) {
+    return index == 0 ? 0 : sampleEnds[index - 1];
+  }
+
+  public int getSampleEnd(int index) {
+    return sampleEnds[index];
+  }
+
+  public long getDuration(int index) {
+    return durations[index];
+  }
+
+  public void clear() {
+    frameIdCount = 0;
+    size = 0;
+  }
+}
@@ -3,7 +3,12 @@ package com.jetbrains.actionscript.profiler.sampler;
 import com.intellij.lang.javascript.psi.JSFunction;
 import com.intellij.openapi.util.text.StringUtil;
 import gnu.trove.THashMap;
+import gnu.trove.TObjectIdentityHashingStrategy;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -14,6 +19,49 @@ public class FrameInfoBuilder {
   private final Map<String, FrameInfo> cache = new THashMap<>();
   private final Map<FrameInfo, FrameInfo> cacheInstances = new THashMap<>();
   private final int UNKNOWN_LINE = -1;
+  private static final int MIN_INSTANCE_CACHE_SIZE = 1024;
+
+  // frames interned to ids, equal frames get the same id; ids are indices in frameById, the map keeps id + 1
+  private final TObjectIntHashMap<FrameInfo> frameIds = new TObjectIntHashMap<>();
+  // frames built here are mostly shared instances, FrameInfo.hashCode() is not cheap;
+  // other instances may come and go, so the map is cleared when it gets much larger than the number of distinct frames
+  private final TObjectIntHashMap<FrameInfo> instanceFrameIds = new TObjectIntHashMap<>(new TObjectIdentityHashingStrategy<>());
+  private final List<FrameInfo> frameById = new ArrayList<>();
+
+  /**
+   * @return id of a frame equal to <code>frame</code>, ids start from 0 and are dense
+   */
+  public int getFrameId(FrameInfo frame) {
+    int id = instanceFrameIds.get(frame) - 1;
+    if (id >= 0) return id;
+
+    id = frameIds.get(frame) - 1;
+    if (id < 0) {
+      id = frameById.size();
+      frameById.add(frame);
+      frameIds.put(frame, id + 1);
+    }
+    if (instanceFrameIds.size() >= Math.max(MIN_INSTANCE_CACHE_SIZE, 2 * frameById.size())) {
+      instanceFrameIds.clear();
+    }
+    instanceFrameIds.put(frame, id + 1);
+    return id;
+  }
+
+  /**
+   * @return id of a frame equal to <code>frame</code> or -1 if there is no such frame
+   */
+  public int findFrameId(FrameInfo frame) {
+    return frameIds.get(frame) - 1;
+  }
+
+  public FrameInfo getFrame(int id) {
+    return frameById.get(id);
+  }
+
+  public int getFrameCount() {
+    return frameById.size();
+  }
 
   FrameInfo[] buildInstances(String[] frames) {
     FrameInfo[] result = new FrameInfo[frames.length];
@@ -44,6 +92,17 @@ public class FrameInfoBuilder {
     return result;
   }
 
+  public FrameInfo createInstance(@Nullable String fileDirectory,
+                                  @Nullable String fileName,
+                                  int fileLine,
+                                  @Nullable String packageName,
+                                  String qName,
+                                  @Nullable String methodName,
+                                  @Nullable JSFunction.FunctionKind kind,
+                                  @Nullable String namespace) {
+    return new FrameInfo(fileDirectory, fileName, fileLine, packageName, qName, methodName, kind, namespace);
+  }
+
   public FrameInfo createInstance(final String data) {
     int line = UNKNOWN_LINE;
     String dir = null;
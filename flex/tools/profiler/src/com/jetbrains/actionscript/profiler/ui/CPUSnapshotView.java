@@ -4,6 +4,10 @@ import com.intellij.ide.util.scopeChooser.ScopeChooserCombo;
 import com.intellij.ide.util.scopeChooser.ScopeDescriptor;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.ActionPlaces;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -17,7 +21,9 @@ import com.intellij.ui.TreeTableSpeedSearch;
 import com.intellij.util.Alarm;
 import com.intellij.util.Function;
 import com.intellij.util.ui.tree.TreeUtil;
+import com.jetbrains.actionscript.profiler.ProfilerBundle;
 import com.jetbrains.actionscript.profiler.calltree.CallTree;
+import com.jetbrains.actionscript.profiler.calltree.CallTreeSnapshot;
 import com.jetbrains.actionscript.profiler.calltree.CallTreeUtil;
 import com.jetbrains.actionscript.profiler.calltreetable.CallTreeTable;
 import com.jetbrains.actionscript.profiler.calltreetable.MergedCallNode;
@@ -43,6 +49,7 @@ import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreeNode;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +58,7 @@ import java.util.Map;
  * @author: Fedor.Korotkov
  */
 public class CPUSnapshotView extends ProfileView implements Disposable {
+  private static final Logger LOG = Logger.getInstance(CPUSnapshotView.class.getName());
   private static final int MS_COLUMN_WIDTH = 140;
 
   private JCheckBox myFilterSystemStuff;
@@ -64,7 +72,7 @@ public class CPUSnapshotView extends ProfileView implements Disposable {
   private JPanel topPanel;
   private JPanel bottomPanel;
 
-  private final CallTree rawCallTree;
+  private final CallTreeSnapshot rawSnapshot;
   private Alarm myAlarm;
 
   private final GlobalSearchScope projectScope;
@@ -78,9 +86,49 @@ public class CPUSnapshotView extends ProfileView implements Disposable {
   public CPUSnapshotView(VirtualFile file, Project project) {
     super(file, project);
     projectScope = GlobalSearchScope.projectScope(project);
-    rawCallTree = file.getUserData(ProfileData.CALL_TREE_KEY);
+    rawSnapshot = loadSnapshot(file);
     setupUI();
     buildPerformanceSamples(myHotSpotsTreeTable.getSortableTreeTableModel());
+    if (!rawSnapshot.isCallTreeLoaded()) {
+      loadCallTree(project);
+    }
+  }
+
+  /**
+   * Hot spots of a snapshot file are shown from its header right away, the nodes are needed to expand them and are read in background.
+   * Until then nodes have no children, the hot spots are rebuilt when the tree is loaded.
+   */
+  private void loadCallTree(Project project) {
+    ProgressManager.getInstance().run(new Task.Backgroundable(project, ProfilerBundle.message("load.cpu.snapshot.progress"), true) {
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        rawSnapshot.loadCallTree(indicator);
+      }
+
+      @Override
+      public void onSuccess() {
+        if (!project.isDisposed()) {
+          buildPerformanceSamples(myHotSpotsTreeTable.getSortableTreeTableModel());
+        }
+      }
+    });
+  }
+
+  /**
+   * A snapshot taken in this session keeps its tree in the file user data, a snapshot file is read lazily.
+   */
+  private static CallTreeSnapshot loadSnapshot(VirtualFile file) {
+    final CallTree callTree = file.getUserData(ProfileData.CALL_TREE_KEY);
+    if (callTree != null) {
+      return new CallTreeSnapshot(callTree);
+    }
+    try {
+      return CallTreeSnapshot.read(file::getInputStream);
+    }
+    catch (IOException e) {
+      LOG.warn("Cannot read CPU snapshot " + file.getPath(), e);
+      return new CallTreeSnapshot(new CallTree());
+    }
   }
 
   @Nullable
@@ -180,6 +228,7 @@ public class CPUSnapshotView extends ProfileView implements Disposable {
         if (!(node instanceof MergedCallNode)) return;
         myAlarm.cancelAllRequests();
         final MergedCallNode mergedCallNode = (MergedCallNode)node;
+        if (!mergedCallNode.getSnapshot().isCallTreeLoaded()) return;
 
         myAlarm.addRequest(() -> {
           FrameInfo[] frames = new FrameInfo[]{mergedCallNode.getFrameInfo()};
@@ -189,7 +238,7 @@ public class CPUSnapshotView extends ProfileView implements Disposable {
 
           DefaultMutableTreeNode tracesRoot = (DefaultMutableTreeNode)myTracesTreeTable.getSortableTreeTableModel().getRoot();
           JTreeUtil.removeChildren(tracesRoot, myTracesTreeTable.getSortableTreeTableModel());
-          fillTreeModelRoot(tracesRoot, mergedCallNode.getCallTree(), countMap, selfCountMap, false, frames);
+          fillTreeModelRoot(tracesRoot, mergedCallNode.getSnapshot(), countMap, selfCountMap, false, frames);
           myTracesTreeTable.reload();
 
           TreeUtil.expand(myTracesTreeTable.getTree(), 1);
@@ -200,23 +249,29 @@ public class CPUSnapshotView extends ProfileView implements Disposable {
 
   private void buildPerformanceSamples(final DefaultTreeModel treeModel) {
     final boolean skipSystemStuff = myFilterSystemStuff.isSelected();
-    CallTree filteredCallTree = rawCallTree;
+    DefaultMutableTreeNode tracesRoot = (DefaultMutableTreeNode)treeModel.getRoot();
+    JTreeUtil.removeChildren(tracesRoot, treeModel);
+    if (skipSystemStuff && !rawSnapshot.isCallTreeLoaded()) {
+      // filtering needs the whole tree, the hot spots are built again when it is loaded
+      treeModel.reload();
+      return;
+    }
+
+    CallTreeSnapshot filteredSnapshot = rawSnapshot;
     if (skipSystemStuff) {
-      filteredCallTree = CallTreeUtil.filterSystemStuff(filteredCallTree);
+      filteredSnapshot = new CallTreeSnapshot(CallTreeUtil.filterSystemStuff(rawSnapshot.getCallTree()));
     }
 
-    final Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> countMaps = filteredCallTree.getTimeMaps();
+    final Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> countMaps = filteredSnapshot.getTimeMaps();
     final Map<FrameInfo, Long> countMap = countMaps.getFirst();
     final Map<FrameInfo, Long> selfCountMap = countMaps.getSecond();
 
-    DefaultMutableTreeNode tracesRoot = (DefaultMutableTreeNode)treeModel.getRoot();
-    JTreeUtil.removeChildren(tracesRoot, treeModel);
-    fillTreeModelRoot(tracesRoot, filteredCallTree, countMap, selfCountMap, true, FrameInfo.EMPTY_FRAME_INFO_ARRAY);
+    fillTreeModelRoot(tracesRoot, filteredSnapshot, countMap, selfCountMap, true, FrameInfo.EMPTY_FRAME_INFO_ARRAY);
     treeModel.reload();
   }
 
   private <T extends Sample> void fillTreeModelRoot(TreeNode node,
-                                                    CallTree callTree,
+                                                    CallTreeSnapshot snapshot,
                                                     final Map<FrameInfo, Long> countMap,
                                                     final Map<FrameInfo, Long> selfCountMap,
                                                     boolean backTrace,
@@ -228,7 +283,7 @@ public class CPUSnapshotView extends ProfileView implements Disposable {
     int index = 0;
     for (final FrameInfo s : traces) {
       root
-        .insert(new MergedCallNode<T>(new CallInfo(s, countMap.get(s), selfCountMap.get(s)), callTree, frames, backTrace, scope), index++);
+        .insert(new MergedCallNode<T>(new CallInfo(s, countMap.get(s), selfCountMap.get(s)), snapshot, frames, backTrace, scope), index++);
     }
   }
 
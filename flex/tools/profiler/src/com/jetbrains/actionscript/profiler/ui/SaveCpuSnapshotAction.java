@@ -0,0 +1,75 @@
+package com.jetbrains.actionscript.profiler.ui;
+
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import com.intellij.pom.Navigatable;
+import com.jetbrains.actionscript.profiler.ProfilerBundle;
+import com.jetbrains.actionscript.profiler.calltree.CallTree;
+import com.jetbrains.actionscript.profiler.calltree.CallTreeSnapshot;
+import com.jetbrains.actionscript.profiler.file.CpuSnapshotFileType;
+import com.jetbrains.actionscript.profiler.model.ProfileData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Saves a CPU snapshot of the profiling session to a file, saved snapshots are opened as ordinary files and can be compared side by side.
+ */
+public class SaveCpuSnapshotAction extends AnAction {
+  @Override
+  public void update(@NotNull AnActionEvent e) {
+    e.getPresentation().setEnabledAndVisible(getCallTree(e) != null);
+  }
+
+  @Override
+  public void actionPerformed(@NotNull AnActionEvent e) {
+    final Project project = e.getProject();
+    final CallTree callTree = getCallTree(e);
+    if (project == null || callTree == null) return;
+
+    final FileSaverDescriptor descriptor = new FileSaverDescriptor(ProfilerBundle.message("save.cpu.snapshot.title"),
+                                                                   ProfilerBundle.message("save.cpu.snapshot.description"),
+                                                                   CpuSnapshotFileType.DEFAULT_EXTENSION);
+    final VirtualFileWrapper wrapper = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, project).save(null, null);
+    if (wrapper == null) return;
+
+    final File file = wrapper.getFile();
+    ProgressManager.getInstance().run(new Task.Backgroundable(project, ProfilerBundle.message("save.cpu.snapshot.progress")) {
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        try (OutputStream out = new FileOutputStream(file)) {
+          CallTreeSnapshot.write(callTree, out);
+        }
+        catch (IOException ex) {
+          ActionScriptProfileControlPanel.NOTIFICATION_GROUP
+            .createNotification(ProfilerBundle.message("save.cpu.snapshot.failed", ex.getMessage()), NotificationType.ERROR)
+            .notify(project);
+          return;
+        }
+        LocalFileSystem.getInstance().refreshAndFindFileByIoFile(file);
+      }
+    });
+  }
+
+  @Nullable
+  private static CallTree getCallTree(AnActionEvent e) {
+    final Navigatable navigatable = e.getData(CommonDataKeys.NAVIGATABLE);
+    if (!(navigatable instanceof OpenFileDescriptor)) return null;
+    return ((OpenFileDescriptor)navigatable).getFile().getUserData(ProfileData.CALL_TREE_KEY);
+  }
+}
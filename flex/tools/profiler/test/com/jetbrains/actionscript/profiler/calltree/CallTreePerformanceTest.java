@@ -0,0 +1,68 @@
+package com.jetbrains.actionscript.profiler.calltree;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfoBuilder;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Samples have the shape of a recorded 10-minute session of a Flex application: deep stacks over a few thousand methods,
+ * with an event dispatching loop near the root and recursive layout calls.
+ */
+public class CallTreePerformanceTest extends TestCase {
+  private static final int SAMPLE_COUNT = 600_000;
+
+  static List<FrameInfo[]> createSamples() {
+    final FrameInfoBuilder frameInfoBuilder = new FrameInfoBuilder();
+    final FrameInfo[] methods = new FrameInfo[5000];
+    for (int i = 0; i < methods.length; ++i) {
+      methods[i] = frameInfoBuilder.buildInstance("pkg" + i % 50 + "::Class" + i / 10 + "/method" + i % 10 + "()");
+    }
+    final FrameInfo[] loop = {
+      frameInfoBuilder.buildInstance("[enterFrameEvent]()"),
+      frameInfoBuilder.buildInstance("flash.events::EventDispatcher/dispatchEvent()"),
+      frameInfoBuilder.buildInstance("mx.core::UIComponent/validateDisplayList()")
+    };
+
+    final Random random = new Random(0);
+    final List<FrameInfo[]> samples = new ArrayList<>(SAMPLE_COUNT);
+    for (int i = 0; i < SAMPLE_COUNT; ++i) {
+      final FrameInfo[] frames = new FrameInfo[loop.length + 5 + random.nextInt(40)];
+      // the innermost call goes first
+      int method = random.nextInt(200);
+      for (int j = 0; j < frames.length - loop.length; ++j) {
+        frames[j] = methods[method];
+        method = (method * 31 + (random.nextInt(8) == 0 ? random.nextInt(3) : 0)) % methods.length;
+      }
+      System.arraycopy(loop, 0, frames, frames.length - loop.length, loop.length);
+      samples.add(frames);
+    }
+    return samples;
+  }
+
+  static CallTree buildTree(List<FrameInfo[]> samples) {
+    final CallTree tree = new CallTree();
+    for (FrameInfo[] frames : samples) {
+      tree.addFrames(frames, 1);
+    }
+    return tree;
+  }
+
+  public void testThroughput() {
+    final List<FrameInfo[]> samples = createSamples();
+    final FrameInfo[] callees = {samples.get(0)[samples.get(0).length - 1]};
+    final FrameInfo[] callers = {samples.get(0)[0]};
+
+    PlatformTestUtil.startPerformanceTest("ActionScript call tree of " + SAMPLE_COUNT + " samples", 15_000, () -> {
+      final CallTree tree = buildTree(samples);
+      assertEquals(SAMPLE_COUNT, tree.getTimeMaps().getFirst().get(callees[0]).longValue());
+      assertFalse(tree.getCalleesTimeMaps(callees).getFirst().isEmpty());
+      assertFalse(tree.getCallersTimeMaps(callers).getFirst().isEmpty());
+      assertFalse(CallTreeUtil.filterSystemStuff(tree).getTimeMaps().getFirst().isEmpty());
+    }).attempts(3).assertTiming();
+  }
+}
@@ -0,0 +1,142 @@
+package com.jetbrains.actionscript.profiler.calltree;
+
+import com.intellij.lang.javascript.psi.JSFunction;
+import com.intellij.openapi.util.Pair;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfoBuilder;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class CallTreeSnapshotTest extends TestCase {
+  private static byte[] write(CallTree tree) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CallTreeSnapshot.write(tree, out);
+    return out.toByteArray();
+  }
+
+  private static CallTreeSnapshot read(byte[] bytes) throws IOException {
+    return CallTreeSnapshot.read(() -> new ByteArrayInputStream(bytes));
+  }
+
+  private static void assertMapsEqual(Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> expected,
+                                      Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> actual) {
+    assertEquals(expected.getFirst(), actual.getFirst());
+    assertEquals(expected.getSecond(), actual.getSecond());
+  }
+
+  public void testRoundTrip() throws IOException {
+    final FrameInfoBuilder frameInfoBuilder = new FrameInfoBuilder();
+    final FrameInfo main = frameInfoBuilder.buildInstance("Main/main()[C:\\project\\src;;Main.as:12]");
+    final FrameInfo getter = frameInfoBuilder.buildInstance("mx.core::UIComponent/get mx_internal::width()");
+    final FrameInfo layout = frameInfoBuilder.buildInstance("mx.core::UIComponent/validateDisplayList()");
+    final FrameInfo system = frameInfoBuilder.buildInstance("[enterFrameEvent]()");
+
+    final CallTree tree = new CallTree();
+    tree.addFrames(new FrameInfo[]{getter, layout, main}, 3);
+    tree.addFrames(new FrameInfo[]{layout, layout, main}, 5);
+    tree.addFrames(new FrameInfo[]{main}, 7);
+    tree.addFrames(new FrameInfo[]{getter, system}, 11);
+
+    final CallTreeSnapshot snapshot = read(write(tree));
+    assertFalse(snapshot.isCallTreeLoaded());
+    assertMapsEqual(tree.getTimeMaps(), snapshot.getTimeMaps());
+    assertFalse(snapshot.isCallTreeLoaded());
+
+    FrameInfo readMain = null;
+    FrameInfo readGetter = null;
+    for (FrameInfo frame : snapshot.getTimeMaps().getFirst().keySet()) {
+      if (frame.equals(main)) readMain = frame;
+      if (frame.equals(getter)) readGetter = frame;
+    }
+    assertNotNull(readMain);
+    assertEquals(main.getFilePath(), readMain.getFilePath());
+    assertEquals(12, readMain.getFileLine());
+    assertNotNull(readGetter);
+    assertEquals(JSFunction.FunctionKind.GETTER, readGetter.getKind());
+    assertEquals("mx_internal", readGetter.getNamespace());
+
+    final CallTree readTree = snapshot.getCallTree();
+    assertTrue(snapshot.isCallTreeLoaded());
+    assertEquals(tree.getNodeCount(), readTree.getNodeCount());
+    for (int node = 0; node < tree.getNodeCount(); ++node) {
+      assertEquals(tree.getParent(node), readTree.getParent(node));
+      assertEquals(tree.getCumulativeTime(node), readTree.getCumulativeTime(node));
+      assertEquals(tree.getSelfTime(node), readTree.getSelfTime(node));
+    }
+    assertMapsEqual(tree.getTimeMaps(), readTree.getTimeMaps());
+    assertMapsEqual(tree.getCalleesTimeMaps(new FrameInfo[]{main}), readTree.getCalleesTimeMaps(new FrameInfo[]{main}));
+    assertMapsEqual(tree.getCallersTimeMaps(new FrameInfo[]{getter}), readTree.getCallersTimeMaps(new FrameInfo[]{getter}));
+    assertMapsEqual(CallTreeUtil.filterSystemStuff(tree).getTimeMaps(), CallTreeUtil.filterSystemStuff(readTree).getTimeMaps());
+  }
+
+  public void testEmptyTree() throws IOException {
+    final CallTreeSnapshot snapshot = read(write(new CallTree()));
+    assertTrue(snapshot.getTimeMaps().getFirst().isEmpty());
+    assertEquals(1, snapshot.getCallTree().getNodeCount());
+  }
+
+  public void testNotSnapshot() {
+    try {
+      read(new byte[]{'<', 'x', 'm', 'l', '>', 0, 0, 0, 0, 0, 0, 0});
+      fail();
+    }
+    catch (IOException ignored) {
+    }
+  }
+
+  public void testCorruptedSnapshot() throws IOException {
+    final FrameInfoBuilder frameInfoBuilder = new FrameInfoBuilder();
+    final FrameInfo a = frameInfoBuilder.buildInstance("A/a()");
+    final FrameInfo b = frameInfoBuilder.buildInstance("B/get b()");
+    final CallTree tree = new CallTree();
+    tree.addFrames(new FrameInfo[]{b, a}, 3);
+    tree.addFrames(new FrameInfo[]{a, b, a}, 5);
+    final byte[] bytes = write(tree);
+
+    // every byte replaced with values that break lengths, indices and parent distances: an I/O error or an empty tree, nothing else
+    for (int i = 0; i < bytes.length; ++i) {
+      for (byte value : new byte[]{0, 1, 0x7F, (byte)0x80, (byte)0xFF}) {
+        final byte[] corrupted = bytes.clone();
+        corrupted[i] = value;
+        assertReadable(corrupted);
+      }
+      assertReadable(Arrays.copyOf(bytes, i));
+    }
+  }
+
+  private static void assertReadable(byte[] bytes) {
+    final CallTreeSnapshot snapshot;
+    try {
+      snapshot = read(bytes);
+    }
+    catch (IOException e) {
+      return;
+    }
+    assertNotNull(snapshot.getCallTree());
+  }
+
+  public void testLargeSnapshot() throws IOException {
+    final List<FrameInfo[]> samples = CallTreePerformanceTest.createSamples();
+    final CallTree tree = CallTreePerformanceTest.buildTree(samples);
+    final byte[] bytes = write(tree);
+    final FrameInfo[] callees = {samples.get(0)[samples.get(0).length - 1]};
+
+    PlatformTestUtil.startPerformanceTest("Opening a CPU snapshot of " + tree.getNodeCount() + " nodes", 200, () -> {
+      final CallTreeSnapshot snapshot = read(bytes);
+      assertEquals(samples.size(), snapshot.getTimeMaps().getFirst().get(callees[0]).longValue());
+    }).attempts(3).assertTiming();
+
+    PlatformTestUtil.startPerformanceTest("Loading all nodes of a CPU snapshot of " + tree.getNodeCount() + " nodes", 6_000, () -> {
+      final CallTreeSnapshot snapshot = read(bytes);
+      assertEquals(tree.getNodeCount(), snapshot.getCallTree().getNodeCount());
+      assertFalse(snapshot.getCallTree().getCalleesTimeMaps(callees).getFirst().isEmpty());
+    }).attempts(3).assertTiming();
+  }
+}
@@ -1,7 +1,6 @@
 package com.jetbrains.actionscript.profiler.calltree;
 
 import com.intellij.psi.xml.XmlTag;
-import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
 import com.jetbrains.actionscript.profiler.sampler.FrameUtil;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Assert;
@@ -11,26 +10,28 @@ public class CallTreeTestUtil {
   }
 
   public static CallTree getCallTreeFromXmlFile(@NotNull XmlTag rootTag) {
-    CallTreeNode root = getCallTreeNodeFromXmlTag(rootTag);
-    return new CallTree(root);
+    CallTree tree = new CallTree();
+    tree.addTime(CallTree.ROOT, getCount(rootTag));
+    addChildren(tree, CallTree.ROOT, rootTag);
+    return tree;
   }
 
-  private static CallTreeNode getCallTreeNodeFromXmlTag(XmlTag rootTag) {
-    int count = Integer.MAX_VALUE;
-    String countStr = rootTag.getAttributeValue("count");
-    if (countStr != null) {
-      count = Integer.parseInt(countStr);
-    }
-    FrameInfo frameInfo = FrameUtil.getFrameInfo(rootTag.getName());
-    CallTreeNode node = new CallTreeNode(frameInfo, count);
-    if (rootTag.isEmpty()) {
-      return node;
+  private static int getCount(XmlTag tag) {
+    String countStr = tag.getAttributeValue("count");
+    return countStr != null ? Integer.parseInt(countStr) : Integer.MAX_VALUE;
+  }
+
+  private static void addChildren(CallTree tree, int node, XmlTag tag) {
+    if (tag.isEmpty()) {
+      return;
     }
-    for (XmlTag childTag : rootTag.getSubTags()) {
-      CallTreeNode childNode = getCallTreeNodeFromXmlTag(childTag);
-      node.addChildRecursive(childNode);
-      Assert.assertTrue("Bad edge " + node.getFrameInfo() + "->" + childNode.getFrameInfo(), childNode.calcSelfTiming() <= count);
+    int count = getCount(tag);
+    for (XmlTag childTag : tag.getSubTags()) {
+      int childNode = tree.getOrCreateChild(node, tree.getFrames().getFrameId(FrameUtil.getFrameInfo(childTag.getName())));
+      tree.addTime(childNode, getCount(childTag));
+      addChildren(tree, childNode, childTag);
+      Assert.assertTrue("Bad edge " + tag.getName() + "->" + childTag.getName(),
+                        tree.getCumulativeTime(childNode) - tree.getSelfTime(childNode) <= count);
     }
-    return node;
   }
 }
@@ -0,0 +1,138 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import com.intellij.openapi.util.Pair;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.jetbrains.actionscript.profiler.calltree.CallTree;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfoBuilder;
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Replays an agent stream through the sample decoder. The stream is written the way the agent writes it: string dictionary
+ * references for known frames and "u>:" for the outermost frames shared with the previous sample, with object creation samples
+ * in between.
+ */
+public class ProfilingConnectionPerformanceTest extends TestCase {
+  private static final int SAMPLE_COUNT = 300_000;
+
+  private static List<String[]> createStacks() {
+    final String[] methods = new String[3000];
+    for (int i = 0; i < methods.length; ++i) {
+      methods[i] = "pkg" + i % 50 + "::Class" + i / 10 + "/method" + i % 10 + "()[C:\\src\\pkg" + i % 50 + "\\Class" + i / 10 + ".as:" + i;
+    }
+    final String[] loop = {"mx.core::UIComponent/validateDisplayList()", "flash.events::EventDispatcher/dispatchEvent()", "[enterFrameEvent]"};
+
+    final Random random = new Random(0);
+    final List<String[]> stacks = new ArrayList<>(SAMPLE_COUNT);
+    String[] previous = null;
+    for (int i = 0; i < SAMPLE_COUNT; ++i) {
+      // consecutive samples usually differ in a few innermost frames only
+      final String[] stack;
+      if (previous != null && random.nextInt(4) != 0) {
+        final int kept = Math.max(loop.length, previous.length - 1 - random.nextInt(4));
+        stack = new String[kept + random.nextInt(4)];
+        System.arraycopy(previous, previous.length - kept, stack, stack.length - kept, kept);
+        for (int j = 0; j < stack.length - kept; ++j) {
+          stack[j] = methods[random.nextInt(methods.length)];
+        }
+      }
+      else {
+        stack = new String[loop.length + 2 + random.nextInt(30)];
+        for (int j = 0; j < stack.length - loop.length; ++j) {
+          stack[j] = methods[random.nextInt(methods.length)];
+        }
+        System.arraycopy(loop, 0, stack, stack.length - loop.length, loop.length);
+      }
+      stacks.add(stack);
+      previous = stack;
+    }
+    return stacks;
+  }
+
+  private static byte[] writeAgentStream(List<String[]> stacks) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    final Map<String, String> stringDictionary = new HashMap<>();
+    String[] previous = null;
+    for (int i = 0; i < stacks.size(); ++i) {
+      final String[] stack = stacks.get(i);
+      int matchedCount = 0;
+      if (previous != null) {
+        for (int j = previous.length - 1, k = stack.length - 1; j >= 0 && k >= 0 && previous[j].equals(stack[k]); --j, --k) {
+          ++matchedCount;
+        }
+      }
+      out.writeUTF("s\0" + (1 + i % 3) + " " + stack.length);
+      writeStack(out, stringDictionary, stack, stack.length - matchedCount);
+      if (matchedCount != 0) out.writeUTF("u>:" + matchedCount);
+      previous = stack;
+
+      if (i % 10 == 0) {
+        out.writeUTF("c\0" + 2 + " " + i + " " + (i == 0 ? "flash.display::Sprite" : "0") + " 128");
+        writeStack(out, stringDictionary, stack, 2);
+      }
+    }
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private static void writeStack(DataOutputStream out, Map<String, String> stringDictionary, String[] stack, int count)
+    throws IOException {
+    for (int i = 0; i < count; ++i) {
+      final String value = stringDictionary.get(stack[i]);
+      if (value == null) {
+        stringDictionary.put(stack[i], String.valueOf(stringDictionary.size() + 1));
+        out.writeUTF(stack[i]);
+      }
+      else {
+        out.writeUTF(value);
+      }
+    }
+  }
+
+  private static ProfilerDataConsumer replay(byte[] stream) throws IOException {
+    final ProfilerDataConsumer consumer = new ProfilerDataConsumer(null);
+    final ProfilingConnection connection = new ProfilingConnection(0, consumer, (data, ex) -> {
+    });
+    try {
+      connection.readPackets(new ByteArrayInputStream(stream));
+      fail("stream end expected");
+    }
+    catch (EOFException ignored) {
+    }
+    return consumer;
+  }
+
+  public void testDecodedSamples() throws IOException {
+    final List<String[]> stacks = createStacks().subList(0, 20_000);
+    final ProfilerDataConsumer consumer = replay(writeAgentStream(stacks));
+
+    final FrameInfoBuilder frameInfoBuilder = new FrameInfoBuilder();
+    final CallTree expected = new CallTree();
+    for (int i = 0; i < stacks.size(); ++i) {
+      final String[] stack = stacks.get(i);
+      final FrameInfo[] frames = new FrameInfo[stack.length];
+      for (int j = 0; j < stack.length; ++j) {
+        frames[j] = frameInfoBuilder.buildInstance(stack[j]);
+      }
+      expected.addFrames(frames, 1 + i % 3);
+    }
+
+    final Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> expectedMaps = expected.getTimeMaps();
+    final Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> actualMaps = consumer.getProfileData().getCallTree().getTimeMaps();
+    assertEquals(expectedMaps.getFirst(), actualMaps.getFirst());
+    assertEquals(expectedMaps.getSecond(), actualMaps.getSecond());
+  }
+
+  public void testThroughput() throws IOException {
+    final byte[] stream = writeAgentStream(createStacks());
+    PlatformTestUtil.startPerformanceTest("Decoding of " + SAMPLE_COUNT + " profiler agent samples, " + stream.length / 1024 + "K", 5_000,
+                                          () -> {
+                                            final ProfilerDataConsumer consumer = replay(stream);
+                                            assertFalse(consumer.getProfileData().getCallTree().getTimeMaps().getFirst().isEmpty());
+                                          }).attempts(3).assertTiming();
+  }
+}
@@ -0,0 +1,44 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ReferenceGraphTest extends TestCase {
+  private static List<Integer> getReferencedIds(ReferenceGraph graph, int objectId) {
+    for (int node = 0; node < graph.getNodeCount(); ++node) {
+      if (graph.getObjectId(node) != objectId) continue;
+      final List<Integer> result = new ArrayList<>();
+      for (int edge = graph.getEdgeStart(node); edge < graph.getEdgeEnd(node); ++edge) {
+        result.add(graph.getObjectId(graph.getTarget(edge)));
+      }
+      return result;
+    }
+    throw new AssertionError("no object " + objectId);
+  }
+
+  public void testBuild() {
+    final ObjectTable objects = new ObjectTable();
+    objects.put(1, "A", 10);
+    objects.put(2, "B", 20);
+    objects.put(5, "C", 50);
+
+    final ReferenceGraph.Builder references = new ReferenceGraph.Builder();
+    references.addReference(1, 2);
+    references.addReference(3, 1);
+    references.addReference(1, 3);
+    references.addReference(2, 3);
+
+    final ReferenceGraph graph = references.build(objects);
+    // 3 is dumped but not tracked, 5 is live but has no references
+    assertEquals(4, graph.getNodeCount());
+    assertEquals(4, graph.getEdgeCount());
+    assertEquals(Arrays.asList(2, 3), getReferencedIds(graph, 1));
+    assertEquals(Collections.singletonList(3), getReferencedIds(graph, 2));
+    assertEquals(Collections.singletonList(1), getReferencedIds(graph, 3));
+    assertEquals(Collections.emptyList(), getReferencedIds(graph, 5));
+  }
+}
@@ -120,4 +120,15 @@ public class FrameInfoTest extends TestCase {
           null,
           "http://adobe.com/AS3/2006/builtin");
   }
+
+  public void testFrameIdsOfNewInstances() {
+    final FrameInfoBuilder frameInfoBuilder = new FrameInfoBuilder();
+    final String[] frames = {"A/a()", "B/b()", "C/c()"};
+    for (int i = 0; i < 10000; ++i) {
+      // equal frames created anew each time, as frames of different connections are
+      final int index = i % frames.length;
+      assertEquals(index, frameInfoBuilder.getFrameId(frameInfoBuilder.createInstance(frames[index])));
+    }
+    assertEquals(frames.length, frameInfoBuilder.getFrameCount());
+  }
 }